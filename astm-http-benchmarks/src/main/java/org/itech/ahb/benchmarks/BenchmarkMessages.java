@@ -0,0 +1,80 @@
+package org.itech.ahb.benchmarks;
+
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.DefaultASTMMessage;
+
+/**
+ * This class builds the ASTM messages the benchmarks use, so every benchmark and every run works on the same content.
+ */
+public final class BenchmarkMessages {
+
+  static final String SENDER_NAME = "ANALYZER01";
+  static final int SMALL_MESSAGE_RESULTS = 4;
+  static final int LARGE_MESSAGE_SIZE = 1024 * 1024; // in bytes
+  public static final int PATIENT_RECORD_INDEX = 1;
+
+  private BenchmarkMessages() {}
+
+  /**
+   * The size of a message used by a benchmark.
+   */
+  public enum MessageSize {
+    /**
+     * A message with a handful of results, as most analyzers send.
+     */
+    SMALL,
+    /**
+     * A message of at least 1 MB, ex. a batch of results or a message with an embedded image.
+     */
+    LARGE
+  }
+
+  /**
+   * Creates a message with a header, patient, order and termination record around the result records.
+   *
+   * @param size the size of the message.
+   * @return the message.
+   */
+  public static ASTMMessage create(MessageSize size) {
+    return new DefaultASTMMessage(createText(size));
+  }
+
+  /**
+   * Creates the text of a message, one record per line.
+   *
+   * @param size the size of the message.
+   * @return the text of the message.
+   */
+  static String createText(MessageSize size) {
+    StringBuilder message = new StringBuilder();
+    message.append("H|\\^&|||").append(SENDER_NAME).append("^1.0|||||||P|LIS2-A2|20240101120000\n");
+    message.append(createPatientRecord("PID0001")).append("\n");
+    message.append("O|1|SID0001||^^^GLU\\^^^CREA|R||||||N||||SERUM\n");
+    int i = 0;
+    while (size == MessageSize.SMALL ? i < SMALL_MESSAGE_RESULTS : message.length() < LARGE_MESSAGE_SIZE) {
+      ++i;
+      message
+        .append("R|")
+        .append(i)
+        .append("|^^^TEST")
+        .append(i)
+        .append("|")
+        .append(i % 100)
+        .append(".5|mmol/L|1.0 to 99.0|N||F||||20240101120000|")
+        .append(SENDER_NAME)
+        .append("\n");
+    }
+    message.append("L|1|N");
+    return message.toString();
+  }
+
+  /**
+   * Creates the patient record of a message, which is the record at {@link #PATIENT_RECORD_INDEX}.
+   *
+   * @param patientId the practice assigned patient ID (P.3).
+   * @return the text of the record.
+   */
+  public static String createPatientRecord(String patientId) {
+    return "P|1||" + patientId + "||DOE^JOHN||19800101|M";
+  }
+}
@@ -0,0 +1,59 @@
+package org.itech.ahb.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.lib.astm.communication.ASTMChecksum;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks calculating the checksum of a full frame of each ASTM version, both byte by byte as the decoder does and
+ * over the whole frame as the encoder does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChecksumBenchmark {
+
+  @Param({ "" + GeneralASTMCommunicator.MAX_TEXT_SIZE_E138195, "" + GeneralASTMCommunicator.MAX_TEXT_SIZE })
+  private int frameTextSize;
+
+  private ASTMChecksum checksum = new ASTMChecksum();
+  private byte[] frame;
+
+  @Setup
+  public void setup() {
+    String text = BenchmarkMessages.createText(MessageSize.LARGE).substring(0, frameTextSize);
+    frame = ("1" + text + "\u0003").getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public int perByte() {
+    checksum.reset();
+    for (byte b : frame) {
+      checksum.update(b);
+    }
+    return checksum.getValue();
+  }
+
+  @Benchmark
+  public int wholeFrame() {
+    checksum.reset();
+    checksum.update(frame, 0, frame.length);
+    return checksum.getValue();
+  }
+}
@@ -0,0 +1,127 @@
+package org.itech.ahb.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.lib.astm.communication.ASTMControlCharacters;
+import org.itech.ahb.lib.astm.communication.ASTMFrameEncoder;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreter;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the LIS01-A receive and send protocols of {@link GeneralASTMCommunicator} over in-memory sockets. The
+ * other end of the socket is a minimal peer, so only the side being benchmarked runs the full protocol:
+ * <ul>
+ * <li>receive: the peer writes a pre-encoded transmission and discards the acknowledgements.</li>
+ * <li>send: the peer acknowledges the establishment signal and every frame.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CommunicatorBenchmark {
+
+  @Param({ "SMALL", "LARGE" })
+  private MessageSize messageSize;
+
+  private ASTMMessage message;
+  private byte[] transmission;
+  private PipedSocket[] receiveSockets;
+  private PipedSocket[] sendSockets;
+  private GeneralASTMCommunicator receiver;
+  private GeneralASTMCommunicator sender;
+  private ExecutorService peerExecutor;
+
+  @Setup
+  public void setup() throws IOException {
+    message = BenchmarkMessages.create(messageSize);
+    transmission = encodeTransmission(message);
+    peerExecutor = Executors.newFixedThreadPool(3);
+
+    receiveSockets = PipedSocket.createPair();
+    receiver = new GeneralASTMCommunicator(new DefaultASTMInterpreterFactory(), receiveSockets[0]);
+    InputStream acknowledgements = receiveSockets[1].getInputStream();
+    peerExecutor.submit(() -> acknowledgements.transferTo(OutputStream.nullOutputStream()));
+
+    sendSockets = PipedSocket.createPair();
+    sender = new GeneralASTMCommunicator(new DefaultASTMInterpreterFactory(), sendSockets[0]);
+    InputStream sent = new BufferedInputStream(sendSockets[1].getInputStream());
+    OutputStream responses = sendSockets[1].getOutputStream();
+    peerExecutor.submit(() -> acknowledge(sent, responses));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    receiveSockets[0].close();
+    receiveSockets[1].close();
+    sendSockets[0].close();
+    sendSockets[1].close();
+    peerExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public ASTMMessage receive() throws Exception {
+    OutputStream peer = receiveSockets[1].getOutputStream();
+    Future<?> written = peerExecutor.submit(() -> {
+      peer.write(transmission);
+      return null;
+    });
+    ASTMMessage received = receiver.receiveProtocol(false);
+    written.get();
+    return received;
+  }
+
+  @Benchmark
+  public Object send() throws Exception {
+    return sender.sendProtocol(message);
+  }
+
+  private static byte[] encodeTransmission(ASTMMessage message) throws IOException {
+    ByteArrayOutputStream transmission = new ByteArrayOutputStream();
+    ASTMFrameEncoder encoder = new ASTMFrameEncoder(transmission);
+    encoder.writeControlCharacter(ASTMControlCharacters.ENQ);
+    for (ASTMFrame frame : new DefaultASTMInterpreter().interpretASTMMessageToFrames(message)) {
+      encoder.writeFrame(frame.getFrameNumber(), frame.getText(), frame.getType() != FrameType.INTERMEDIATE);
+    }
+    encoder.writeControlCharacter(ASTMControlCharacters.EOT);
+    return transmission.toByteArray();
+  }
+
+  // frames end in CR LF and their text can not contain LF, so every LF ends a frame
+  private static Void acknowledge(InputStream in, OutputStream out) throws IOException {
+    int b;
+    while ((b = in.read()) != -1) {
+      if (b == ASTMControlCharacters.ENQ || b == ASTMControlCharacters.LF) {
+        out.write(ASTMControlCharacters.ACK);
+        out.flush();
+      }
+    }
+    return null;
+  }
+}
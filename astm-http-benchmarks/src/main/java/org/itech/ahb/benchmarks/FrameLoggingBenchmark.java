@@ -0,0 +1,71 @@
+package org.itech.ahb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.lib.astm.communication.ASTMControlCharacters;
+import org.itech.ahb.lib.util.LogUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmarks the trace logging done for every frame that is received, with the logger at INFO as it is in
+ * production. Run with -prof gc to compare the allocation per frame of the guarded and unguarded statements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameLoggingBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(FrameLoggingBenchmark.class);
+
+  private String text = LogUtilBenchmark.RECORD;
+  private String checksum = "A7";
+  private char startChar = ASTMControlCharacters.STX;
+
+  @Benchmark
+  public void unguarded() {
+    log.trace(
+      "received: '" +
+      LogUtil.convertForDisplay(startChar) +
+      "'. Expecting start of frame ['" +
+      LogUtil.convertForDisplay(ASTMControlCharacters.STX) +
+      "'] aka [0x02]"
+    );
+    log.trace("received frame: '" + LogUtil.convertForDisplay(text) + "'. Expecting ASTM record.");
+    log.trace("received: '" + LogUtil.convertForDisplay(checksum) + "'. Expecting 2 base 16 checksum characters");
+    log.trace("sending: '" + LogUtil.convertForDisplay(ASTMControlCharacters.ACK) + "' to indicate received frame");
+  }
+
+  @Benchmark
+  public void guarded() {
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received: '" +
+        LogUtil.convertForDisplay(startChar) +
+        "'. Expecting start of frame ['" +
+        LogUtil.convertForDisplay(ASTMControlCharacters.STX) +
+        "'] aka [0x02]"
+      );
+    }
+    if (log.isTraceEnabled()) {
+      log.trace("received frame: '" + LogUtil.convertForDisplay(text) + "'. Expecting ASTM record.");
+    }
+    if (log.isTraceEnabled()) {
+      log.trace("received: '" + LogUtil.convertForDisplay(checksum) + "'. Expecting 2 base 16 checksum characters");
+    }
+    if (log.isTraceEnabled()) {
+      log.trace("sending: '" + LogUtil.convertForDisplay(ASTMControlCharacters.ACK) + "' to indicate received frame");
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package org.itech.ahb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.handling.ASTMHandler;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerResponse;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerServiceResponse;
+import org.itech.ahb.lib.astm.handling.ASTMRoutingCriteria;
+import org.itech.ahb.lib.common.handling.HandleStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ASTMHandlerService} finding and calling the handlers of a message. Every other handler is for
+ * the sender of the message, and handlers return as soon as they are called, so the time measured is the overhead of
+ * the handler service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandlerServiceBenchmark {
+
+  @Param({ "1", "8", "64" })
+  private int handlerCount;
+
+  @Param({ "ALL", "FIRST", "ALL_PARALLEL" })
+  private ASTMHandlerService.Mode mode;
+
+  @Param({ "true", "false" })
+  private boolean routed;
+
+  private ASTMHandlerService handlerService;
+  private ASTMMessage message;
+
+  @Setup
+  public void setup() {
+    List<ASTMHandler> handlers = new ArrayList<>();
+    for (int i = 0; i < handlerCount; ++i) {
+      handlers.add(new BenchmarkHandler(i, i % 2 == 0 ? BenchmarkMessages.SENDER_NAME : "OTHER" + i, routed));
+    }
+    handlerService = new ASTMHandlerService(handlers, mode);
+    message = BenchmarkMessages.create(MessageSize.SMALL);
+  }
+
+  @Benchmark
+  public ASTMHandlerServiceResponse handle() {
+    return handlerService.handle(message);
+  }
+
+  private static class BenchmarkHandler implements ASTMHandler {
+
+    private final String name;
+    private final boolean forSender;
+    private final ASTMRoutingCriteria routingCriteria; // null when matches is called for every message
+
+    BenchmarkHandler(int index, String senderName, boolean routed) {
+      this.name = "handler-" + index;
+      this.forSender = senderName.equals(BenchmarkMessages.SENDER_NAME);
+      this.routingCriteria = routed ? new ASTMRoutingCriteria(Set.of(senderName), Set.of(), Set.of()) : null;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public ASTMHandlerResponse handle(ASTMMessage message) {
+      return new ASTMHandlerResponse("", HandleStatus.SUCCESS, false, this);
+    }
+
+    @Override
+    public boolean matches(ASTMMessage message) {
+      return forSender;
+    }
+
+    @Override
+    public ASTMRoutingCriteria getRoutingCriteria() {
+      return routingCriteria;
+    }
+  }
+}
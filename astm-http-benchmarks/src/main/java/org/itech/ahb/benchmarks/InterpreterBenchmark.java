@@ -0,0 +1,65 @@
+package org.itech.ahb.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.exception.FrameParsingException;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreter;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link DefaultASTMInterpreter} converting messages to frames and back, for the frame sizes of both ASTM
+ * versions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+
+  @Param({ "SMALL", "LARGE" })
+  private MessageSize messageSize;
+
+  @Param({ "LIS01_A", "E1381_95" })
+  private ASTMVersion astmVersion;
+
+  private DefaultASTMInterpreter interpreter = new DefaultASTMInterpreter();
+  private ASTMMessage message;
+  private List<ASTMFrame> frames;
+
+  @Setup
+  public void setup() {
+    message = BenchmarkMessages.create(messageSize);
+    frames = interpreter.interpretASTMMessageToFrames(message, astmVersion);
+  }
+
+  @Benchmark
+  public List<ASTMFrame> messageToFrames() {
+    return interpreter.interpretASTMMessageToFrames(message, astmVersion);
+  }
+
+  @Benchmark
+  public ASTMMessage framesToMessage() throws FrameParsingException {
+    return interpreter.interpretFramesToASTMMessage(frames);
+  }
+
+  @Benchmark
+  public ASTMMessage textToMessage() {
+    return interpreter.interpretASTMTextToMessage(message.getMessage());
+  }
+}
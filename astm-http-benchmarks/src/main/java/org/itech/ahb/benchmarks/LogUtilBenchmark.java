@@ -0,0 +1,57 @@
+package org.itech.ahb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.lib.astm.communication.ASTMControlCharacters;
+import org.itech.ahb.lib.util.LogUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks converting control characters and frames for display in logs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogUtilBenchmark {
+
+  static final String RECORD =
+    "R|1|^^^GLU|5.4|mmol/L||N||F||||20240101120000|ANALYZER01\r" +
+    "R|2|^^^CREA|78|umol/L||N||F||||20240101120000|ANALYZER01\r";
+  static final String FRAME =
+    ASTMControlCharacters.STX +
+    "1" +
+    RECORD +
+    ASTMControlCharacters.ETX +
+    "A7" +
+    ASTMControlCharacters.CR +
+    ASTMControlCharacters.LF;
+
+  private char controlCharacter = ASTMControlCharacters.ACK;
+  private String frame = FRAME;
+  private String text = RECORD.replace('\r', '|');
+
+  @Benchmark
+  public String convertControlCharacter() {
+    return LogUtil.convertForDisplay(controlCharacter);
+  }
+
+  @Benchmark
+  public String convertFrame() {
+    return LogUtil.convertForDisplay(frame);
+  }
+
+  @Benchmark
+  public String convertTextWithoutControlCharacters() {
+    return LogUtil.convertForDisplay(text);
+  }
+}
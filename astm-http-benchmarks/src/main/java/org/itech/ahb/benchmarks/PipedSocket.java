@@ -0,0 +1,76 @@
+package org.itech.ahb.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+/**
+ * This class is a socket whose streams are pipes to the other socket of its pair, so communicators can be benchmarked
+ * without the network stack. Read timeouts are accepted but not enforced.
+ */
+class PipedSocket extends Socket {
+
+  private final InputStream inputStream;
+  private final OutputStream outputStream;
+  private int soTimeout = 0;
+  private boolean closed = false;
+
+  private PipedSocket(Pipe in, Pipe out) {
+    this.inputStream = Channels.newInputStream(in.source());
+    this.outputStream = Channels.newOutputStream(out.sink());
+  }
+
+  /**
+   * Creates two sockets that are connected to each other.
+   *
+   * @return the two sockets.
+   * @throws IOException if a pipe could not be opened.
+   */
+  static PipedSocket[] createPair() throws IOException {
+    Pipe aToB = Pipe.open();
+    Pipe bToA = Pipe.open();
+    return new PipedSocket[] { new PipedSocket(bToA, aToB), new PipedSocket(aToB, bToA) };
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  @Override
+  public void setSoTimeout(int timeout) {
+    soTimeout = timeout;
+  }
+
+  @Override
+  public int getSoTimeout() {
+    return soTimeout;
+  }
+
+  @Override
+  public boolean isConnected() {
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      inputStream.close();
+      outputStream.close();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package org.itech.ahb.benchmarks.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.benchmarks.BenchmarkMessages;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
+import org.itech.ahb.lib.astm.handling.DefaultForwardingASTMToHTTPHandler;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ConnectionThreadMode;
+
+/**
+ * This class simulates a fleet of analyzers sending messages to a bridge, with a stub LIS receiving the messages the
+ * bridge forwards, and reports the throughput and latency the bridge achieved. It is the tool for finding out how
+ * many analyzers a single bridge can serve.
+ *
+ * By default a bridge is started in this process, listening for LIS01-A and forwarding to the stub LIS. The LIS01-A
+ * bridge also accepts the smaller frames of E1381-95 analyzers. To load a bridge running elsewhere, pass its address
+ * with --bridge and configure it to forward to the stub LIS, ex. by fixing the port of the stub LIS with --lis-port.
+ */
+@Slf4j
+public class ASTMLoadGenerator {
+
+  private static final long START_DELAY = 500; // in milliseconds
+  private static final long DRAIN_TIMEOUT = 30; // in seconds
+  private static final long BRIDGE_START_TIMEOUT = 10; // in seconds
+
+  private final LoadOptions options;
+
+  /**
+   * Constructs a new ASTMLoadGenerator.
+   *
+   * @param options the options of the run.
+   */
+  public ASTMLoadGenerator(LoadOptions options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (List.of(args).contains("--help")) {
+      System.out.println(LoadOptions.USAGE);
+      return;
+    }
+    LoadOptions options;
+    try {
+      options = LoadOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(LoadOptions.USAGE);
+      System.exit(2);
+      return;
+    }
+    new ASTMLoadGenerator(options).run();
+    System.exit(0);
+  }
+
+  /**
+   * Sends messages from every analyzer for the duration of the run and prints the report.
+   *
+   * @throws IOException if the stub LIS or the bridge could not be started.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  public void run() throws IOException, InterruptedException {
+    StubLIS lis = new StubLIS(options.getLisPort(), options.getLisDelay());
+    lis.start();
+    InetSocketAddress bridge = options.getBridge() == null ? startBridge(lis.getUri()) : options.getBridge();
+
+    Map<MessageSize, List<ASTMRecord>> messageTemplates = new EnumMap<>(MessageSize.class);
+    for (MessageSize messageSize : options.getMix().keySet()) {
+      messageTemplates.put(messageSize, BenchmarkMessages.create(messageSize).getRecords());
+    }
+    LoadReport report = new LoadReport();
+    log.info(
+      "starting " +
+      options.getAnalyzers() +
+      " analyzers sending to " +
+      bridge +
+      " for " +
+      options.getWarmup() +
+      "s of warmup and " +
+      options.getDuration() +
+      "s of measurement"
+    );
+    long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(START_DELAY);
+    long measureStart = start + TimeUnit.SECONDS.toNanos(options.getWarmup());
+    long end = measureStart + TimeUnit.SECONDS.toNanos(options.getDuration());
+    lis.setMeasureStart(measureStart);
+    try (ExecutorService analyzers = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < options.getAnalyzers(); ++i) {
+        analyzers.execute(
+          new SimulatedAnalyzer(i, options, bridge, messageTemplates, report, start, measureStart, end)
+        );
+      }
+    }
+    long elapsed = System.nanoTime() - measureStart;
+    awaitForwarding(lis, report.getSentCount());
+    report.print(System.out, options, elapsed, lis);
+    lis.stop();
+  }
+
+  private InetSocketAddress startBridge(URI lisUri) throws IOException, InterruptedException {
+    int port = options.getBridgePort() == 0 ? findFreePort() : options.getBridgePort();
+    ASTMServlet servlet = new ASTMServlet(
+      new ASTMHandlerService(List.of(new DefaultForwardingASTMToHTTPHandler(lisUri)), ASTMHandlerService.Mode.ALL),
+      new DefaultASTMInterpreterFactory(),
+      port,
+      ASTMVersion.LIS01_A,
+      ConnectionThreadMode.VIRTUAL,
+      0
+    );
+    servlet.setForwardAsynchronously(options.isForwardAsync());
+    servlet.setMaxIdleCommunicators(options.getMaxIdleCommunicators());
+    Thread.ofPlatform().daemon().name("astm-load-bridge").start(servlet::listen);
+    InetSocketAddress bridge = new InetSocketAddress("localhost", port);
+    awaitListening(bridge);
+    return bridge;
+  }
+
+  private static int findFreePort() throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(0)) {
+      return serverSocket.getLocalPort();
+    }
+  }
+
+  // the bridge serves the probe connection like any other, and gives up on it when it is closed without a message
+  private static void awaitListening(InetSocketAddress bridge) throws IOException, InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(BRIDGE_START_TIMEOUT);
+    while (true) {
+      try {
+        new Socket(bridge.getAddress(), bridge.getPort()).close();
+        return;
+      } catch (IOException e) {
+        if (System.nanoTime() - deadline > 0) {
+          throw e;
+        }
+        Thread.sleep(50);
+      }
+    }
+  }
+
+  private static void awaitForwarding(StubLIS lis, long sentCount) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT);
+    while (lis.getDeliveryLatencies().getCount() < sentCount && System.nanoTime() - deadline < 0) {
+      Thread.sleep(100);
+    }
+  }
+}
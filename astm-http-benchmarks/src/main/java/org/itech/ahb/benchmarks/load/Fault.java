@@ -0,0 +1,27 @@
+package org.itech.ahb.benchmarks.load;
+
+/**
+ * A misbehaviour of an analyzer that the load generator can inject into a transmission.
+ */
+public enum Fault {
+  /**
+   * The establishment signal is garbled, so the bridge answers it with a NAK. The analyzer sends the message again on
+   * a new connection.
+   */
+  NAK,
+  /**
+   * The checksum of the first frame is wrong the first time the frame is sent, so the bridge NAKs the frame and the
+   * analyzer sends it again.
+   */
+  BAD_CHECKSUM,
+  /**
+   * The analyzer reads the acknowledgement of its establishment signal as an ENQ, so it sees line contention, gives
+   * up the line and sends the message again on a new connection.
+   */
+  LINE_CONTENTION,
+  /**
+   * The analyzer writes its transmission a few bytes at a time with a pause in between, so the connection is held
+   * open for longer.
+   */
+  SLOW_WRITER
+}
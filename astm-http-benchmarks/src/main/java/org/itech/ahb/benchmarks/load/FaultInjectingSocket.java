@@ -0,0 +1,183 @@
+package org.itech.ahb.benchmarks.load;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ACK;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ENQ;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETB;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETX;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * This class is a socket that wraps the connection of a simulated analyzer to the bridge, and injects a
+ * {@link Fault} into the bytes that are read and written, so that {@link
+ * org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator} can be used unchanged as the analyzer.
+ */
+class FaultInjectingSocket extends Socket {
+
+  private static final int SLOW_WRITER_CHUNK_SIZE = 16; // in bytes
+
+  private final Socket socket;
+  private final Fault fault; // null when no fault is injected
+  private final long slowWriterDelay; // in milliseconds
+  private final InputStream inputStream;
+  private final OutputStream outputStream;
+
+  /**
+   * Constructs a new FaultInjectingSocket.
+   *
+   * @param socket the connected socket to the bridge.
+   * @param fault the fault to inject, or null to pass everything through.
+   * @param slowWriterDelay the pause between chunks of bytes for {@link Fault#SLOW_WRITER}, in milliseconds.
+   * @throws IOException if the streams of the socket could not be opened.
+   */
+  FaultInjectingSocket(Socket socket, Fault fault, long slowWriterDelay) throws IOException {
+    this.socket = socket;
+    this.fault = fault;
+    this.slowWriterDelay = slowWriterDelay;
+    this.inputStream = fault == Fault.LINE_CONTENTION
+      ? new ContentiousInputStream(socket.getInputStream())
+      : socket.getInputStream();
+    this.outputStream = new FaultInjectingOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  @Override
+  public void setSoTimeout(int timeout) throws SocketException {
+    socket.setSoTimeout(timeout);
+  }
+
+  @Override
+  public int getSoTimeout() throws SocketException {
+    return socket.getSoTimeout();
+  }
+
+  @Override
+  public boolean isConnected() {
+    return socket.isConnected();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return socket.isClosed();
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  /**
+   * Reads the first character from the bridge, the acknowledgement of the establishment signal, as an ENQ.
+   */
+  private static class ContentiousInputStream extends FilterInputStream {
+
+    private boolean firstRead = true;
+
+    ContentiousInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (firstRead && b == ACK) {
+        b = ENQ;
+      }
+      firstRead = false;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (firstRead && read > 0 && b[off] == ACK) {
+        b[off] = ENQ;
+      }
+      firstRead = firstRead && read <= 0;
+      return read;
+    }
+  }
+
+  private class FaultInjectingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private boolean firstByte = true;
+    private boolean checksumCorrupted = false;
+    private int checksumDigitsToCorrupt = 0;
+    private int chunkBytes = 0;
+
+    FaultInjectingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (firstByte && fault == Fault.NAK && b == ENQ) {
+        b = '?';
+      } else if (checksumDigitsToCorrupt == 2) {
+        b = b == '0' ? '1' : '0';
+      }
+      if (checksumDigitsToCorrupt > 0) {
+        --checksumDigitsToCorrupt;
+      }
+      if (fault == Fault.BAD_CHECKSUM && !checksumCorrupted && (b == ETX || b == ETB)) {
+        checksumCorrupted = true;
+        checksumDigitsToCorrupt = 2;
+      }
+      firstByte = false;
+      out.write(b);
+      if (fault == Fault.SLOW_WRITER && ++chunkBytes == SLOW_WRITER_CHUNK_SIZE) {
+        chunkBytes = 0;
+        out.flush();
+        pause();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (fault == null) {
+        out.write(b, off, len);
+        firstByte = false;
+        return;
+      }
+      for (int i = off; i < off + len; ++i) {
+        write(b[i]);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+    private void pause() throws IOException {
+      try {
+        Thread.sleep(slowWriterDelay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while writing slowly");
+      }
+    }
+  }
+}
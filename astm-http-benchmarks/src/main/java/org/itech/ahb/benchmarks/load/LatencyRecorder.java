@@ -0,0 +1,52 @@
+package org.itech.ahb.benchmarks.load;
+
+import java.util.Arrays;
+
+/**
+ * This class records latencies from several threads and calculates their percentiles once recording has finished.
+ * Every latency is kept, so percentiles are exact.
+ */
+class LatencyRecorder {
+
+  private long[] latencies = new long[1024]; // in nanoseconds, guarded by this
+  private int count = 0; // guarded by this
+
+  /**
+   * Records a latency.
+   *
+   * @param latency the latency in nanoseconds.
+   */
+  synchronized void record(long latency) {
+    if (count == latencies.length) {
+      latencies = Arrays.copyOf(latencies, count * 2);
+    }
+    latencies[count++] = latency;
+  }
+
+  /**
+   * @return the number of latencies that were recorded.
+   */
+  synchronized int getCount() {
+    return count;
+  }
+
+  /**
+   * Calculates percentiles of the recorded latencies.
+   *
+   * @param percentiles the percentiles to calculate, between 0 and 100.
+   * @return the latency at each of the percentiles in nanoseconds, or all 0 if nothing was recorded.
+   */
+  synchronized long[] getPercentiles(double... percentiles) {
+    long[] values = new long[percentiles.length];
+    if (count == 0) {
+      return values;
+    }
+    long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+    for (int i = 0; i < percentiles.length; ++i) {
+      int rank = (int) Math.ceil(percentiles[i] / 100 * count);
+      values[i] = sorted[Math.min(count, Math.max(rank, 1)) - 1];
+    }
+    return values;
+  }
+}
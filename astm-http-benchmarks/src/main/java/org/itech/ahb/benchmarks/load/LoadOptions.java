@@ -0,0 +1,150 @@
+package org.itech.ahb.benchmarks.load;
+
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.Data;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.lib.astm.communication.ASTMCommunicatorPool;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+
+/**
+ * This class holds the options of a load generator run, parsed from command line arguments of the form
+ * {@code --name=value}.
+ */
+@Data
+public class LoadOptions {
+
+  static final String USAGE = String.join(
+    "\n",
+    "usage: java -cp benchmarks.jar org.itech.ahb.benchmarks.load.ASTMLoadGenerator [--name=value]...",
+    "  --analyzers=10                number of simulated analyzers, each with its own connections",
+    "  --rate=10                     messages per second sent by all analyzers together",
+    "  --duration=60                 how long to send messages for, in seconds",
+    "  --warmup=10                   how long to send messages for before the report starts, in seconds",
+    "  --bridge=host:port            bridge to send to. If not set, a bridge is started in this process",
+    "  --bridge-port=0               port of the bridge started in this process, 0 for any free port",
+    "  --forward-async=false         whether the bridge started in this process forwards asynchronously",
+    "  --max-idle-communicators=64   communicators the bridge started in this process keeps for reuse, 0 for none",
+    "  --lis-port=0                  port of the stub LIS, 0 for any free port",
+    "  --lis-delay=0                 how long the stub LIS takes to answer, in milliseconds",
+    "  --mix=SMALL:1                 weights of the message sizes sent, ex. SMALL:9,LARGE:1",
+    "  --versions=LIS01_A:1          weights of the ASTM versions of the analyzers, ex. LIS01_A:1,E1381_95:1",
+    "  --nak=0                       share of messages whose establishment signal is refused",
+    "  --bad-checksum=0              share of messages whose first frame has a bad checksum",
+    "  --line-contention=0           share of messages that run into line contention",
+    "  --slow-writer=0               share of messages that are written slowly",
+    "  --slow-writer-delay=2         pause between every 16 bytes a slow writer writes, in milliseconds",
+    "  --retry-delay=100             how long an analyzer waits before sending a message again, in milliseconds",
+    "  --max-attempts=6              how many times an analyzer tries to send a message before giving up"
+  );
+
+  private int analyzers = 10;
+  private double rate = 10; // in messages per second
+  private long duration = 60; // in seconds
+  private long warmup = 10; // in seconds
+  private InetSocketAddress bridge; // null to start a bridge in this process
+  private int bridgePort = 0;
+  private boolean forwardAsync = false;
+  private int maxIdleCommunicators = ASTMCommunicatorPool.DEFAULT_MAX_IDLE_COMMUNICATORS;
+  private int lisPort = 0;
+  private long lisDelay = 0; // in milliseconds
+  private Map<MessageSize, Integer> mix = new EnumMap<>(Map.of(MessageSize.SMALL, 1));
+  private Map<ASTMVersion, Integer> versions = new EnumMap<>(Map.of(ASTMVersion.LIS01_A, 1));
+  private Map<Fault, Double> faultRates = new EnumMap<>(Fault.class);
+  private long slowWriterDelay = 2; // in milliseconds
+  private long retryDelay = 100; // in milliseconds
+  private int maxAttempts = 6;
+
+  /**
+   * Parses the options from command line arguments.
+   *
+   * @param args the command line arguments.
+   * @return the options.
+   * @throws IllegalArgumentException if an argument is unknown or its value is invalid.
+   */
+  public static LoadOptions parse(String[] args) {
+    LoadOptions options = new LoadOptions();
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (!arg.startsWith("--") || separator < 0) {
+        throw new IllegalArgumentException("argument is not of the form --name=value: " + arg);
+      }
+      String name = arg.substring(2, separator);
+      String value = arg.substring(separator + 1);
+      try {
+        options.set(name, value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("invalid value for --" + name + ": " + value, e);
+      }
+    }
+    if (options.analyzers < 1 || options.rate <= 0 || options.duration < 1 || options.maxAttempts < 1) {
+      throw new IllegalArgumentException("analyzers, rate, duration and max-attempts must be positive");
+    }
+    if (options.warmup < 0) {
+      throw new IllegalArgumentException("warmup must not be negative");
+    }
+    double faultRate = options.faultRates.values().stream().mapToDouble(Double::doubleValue).sum();
+    if (faultRate > 1) {
+      throw new IllegalArgumentException("the shares of faulty messages add up to more than 1");
+    }
+    return options;
+  }
+
+  private void set(String name, String value) {
+    switch (name) {
+      case "analyzers" -> analyzers = Integer.parseInt(value);
+      case "rate" -> rate = Double.parseDouble(value);
+      case "duration" -> duration = Long.parseLong(value);
+      case "warmup" -> warmup = Long.parseLong(value);
+      case "bridge" -> bridge = parseAddress(value);
+      case "bridge-port" -> bridgePort = Integer.parseInt(value);
+      case "forward-async" -> forwardAsync = Boolean.parseBoolean(value);
+      case "max-idle-communicators" -> maxIdleCommunicators = Integer.parseInt(value);
+      case "lis-port" -> lisPort = Integer.parseInt(value);
+      case "lis-delay" -> lisDelay = Long.parseLong(value);
+      case "mix" -> mix = parseWeights(value, MessageSize.class);
+      case "versions" -> versions = parseWeights(value, ASTMVersion.class);
+      case "nak" -> faultRates.put(Fault.NAK, parseShare(value));
+      case "bad-checksum" -> faultRates.put(Fault.BAD_CHECKSUM, parseShare(value));
+      case "line-contention" -> faultRates.put(Fault.LINE_CONTENTION, parseShare(value));
+      case "slow-writer" -> faultRates.put(Fault.SLOW_WRITER, parseShare(value));
+      case "slow-writer-delay" -> slowWriterDelay = Long.parseLong(value);
+      case "retry-delay" -> retryDelay = Long.parseLong(value);
+      case "max-attempts" -> maxAttempts = Integer.parseInt(value);
+      default -> throw new IllegalArgumentException("unknown option: --" + name);
+    }
+  }
+
+  private static InetSocketAddress parseAddress(String value) {
+    int separator = value.lastIndexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException("bridge is not of the form host:port: " + value);
+    }
+    return new InetSocketAddress(value.substring(0, separator), Integer.parseInt(value.substring(separator + 1)));
+  }
+
+  private static double parseShare(String value) {
+    double share = Double.parseDouble(value);
+    if (share < 0 || share > 1) {
+      throw new IllegalArgumentException("share must be between 0 and 1: " + value);
+    }
+    return share;
+  }
+
+  private static <E extends Enum<E>> Map<E, Integer> parseWeights(String value, Class<E> type) {
+    Map<E, Integer> weights = new EnumMap<>(type);
+    for (String entry : value.split(",")) {
+      String[] parts = entry.split(":");
+      int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+      if (weight < 0) {
+        throw new IllegalArgumentException("weight must not be negative: " + entry);
+      }
+      weights.put(Enum.valueOf(type, parts[0].trim().toUpperCase()), weight);
+    }
+    if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+      throw new IllegalArgumentException("at least one weight must be positive: " + value);
+    }
+    return weights;
+  }
+}
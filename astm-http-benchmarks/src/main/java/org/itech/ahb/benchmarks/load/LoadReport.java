@@ -0,0 +1,142 @@
+package org.itech.ahb.benchmarks.load;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class collects what happened during a load generator run and prints the summary at the end of it.
+ */
+class LoadReport {
+
+  /**
+   * The outcome of an attempt to send a message.
+   */
+  enum Outcome {
+    /**
+     * The message was sent and acknowledged.
+     */
+    SENT,
+    /**
+     * The bridge refused the establishment signal.
+     */
+    REJECTED,
+    /**
+     * The analyzer detected line contention.
+     */
+    LINE_CONTENTION,
+    /**
+     * The exchange failed, ex. a frame was not acknowledged or the connection was lost.
+     */
+    ERROR
+  }
+
+  private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 100 };
+
+  private final Map<Outcome, AtomicLong> attempts = new EnumMap<>(Outcome.class);
+  private final Map<Fault, AtomicLong> injectedFaults = new EnumMap<>(Fault.class);
+  private final AtomicLong failedMessages = new AtomicLong(0);
+  private final AtomicLong sentBytes = new AtomicLong(0);
+  private final LatencyRecorder exchangeLatencies = new LatencyRecorder();
+
+  LoadReport() {
+    for (Outcome outcome : Outcome.values()) {
+      attempts.put(outcome, new AtomicLong(0));
+    }
+    for (Fault fault : Fault.values()) {
+      injectedFaults.put(fault, new AtomicLong(0));
+    }
+  }
+
+  /**
+   * Records an attempt to send a message.
+   *
+   * @param outcome the outcome of the attempt.
+   * @param fault the fault injected into the attempt, or null.
+   */
+  void recordAttempt(Outcome outcome, Fault fault) {
+    attempts.get(outcome).incrementAndGet();
+    if (fault != null) {
+      injectedFaults.get(fault).incrementAndGet();
+    }
+  }
+
+  /**
+   * Records that a message was sent.
+   *
+   * @param bytes the size of the message in bytes.
+   * @param latency the time from the message being due to be sent until it was acknowledged, in nanoseconds.
+   */
+  void recordSent(int bytes, long latency) {
+    sentBytes.addAndGet(bytes);
+    exchangeLatencies.record(latency);
+  }
+
+  /**
+   * Records that a message could not be sent within the maximum number of attempts.
+   */
+  void recordFailed() {
+    failedMessages.incrementAndGet();
+  }
+
+  /**
+   * @return the number of messages that were sent.
+   */
+  long getSentCount() {
+    return exchangeLatencies.getCount();
+  }
+
+  /**
+   * Prints the summary of the run.
+   *
+   * @param out the stream to print to.
+   * @param options the options of the run.
+   * @param elapsed how long messages were sent for, in nanoseconds.
+   * @param lis the stub LIS the messages were forwarded to.
+   */
+  void print(PrintStream out, LoadOptions options, long elapsed, StubLIS lis) {
+    double seconds = elapsed / 1e9;
+    long sent = getSentCount();
+    out.println();
+    out.println("=== ASTM load generator report ===");
+    out.printf(
+      "analyzers: %d, target rate: %.1f messages/s, mix: %s, versions: %s%n",
+      options.getAnalyzers(),
+      options.getRate(),
+      options.getMix(),
+      options.getVersions()
+    );
+    out.printf("duration: %.1f s%n", seconds);
+    out.printf(
+      "messages: %d sent, %d failed, %.1f messages/s, %.2f MB/s%n",
+      sent,
+      failedMessages.get(),
+      sent / seconds,
+      sentBytes.get() / seconds / (1024 * 1024)
+    );
+    out.println("attempts: " + attempts);
+    out.println("injected faults: " + injectedFaults);
+    out.println("exchange latency (ms), due to acknowledged: " + formatPercentiles(exchangeLatencies));
+    out.println("delivery latency (ms), due to received by LIS: " + formatPercentiles(lis.getDeliveryLatencies()));
+    out.println("LIS requests, including warmup: " + lis.getRequestCount());
+  }
+
+  private static String formatPercentiles(LatencyRecorder latencies) {
+    long[] values = latencies.getPercentiles(PERCENTILES);
+    StringBuilder formatted = new StringBuilder();
+    for (int i = 0; i < PERCENTILES.length; ++i) {
+      formatted
+        .append(PERCENTILES[i] == 100 ? "max" : "p" + formatPercentile(PERCENTILES[i]))
+        .append("=")
+        .append(String.format("%.2f", values[i] / (double) TimeUnit.MILLISECONDS.toNanos(1)))
+        .append(i < PERCENTILES.length - 1 ? " " : "");
+    }
+    return formatted.toString();
+  }
+
+  private static String formatPercentile(double percentile) {
+    return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+  }
+}
@@ -0,0 +1,173 @@
+package org.itech.ahb.benchmarks.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.benchmarks.BenchmarkMessages;
+import org.itech.ahb.benchmarks.BenchmarkMessages.MessageSize;
+import org.itech.ahb.benchmarks.load.LoadReport.Outcome;
+import org.itech.ahb.lib.astm.communication.Communicator.SendResult;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.DefaultASTMMessage;
+import org.itech.ahb.lib.astm.concept.DefaultASTMRecord;
+import org.itech.ahb.lib.astm.exception.ASTMCommunicationException;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+
+/**
+ * This class is an analyzer that sends messages to the bridge at a fixed rate, one message per connection, using
+ * {@link GeneralASTMCommunicator} in send mode.
+ *
+ * Messages are sent on a fixed schedule whether or not the previous message took longer than planned, and latency
+ * is measured from when a message was due rather than from when it was sent, so a slow bridge shows up as latency
+ * instead of as a lower rate. Messages that are due before the warmup has finished are not reported, as the JVMs
+ * of the bridge and the load generator are still compiling the hot code.
+ */
+@Slf4j
+class SimulatedAnalyzer implements Runnable {
+
+  private final ASTMInterpreterFactory interpreterFactory = new DefaultASTMInterpreterFactory();
+  private final LoadOptions options;
+  private final InetSocketAddress bridge;
+  private final Map<MessageSize, List<ASTMRecord>> messageTemplates;
+  private final LoadReport report;
+  private final LoadReport warmupReport = new LoadReport(); // discarded
+  private final SplittableRandom random;
+  private final ASTMVersion astmVersion;
+  private final long start; // in nanoseconds
+  private final long measureStart; // in nanoseconds
+  private final long end; // in nanoseconds
+
+  /**
+   * Constructs a new SimulatedAnalyzer.
+   *
+   * @param index the index of this analyzer in the fleet, which seeds its choices so runs are repeatable.
+   * @param options the options of the run.
+   * @param bridge the address of the bridge.
+   * @param messageTemplates the records of a message of each size.
+   * @param report the report to record the attempts in.
+   * @param start when to start sending, as {@link System#nanoTime()}.
+   * @param measureStart when the warmup finishes, as {@link System#nanoTime()}.
+   * @param end when to stop sending, as {@link System#nanoTime()}.
+   */
+  SimulatedAnalyzer(
+    int index,
+    LoadOptions options,
+    InetSocketAddress bridge,
+    Map<MessageSize, List<ASTMRecord>> messageTemplates,
+    LoadReport report,
+    long start,
+    long measureStart,
+    long end
+  ) {
+    this.options = options;
+    this.bridge = bridge;
+    this.messageTemplates = messageTemplates;
+    this.report = report;
+    this.random = new SplittableRandom(index);
+    this.astmVersion = pick(options.getVersions());
+    this.start = start;
+    this.measureStart = measureStart;
+    this.end = end;
+  }
+
+  @Override
+  public void run() {
+    long interval = (long) (TimeUnit.SECONDS.toNanos(1) * options.getAnalyzers() / options.getRate());
+    long due = start + random.nextLong(interval); // spread the analyzers over the first interval
+    while (due - end < 0 && !Thread.currentThread().isInterrupted()) {
+      sleepUntil(due);
+      send(due);
+      due += interval;
+    }
+  }
+
+  private void send(long due) {
+    LoadReport report = due - measureStart < 0 ? warmupReport : this.report;
+    MessageSize messageSize = pick(options.getMix());
+    ASTMMessage message = createMessage(messageSize, due);
+    Fault fault = pickFault();
+    for (int attempt = 1; attempt <= options.getMaxAttempts(); ++attempt) {
+      Outcome outcome = exchange(message, attempt == 1 ? fault : null);
+      report.recordAttempt(outcome, attempt == 1 ? fault : null);
+      if (outcome == Outcome.SENT) {
+        report.recordSent(message.getMessageByteLength(), System.nanoTime() - due);
+        return;
+      }
+      sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getRetryDelay()));
+    }
+    report.recordFailed();
+  }
+
+  private Outcome exchange(ASTMMessage message, Fault fault) {
+    try (Socket socket = new Socket(bridge.getAddress(), bridge.getPort())) {
+      // otherwise the end of every large frame waits for the delayed TCP acknowledgement of the bridge
+      socket.setTcpNoDelay(true);
+      GeneralASTMCommunicator communicator = new GeneralASTMCommunicator(
+        interpreterFactory,
+        new FaultInjectingSocket(socket, fault, options.getSlowWriterDelay()),
+        astmVersion
+      );
+      SendResult result = communicator.sendProtocol(message);
+      if (result.isLineContention()) {
+        return Outcome.LINE_CONTENTION;
+      }
+      return result.isRejected() ? Outcome.REJECTED : Outcome.SENT;
+    } catch (ASTMCommunicationException | IOException e) {
+      log.debug("exchange with bridge failed", e);
+      return Outcome.ERROR;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Outcome.ERROR;
+    }
+  }
+
+  // the send time is put in the patient ID so the stub LIS can measure how long the message took to get there
+  private ASTMMessage createMessage(MessageSize messageSize, long due) {
+    List<ASTMRecord> records = new ArrayList<>(messageTemplates.get(messageSize));
+    records.set(
+      BenchmarkMessages.PATIENT_RECORD_INDEX,
+      new DefaultASTMRecord(BenchmarkMessages.createPatientRecord(StubLIS.PATIENT_ID_PREFIX + due))
+    );
+    return new DefaultASTMMessage(records);
+  }
+
+  private Fault pickFault() {
+    double roll = random.nextDouble();
+    for (Map.Entry<Fault, Double> faultRate : options.getFaultRates().entrySet()) {
+      roll -= faultRate.getValue();
+      if (roll < 0) {
+        return faultRate.getKey();
+      }
+    }
+    return null;
+  }
+
+  private <E> E pick(Map<E, Integer> weights) {
+    int roll = random.nextInt(weights.values().stream().mapToInt(Integer::intValue).sum());
+    for (Map.Entry<E, Integer> weight : weights.entrySet()) {
+      roll -= weight.getValue();
+      if (roll < 0) {
+        return weight.getKey();
+      }
+    }
+    throw new IllegalStateException("weights must add up to more than 0");
+  }
+
+  private static void sleepUntil(long deadline) {
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.itech.ahb.benchmarks.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is an HTTP server that stands in for the LIS the bridge forwards messages to. It answers every request
+ * with a 200 after an optional delay, and records how long each message took to get from the analyzer to the LIS
+ * using the send time the analyzer put in the patient ID.
+ */
+@Slf4j
+class StubLIS {
+
+  static final String PATIENT_ID_PREFIX = "LOAD";
+  private static final String PATIENT_RECORD_START = "P|1||" + PATIENT_ID_PREFIX;
+
+  private final HttpServer server;
+  private final long responseDelay; // in milliseconds
+  private final LatencyRecorder deliveryLatencies = new LatencyRecorder();
+  private final AtomicLong requestCount = new AtomicLong(0);
+  private volatile long measureStart = Long.MIN_VALUE; // in nanoseconds
+
+  /**
+   * Constructs a new StubLIS.
+   *
+   * @param port the port to listen on, or 0 for any free port.
+   * @param responseDelay how long to wait before answering each request, in milliseconds.
+   * @throws IOException if the server could not be started.
+   */
+  StubLIS(int port, long responseDelay) throws IOException {
+    this.responseDelay = responseDelay;
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/", this::handle);
+  }
+
+  /**
+   * Starts answering requests.
+   */
+  void start() {
+    server.start();
+    log.info("stub LIS is listening at " + getUri());
+  }
+
+  /**
+   * Stops answering requests.
+   */
+  void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * @return the URI the bridge should forward messages to.
+   */
+  URI getUri() {
+    return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+  }
+
+  /**
+   * Sets when the warmup of the run finishes. The latency of messages that were due to be sent before then is not
+   * recorded.
+   *
+   * @param measureStart when the warmup finishes, as {@link System#nanoTime()}.
+   */
+  void setMeasureStart(long measureStart) {
+    this.measureStart = measureStart;
+  }
+
+  /**
+   * @return the number of requests that were received, including during the warmup.
+   */
+  long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * @return the time from a message being due to be sent by an analyzer until it was received by this LIS.
+   */
+  LatencyRecorder getDeliveryLatencies() {
+    return deliveryLatencies;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      long sendTime = readSendTime(exchange.getRequestBody());
+      long received = System.nanoTime();
+      requestCount.incrementAndGet();
+      if (sendTime != 0 && sendTime - measureStart >= 0) {
+        deliveryLatencies.record(received - sendTime);
+      }
+      if (responseDelay > 0) {
+        Thread.sleep(responseDelay);
+      }
+      exchange.sendResponseHeaders(200, -1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // the patient record is near the start of the message, so only the start of the body is parsed
+  private static long readSendTime(InputStream body) throws IOException {
+    String start = new String(body.readNBytes(512), StandardCharsets.UTF_8);
+    body.transferTo(OutputStream.nullOutputStream());
+    int idStart = start.indexOf(PATIENT_RECORD_START);
+    if (idStart < 0) {
+      return 0;
+    }
+    idStart += PATIENT_RECORD_START.length();
+    int idEnd = start.indexOf('|', idStart);
+    try {
+      return idEnd < 0 ? 0 : Long.parseLong(start.substring(idStart, idEnd));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
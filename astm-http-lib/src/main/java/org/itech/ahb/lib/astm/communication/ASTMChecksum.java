@@ -0,0 +1,87 @@
+package org.itech.ahb.lib.astm.communication;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class accumulates the checksum of an ASTM frame as the bytes of the frame are read or written.
+ * The checksum is the sum of the bytes from the frame number up to and including the frame terminator (ETB/ETX),
+ * modulo 256, and is transmitted as two upper case hexadecimal characters.
+ *
+ * An instance can be reused for every frame by calling {@link #reset()}.
+ */
+public class ASTMChecksum {
+
+  private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+  private int sum = 0;
+
+  /**
+   * Resets the checksum so it can be used for a new frame.
+   */
+  public void reset() {
+    sum = 0;
+  }
+
+  /**
+   * Adds a byte to the checksum.
+   *
+   * @param b the byte to add.
+   */
+  public void update(byte b) {
+    sum += b & 0xFF;
+  }
+
+  /**
+   * Adds a range of bytes to the checksum.
+   *
+   * @param bytes the bytes to add.
+   * @param offset the index of the first byte to add.
+   * @param length the number of bytes to add.
+   */
+  public void update(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      sum += bytes[i] & 0xFF;
+    }
+  }
+
+  /**
+   * @return the value of the checksum, between 0 and 255.
+   */
+  public int getValue() {
+    return sum & 0xFF;
+  }
+
+  /**
+   * @return the first hexadecimal character of the checksum as it is transmitted.
+   */
+  public byte getHighDigit() {
+    return HEX_DIGITS[(sum >> 4) & 0x0F];
+  }
+
+  /**
+   * @return the second hexadecimal character of the checksum as it is transmitted.
+   */
+  public byte getLowDigit() {
+    return HEX_DIGITS[sum & 0x0F];
+  }
+
+  /**
+   * Checks if the checksum characters that were received match the accumulated checksum.
+   *
+   * @param highDigit the first checksum character that was received.
+   * @param lowDigit the second checksum character that was received.
+   * @return true if the received checksum matches.
+   */
+  public boolean matches(byte highDigit, byte lowDigit) {
+    return highDigit == getHighDigit() && lowDigit == getLowDigit();
+  }
+
+  /**
+   * @return the checksum as the two hexadecimal characters it is transmitted as.
+   */
+  @Override
+  public String toString() {
+    return new String(new byte[] { getHighDigit(), getLowDigit() }, StandardCharsets.US_ASCII);
+  }
+}
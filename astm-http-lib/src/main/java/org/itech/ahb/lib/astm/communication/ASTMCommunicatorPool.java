@@ -0,0 +1,96 @@
+package org.itech.ahb.lib.astm.communication;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+
+/**
+ * This class keeps the communicators of closed connections so they can be reset and used for the next accepted
+ * connection, instead of allocating new read, write and text buffers for every connection. At hundreds of short
+ * lived connections a minute, this removes most of the garbage created per connection.
+ *
+ * A communicator must only be released once the exchange on its connection has finished, and must not be used after
+ * it is released. A pool that keeps no idle communicators creates a new communicator for every connection.
+ */
+@Slf4j
+public class ASTMCommunicatorPool {
+
+  public static final int DEFAULT_MAX_IDLE_COMMUNICATORS = 64;
+
+  private final ASTMInterpreterFactory astmInterpreterFactory;
+  private final ASTMVersion astmVersion;
+  private final int maxIdleCommunicators;
+  private final Deque<GeneralASTMCommunicator> idleCommunicators = new ArrayDeque<>(); // guarded by this
+
+  /**
+   * Constructs a new ASTMCommunicatorPool.
+   *
+   * @param astmInterpreterFactory the interpreter factory for new communicators.
+   * @param astmVersion the ASTM version that communicators from this pool communicate over.
+   * @param maxIdleCommunicators the maximum number of communicators to keep for reuse.
+   */
+  public ASTMCommunicatorPool(
+    ASTMInterpreterFactory astmInterpreterFactory,
+    ASTMVersion astmVersion,
+    int maxIdleCommunicators
+  ) {
+    this.astmInterpreterFactory = astmInterpreterFactory;
+    this.astmVersion = astmVersion;
+    this.maxIdleCommunicators = maxIdleCommunicators;
+  }
+
+  /**
+   * Gets a communicator for a connection, reusing an idle communicator if there is one.
+   *
+   * @param socket the socket of the connection.
+   * @return the communicator.
+   * @throws IOException if the streams of the socket could not be opened.
+   */
+  public GeneralASTMCommunicator acquire(Socket socket) throws IOException {
+    GeneralASTMCommunicator communicator;
+    synchronized (this) {
+      communicator = idleCommunicators.pollFirst();
+    }
+    if (communicator == null) {
+      return new GeneralASTMCommunicator(astmInterpreterFactory, socket, astmVersion);
+    }
+    try {
+      communicator.reset(socket, astmVersion);
+    } catch (IOException e) {
+      release(communicator);
+      throw e;
+    }
+    return communicator;
+  }
+
+  /**
+   * Returns the communicator of a connection whose exchange has finished, so it can be reused for another connection.
+   * The communicator lets go of its connection straight away.
+   *
+   * @param communicator the communicator.
+   */
+  public void release(GeneralASTMCommunicator communicator) {
+    try {
+      communicator.reset(null, astmVersion);
+    } catch (IOException e) {
+      log.warn("could not reset communicator, it will not be reused", e);
+      return;
+    }
+    synchronized (this) {
+      if (idleCommunicators.size() < maxIdleCommunicators) {
+        idleCommunicators.addFirst(communicator);
+      }
+    }
+  }
+
+  /**
+   * @return the number of communicators that are kept for reuse.
+   */
+  public synchronized int getIdleCount() {
+    return idleCommunicators.size();
+  }
+}
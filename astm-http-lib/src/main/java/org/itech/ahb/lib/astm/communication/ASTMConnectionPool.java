@@ -0,0 +1,278 @@
+package org.itech.ahb.lib.astm.communication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+
+/**
+ * This class keeps connections to ASTM servers open between exchanges, so messages sent to the same server in quick
+ * succession only pay for the establishment phase instead of a new TCP connection and communicator each.
+ * Idle connections are kept per server address, port and ASTM version. A connection is checked before it is reused,
+ * and is closed instead of reused if the server closed it, sent something unexpected, or it was idle for too long.
+ * Connections that were idle for too long are also closed periodically, so they are not held open while nothing is
+ * sent to their server.
+ *
+ * A pool that keeps no idle connections opens a new connection for every exchange and closes it afterwards.
+ */
+@Slf4j
+public class ASTMConnectionPool implements Closeable {
+
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_KEY = 1;
+  public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000; // in milliseconds
+  private static final long MIN_EVICTION_INTERVAL = 1000; // in milliseconds
+
+  private final ASTMInterpreterFactory astmInterpreterFactory;
+  private final int maxIdleConnectionsPerKey;
+  private final long idleTimeout;
+  private final Map<ConnectionKey, Deque<PooledASTMConnection>> idleConnections = new HashMap<>(); // guarded by this
+  private boolean closed = false; // guarded by this
+  private ASTMMetrics metrics = ASTMMetrics.global();
+  private ScheduledExecutorService evictor; // guarded by this, started when the first idle connection is kept
+
+  /**
+   * Constructs a new ASTMConnectionPool. Once a connection is kept for reuse, a daemon thread closes connections that
+   * have been idle for too long, until the pool is closed.
+   *
+   * @param astmInterpreterFactory the interpreter factory for the communicators of new connections.
+   * @param maxIdleConnectionsPerKey the maximum number of idle connections to keep for each server. 0 means
+   * connections are never reused.
+   * @param idleTimeout how long in milliseconds a connection may be idle before it is closed.
+   */
+  public ASTMConnectionPool(
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int maxIdleConnectionsPerKey,
+    long idleTimeout
+  ) {
+    this.astmInterpreterFactory = astmInterpreterFactory;
+    this.maxIdleConnectionsPerKey = maxIdleConnectionsPerKey;
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Sets the metrics that the exchanges over new connections are recorded in.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Gets a connection to the server, reusing an idle connection if a healthy one is available. The connection must
+   * be handed back with {@link #release(PooledASTMConnection)} or {@link #invalidate(PooledASTMConnection)} once the
+   * exchange is done.
+   *
+   * @param host the address of the server.
+   * @param port the port of the server.
+   * @param astmVersion the ASTM version to communicate over.
+   * @return the connection.
+   * @throws IOException if a new connection could not be opened.
+   */
+  public PooledASTMConnection borrow(String host, int port, ASTMVersion astmVersion) throws IOException {
+    return borrow(new ConnectionKey(host, port, astmVersion));
+  }
+
+  /**
+   * Gets a connection to the server, reusing an idle connection if a healthy one is available. The connection must
+   * be handed back with {@link #release(PooledASTMConnection)} or {@link #invalidate(PooledASTMConnection)} once the
+   * exchange is done.
+   *
+   * @param key the server to connect to.
+   * @return the connection.
+   * @throws IOException if a new connection could not be opened.
+   */
+  public PooledASTMConnection borrow(ConnectionKey key) throws IOException {
+    String host = key.getHost();
+    int port = key.getPort();
+    List<PooledASTMConnection> expiredConnections = new ArrayList<>();
+    PooledASTMConnection connection;
+    synchronized (this) {
+      removeExpired(expiredConnections);
+      Deque<PooledASTMConnection> connections = idleConnections.get(key);
+      connection = connections == null ? null : connections.pollLast();
+    }
+    expiredConnections.forEach(this::closeConnection);
+
+    while (connection != null) {
+      if (connection.getCommunicator().isIdle()) {
+        log.debug("reusing connection to astm server at " + host + ":" + port);
+        return connection;
+      }
+      log.debug("idle connection to astm server at " + host + ":" + port + " is no longer usable, closing it");
+      closeConnection(connection);
+      synchronized (this) {
+        Deque<PooledASTMConnection> connections = idleConnections.get(key);
+        connection = connections == null ? null : connections.pollLast();
+      }
+    }
+
+    log.debug("connecting to astm server at " + host + ":" + port);
+    Socket socket = new Socket(host, port);
+    log.debug("connected to astm server at " + host + ":" + port);
+    try {
+      // each step of the exchange waits for a small reply, so don't hold small writes back waiting for more data
+      socket.setTcpNoDelay(true);
+      GeneralASTMCommunicator communicator = new GeneralASTMCommunicator(
+        astmInterpreterFactory,
+        socket,
+        key.getAstmVersion()
+      );
+      communicator.setMetrics(metrics);
+      return new PooledASTMConnection(key, socket, communicator);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Hands back a connection after a completed exchange, so it can be reused. The connection is closed instead if the
+   * pool already holds the maximum number of idle connections for the server.
+   *
+   * @param connection the connection.
+   */
+  public void release(PooledASTMConnection connection) {
+    boolean kept = false;
+    synchronized (this) {
+      if (!closed && !connection.getSocket().isClosed()) {
+        Deque<PooledASTMConnection> connections = idleConnections.computeIfAbsent(
+          connection.getKey(),
+          k -> new ArrayDeque<>()
+        );
+        if (connections.size() < maxIdleConnectionsPerKey) {
+          connection.lastUsed = System.currentTimeMillis();
+          connections.addLast(connection);
+          kept = true;
+          if (evictor == null) {
+            startEvictor();
+          }
+        }
+      }
+    }
+    if (!kept) {
+      closeConnection(connection);
+    }
+  }
+
+  /**
+   * Hands back a connection that had an error, so it is closed instead of reused.
+   *
+   * @param connection the connection.
+   */
+  public void invalidate(PooledASTMConnection connection) {
+    closeConnection(connection);
+  }
+
+  /**
+   * Closes every connection that has been idle for longer than the idle timeout. This is called periodically while
+   * the pool is open.
+   */
+  public void evictExpired() {
+    List<PooledASTMConnection> expiredConnections = new ArrayList<>();
+    synchronized (this) {
+      removeExpired(expiredConnections);
+    }
+    if (!expiredConnections.isEmpty()) {
+      log.debug("closing " + expiredConnections.size() + " connections to astm servers that were idle for too long");
+      expiredConnections.forEach(this::closeConnection);
+    }
+  }
+
+  /**
+   * Closes every idle connection. Connections that are handed back afterwards are closed.
+   */
+  @Override
+  public void close() {
+    List<PooledASTMConnection> connections = new ArrayList<>();
+    synchronized (this) {
+      closed = true;
+      if (evictor != null) {
+        evictor.shutdownNow();
+      }
+      idleConnections.values().forEach(connections::addAll);
+      idleConnections.clear();
+    }
+    connections.forEach(this::closeConnection);
+  }
+
+  private void startEvictor() {
+    long evictionInterval = Math.max(idleTimeout / 2, MIN_EVICTION_INTERVAL);
+    evictor = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("astm-connection-evictor-", 0).factory()
+    );
+    evictor.scheduleWithFixedDelay(this::evictExpired, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+  }
+
+  private void removeExpired(List<PooledASTMConnection> expiredConnections) {
+    long now = System.currentTimeMillis();
+    Iterator<Deque<PooledASTMConnection>> iterator = idleConnections.values().iterator();
+    while (iterator.hasNext()) {
+      Deque<PooledASTMConnection> connections = iterator.next();
+      // the oldest connections are at the front
+      while (!connections.isEmpty() && now - connections.peekFirst().lastUsed > idleTimeout) {
+        expiredConnections.add(connections.pollFirst());
+      }
+      if (connections.isEmpty()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private void closeConnection(PooledASTMConnection connection) {
+    ConnectionKey key = connection.getKey();
+    try {
+      connection.getSocket().close();
+      log.debug("successfully closed socket with astm server at " + key.getHost() + ":" + key.getPort());
+    } catch (IOException e) {
+      log.error("error occurred closing socket with astm server at " + key.getHost() + ":" + key.getPort(), e);
+    }
+  }
+
+  /**
+   * Object for identifying the server a connection is to.
+   */
+  @Data
+  public static class ConnectionKey {
+
+    private final String host;
+    private final int port;
+    private final ASTMVersion astmVersion;
+  }
+
+  /**
+   * Object for holding a connection to an ASTM server and the communicator that uses it.
+   */
+  @Getter
+  public static class PooledASTMConnection {
+
+    private final ConnectionKey key;
+    private final Socket socket;
+    private final GeneralASTMCommunicator communicator;
+
+    @Getter(AccessLevel.NONE)
+    private long lastUsed; // guarded by the pool, only set while the connection is idle
+
+    private PooledASTMConnection(ConnectionKey key, Socket socket, GeneralASTMCommunicator communicator) {
+      this.key = key;
+      this.socket = socket;
+      this.communicator = communicator;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.itech.ahb.lib.astm.communication;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class holds the control characters used by the ASTM transmission protocols (such as LIS01-A and E1381-95).
+ */
+public final class ASTMControlCharacters {
+
+  public static final char CR = 0x0D;
+  public static final char LF = 0x0A;
+  public static final char SOH = 0x01;
+  public static final char STX = 0x02;
+  public static final char ETX = 0x03;
+  public static final char EOT = 0x04;
+  public static final char ENQ = 0x05;
+  public static final char ACK = 0x06;
+  public static final char DLE = 0x10;
+  public static final char DC1 = 0x11;
+  public static final char DC2 = 0x12;
+  public static final char DC3 = 0x13;
+  public static final char DC4 = 0x14;
+  public static final char NAK = 0x15;
+  public static final char SYN = 0x16;
+  public static final char ETB = 0x17;
+
+  /**
+   * Characters that are not allowed in the data content of a frame.
+   */
+  public static final List<Character> RESTRICTED_CHARACTERS = Arrays.asList(
+    SOH,
+    STX,
+    ETX,
+    EOT,
+    ENQ,
+    ACK,
+    DLE,
+    NAK,
+    SYN,
+    ETB,
+    LF,
+    DC1,
+    DC2,
+    DC3,
+    DC4
+  );
+
+  private static final boolean[] RESTRICTED_BYTES = new boolean[256];
+
+  static {
+    for (char restrictedCharacter : RESTRICTED_CHARACTERS) {
+      RESTRICTED_BYTES[restrictedCharacter] = true;
+    }
+  }
+
+  private ASTMControlCharacters() {}
+
+  /**
+   * Checks if a byte is a restricted character via a lookup table.
+   *
+   * @param b the byte to check.
+   * @return true if the byte is one of the restricted characters.
+   */
+  public static boolean isRestricted(byte b) {
+    return RESTRICTED_BYTES[b & 0xFF];
+  }
+}
@@ -0,0 +1,312 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.CR;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETB;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETX;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.LF;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator.FrameError;
+
+/**
+ * This class reads the bytes sent over an ASTM transmission protocol from an input stream. It owns the buffering
+ * of the stream, so frames can be decoded in bulk: the text of a frame is scanned for its terminator directly in
+ * the read buffer, checking for restricted characters and summing the checksum in the same pass, before being
+ * copied to a reusable text buffer.
+ *
+ * Reads are bounded by a deadline rather than a fixed timeout per read, so a sender that trickles bytes in cannot
+ * hold a frame or message open for longer than intended. The deadline is enforced through the socket's read
+ * timeout, which is recalculated whenever the read buffer needs to be refilled.
+ *
+ * A decoder can be {@link #reset(Socket) reset} to read from another socket, so its buffers can be reused for many
+ * connections. This class is not thread safe, and should be used by a single communicator.
+ */
+public class ASTMFrameDecoder {
+
+  private static final int READ_BUFFER_SIZE = 8192;
+  private static final int INITIAL_TEXT_BUFFER_SIZE = 256;
+  private static final int MAX_RETAINED_TEXT_BUFFER_SIZE = 65536; // in bytes
+
+  private Socket socket;
+  private InputStream inputStream;
+  private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+  private int readPosition = 0;
+  private int readLimit = 0;
+  private byte[] textBuffer = new byte[INITIAL_TEXT_BUFFER_SIZE];
+  private int textLength = 0;
+  private final ASTMChecksum checksum = new ASTMChecksum();
+  private long deadline; // as System.nanoTime(), only used if hasDeadline
+  private boolean hasDeadline = false;
+
+  /**
+   * Constructs a new ASTMFrameDecoder.
+   *
+   * @param socket the socket to read from.
+   * @throws IOException if the input stream of the socket could not be opened.
+   */
+  public ASTMFrameDecoder(Socket socket) throws IOException {
+    reset(socket);
+  }
+
+  /**
+   * Prepares this decoder to read from another socket. Anything that was buffered from the previous socket is
+   * discarded, the deadline is cleared, and a text buffer that grew for an unusually large frame or record is released.
+   *
+   * @param socket the socket to read from, or null to only let go of the previous socket.
+   * @throws IOException if the input stream of the socket could not be opened.
+   */
+  public final void reset(Socket socket) throws IOException {
+    this.socket = socket;
+    this.inputStream = socket == null ? null : socket.getInputStream();
+    readPosition = 0;
+    readLimit = 0;
+    textLength = 0;
+    hasDeadline = false;
+    if (textBuffer.length > MAX_RETAINED_TEXT_BUFFER_SIZE) {
+      textBuffer = new byte[INITIAL_TEXT_BUFFER_SIZE];
+    }
+  }
+
+  /**
+   * Sets the point in time by which all subsequent reads must complete, until the deadline is changed or cleared.
+   * Any read that cannot complete before the deadline throws a {@link SocketTimeoutException}.
+   *
+   * @param timeout the amount of time from now that reads must complete within.
+   * @param unit the unit of the timeout.
+   */
+  public void setDeadline(long timeout, TimeUnit unit) {
+    setDeadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  /**
+   * Sets the point in time by which all subsequent reads must complete, until the deadline is changed or cleared.
+   * Any read that cannot complete before the deadline throws a {@link SocketTimeoutException}.
+   *
+   * @param deadline the deadline, in the same time base as {@link System#nanoTime()}.
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+    this.hasDeadline = true;
+  }
+
+  /**
+   * Removes the deadline, so reads block until data is available.
+   */
+  public void clearDeadline() {
+    this.hasDeadline = false;
+  }
+
+  /**
+   * Checks whether the connection is idle, ie. the other end has not sent anything that has not been read and has not
+   * closed the connection. This waits at most a millisecond for anything to arrive, and then restores the read
+   * timeout of the socket.
+   *
+   * @return true if the connection is idle.
+   */
+  public boolean isIdle() {
+    if (readPosition < readLimit) {
+      return false;
+    }
+    try {
+      int soTimeout = socket.getSoTimeout();
+      socket.setSoTimeout(1);
+      try {
+        int read = inputStream.read(readBuffer, 0, readBuffer.length);
+        if (read > 0) {
+          readPosition = 0;
+          readLimit = read;
+        }
+        return false;
+      } catch (SocketTimeoutException e) {
+        return true;
+      } finally {
+        socket.setSoTimeout(soTimeout);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads a single byte, such as a control character.
+   *
+   * @return the byte that was read.
+   * @throws EOFException if the end of the stream was reached.
+   * @throws SocketTimeoutException if the deadline passed before the byte could be read.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  public byte read() throws IOException, InterruptedException {
+    if (readPosition == readLimit) {
+      fill();
+    }
+    return readBuffer[readPosition++];
+  }
+
+  /**
+   * Reads the rest of a frame after the start of frame character (STX) has been read.
+   *
+   * @param expectedFrameNumber the frame number that the frame is expected to have.
+   * @param maxTextSize the maximum number of bytes of text the frame may have.
+   * @return the decoded frame.
+   * @throws EOFException if the end of the stream was reached.
+   * @throws SocketTimeoutException if the deadline passed before the whole frame could be read.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  public DecodedFrame readFrame(int expectedFrameNumber, int maxTextSize) throws IOException, InterruptedException {
+    Set<FrameError> frameErrors = EnumSet.noneOf(FrameError.class);
+    byte frameNumber = read();
+    if (expectedFrameNumber != Character.getNumericValue((char) frameNumber)) {
+      frameErrors.add(FrameError.WRONG_FRAME_NUMBER);
+      //TODO add case where frame was retransmitted (expected frame number -1 mod 8. must also overwrite last frame)
+    }
+    checksum.reset();
+    checksum.update(frameNumber);
+
+    textLength = 0;
+    byte frameTerminator = 0;
+    while (frameTerminator == 0) {
+      if (readPosition == readLimit) {
+        fill();
+      }
+      int start = readPosition;
+      int i = start;
+      for (; i < readLimit; i++) {
+        byte b = readBuffer[i];
+        if (b == ETB || b == ETX) {
+          frameTerminator = b;
+          break;
+        }
+        if (ASTMControlCharacters.isRestricted(b)) {
+          frameErrors.add(FrameError.ILLEGAL_CHAR);
+        }
+        checksum.update(b);
+      }
+      appendText(start, i - start, maxTextSize, frameErrors);
+      readPosition = frameTerminator == 0 ? i : i + 1;
+    }
+    checksum.update(frameTerminator);
+
+    byte checksumHigh = read();
+    byte checksumLow = read();
+    if (!checksum.matches(checksumHigh, checksumLow)) {
+      frameErrors.add(FrameError.BAD_CHECKSUM);
+    }
+    if (read() != CR) {
+      frameErrors.add(FrameError.ILLEGAL_END);
+    }
+    if (read() != LF) {
+      frameErrors.add(FrameError.ILLEGAL_END);
+    }
+    return new DecodedFrame(
+      Character.getNumericValue((char) frameNumber),
+      frameTerminator == ETX,
+      new String(textBuffer, 0, textLength, StandardCharsets.UTF_8),
+      new String(new byte[] { checksumHigh, checksumLow }, StandardCharsets.US_ASCII),
+      frameErrors
+    );
+  }
+
+  /**
+   * Reads a record that is being sent non-compliantly, up to and including the record terminator (CR).
+   *
+   * @param maxTextSize the maximum number of bytes the record may have, including the record terminator.
+   * @param recordErrors the set to add any issues with the record to.
+   * @return the text of the record.
+   * @throws EOFException if the end of the stream was reached.
+   * @throws SocketTimeoutException if the deadline passed before the whole record could be read.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  public String readRecord(int maxTextSize, Set<FrameError> recordErrors) throws IOException, InterruptedException {
+    textLength = 0;
+    boolean recordTerminated = false;
+    while (!recordTerminated) {
+      if (readPosition == readLimit) {
+        fill();
+      }
+      int start = readPosition;
+      int i = start;
+      for (; i < readLimit; i++) {
+        byte b = readBuffer[i];
+        if (ASTMControlCharacters.isRestricted(b)) {
+          recordErrors.add(FrameError.ILLEGAL_CHAR);
+        }
+        if (b == CR) {
+          recordTerminated = true;
+          ++i;
+          break;
+        }
+      }
+      appendText(start, i - start, maxTextSize, recordErrors);
+      readPosition = i;
+    }
+    return new String(textBuffer, 0, textLength, StandardCharsets.UTF_8);
+  }
+
+  private void appendText(int start, int length, int maxTextSize, Set<FrameError> frameErrors) {
+    if (textLength + length > maxTextSize) {
+      frameErrors.add(FrameError.MAX_SIZE_EXCEEDED);
+      length = Math.max(0, maxTextSize - textLength);
+    }
+    if (textLength + length > textBuffer.length) {
+      textBuffer = Arrays.copyOf(textBuffer, Math.max(textBuffer.length * 2, textLength + length));
+    }
+    System.arraycopy(readBuffer, start, textBuffer, textLength, length);
+    textLength += length;
+  }
+
+  private void fill() throws IOException, InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (hasDeadline) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new SocketTimeoutException("the read deadline has passed");
+      }
+      // a socket timeout of 0 means no timeout, so always wait at least 1 millisecond
+      socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+    } else {
+      socket.setSoTimeout(0);
+    }
+    int read = inputStream.read(readBuffer, 0, readBuffer.length);
+    if (read < 0) {
+      throw new EOFException("the astm sender closed the connection");
+    }
+    readPosition = 0;
+    readLimit = read;
+  }
+
+  /**
+   * Object for holding a frame that was decoded from the stream.
+   */
+  @Getter
+  public static class DecodedFrame {
+
+    private final int frameNumber;
+    private final boolean finalFrame;
+    private final String text;
+    private final String checksum;
+    private final Set<FrameError> frameErrors;
+
+    private DecodedFrame(int frameNumber, boolean finalFrame, String text, String checksum, Set<FrameError> errors) {
+      this.frameNumber = frameNumber;
+      this.finalFrame = finalFrame;
+      this.text = text;
+      this.checksum = checksum;
+      this.frameErrors = errors;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.CR;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETB;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETX;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.LF;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.STX;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class writes the bytes sent over an ASTM transmission protocol to an output stream. The text of a frame is
+ * encoded once, and the checksum is accumulated from the same bytes as they are written.
+ *
+ * An encoder can be {@link #reset(OutputStream) reset} to write to another stream, so its buffer can be reused for
+ * many connections. This class is not thread safe, and should be used by a single communicator.
+ */
+public class ASTMFrameEncoder {
+
+  private static final int WRITE_BUFFER_SIZE = 8192;
+
+  private final ResettableBufferedOutputStream outputStream;
+  private final ASTMChecksum checksum = new ASTMChecksum();
+
+  /**
+   * Constructs a new ASTMFrameEncoder.
+   *
+   * @param outputStream the stream to write to.
+   */
+  public ASTMFrameEncoder(OutputStream outputStream) {
+    this.outputStream = new ResettableBufferedOutputStream(outputStream);
+  }
+
+  /**
+   * Prepares this encoder to write to another stream. Anything that was buffered for the previous stream and not
+   * sent is discarded.
+   *
+   * @param outputStream the stream to write to, or null to only let go of the previous stream.
+   */
+  public void reset(OutputStream outputStream) {
+    this.outputStream.reset(outputStream);
+  }
+
+  /**
+   * Writes a single control character and sends it immediately.
+   *
+   * @param controlCharacter the control character to send.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeControlCharacter(char controlCharacter) throws IOException {
+    outputStream.write(controlCharacter);
+    outputStream.flush();
+  }
+
+  /**
+   * Writes a complete frame and sends it immediately.
+   *
+   * @param frameNumber the frame number, between 0 and 7.
+   * @param text the text of the frame.
+   * @param finalFrame true if the frame ends with ETX, false if the frame ends with ETB.
+   * @return the checksum that was sent with the frame.
+   * @throws IOException if an I/O error occurs.
+   */
+  public ASTMChecksum writeFrame(int frameNumber, String text, boolean finalFrame) throws IOException {
+    byte frameNumberByte = (byte) Character.forDigit(frameNumber, 10);
+    byte frameTerminator = (byte) (finalFrame ? ETX : ETB);
+    byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+
+    checksum.reset();
+    outputStream.write(STX);
+    write(frameNumberByte);
+    outputStream.write(textBytes);
+    checksum.update(textBytes, 0, textBytes.length);
+    write(frameTerminator);
+    outputStream.write(checksum.getHighDigit());
+    outputStream.write(checksum.getLowDigit());
+    outputStream.write(CR);
+    outputStream.write(LF);
+    outputStream.flush();
+    return checksum;
+  }
+
+  private void write(byte b) throws IOException {
+    outputStream.write(b);
+    checksum.update(b);
+  }
+
+  /**
+   * A buffered output stream that keeps its buffer when it is pointed at another stream.
+   */
+  private static class ResettableBufferedOutputStream extends BufferedOutputStream {
+
+    ResettableBufferedOutputStream(OutputStream out) {
+      super(out, WRITE_BUFFER_SIZE);
+    }
+
+    void reset(OutputStream out) {
+      this.out = out;
+      this.count = 0;
+    }
+  }
+}
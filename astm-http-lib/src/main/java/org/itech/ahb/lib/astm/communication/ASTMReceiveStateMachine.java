@@ -0,0 +1,555 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ACK;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.CR;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ENQ;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.EOT;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETB;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETX;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.LF;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.NAK;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.STX;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator.FrameError;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.DefaultASTMFrame;
+import org.itech.ahb.lib.astm.exception.FrameParsingException;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.interpretation.ASTMMessageAssembler;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics.Direction;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace.EventType;
+import org.itech.ahb.lib.util.LogUtil;
+
+/**
+ * This class is a non-blocking implementation of the receiving side of the ASTM transmission protocol.
+ * Instead of reading from a stream, it is fed the bytes received on a connection as they arrive and
+ * advances through the establishment, transfer and termination phases one byte at a time.
+ * Any control characters that need to be sent back to the sender (ACK, NAK) are written to an output buffer
+ * that the caller is responsible for writing to the connection.
+ *
+ * A single instance is used per connection and returns to waiting for establishment after every message,
+ * so a sender can transmit several messages over the same connection.
+ *
+ * If a store handler is set, the frame that completes a message is not acknowledged until the caller reports with
+ * {@link #storeCompleted(boolean, ByteBuffer)} whether the message was stored, so the sender is only told the message
+ * was received once it can not be lost.
+ */
+@Slf4j
+public final class ASTMReceiveStateMachine {
+
+  /**
+   *  The phase of the ASTM transmission protocol the receiver is in.
+   */
+  public enum State {
+    /**
+     * Waiting for the sender to send ENQ.
+     */
+    AWAITING_ESTABLISHMENT,
+    /**
+     * Waiting for the start of the next frame (STX), or the end of transmission (EOT).
+     */
+    AWAITING_FRAME_START,
+    /**
+     * Waiting for the frame number of the current frame.
+     */
+    AWAITING_FRAME_NUMBER,
+    /**
+     * Reading the text of the current frame until ETB or ETX.
+     */
+    READING_FRAME_TEXT,
+    /**
+     * Waiting for the first checksum character of the current frame.
+     */
+    AWAITING_CHECKSUM_HIGH,
+    /**
+     * Waiting for the second checksum character of the current frame.
+     */
+    AWAITING_CHECKSUM_LOW,
+    /**
+     * Waiting for the CR that ends the current frame.
+     */
+    AWAITING_FRAME_CR,
+    /**
+     * Waiting for the LF that ends the current frame.
+     */
+    AWAITING_FRAME_LF,
+    /**
+     * Too many frames failed, ignoring everything until the sender sends EOT.
+     */
+    AWAITING_TERMINATION,
+    /**
+     * Reading a record in non-compliant mode until CR.
+     */
+    READING_NON_COMPLIANT_RECORD,
+    /**
+     * Waiting for the received message to be stored before acknowledging the frame that completed it.
+     */
+    AWAITING_STORE
+  }
+
+  private static final int INITIAL_FRAME_BUFFER_SIZE = 256;
+
+  private final ASTMInterpreterFactory astmInterpreterFactory;
+  private final ASTMVersion astmVersion;
+  private final Consumer<ASTMMessage> messageConsumer;
+  private Consumer<ASTMMessage> storeHandler; // null when messages are not stored before they are acknowledged
+  private boolean messageStored; // whether a message of the current transmission has been stored
+
+  private State state;
+  private final ASTMMessageAssembler assembler;
+  private final List<ASTMRecord> records = new ArrayList<>();
+  private final Set<FrameError> frameErrors = EnumSet.noneOf(FrameError.class);
+  private byte[] textBuffer = new byte[INITIAL_FRAME_BUFFER_SIZE];
+  private int textLength;
+  private byte frameNumber;
+  private byte frameTerminator;
+  private final ASTMChecksum checksum = new ASTMChecksum();
+  private int failedAttempts;
+  private int frameCount; // the frames acknowledged since the transmission was established
+  private int messageSize; // the characters of the records received so far in non-compliant mode
+  private boolean messageTooLarge; // the records of the message are discarded until its termination record
+  private long phaseStart; // when the receiver started waiting for the establishment or the current frame
+  private ASTMMetrics metrics = ASTMMetrics.global();
+  private ASTMSessionTrace sessionTrace = ASTMSessionTrace.disabled();
+
+  /**
+   * Constructs a new ASTMReceiveStateMachine.
+   *
+   * @param astmInterpreterFactory a factory that will create an interpreter for a received message.
+   * @param astmVersion the ASTM version that is expected to be received.
+   * @param messageConsumer called with every message once it has been completely received.
+   */
+  public ASTMReceiveStateMachine(
+    ASTMInterpreterFactory astmInterpreterFactory,
+    ASTMVersion astmVersion,
+    Consumer<ASTMMessage> messageConsumer
+  ) {
+    this.astmInterpreterFactory = astmInterpreterFactory;
+    this.astmVersion = astmVersion;
+    this.messageConsumer = messageConsumer;
+    // the frames are only known once they are received, so records are interpreted as each one is completed
+    this.assembler = new ASTMMessageAssembler(astmInterpreterFactory.createInterpreterForFrames(List.of()));
+    reset();
+  }
+
+  /**
+   * Sets the metrics that the exchanges of this receiver are recorded in.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the handler that is called with a message once the frame that completes it has been received. The frame is
+   * not acknowledged, and no further bytes are received, until {@link #storeCompleted(boolean, ByteBuffer)} is called.
+   * A message that was stored is not passed to the message consumer.
+   *
+   * @param storeHandler the store handler, or null to acknowledge every frame as soon as it is received.
+   */
+  public void setStoreHandler(Consumer<ASTMMessage> storeHandler) {
+    this.storeHandler = storeHandler;
+  }
+
+  /**
+   * Sets the trace that what happens while receiving is recorded in.
+   *
+   * @param sessionTrace the trace of the connection this receiver is used for.
+   */
+  public void setSessionTrace(ASTMSessionTrace sessionTrace) {
+    this.sessionTrace = sessionTrace;
+  }
+
+  /**
+   * @return the phase of the ASTM transmission protocol the receiver is in.
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * @return true if the receiver is part way through receiving a message.
+   */
+  public boolean isReceivingMessage() {
+    return (
+      (state != State.AWAITING_ESTABLISHMENT && state != State.READING_NON_COMPLIANT_RECORD) ||
+      textLength > 0 ||
+      !records.isEmpty() ||
+      messageTooLarge
+    );
+  }
+
+  /**
+   * Abandons any message that is part way through being received and waits for the next establishment.
+   */
+  public void reset() {
+    assembler.reset();
+    records.clear();
+    frameErrors.clear();
+    textLength = 0;
+    failedAttempts = 0;
+    frameCount = 0;
+    messageSize = 0;
+    messageTooLarge = false;
+    messageStored = false;
+    phaseStart = System.nanoTime();
+    state = astmVersion == ASTMVersion.LIS01_A ? State.AWAITING_ESTABLISHMENT : State.READING_NON_COMPLIANT_RECORD;
+  }
+
+  /**
+   * Advances the protocol with all of the bytes remaining in the input buffer, or until the receiver starts waiting
+   * for a message to be stored, in which case the remaining bytes are left in the input buffer.
+   *
+   * @param in the bytes received from the sender.
+   * @param out the buffer to put the bytes that need to be sent back to the sender in. Must have space remaining
+   * for at least one byte for every byte in the input buffer.
+   */
+  public void receive(ByteBuffer in, ByteBuffer out) {
+    while (in.hasRemaining() && state != State.AWAITING_STORE) {
+      receive(in.get(), out);
+    }
+  }
+
+  /**
+   * Acknowledges the frame that completed the message passed to the store handler if the message was stored, or
+   * rejects it so the sender sends it again otherwise.
+   *
+   * @param stored true if the message was durably stored.
+   * @param out the buffer to put the byte that needs to be sent back to the sender in.
+   */
+  public void storeCompleted(boolean stored, ByteBuffer out) {
+    if (state != State.AWAITING_STORE) {
+      throw new IllegalStateException("no received message is waiting to be stored");
+    }
+    if (stored) {
+      // the sender may send further messages before ending the transmission, each of which is stored on its own
+      messageStored = true;
+      assembler.reset();
+      metrics.recordMessage(Direction.RECEIVE, astmVersion);
+      sessionTrace.record(EventType.MESSAGE_INTERPRETED, "stored");
+      acknowledgeFrame(out);
+      return;
+    }
+    if (log.isTraceEnabled()) {
+      log.trace("sending: '" + LogUtil.convertForDisplay(NAK) + "' as the message could not be stored");
+    }
+    out.put((byte) NAK);
+    metrics.recordNak(Direction.RECEIVE);
+    sessionTrace.record(EventType.FRAME_REJECTED, "message could not be stored");
+    assembler.undoLastFrame();
+    frameFailed();
+  }
+
+  private void receive(byte b, ByteBuffer out) {
+    switch (state) {
+      case AWAITING_ESTABLISHMENT:
+        receiveEstablishment(b, out);
+        break;
+      case AWAITING_FRAME_START:
+        receiveFrameStart(b, out);
+        break;
+      case AWAITING_FRAME_NUMBER:
+        frameNumber = b;
+        checksum.reset();
+        checksum.update(b);
+        if (expectedFrameNumber() != Character.getNumericValue((char) b)) {
+          frameErrors.add(FrameError.WRONG_FRAME_NUMBER);
+        }
+        state = State.READING_FRAME_TEXT;
+        break;
+      case READING_FRAME_TEXT:
+        receiveFrameText(b);
+        break;
+      case AWAITING_CHECKSUM_HIGH:
+        if (b != checksum.getHighDigit()) {
+          frameErrors.add(FrameError.BAD_CHECKSUM);
+        }
+        state = State.AWAITING_CHECKSUM_LOW;
+        break;
+      case AWAITING_CHECKSUM_LOW:
+        if (b != checksum.getLowDigit()) {
+          frameErrors.add(FrameError.BAD_CHECKSUM);
+        }
+        state = State.AWAITING_FRAME_CR;
+        break;
+      case AWAITING_FRAME_CR:
+        if (b != CR) {
+          frameErrors.add(FrameError.ILLEGAL_END);
+        }
+        state = State.AWAITING_FRAME_LF;
+        break;
+      case AWAITING_FRAME_LF:
+        if (b != LF) {
+          frameErrors.add(FrameError.ILLEGAL_END);
+        }
+        completeFrame(out);
+        break;
+      case AWAITING_TERMINATION:
+        if (b == EOT) {
+          if (log.isDebugEnabled()) {
+            log.debug("'" + LogUtil.convertForDisplay(EOT) + "' detected after abandoning message");
+          }
+          reset();
+        }
+        break;
+      case READING_NON_COMPLIANT_RECORD:
+        receiveNonCompliantRecordCharacter(b);
+        break;
+      default:
+        throw new IllegalStateException("unrecognized receive state: " + state);
+    }
+  }
+
+  private void receiveEstablishment(byte b, ByteBuffer out) {
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received: '" +
+        LogUtil.convertForDisplay((char) b) +
+        "'. Expecting establishment signal [" +
+        LogUtil.convertForDisplay(ENQ) +
+        "] aka [0x05]"
+      );
+    }
+    if (b == ENQ) {
+      if (log.isTraceEnabled()) {
+        log.trace("sending: '" + LogUtil.convertForDisplay(ACK) + "' to indicate ready to receive frames");
+      }
+      out.put((byte) ACK);
+      state = State.AWAITING_FRAME_START;
+      log.trace("astm LIS01-A receive protocol: established");
+      metrics.recordEstablishment(Direction.RECEIVE, astmVersion, true, System.nanoTime() - phaseStart);
+      sessionTrace.record(EventType.ESTABLISHED);
+      phaseStart = System.nanoTime();
+    } else if (b == GeneralASTMCommunicator.NON_COMPLIANT_START_CHARACTER) {
+      //technically the ASTM specs say to "ignore other characters" but we are assuming this is just a non-compliant transmission
+      if (log.isDebugEnabled()) {
+        log.debug("protocol assumed to be non-compliant as '" + LogUtil.convertForDisplay((char) b) + "' was sent");
+      }
+      state = State.READING_NON_COMPLIANT_RECORD;
+      metrics.recordEstablishment(
+        Direction.RECEIVE,
+        ASTMVersion.NON_COMPLIANT,
+        true,
+        System.nanoTime() - phaseStart
+      );
+      sessionTrace.record(EventType.ESTABLISHED, "non-compliant");
+      receiveNonCompliantRecordCharacter(b);
+    } else {
+      if (log.isTraceEnabled()) {
+        log.trace(
+          "sending: '" +
+          LogUtil.convertForDisplay(NAK) +
+          "' to indicate not ready to receive frames. Incorrect establishment signal"
+        );
+      }
+      out.put((byte) NAK);
+      metrics.recordNak(Direction.RECEIVE);
+      metrics.recordEstablishment(Direction.RECEIVE, astmVersion, false, System.nanoTime() - phaseStart);
+      sessionTrace.record(EventType.ESTABLISHMENT_REFUSED);
+    }
+  }
+
+  private void receiveFrameStart(byte b, ByteBuffer out) {
+    if (b == STX) {
+      frameErrors.clear();
+      textLength = 0;
+      state = State.AWAITING_FRAME_NUMBER;
+    } else if (b == EOT) {
+      if (log.isDebugEnabled()) {
+        log.debug("'" + LogUtil.convertForDisplay(EOT) + "' detected");
+      }
+      sessionTrace.record(EventType.END_OF_TRANSMISSION);
+      if (messageStored && assembler.isEmpty()) {
+        log.debug("every message was stored, they will be forwarded from the message store");
+        reset();
+        return;
+      }
+      // a message that was not stored, ex. because the sender did not end it with a message terminator record
+      ASTMMessage message = assembler.getMessage();
+      sessionTrace.record(EventType.MESSAGE_INTERPRETED);
+      reset();
+      metrics.recordMessage(Direction.RECEIVE, astmVersion);
+      messageConsumer.accept(message);
+    } else {
+      log.error("illegal start character '" + LogUtil.convertForDisplay((char) b) + "' detected");
+      rejectFrame(Set.of(FrameError.ILLEGAL_START), out);
+    }
+  }
+
+  private void receiveFrameText(byte b) {
+    checksum.update(b);
+    if (b == ETB || b == ETX) {
+      frameTerminator = b;
+      state = State.AWAITING_CHECKSUM_HIGH;
+      return;
+    }
+    if (ASTMControlCharacters.isRestricted(b)) {
+      frameErrors.add(FrameError.ILLEGAL_CHAR);
+      log.error("illegal character detected: '" + LogUtil.convertForDisplay((char) b) + "'.");
+    }
+    if (textLength >= maxTextSize()) {
+      frameErrors.add(FrameError.MAX_SIZE_EXCEEDED);
+      return;
+    }
+    if (textLength == textBuffer.length) {
+      textBuffer = Arrays.copyOf(textBuffer, textBuffer.length * 2);
+    }
+    textBuffer[textLength++] = b;
+  }
+
+  private void completeFrame(ByteBuffer out) {
+    metrics.recordFrameReceived(astmVersion, System.nanoTime() - phaseStart);
+    if (sessionTrace.isEnabled()) {
+      sessionTrace.record(EventType.FRAME_RECEIVED, "frame " + (frameCount + 1));
+    }
+    if (!frameErrors.isEmpty()) {
+      rejectFrame(frameErrors, out);
+      return;
+    }
+    ASTMFrame frame = new DefaultASTMFrame();
+    frame.setFrameNumber(Character.getNumericValue((char) frameNumber));
+    frame.setType(frameTerminator == ETX ? FrameType.END : FrameType.INTERMEDIATE);
+    frame.setText(new String(textBuffer, 0, textLength, StandardCharsets.UTF_8));
+    try {
+      assembler.accept(frame);
+    } catch (FrameParsingException e) {
+      log.error("an error occurred parsing the received frame", e);
+      rejectFrame(Set.of(FrameError.ILLEGAL_END), out);
+      return;
+    }
+    if (storeHandler != null && assembler.isMessageTerminated()) {
+      state = State.AWAITING_STORE;
+      storeHandler.accept(assembler.getMessage());
+      return;
+    }
+    acknowledgeFrame(out);
+  }
+
+  private void acknowledgeFrame(ByteBuffer out) {
+    log.debug("frame successfully received");
+    if (log.isTraceEnabled()) {
+      log.trace("sending: '" + LogUtil.convertForDisplay(ACK) + "' to indicate received frame correctly");
+    }
+    out.put((byte) ACK);
+    sessionTrace.record(EventType.FRAME_ACKNOWLEDGED);
+    ++frameCount;
+    failedAttempts = 0; // reset as retry mechanism is per frame
+    phaseStart = System.nanoTime();
+    state = State.AWAITING_FRAME_START;
+  }
+
+  private void rejectFrame(Set<FrameError> errors, ByteBuffer out) {
+    if (log.isDebugEnabled()) {
+      log.debug("frame unsuccessfully received due to: " + errors);
+    }
+    if (log.isTraceEnabled()) {
+      log.trace("sending: '" + LogUtil.convertForDisplay(NAK) + "' to indicate received frame incorrectly");
+    }
+    out.put((byte) NAK);
+    metrics.recordFrameErrors(errors);
+    metrics.recordNak(Direction.RECEIVE);
+    if (sessionTrace.isEnabled()) {
+      sessionTrace.record(EventType.FRAME_REJECTED, errors.toString());
+    }
+    frameFailed();
+  }
+
+  private void frameFailed() {
+    ++failedAttempts;
+    if (failedAttempts > GeneralASTMCommunicator.MAX_FRAME_RETRY_ATTEMPTS) {
+      log.error("MAX_FRAME_RETRY_ATTEMPTS reached for frame, abandoning message");
+      //sender is supposed to enter the termination phase when max attempts are reached, which means EOT is expected
+      assembler.reset();
+      state = State.AWAITING_TERMINATION;
+    } else {
+      metrics.recordFrameRetry(Direction.RECEIVE);
+      phaseStart = System.nanoTime();
+      state = State.AWAITING_FRAME_START;
+    }
+  }
+
+  private void receiveNonCompliantRecordCharacter(byte b) {
+    if (ASTMControlCharacters.isRestricted(b)) {
+      frameErrors.add(FrameError.ILLEGAL_CHAR);
+    }
+    if (textLength >= GeneralASTMCommunicator.MAX_TEXT_SIZE) {
+      // a record that would not fit in a single frame is rejected, so a sender that never ends a record is bounded
+      frameErrors.add(FrameError.MAX_SIZE_EXCEEDED);
+    } else {
+      if (textLength == textBuffer.length) {
+        textBuffer = Arrays.copyOf(textBuffer, textBuffer.length * 2);
+      }
+      textBuffer[textLength++] = b;
+    }
+    if (b != CR) {
+      return;
+    }
+    String text = new String(textBuffer, 0, textLength, StandardCharsets.UTF_8);
+    textLength = 0;
+    if (!frameErrors.isEmpty()) {
+      if (log.isDebugEnabled()) {
+        log.debug("record unsuccessfully received due to: " + frameErrors);
+      }
+      sessionTrace.record(EventType.FRAME_REJECTED, frameErrors.toString());
+      frameErrors.clear();
+      return;
+    }
+    log.debug("record successfully received");
+    sessionTrace.record(EventType.FRAME_RECEIVED);
+    messageSize += text.length();
+    if (messageSize > GeneralASTMCommunicator.MAX_NON_COMPLIANT_MESSAGE_SIZE && !messageTooLarge) {
+      log.error(
+        "message exceeded " +
+        GeneralASTMCommunicator.MAX_NON_COMPLIANT_MESSAGE_SIZE +
+        " characters, discarding it until its termination record"
+      );
+      sessionTrace.record(EventType.ERROR, "message too large");
+      records.clear();
+      messageTooLarge = true;
+    }
+    boolean terminated = text.trim().endsWith(GeneralASTMCommunicator.TERMINATION_RECORD_END);
+    if (messageTooLarge) {
+      if (terminated) {
+        reset();
+      }
+      return;
+    }
+    records.add(astmInterpreterFactory.createInterpreterForText(text).interpretASTMTextToRecord(text));
+    if (terminated) {
+      List<ASTMRecord> receivedRecords = new ArrayList<>(records);
+      reset();
+      metrics.recordMessage(Direction.RECEIVE, ASTMVersion.NON_COMPLIANT);
+      ASTMMessage message = astmInterpreterFactory
+        .createInterpreterForRecords(receivedRecords)
+        .interpretASTMRecordsToMessage(receivedRecords);
+      sessionTrace.record(EventType.MESSAGE_INTERPRETED);
+      messageConsumer.accept(message);
+    }
+  }
+
+  private int expectedFrameNumber() {
+    return (frameCount + 1) % 8;
+  }
+
+  private int maxTextSize() {
+    return astmVersion == ASTMVersion.LIS01_A
+      ? GeneralASTMCommunicator.MAX_TEXT_SIZE
+      : GeneralASTMCommunicator.MAX_TEXT_SIZE_E138195;
+  }
+}
@@ -1,6 +1,7 @@
 package org.itech.ahb.lib.astm.communication;
 
 import java.io.IOException;
+import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
@@ -29,6 +30,27 @@ public interface Communicator {
    */
   SendResult sendProtocol(ASTMMessage message) throws ASTMCommunicationException, IOException, InterruptedException;
 
+  /**
+   * Sends several ASTM messages using the ASTM transmission protocol. By default each message is sent in its own
+   * exchange, stopping at the first message that is not sent.
+   *
+   * @param messages the ASTM messages to send, in order.
+   * @return the result of the send operation, including how many of the messages were sent.
+   * @throws ASTMCommunicationException if there is a communication error in the ASTM transmission protocol.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the operation is interrupted.
+   */
+  default SendResult sendProtocol(List<ASTMMessage> messages)
+    throws ASTMCommunicationException, IOException, InterruptedException {
+    for (int i = 0; i < messages.size(); i++) {
+      SendResult result = sendProtocol(messages.get(i));
+      if (result.isLineContention() || result.isRejected()) {
+        return new SendResult(result.isLineContention(), result.isRejected(), i);
+      }
+    }
+    return new SendResult(false, false, messages.size());
+  }
+
   /**
    * Receives an ASTM message using the ASTM transmission protocol.
    *
@@ -49,6 +71,16 @@ public interface Communicator {
    */
   boolean didReceiveEstablishmentSucceed();
 
+  /**
+   * Checks if the received messages were durably stored by this communicator, in which case they are forwarded from
+   * the store rather than by the caller. Every message received in the transmission is stored on its own.
+   *
+   * @return true if the received messages were stored, false otherwise.
+   */
+  default boolean didStoreReceivedMessage() {
+    return false;
+  }
+
   /**
    * Object for holding information about the result of sending data.
    */
@@ -58,5 +90,17 @@ public interface Communicator {
 
     private boolean lineContention;
     private boolean rejected;
+    private int messagesSent;
+
+    /**
+     * Constructs a new SendResult for sending a single message, which was sent unless there was line contention or
+     * it was rejected.
+     *
+     * @param lineContention true if the receiver wanted to send instead.
+     * @param rejected true if the receiver refused to receive.
+     */
+    public SendResult(boolean lineContention, boolean rejected) {
+      this(lineContention, rejected, lineContention || rejected ? 0 : 1);
+    }
   }
 }
@@ -1,27 +1,25 @@
 package org.itech.ahb.lib.astm.communication;
 
-import java.io.BufferedReader;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ACK;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ENQ;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.EOT;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.NAK;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.STX;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.communication.ASTMFrameDecoder.DecodedFrame;
 import org.itech.ahb.lib.astm.concept.ASTMFrame;
 import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
@@ -30,9 +28,14 @@ import org.itech.ahb.lib.astm.concept.DefaultASTMFrame;
 import org.itech.ahb.lib.astm.exception.ASTMCommunicationException;
 import org.itech.ahb.lib.astm.exception.FrameParsingException;
 import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.interpretation.ASTMMessageAssembler;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics.Direction;
 import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStore;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace.EventType;
 import org.itech.ahb.lib.util.LogUtil;
-import org.itech.ahb.lib.util.ThreadUtil;
 
 //If this class gets too complicated, separate out the
 // LISA-01 and E1382-95 protocols into separate classes or separate sending from receiving.
@@ -76,52 +79,20 @@ public class GeneralASTMCommunicator implements Communicator {
     ILLEGAL_END
   }
 
-  private static final char CR = 0x0D;
-  private static final char LF = 0x0A;
-  private static final char SOH = 0x01;
-  private static final char STX = 0x02;
-  private static final char ETX = 0x03;
-  private static final char EOT = 0x04;
-  private static final char ENQ = 0x05;
-  private static final char ACK = 0x06;
-  private static final char DLE = 0x10;
-  private static final char DC1 = 0x11;
-  private static final char DC2 = 0x12;
-  private static final char DC3 = 0x13;
-  private static final char DC4 = 0x14;
-  private static final char NAK = 0x15;
-  private static final char SYN = 0x16;
-  private static final char ETB = 0x17;
-
-  private static final List<Character> RESTRICTED_CHARACTERS = Arrays.asList(
-    SOH,
-    STX,
-    ETX,
-    EOT,
-    ENQ,
-    ACK,
-    DLE,
-    NAK,
-    SYN,
-    ETB,
-    LF,
-    DC1,
-    DC2,
-    DC3,
-    DC4
-  );
-  private static final char NON_COMPLIANT_START_CHARACTER = 'H';
-  private static final String TERMINATION_RECORD_END = "L|1|N";
+  public static final char NON_COMPLIANT_START_CHARACTER = 'H';
+  public static final String TERMINATION_RECORD_END = "L|1|N";
   private static final int NON_COMPLIANT_RECEIVE_TIMEOUT = 60; // in seconds
+  public static final int MAX_NON_COMPLIANT_MESSAGE_SIZE = 16 * 1024 * 1024; // in characters
 
   public static final int OVERHEAD_CHARACTER_COUNT = 7;
   public static final int MAX_FRAME_SIZE = 64000;
   public static final int MAX_TEXT_SIZE = MAX_FRAME_SIZE - OVERHEAD_CHARACTER_COUNT;
-  private static final int ESTABLISHMENT_SOCKET_TIMEOUT = 60; // in seconds
+  public static final int ESTABLISHMENT_SOCKET_TIMEOUT = 60; // in seconds
   private static final int ESTABLISHMENT_SEND_TIMEOUT = 15; // in seconds
-  private static final int RECIEVE_FRAME_TIMEOUT = 30; // in seconds
+  public static final int RECIEVE_FRAME_TIMEOUT = 30; // in seconds
+  public static final int RECEIVE_MESSAGE_TIMEOUT = 600; // in seconds
   private static final int SEND_FRAME_TIMEOUT = 15; // in seconds
-  private static final int MAX_FRAME_RETRY_ATTEMPTS = 5; // 6 - 1 as retries are after first attmpt
+  public static final int MAX_FRAME_RETRY_ATTEMPTS = 5; // 6 - 1 as retries are after first attmpt
 
   public static final int MAX_FRAME_SIZE_E138195 = 247;
   public static final int MAX_TEXT_SIZE_E138195 = MAX_FRAME_SIZE_E138195 - OVERHEAD_CHARACTER_COUNT;
@@ -142,13 +113,17 @@ public class GeneralASTMCommunicator implements Communicator {
   }
 
   private final ASTMInterpreterFactory astmInterpreterFactory;
-  private final String communicatorId; // only used for debug messages
+  private String communicatorId; // only used for debug messages
 
-  private final Socket socket;
-  private final BufferedReader reader;
-  private final PrintWriter writer;
+  private final ASTMFrameDecoder decoder;
+  private final ASTMFrameEncoder encoder;
   private ASTMVersion astmVersion;
   private Boolean receiveEstablished = false;
+  private ASTMMessageStore messageStore; // null when received messages are not stored
+  private ASTMMessage storedMessage; // the last received message that has been stored
+  private int storedMessageCount; // the messages received in the current exchange that have been stored
+  private ASTMMetrics metrics = ASTMMetrics.global();
+  private ASTMSessionTrace sessionTrace = ASTMSessionTrace.disabled();
 
   /**
    * Constructor for a GeneralASTMCommunicator, will assume the ASTM version is LIS01-A
@@ -168,16 +143,31 @@ public class GeneralASTMCommunicator implements Communicator {
   public GeneralASTMCommunicator(ASTMInterpreterFactory astmInterpreterFactory, Socket socket, ASTMVersion astmVersion)
     throws IOException {
     communicatorId = Integer.toString(incrementAndGetId());
-    this.socket = socket;
-    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-    PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-
     this.astmInterpreterFactory = astmInterpreterFactory;
-    this.reader = reader;
-    this.writer = writer;
+    this.decoder = new ASTMFrameDecoder(socket);
+    this.encoder = new ASTMFrameEncoder(socket.getOutputStream());
     this.astmVersion = astmVersion;
   }
 
+  /**
+   * Prepares this communicator for another connection, so its buffers are reused instead of allocating new ones for
+   * every connection. Everything about the previous connection is forgotten. The message store and metrics are kept.
+   *
+   * @param socket the socket to communicate on, or null to only let go of the previous connection.
+   * @param astmVersion the ASTM version to communicate over.
+   * @throws IOException if the streams of the socket could not be opened.
+   */
+  public void reset(Socket socket, ASTMVersion astmVersion) throws IOException {
+    communicatorId = Integer.toString(incrementAndGetId());
+    decoder.reset(socket);
+    encoder.reset(socket == null ? null : socket.getOutputStream());
+    this.astmVersion = astmVersion;
+    receiveEstablished = false;
+    storedMessage = null;
+    storedMessageCount = 0;
+    sessionTrace = ASTMSessionTrace.disabled();
+  }
+
   @Override
   public String getID() {
     return communicatorId;
@@ -188,10 +178,56 @@ public class GeneralASTMCommunicator implements Communicator {
     return receiveEstablished;
   }
 
+  @Override
+  public boolean didStoreReceivedMessage() {
+    return storedMessageCount > 0;
+  }
+
+  /**
+   * Checks whether the connection this communicator uses is idle, so it can be used for another exchange. A connection
+   * is not idle if the other end closed it or has sent anything that was not read, ex. an establishment signal.
+   *
+   * @return true if the connection is idle.
+   */
+  public boolean isIdle() {
+    return decoder.isIdle();
+  }
+
+  /**
+   * Sets the store that received messages are durably stored in. When using the ASTM transmission protocol,
+   * the message is stored before the frame holding the message terminator record is acknowledged, so the sender
+   * only sees the message as delivered once it can no longer be lost.
+   *
+   * @param messageStore the store, or null to not store received messages.
+   */
+  public void setMessageStore(ASTMMessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the metrics that the exchanges of this communicator are recorded in.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the trace that what happens while receiving is recorded in.
+   *
+   * @param sessionTrace the trace of the connection this communicator uses.
+   */
+  public void setSessionTrace(ASTMSessionTrace sessionTrace) {
+    this.sessionTrace = sessionTrace;
+  }
+
   @Override
   public ASTMMessage receiveProtocol(boolean lineWasContentious)
     throws FrameParsingException, ASTMCommunicationException, IOException, InterruptedException {
     log.trace("starting receive protocol for ASTM message");
+    storedMessage = null;
+    storedMessageCount = 0;
     if (astmVersion == ASTMVersion.LIS01_A) {
       try {
         receiveEstablished = establishmentReceive();
@@ -215,115 +251,148 @@ public class GeneralASTMCommunicator implements Communicator {
         case E1381_95:
         //TODO create a real 95 listener?
         case LIS01_A:
-          return receiveInCompliantMode();
+          return recordReceived(receiveInCompliantMode());
         case NON_COMPLIANT:
         default:
-          return receiveInNonCompliantMode();
+          return recordReceived(receiveInNonCompliantMode());
       }
     }
     log.trace("astm transmission protocol not being used");
-    return receiveInNonCompliantMode();
+    return recordReceived(receiveInNonCompliantMode());
+  }
+
+  private ASTMMessage recordReceived(ASTMMessage message) {
+    if (storedMessageCount == 0) {
+      // stored messages were counted as each one was stored
+      metrics.recordMessage(Direction.RECEIVE, astmVersion);
+    }
+    return message;
   }
 
   public Boolean establishmentReceive() throws IOException, InterruptedException {
-    socket.setSoTimeout(ESTABLISHMENT_SOCKET_TIMEOUT * 1000);
-    char establishmentChar = (ThreadUtil.readCharWithInterruptCheck(reader));
-    log.trace(
-      "received: '" +
-      LogUtil.convertForDisplay(establishmentChar) +
-      "'. Expecting establishment signal [" +
-      LogUtil.convertForDisplay(ENQ) +
-      "] aka [0x05]"
-    );
+    long start = System.nanoTime();
+    decoder.setDeadline(ESTABLISHMENT_SOCKET_TIMEOUT, TimeUnit.SECONDS);
+    char establishmentChar = readControlCharacter();
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received: '" +
+        LogUtil.convertForDisplay(establishmentChar) +
+        "'. Expecting establishment signal [" +
+        LogUtil.convertForDisplay(ENQ) +
+        "] aka [0x05]"
+      );
+    }
 
     if (establishmentChar == ENQ) {
-      log.trace("sending: '" + LogUtil.convertForDisplay(ACK) + "' to indicate ready to receive frames");
-      writer.append(ACK);
-      writer.flush();
+      if (log.isTraceEnabled()) {
+        log.trace("sending: '" + LogUtil.convertForDisplay(ACK) + "' to indicate ready to receive frames");
+      }
+      encoder.writeControlCharacter(ACK);
       log.trace("astm LIS01-A receive protocol: established");
+      metrics.recordEstablishment(Direction.RECEIVE, astmVersion, true, System.nanoTime() - start);
+      sessionTrace.record(EventType.ESTABLISHED);
       return true;
     } else if (establishmentChar == NON_COMPLIANT_START_CHARACTER) {
       //technically the ASTM specs say to "ignore other characters" but we are assuming this is just a non-compliant transmission
-      log.debug(
-        "protocol assumed to be non-compliant as '" +
-        LogUtil.convertForDisplay(establishmentChar) +
-        "' was sent. Attempting to read message in non-compliant mode'"
-      );
+      if (log.isDebugEnabled()) {
+        log.debug(
+          "protocol assumed to be non-compliant as '" +
+          LogUtil.convertForDisplay(establishmentChar) +
+          "' was sent. Attempting to read message in non-compliant mode'"
+        );
+      }
       astmVersion = ASTMVersion.NON_COMPLIANT;
+      metrics.recordEstablishment(Direction.RECEIVE, astmVersion, true, System.nanoTime() - start);
+      sessionTrace.record(EventType.ESTABLISHED, "non-compliant");
       return true;
     } else {
       //technically the ASTM specs say to "ignore other characters" but we are just stopping communication if somehting else is received
-      log.trace(
-        "sending: '" +
-        LogUtil.convertForDisplay(NAK) +
-        "' to indicate not ready to receive frames. Incorrect establishment signal"
-      );
-      writer.append(NAK);
-      writer.flush();
+      if (log.isTraceEnabled()) {
+        log.trace(
+          "sending: '" +
+          LogUtil.convertForDisplay(NAK) +
+          "' to indicate not ready to receive frames. Incorrect establishment signal"
+        );
+      }
+      encoder.writeControlCharacter(NAK);
+      metrics.recordNak(Direction.RECEIVE);
+      metrics.recordEstablishment(Direction.RECEIVE, astmVersion, false, System.nanoTime() - start);
+      sessionTrace.record(EventType.ESTABLISHMENT_REFUSED);
       return false;
     }
   }
 
   /**
    * Receives an ASTM message that is being sent non-compliantly (not using a proper ASTM transmission protocol).
-   * The non-compliant mode reads character by character until the termination record is reached.
+   * The non-compliant mode reads record by record until the termination record is reached. The whole message must
+   * be received within {@link #NON_COMPLIANT_RECEIVE_TIMEOUT}, may have at most
+   * {@link #MAX_NON_COMPLIANT_MESSAGE_SIZE} characters, and no record may be longer than {@link #MAX_TEXT_SIZE}.
    *
    * @return the received ASTM message.
    * @throws ASTMCommunicationException if there is a communication error in the ASTM transmission protocol.
    * @throws IOException if an I/O error occurs.
    */
   private ASTMMessage receiveInNonCompliantMode() throws IOException, ASTMCommunicationException {
-    final FutureTask<ASTMMessage> recievedMessageFuture = new FutureTask<>(receiveIncompliantMessage());
+    decoder.setDeadline(NON_COMPLIANT_RECEIVE_TIMEOUT, TimeUnit.SECONDS);
+    List<ASTMRecord> records = new ArrayList<>();
+    boolean messageTerminationRecordReceived = false;
+    int i = 0;
+    int messageSize = 0;
     try {
-      recievedMessageFuture.run();
-      return recievedMessageFuture.get(NON_COMPLIANT_RECEIVE_TIMEOUT, TimeUnit.SECONDS);
-    } catch (TimeoutException e) {
-      recievedMessageFuture.cancel(true);
-      log.error("a timeout occured while receiving message in non-compliant mode", e);
-    } catch (InterruptedException | ExecutionException e) {
-      log.error("the thread was interrupted or had an error in exeuction", e);
-    }
-    throw new ASTMCommunicationException("non compliant mode could not return a valid ASTM message");
-  }
-
-  /**
-   * Callable that recieves an ASTM message that is being sent non-compliantly (not using the ASTM transmission protocol).
-   * Instead the message is read character by character until the termination record is reached.
-   *
-   * @return callable thread that returns the received ASTM message.
-   */
-  private Callable<ASTMMessage> receiveIncompliantMessage() {
-    return new Callable<ASTMMessage>() {
-      @Override
-      public ASTMMessage call() throws IOException, ASTMCommunicationException {
-        List<ASTMRecord> records = new ArrayList<>();
-        boolean messageTerminationRecordReceived = false;
-        int i = 0;
-        while (!messageTerminationRecordReceived) {
-          try {
-            Set<FrameError> frameErrors = readNextIncompliantRecord(records);
-            if (frameErrors.isEmpty()) {
-              log.debug("record successfully received");
-              if (records.get(i).getRecord().trim().endsWith(TERMINATION_RECORD_END)) {
-                messageTerminationRecordReceived = true;
-              }
-              ++i;
-            } else {
+      while (!messageTerminationRecordReceived) {
+        try {
+          Set<FrameError> frameErrors = readNextIncompliantRecord(records);
+          sessionTrace.record(EventType.FRAME_RECEIVED, frameErrors.isEmpty() ? null : frameErrors.toString());
+          if (frameErrors.isEmpty()) {
+            log.debug("record successfully received");
+            messageSize += records.get(i).getRecordLength();
+            if (messageSize > MAX_NON_COMPLIANT_MESSAGE_SIZE) {
+              throw new ASTMCommunicationException(
+                "the message received in non-compliant mode exceeded " + MAX_NON_COMPLIANT_MESSAGE_SIZE + " bytes"
+              );
+            }
+            if (records.get(i).getRecord().trim().endsWith(TERMINATION_RECORD_END)) {
+              messageTerminationRecordReceived = true;
+            }
+            ++i;
+          } else {
+            if (log.isDebugEnabled()) {
               log.debug("frame unsuccessfully received due to: " + frameErrors);
             }
-          } catch (Exception e) {
-            log.error("the receiving phase had an error in exeuction", e);
           }
+        } catch (RuntimeException e) {
+          log.error("the receiving phase had an error in exeuction", e);
         }
+      }
+    } catch (SocketTimeoutException e) {
+      log.error("a timeout occured while receiving message in non-compliant mode", e);
+      throw new ASTMCommunicationException("non compliant mode could not return a valid ASTM message", e);
+    } catch (InterruptedException e) {
+      log.error("the thread was interrupted while receiving message in non-compliant mode", e);
+      throw new ASTMCommunicationException("non compliant mode could not return a valid ASTM message", e);
+    }
 
-        return astmInterpreterFactory.createInterpreterForRecords(records).interpretASTMRecordsToMessage(records);
+    ASTMMessage message = astmInterpreterFactory
+      .createInterpreterForRecords(records)
+      .interpretASTMRecordsToMessage(records);
+    sessionTrace.record(EventType.MESSAGE_INTERPRETED);
+    if (messageStore != null) {
+      try {
+        storeReceivedMessage(message);
+      } catch (InterruptedException e) {
+        throw new ASTMCommunicationException("the thread was interrupted while storing the message", e);
       }
-    };
+    }
+    return message;
   }
 
   /**
    * Receives an ASTM message that is being sent compliantly over the ASTM transmission protocol.
-   * This version supports LISA-01 and E1382-95 protocols
+   * This version supports LISA-01 and E1382-95 protocols. Each frame must be received within
+   * {@link #RECIEVE_FRAME_TIMEOUT} and the whole message within {@link #RECEIVE_MESSAGE_TIMEOUT}.
+   *
+   * If a message store is set, every message the sender sends before ending the transmission is stored on its own as
+   * soon as its message terminator record is received, and the last of them is returned.
    *
    * @return the received ASTM message.
    * @throws FrameParsingException if there is an error parsing the frame.
@@ -331,40 +400,68 @@ public class GeneralASTMCommunicator implements Communicator {
    * @throws IOException if an I/O error occurs.
    */
   private ASTMMessage receiveInCompliantMode() throws IOException, ASTMCommunicationException, FrameParsingException {
-    List<ASTMFrame> frames = new ArrayList<>();
+    // the frames are only known once they are received, so records are interpreted as each one is completed
+    ASTMMessageAssembler assembler = new ASTMMessageAssembler(
+      astmInterpreterFactory.createInterpreterForFrames(List.of())
+    );
     int i = 0;
     List<Exception> exceptions = new ArrayList<>();
+    long messageDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RECEIVE_MESSAGE_TIMEOUT);
     while (exceptions.size() <= MAX_FRAME_RETRY_ATTEMPTS) {
       if (exceptions.size() > 0) {
-        log.debug("attempting retry of frame " + i);
+        if (log.isDebugEnabled()) {
+          log.debug("attempting retry of frame " + i);
+        }
+        metrics.recordFrameRetry(Direction.RECEIVE);
       }
-      final FutureTask<ReadFrameInfo> recievedFrameFuture = new FutureTask<>(receiveNextFrameTask(frames));
+      long frameStart = System.nanoTime();
+      long frameDeadline = frameStart + TimeUnit.SECONDS.toNanos(RECIEVE_FRAME_TIMEOUT);
+      decoder.setDeadline(frameDeadline - messageDeadline < 0 ? frameDeadline : messageDeadline);
       try {
-        recievedFrameFuture.run();
-        ReadFrameInfo frameInfo = recievedFrameFuture.get(RECIEVE_FRAME_TIMEOUT, TimeUnit.SECONDS);
+        ReadFrameInfo frameInfo = receiveNextFrame(assembler, (i + 1) % 8);
         if (frameInfo.getStartChar() == EOT) {
+          sessionTrace.record(EventType.END_OF_TRANSMISSION);
           break;
         }
+        metrics.recordFrameReceived(astmVersion, System.nanoTime() - frameStart);
+        if (sessionTrace.isEnabled()) {
+          sessionTrace.record(EventType.FRAME_RECEIVED, "frame " + (i + 1));
+        }
         Set<FrameError> frameErrors = frameInfo.getFrameErrors();
-        if (frameErrors.isEmpty()) {
+        if (frameErrors.isEmpty() && !storeBeforeAcknowledging(assembler)) {
+          if (log.isTraceEnabled()) {
+            log.trace("sending: '" + LogUtil.convertForDisplay(NAK) + "' as the message could not be stored");
+          }
+          encoder.writeControlCharacter(NAK);
+          metrics.recordNak(Direction.RECEIVE);
+          sessionTrace.record(EventType.FRAME_REJECTED, "message could not be stored");
+          exceptions.add(new ASTMCommunicationException("message could not be stored"));
+        } else if (frameErrors.isEmpty()) {
           log.debug("frame successfully received");
-          log.trace("sending: '" + LogUtil.convertForDisplay(ACK) + "' to indicate received frame correctly");
-          writer.append(ACK); //it is also permitted to send an EOT to try to end the transmission after reading a frame
-          writer.flush();
+          if (log.isTraceEnabled()) {
+            log.trace("sending: '" + LogUtil.convertForDisplay(ACK) + "' to indicate received frame correctly");
+          }
+          encoder.writeControlCharacter(ACK); //it is also permitted to send an EOT to try to end the transmission after reading a frame
+          sessionTrace.record(EventType.FRAME_ACKNOWLEDGED);
           exceptions = new ArrayList<>(); // reset as retry mechanism is per frame
           ++i;
         } else {
-          log.debug("frame unsuccessfully received due to: " + frameErrors);
-          log.trace("sending: '" + LogUtil.convertForDisplay(NAK) + "' to indicate received frame incorrectly");
-          writer.append(NAK);
-          writer.flush();
+          if (log.isDebugEnabled()) {
+            log.debug("frame unsuccessfully received due to: " + frameErrors);
+          }
+          if (log.isTraceEnabled()) {
+            log.trace("sending: '" + LogUtil.convertForDisplay(NAK) + "' to indicate received frame incorrectly");
+          }
+          encoder.writeControlCharacter(NAK);
+          metrics.recordFrameErrors(frameErrors);
+          metrics.recordNak(Direction.RECEIVE);
+          sessionTrace.record(EventType.FRAME_REJECTED, frameErrors.toString());
           exceptions.add(new ASTMCommunicationException("frame unsuccessfully received due to: " + frameErrors));
         }
-      } catch (TimeoutException e) {
-        recievedFrameFuture.cancel(true);
-        throw new ASTMCommunicationException("a timeout occured while receiving message in non-compliant mode", e);
-      } catch (InterruptedException | ExecutionException e) {
-        throw new ASTMCommunicationException("the thread was interrupted or had an error in exeuction", e);
+      } catch (SocketTimeoutException e) {
+        throw new ASTMCommunicationException("a timeout occured while receiving message in compliant mode", e);
+      } catch (InterruptedException e) {
+        throw new ASTMCommunicationException("the thread was interrupted while receiving message", e);
       }
     }
 
@@ -374,148 +471,162 @@ public class GeneralASTMCommunicator implements Communicator {
         log.error("" + e.getMessage());
       }
       //sender is supposed to enter the termination phase when max attempts are reached, which means EOT is expected, but is irrelevant)
+      decoder.setDeadline(RECIEVE_FRAME_TIMEOUT, TimeUnit.SECONDS);
       try {
         @SuppressWarnings("unused")
-        char eotChar = (char) reader.read();
+        char eotChar = readControlCharacter();
       } catch (SocketTimeoutException e) {
         log.error("socket timed out waiting for end of transmission after max retries reached");
         throw new ASTMCommunicationException(
           "the receiving phase failed or had exceptions exceeding the number of retries",
           e
         );
+      } catch (InterruptedException e) {
+        throw new ASTMCommunicationException("the thread was interrupted waiting for end of transmission", e);
       }
       throw new ASTMCommunicationException(
         "the receiving phase failed or had exceptions exceeding the number of retries"
       );
     }
 
-    return astmInterpreterFactory.createInterpreterForFrames(frames).interpretFramesToASTMMessage(frames);
+    if (storedMessage != null && assembler.isEmpty()) {
+      return storedMessage;
+    }
+    ASTMMessage message = assembler.getMessage();
+    sessionTrace.record(EventType.MESSAGE_INTERPRETED);
+    if (messageStore != null) {
+      // the sender did not send a message terminator record, so the message could only be stored once it ended
+      try {
+        storeReceivedMessage(message);
+      } catch (InterruptedException e) {
+        throw new ASTMCommunicationException("the thread was interrupted while storing the message", e);
+      }
+    }
+    return message;
+  }
+
+  /**
+   * Stores the message received so far if a message store is set and the last received frame holds the message
+   * terminator record, and starts assembling the next message of the transmission. If the message could not be
+   * stored, the last frame is undone so it can be received again.
+   *
+   * @param assembler the assembler holding the message received so far.
+   * @return false if the message could not be stored, true otherwise.
+   * @throws InterruptedException if the thread was interrupted while waiting for the message to be stored.
+   */
+  private boolean storeBeforeAcknowledging(ASTMMessageAssembler assembler) throws InterruptedException {
+    if (messageStore == null || !assembler.isMessageTerminated()) {
+      return true;
+    }
+    try {
+      ASTMMessage message = assembler.getMessage();
+      sessionTrace.record(EventType.MESSAGE_INTERPRETED);
+      storeReceivedMessage(message);
+      assembler.reset();
+      return true;
+    } catch (IOException e) {
+      log.error("the received message could not be stored", e);
+      assembler.undoLastFrame();
+      return false;
+    }
+  }
+
+  private void storeReceivedMessage(ASTMMessage message) throws IOException, InterruptedException {
+    log.debug("storing received message");
+    messageStore.store(message);
+    storedMessage = message;
+    ++storedMessageCount;
+    metrics.recordMessage(Direction.RECEIVE, astmVersion);
   }
 
   /**
-   * Creates a callable task that reads a single frame and adds it to the list of frames.
+   * Reads a single frame and adds it to the message being assembled.
    *
-   * @param frames the list of frames that this task will add the next frame to.
-   * @return a callable task that returns the information about the frame that was read
+   * @param assembler the assembler to add the next frame to.
+   * @param expectedFrameNumber the number the next frame should have.
+   * @return the information about the frame that was read
+   * @throws SocketTimeoutException if the read deadline passed before the frame was read.
    * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
+   * @throws FrameParsingException if the frame could not be added to the message.
    */
-  private Callable<ReadFrameInfo> receiveNextFrameTask(List<ASTMFrame> frames) throws IOException {
-    return new Callable<ReadFrameInfo>() {
-      @Override
-      public ReadFrameInfo call() throws IOException, InterruptedException {
-        socket.setSoTimeout(RECIEVE_FRAME_TIMEOUT * 1000);
-        char startChar = ThreadUtil.readCharWithInterruptCheck(reader);
-        log.trace(
-          "received: '" +
-          LogUtil.convertForDisplay(startChar) +
-          "'. Expecting start of frame ['" +
-          LogUtil.convertForDisplay(STX) +
-          "'] aka [0x02]"
-        );
-        if (startChar == EOT) {
-          log.debug("'" + LogUtil.convertForDisplay(EOT) + "' detected");
-          return new ReadFrameInfo(new HashSet<>(), startChar);
-        } else if (startChar == STX) {
-          return new ReadFrameInfo(readNextCompliantFrame(frames, (frames.size() + 1) % 8), startChar);
-        } else {
-          log.error("illegal start character '" + LogUtil.convertForDisplay(startChar) + "' detected");
-          return new ReadFrameInfo(Set.of(FrameError.ILLEGAL_START), startChar);
-        }
+  private ReadFrameInfo receiveNextFrame(ASTMMessageAssembler assembler, int expectedFrameNumber)
+    throws IOException, InterruptedException, FrameParsingException {
+    char startChar = readControlCharacter();
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received: '" +
+        LogUtil.convertForDisplay(startChar) +
+        "'. Expecting start of frame ['" +
+        LogUtil.convertForDisplay(STX) +
+        "'] aka [0x02]"
+      );
+    }
+    if (startChar == EOT) {
+      if (log.isDebugEnabled()) {
+        log.debug("'" + LogUtil.convertForDisplay(EOT) + "' detected");
       }
-    };
+      return new ReadFrameInfo(new HashSet<>(), startChar);
+    } else if (startChar == STX) {
+      return new ReadFrameInfo(readNextCompliantFrame(assembler, expectedFrameNumber), startChar);
+    } else {
+      log.error("illegal start character '" + LogUtil.convertForDisplay(startChar) + "' detected");
+      return new ReadFrameInfo(Set.of(FrameError.ILLEGAL_START), startChar);
+    }
   }
 
   /**
-   * Read the next frame from the reader and add it to the list of frames.
+   * Read the next frame from the decoder and add it to the message being assembled.
    *
-   * @param frames the list of frames that this task will add the next frame to.
+   * @param assembler the assembler that this task will add the next frame to.
    * @param expectedFrameNumber the expected number that the next frame whouls start with.
    * @return a Set of issues with the frame that was received. This will be empty if no issue was detected.
    * @throws IOException if an I/O error occurs.
    * @throws InterruptedException if the operation is interrupted.
+   * @throws FrameParsingException if the frame could not be added to the message.
    */
-  private Set<FrameError> readNextCompliantFrame(List<ASTMFrame> frames, int expectedFrameNumber)
-    throws IOException, InterruptedException {
+  private Set<FrameError> readNextCompliantFrame(ASTMMessageAssembler assembler, int expectedFrameNumber)
+    throws IOException, InterruptedException, FrameParsingException {
     log.debug("reading frame...");
-    Set<FrameError> frameErrors = new HashSet<>();
-
-    char frameNumberChar = ThreadUtil.readCharWithInterruptCheck(reader);
-    log.trace("received: '" + LogUtil.convertForDisplay(frameNumberChar) + "'. Expecting frame number [0-7]");
-
-    if (expectedFrameNumber != Character.getNumericValue(frameNumberChar)) {
-      frameErrors.add(FrameError.WRONG_FRAME_NUMBER);
-      //TODO add case where frame was retransmitted (expected frame number -1 mod 8. must also overwrite last frame)
+    DecodedFrame decodedFrame = decoder.readFrame(
+      expectedFrameNumber,
+      astmVersion == ASTMVersion.LIS01_A ? MAX_TEXT_SIZE : MAX_TEXT_SIZE_E138195
+    );
+    Set<FrameError> frameErrors = decodedFrame.getFrameErrors();
+    String text = decodedFrame.getText();
+    log.debug("frame text received");
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received frame: '" +
+        LogUtil.convertForDisplay(text) +
+        "'. Expecting ASTM record. Illegal characters [0x00-0x06, 0x08, 0x0A, 0x0E-0x1F, 0x7F, 0xFF]"
+      );
     }
-    char curChar = ThreadUtil.readCharWithInterruptCheck(reader);
-
-    int frameSize = 0;
-    StringBuilder textBuilder = new StringBuilder();
-    while (curChar != ETB && curChar != ETX) {
-      if (RESTRICTED_CHARACTERS.contains(curChar)) {
-        frameErrors.add(FrameError.ILLEGAL_CHAR);
-        log.error("illegal character detected: '" + LogUtil.convertForDisplay(curChar) + "'.");
-      }
-      if ((astmVersion == ASTMVersion.LIS01_A ? MAX_TEXT_SIZE : MAX_TEXT_SIZE_E138195) < frameSize) {
-        frameErrors.add(FrameError.MAX_SIZE_EXCEEDED);
-        log.error("max frame size exceeded character.");
-      }
-      textBuilder.append(curChar);
-      ++frameSize;
-      curChar = ThreadUtil.readCharWithInterruptCheck(reader);
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received: '" +
+        LogUtil.convertForDisplay(decodedFrame.getChecksum()) +
+        "'. Expecting 2 base 16 checksum characters [00-FF]"
+      );
+    }
+    if (frameErrors.contains(FrameError.ILLEGAL_CHAR)) {
+      log.error("illegal character detected in frame.");
+    }
+    if (frameErrors.contains(FrameError.MAX_SIZE_EXCEEDED)) {
+      log.error("max frame size exceeded character.");
     }
-    boolean finalFrame = (curChar == ETX);
-    String text = textBuilder.toString();
-    log.debug("frame text received");
-    log.trace(
-      "received frame: '" +
-      LogUtil.convertForDisplay(text) +
-      "'. Expecting ASTM record. Illegal characters [0x00-0x06, 0x08, 0x0A, 0x0E-0x1F, 0x7F, 0xFF]"
-    );
-    log.trace(
-      "received: '" +
-      LogUtil.convertForDisplay(curChar) +
-      "'. Expecting control code indicating end of text ['" +
-      LogUtil.convertForDisplay(ETB) +
-      "', '" +
-      LogUtil.convertForDisplay(ETX) +
-      "'] aka [0x17, 0x03]"
-    );
-    StringBuilder checksum = new StringBuilder();
-    checksum.append((char) reader.read());
-    checksum.append((char) reader.read());
-
-    log.debug("checking checksum...");
-    if (!checksumFits(checksum.toString(), frameNumberChar, text, curChar)) {
-      frameErrors.add(FrameError.BAD_CHECKSUM);
-    }
-    String endFrameControlCode = "";
-    char endOfFrameChar = ThreadUtil.readCharWithInterruptCheck(reader);
-    endFrameControlCode = endFrameControlCode + endOfFrameChar;
-    if (CR != endOfFrameChar) {
-      frameErrors.add(FrameError.ILLEGAL_END);
-    }
-    endOfFrameChar = ThreadUtil.readCharWithInterruptCheck(reader);
-    endFrameControlCode = endFrameControlCode + endOfFrameChar;
-    if (LF != endOfFrameChar) {
-      frameErrors.add(FrameError.ILLEGAL_END);
-    }
-    log.trace(
-      "received:'" +
-      LogUtil.convertForDisplay(endFrameControlCode) +
-      "'. Expecting control code indicating end of frame ['" +
-      LogUtil.convertForDisplay("" + CR + LF) +
-      "'] aka [0x0D0x0A]"
-    );
 
     if (frameErrors.isEmpty()) {
       ASTMFrame frame = new DefaultASTMFrame();
-      frame.setFrameNumber(Character.getNumericValue(frameNumberChar));
-      frame.setType(finalFrame ? FrameType.END : FrameType.INTERMEDIATE);
+      frame.setFrameNumber(decodedFrame.getFrameNumber());
+      frame.setType(decodedFrame.isFinalFrame() ? FrameType.END : FrameType.INTERMEDIATE);
       frame.setText(text);
-      frames.add(frame);
-      log.debug("frame added to list of frames");
+      assembler.accept(frame);
+      log.debug("frame added to message");
     } else {
-      log.debug("frame not added to list of frames due to errors: " + frameErrors);
+      if (log.isDebugEnabled()) {
+        log.debug("frame not added to message due to errors: " + frameErrors);
+      }
     }
     if (Thread.interrupted()) {
       throw new InterruptedException();
@@ -534,22 +645,16 @@ public class GeneralASTMCommunicator implements Communicator {
   private Set<FrameError> readNextIncompliantRecord(List<ASTMRecord> records) throws IOException, InterruptedException {
     log.debug("reading incompliant record...");
     Set<FrameError> recordErrors = new HashSet<>();
-    StringBuilder textBuilder = new StringBuilder();
-    char curChar = ' ';
-    while (curChar != CR) {
-      curChar = ThreadUtil.readCharWithInterruptCheck(reader);
-      if (RESTRICTED_CHARACTERS.contains(curChar)) {
-        recordErrors.add(FrameError.ILLEGAL_CHAR);
-      }
-      textBuilder.append(curChar);
-    }
-    String text = textBuilder.toString();
+    // a record that would not fit in a single frame is rejected, so a sender that never ends a record is bounded
+    String text = decoder.readRecord(MAX_TEXT_SIZE, recordErrors);
     log.debug("record text received");
-    log.trace(
-      "received record: '" +
-      LogUtil.convertForDisplay(text) +
-      "'. Expecting ASTM frame. Illegal characters [0x00-0x06, 0x08, 0x0A, 0x0E-0x1F, 0x7F, 0xFF]"
-    );
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received record: '" +
+        LogUtil.convertForDisplay(text) +
+        "'. Expecting ASTM frame. Illegal characters [0x00-0x06, 0x08, 0x0A, 0x0E-0x1F, 0x7F, 0xFF]"
+      );
+    }
 
     if (recordErrors.isEmpty()) {
       ASTMRecord record = astmInterpreterFactory.createInterpreterForText(text).interpretASTMTextToRecord(text);
@@ -564,214 +669,251 @@ public class GeneralASTMCommunicator implements Communicator {
     throws ASTMCommunicationException, IOException, InterruptedException {
     log.trace("starting sendProtocol for ASTM message");
 
-    List<ASTMFrame> frames = astmInterpreterFactory.createInterpreter(message).interpretASTMMessageToFrames(message);
+    Iterator<ASTMFrame> frames = astmInterpreterFactory
+      .createInterpreter(message)
+      .interpretASTMMessageToFrameIterator(message, astmVersion);
+
+    SendResult establishmentResult = establish();
+    if (establishmentResult != null) {
+      return establishmentResult;
+    }
+    sendFrames(frames, 0);
+    metrics.recordMessage(Direction.SEND, astmVersion);
+    terminationSignal();
+    return new SendResult(false, false, 1);
+  }
+
+  /**
+   * Sends the messages one after the other within a single establishment phase, so the receiver only has to
+   * establish communication once for all of them. Frame numbers continue across the messages as required by the ASTM
+   * transmission protocol. If a message can not be sent, the exchange is terminated and the messages after it are not
+   * sent.
+   */
+  @Override
+  public SendResult sendProtocol(List<ASTMMessage> messages)
+    throws ASTMCommunicationException, IOException, InterruptedException {
+    if (log.isTraceEnabled()) {
+      log.trace("starting sendProtocol for " + messages.size() + " ASTM messages");
+    }
+
+    SendResult establishmentResult = establish();
+    if (establishmentResult != null) {
+      return establishmentResult;
+    }
+    int frameCount = 0;
+    for (int i = 0; i < messages.size(); i++) {
+      ASTMMessage message = messages.get(i);
+      try {
+        frameCount = sendFrames(
+          astmInterpreterFactory.createInterpreter(message).interpretASTMMessageToFrameIterator(message, astmVersion),
+          frameCount
+        );
+      } catch (ASTMCommunicationException | IOException e) {
+        log.error("sent " + i + " of " + messages.size() + " messages before an error occurred", e);
+        return new SendResult(false, false, i);
+      }
+      metrics.recordMessage(Direction.SEND, astmVersion);
+      if (log.isDebugEnabled()) {
+        log.debug("sent message " + (i + 1) + " of " + messages.size());
+      }
+    }
+    terminationSignal();
+    return new SendResult(false, false, messages.size());
+  }
 
+  /**
+   * Performs the establishment phase of the send protocol.
+   *
+   * @return null if communication was established, otherwise the result of the send operation.
+   * @throws ASTMCommunicationException if the receiver sent an invalid response or did not respond.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  private SendResult establish() throws ASTMCommunicationException, IOException, InterruptedException {
     Boolean established = false;
     Boolean nakReceived = false;
-    final FutureTask<Character> establishedFuture = new FutureTask<>(establishmentTaskSend());
+    long start = System.nanoTime();
     try {
-      establishedFuture.run();
-      Character validResponseChar = establishedFuture.get(ESTABLISHMENT_SEND_TIMEOUT, TimeUnit.SECONDS);
-      Boolean lineContention = Character.compare(validResponseChar, ENQ) == 0;
+      char validResponseChar = establishmentSend();
+      Boolean lineContention = validResponseChar == ENQ;
       if (lineContention) {
-        return new SendResult(true, false);
+        metrics.recordEstablishment(Direction.SEND, astmVersion, false, System.nanoTime() - start);
+        return new SendResult(true, false, 0);
       }
-      established = Character.compare(validResponseChar, ACK) == 0;
-      nakReceived = Character.compare(validResponseChar, NAK) == 0;
-    } catch (TimeoutException e) {
-      establishedFuture.cancel(true);
+      established = validResponseChar == ACK;
+      nakReceived = validResponseChar == NAK;
+    } catch (SocketTimeoutException e) {
       log.error("a timeout occured during the establishment phase of the send protocol", e);
-    } catch (InterruptedException | ExecutionException e) {
-      log.error("the establishment phase of the send protocol was interrupted or had an error in execution", e);
+    }
+    metrics.recordEstablishment(Direction.SEND, astmVersion, established, System.nanoTime() - start);
+    if (nakReceived) {
+      metrics.recordNak(Direction.SEND);
     }
 
     if (established) {
       log.trace("established");
+      return null;
     } else if (nakReceived) {
-      return new SendResult(false, true);
+      return new SendResult(false, true, 0);
     } else {
       terminationSignal();
       throw new ASTMCommunicationException("received a non-valid response or nothing in the establishment phase");
     }
+  }
 
-    List<Exception> exceptions = new ArrayList<>();
-    for (int i = 0; i < frames.size(); i++) {
-      try {
-        sendNextFrameTask(frames.get(i)).call();
-      } catch (Exception e) {
-        exceptions.add(e);
-        log.error("the sending phase was interrupted or had an error in exeuction", e);
-      }
-
-      if (exceptions.size() > MAX_FRAME_RETRY_ATTEMPTS) {
-        terminationSignal();
-        throw new ASTMCommunicationException("the send phase had too many retries sending frame " + i);
-      }
-
-      socket.setSoTimeout(SEND_FRAME_TIMEOUT * 1000);
-      char response = ' ';
-      try {
-        response = ThreadUtil.readCharWithInterruptCheck(reader);
-      } catch (SocketTimeoutException e) {
-        terminationSignal();
-        throw new ASTMCommunicationException(
-          "timeout occured while waiting for an acknowledgement of the sent frame",
-          e
-        );
-      } catch (InterruptedException e) {
-        terminationSignal();
-        throw e;
-      }
-      log.trace(
-        "received: '" +
-        LogUtil.convertForDisplay(response) +
-        "'. Expecting frame acknownledgment [ACK, NAK, EOT] aka [0x06, 0x15, 0x04]"
-      );
-      if (response == ACK) {
-        exceptions = new ArrayList<>();
-        continue;
-      } else if (response == EOT) {
-        terminationSignal();
-        throw new ASTMCommunicationException("the send phase was terminated early by the receiver");
-      } else if (response == NAK) {
-        exceptions.add(new ASTMCommunicationException("NAK received for frame " + i));
-        if (exceptions.size() > MAX_FRAME_RETRY_ATTEMPTS) {
-          terminationSignal();
-          throw new ASTMCommunicationException("the send phase had too many retries sending frame " + i);
+  /**
+   * Sends the frames of a message, waiting for the receiver to acknowledge each one. A frame that is not acknowledged
+   * is sent again, up to {@link #MAX_FRAME_RETRY_ATTEMPTS} times. If the frames can not be sent, the termination
+   * signal is sent before the exception is thrown.
+   *
+   * @param frames the frames to send.
+   * @param frameCount the number of frames already sent in this exchange, which the frame numbers continue from.
+   * @return the number of frames sent in this exchange, including the frames of this message.
+   * @throws ASTMCommunicationException if the receiver did not acknowledge a frame.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  private int sendFrames(Iterator<ASTMFrame> frames, int frameCount)
+    throws ASTMCommunicationException, IOException, InterruptedException {
+    while (frames.hasNext()) {
+      ASTMFrame frame = frames.next();
+      frame.setFrameNumber(++frameCount % 8);
+      List<Exception> exceptions = new ArrayList<>();
+      boolean acknowledged = false;
+      while (!acknowledged) {
+        if (!exceptions.isEmpty()) {
+          metrics.recordFrameRetry(Direction.SEND);
+        }
+        try {
+          sendFrame(frame);
+        } catch (IOException e) {
+          exceptions.add(e);
+          log.error("the sending phase was interrupted or had an error in exeuction", e);
         }
-        continue;
-      } else {
-        exceptions.add(new ASTMCommunicationException("Illegal character received in acknowledgment for frame " + i));
+
         if (exceptions.size() > MAX_FRAME_RETRY_ATTEMPTS) {
           terminationSignal();
-          throw new ASTMCommunicationException("the send phase had too many retries sending frame " + i);
+          throw new ASTMCommunicationException("the send phase had too many retries sending frame " + frameCount);
         }
-        continue;
-      }
-    }
-    terminationSignal();
-    return new SendResult(false, false);
-  }
 
-  /**
-   * Sends the signal to establish communication with the receiver, beginning the "establishment phase" of the ASTM transmission protocol.
-   *
-   * @return a callable task that returns the response character from the receiver.
-   */
-  private Callable<Character> establishmentTaskSend() {
-    return new Callable<Character>() {
-      @Override
-      public Character call() throws IOException, InterruptedException {
-        socket.setSoTimeout(ESTABLISHMENT_SEND_TIMEOUT);
-        log.trace("sending: '" + LogUtil.convertForDisplay(ENQ) + "' as establishment signal");
-        writer.append(ENQ);
-        writer.flush();
-        char response;
+        decoder.setDeadline(SEND_FRAME_TIMEOUT, TimeUnit.SECONDS);
+        char response = ' ';
         try {
-          response = ThreadUtil.readCharWithInterruptCheck(reader);
+          response = readControlCharacter();
+        } catch (SocketTimeoutException e) {
+          terminationSignal();
+          throw new ASTMCommunicationException(
+            "timeout occured while waiting for an acknowledgement of the sent frame",
+            e
+          );
         } catch (InterruptedException e) {
-          log.error("socket timed out while waiting for response to establishment signal");
+          terminationSignal();
           throw e;
         }
-        log.trace(
-          "received: '" +
-          LogUtil.convertForDisplay(response) +
-          "'. Expecting establishment response ['" +
-          LogUtil.convertForDisplay(ACK) +
-          "', '" +
-          LogUtil.convertForDisplay(NAK) +
-          "', '" +
-          LogUtil.convertForDisplay(ENQ) +
-          "'] aka [0x06, 0x15, 0x04]"
-        );
+        if (log.isTraceEnabled()) {
+          log.trace(
+            "received: '" +
+            LogUtil.convertForDisplay(response) +
+            "'. Expecting frame acknownledgment [ACK, NAK, EOT] aka [0x06, 0x15, 0x04]"
+          );
+        }
         if (response == ACK) {
-          return ACK;
+          acknowledged = true;
+        } else if (response == EOT) {
+          terminationSignal();
+          throw new ASTMCommunicationException("the send phase was terminated early by the receiver");
         } else if (response == NAK) {
-          return NAK;
-        } else if (response == ENQ) {
-          return ENQ;
+          metrics.recordNak(Direction.SEND);
+          exceptions.add(new ASTMCommunicationException("NAK received for frame " + frameCount));
         } else {
-          return null;
+          exceptions.add(
+            new ASTMCommunicationException("Illegal character received in acknowledgment for frame " + frameCount)
+          );
+        }
+        if (exceptions.size() > MAX_FRAME_RETRY_ATTEMPTS) {
+          terminationSignal();
+          throw new ASTMCommunicationException("the send phase had too many retries sending frame " + frameCount);
         }
       }
-    };
+    }
+    return frameCount;
   }
 
   /**
-   * Creates a callable task that sends the next ASTM frame to the receiver.
+   * Sends the signal to establish communication with the receiver, beginning the "establishment phase" of the ASTM transmission protocol.
+   * The receiver must respond within {@link #ESTABLISHMENT_SEND_TIMEOUT}.
    *
-   * @param frame the ASTM frame to send to the reciever.
-   * @return a callable task that sends the next ASTM frame and returns true if the frame was sent successfully.
+   * @return the response character from the receiver if it is a valid response (ACK, NAK or ENQ), otherwise 0.
+   * @throws SocketTimeoutException if the receiver did not respond in time.
+   * @throws IOException if an I/O error occurs.
+   * @throws InterruptedException if the thread was interrupted.
    */
-  private Callable<Boolean> sendNextFrameTask(ASTMFrame frame) {
-    return new Callable<Boolean>() {
-      @Override
-      public Boolean call() {
-        StringBuilder frameBuilder = new StringBuilder();
-        char frameNumber = Character.forDigit(frame.getFrameNumber(), 10);
-        char frameTerminator = frame.getType() == FrameType.INTERMEDIATE ? ETB : ETX;
-        frameBuilder
-          .append(STX) //
-          .append(frameNumber) //
-          .append(frame.getText()) //
-          .append(frameTerminator) //
-          .append(checksumCalc(frameNumber, frame.getText(), frameTerminator)) //
-          .append(CR) //
-          .append(LF);
-        String frame = frameBuilder.toString();
-        log.trace("sending frame: '" + LogUtil.convertForDisplay(frame) + "'");
-        writer.append(frame);
-        writer.flush();
-
-        return true;
-      }
-    };
+  private char establishmentSend() throws IOException, InterruptedException {
+    decoder.setDeadline(ESTABLISHMENT_SEND_TIMEOUT, TimeUnit.SECONDS);
+    if (log.isTraceEnabled()) {
+      log.trace("sending: '" + LogUtil.convertForDisplay(ENQ) + "' as establishment signal");
+    }
+    encoder.writeControlCharacter(ENQ);
+    char response = readControlCharacter();
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "received: '" +
+        LogUtil.convertForDisplay(response) +
+        "'. Expecting establishment response ['" +
+        LogUtil.convertForDisplay(ACK) +
+        "', '" +
+        LogUtil.convertForDisplay(NAK) +
+        "', '" +
+        LogUtil.convertForDisplay(ENQ) +
+        "'] aka [0x06, 0x15, 0x04]"
+      );
+    }
+    if (response == ACK || response == NAK || response == ENQ) {
+      return response;
+    } else {
+      return 0;
+    }
   }
 
   /**
-   * Sends the termination signal to enter the termination phase of the ASTM transmission protocol.
+   * Sends the next ASTM frame to the receiver.
+   *
+   * @param frame the ASTM frame to send to the reciever.
+   * @throws IOException if an I/O error occurs.
    */
-  private void terminationSignal() {
-    log.debug("sending '" + LogUtil.convertForDisplay(EOT) + "' as termination for exchange");
-    writer.append(EOT);
-    writer.flush();
+  private void sendFrame(ASTMFrame frame) throws IOException {
+    if (log.isTraceEnabled()) {
+      log.trace("sending frame: '" + LogUtil.convertForDisplay(frame.getText()) + "'");
+    }
+    ASTMChecksum checksum = encoder.writeFrame(
+      frame.getFrameNumber(),
+      frame.getText(),
+      frame.getType() != FrameType.INTERMEDIATE
+    );
+    if (log.isDebugEnabled()) {
+      log.debug("frame number " + frame.getFrameNumber() + " sent with checksum: " + checksum);
+    }
   }
 
   /**
-   * Sends the termination signal to enter the termination phase of the ASTM transmission protocol.
+   * Reads a single control character from the sender.
    *
-   * @param checksum the checksum that the calculated checksum should match.
-   * @param frameNumber the frame number character to be used in the checksum calculation.
-   * @param frame the frame to be used in the checksum calculation.
-   * @param frameTerminator the frame terminator character to be used in the checksum calculation.
-   * @return true if the checksum matches the calculated checksum.
+   * @return the character that was read.
+   * @throws IOException if an I/O error occurs, or the end of the stream was reached.
+   * @throws InterruptedException if the thread was interrupted.
    */
-  private boolean checksumFits(String checksum, char frameNumber, String frame, char frameTerminator) {
-    log.trace(
-      "received: '" + LogUtil.convertForDisplay(checksum) + "'. Expecting 2 base 16 checksum characters [00-FF]"
-    );
-    return checksum.equals(checksumCalc(frameNumber, frame, frameTerminator));
+  private char readControlCharacter() throws IOException, InterruptedException {
+    return (char) (decoder.read() & 0xFF);
   }
 
   /**
-   * Calculates the checksum from the parameters.
-   *
-   * @param frameNumber the frame number character to be used in the checksum calculation.
-   * @param frame the frame to be used in the checksum calculation.
-   * @param frameTerminator the frame terminator character to be used in the checksum calculation.
-   * @return the calculated checksum as a String.
+   * Sends the termination signal to enter the termination phase of the ASTM transmission protocol.
    */
-  private String checksumCalc(char frameNumber, String frame, char frameTerminator) {
-    int computedChecksum = 0;
-    computedChecksum += (byte) frameNumber;
-    for (byte curByte : frame.getBytes(Charset.forName(StandardCharsets.UTF_8.toString()))) {
-      computedChecksum += curByte;
-    }
-    computedChecksum += (byte) frameTerminator;
-    computedChecksum %= 256;
-    String checksum = String.format("%02X", computedChecksum);
-    log.debug("frame number " + frameNumber + " calculated checksum: " + checksum);
-    return checksum;
+  private void terminationSignal() throws IOException {
+    if (log.isDebugEnabled()) {
+      log.debug("sending '" + LogUtil.convertForDisplay(EOT) + "' as termination for exchange");
+    }
+    encoder.writeControlCharacter(EOT);
   }
 
   /**
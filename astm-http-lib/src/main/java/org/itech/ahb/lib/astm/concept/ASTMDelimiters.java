@@ -0,0 +1,64 @@
+package org.itech.ahb.lib.astm.concept;
+
+import lombok.Data;
+
+/**
+ * This class holds the delimiters that separate the fields of ASTM records, the repeats of a field, and the components
+ * of a repeat, along with the escape character. A message defines its delimiters in the second field of its header
+ * record, directly after the record type, e.g. "H|\^&" defines the default delimiters.
+ */
+@Data
+public class ASTMDelimiters {
+
+  public static final char HEADER_RECORD_TYPE = 'H';
+  public static final ASTMDelimiters DEFAULT = new ASTMDelimiters('|', '\\', '^', '&');
+
+  private final char fieldDelimiter;
+  private final char repeatDelimiter;
+  private final char componentDelimiter;
+  private final char escapeCharacter;
+
+  /**
+   * Reads the delimiters defined by a header record.
+   *
+   * @param headerRecord the text of the header record.
+   * @return the delimiters, or the default delimiters if the text is not a header record that defines them.
+   */
+  public static ASTMDelimiters fromHeaderRecord(CharSequence headerRecord) {
+    if (headerRecord.length() < 5 || headerRecord.charAt(0) != HEADER_RECORD_TYPE) {
+      return DEFAULT;
+    }
+    return new ASTMDelimiters(
+      headerRecord.charAt(1),
+      headerRecord.charAt(2),
+      headerRecord.charAt(3),
+      headerRecord.charAt(4)
+    );
+  }
+
+  /**
+   * Reads the delimiters defined by a header record that is encoded as bytes.
+   *
+   * @param data the buffer holding the header record.
+   * @param offset the position of the header record in the buffer.
+   * @param length the length of the header record in bytes.
+   * @return the delimiters, or the default delimiters if the bytes are not a header record that defines them.
+   */
+  public static ASTMDelimiters fromHeaderRecord(byte[] data, int offset, int length) {
+    if (length < 5 || data[offset] != HEADER_RECORD_TYPE) {
+      return DEFAULT;
+    }
+    for (int i = 1; i < 5; ++i) {
+      if (data[offset + i] < 0) {
+        // delimiters are single byte characters, this is not a delimiter definition
+        return DEFAULT;
+      }
+    }
+    return new ASTMDelimiters(
+      (char) data[offset + 1],
+      (char) data[offset + 2],
+      (char) data[offset + 3],
+      (char) data[offset + 4]
+    );
+  }
+}
@@ -1,5 +1,9 @@
 package org.itech.ahb.lib.astm.concept;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 
 /**
@@ -16,11 +20,13 @@ public interface ASTMMessage {
    * Adds a record to the ASTM message.
    *
    * @param record the ASTM record to add.
+   * @throws UnsupportedOperationException if the message can not be changed, such as a {@link DefaultASTMMessage}.
    */
   void addRecord(ASTMRecord record);
 
   /**
-   * Gets the list of records in the ASTM message.
+   * Gets the list of records in the ASTM message. The records must not be changed through this list, see
+   * {@link ASTMRecord}.
    *
    * @return the list of records.
    */
@@ -39,4 +45,81 @@ public interface ASTMMessage {
    * @return the text of the message.
    */
   String getMessage();
+
+  /**
+   * Gets the delimiters of the ASTM message, as defined by its header record.
+   *
+   * @return the delimiters, or the default delimiters if the message has no header record that defines them.
+   */
+  default ASTMDelimiters getDelimiters() {
+    List<ASTMRecord> records = getRecords();
+    if (records != null) {
+      for (ASTMRecord record : records) {
+        String text = record.getRecord();
+        if (!text.isEmpty() && text.charAt(0) == ASTMDelimiters.HEADER_RECORD_TYPE) {
+          return ASTMDelimiters.fromHeaderRecord(text);
+        }
+      }
+    }
+    return ASTMDelimiters.DEFAULT;
+  }
+
+  /**
+   * Gets the length in bytes of the text of the ASTM message when encoded as UTF-8.
+   *
+   * @return the length of the encoded message.
+   */
+  default int getMessageByteLength() {
+    List<ASTMRecord> records = getRecords();
+    if (records == null) {
+      return 0;
+    }
+    int length = 0;
+    for (ASTMRecord record : records) {
+      length += utf8Length(record.getRecord());
+    }
+    return length;
+  }
+
+  /**
+   * Gets a SHA-256 hash of the text of the ASTM message encoded as UTF-8, as a lowercase hex string. Messages with the
+   * same text have the same content hash.
+   *
+   * @return the content hash of the message.
+   */
+  default String getContentHash() {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      List<ASTMRecord> records = getRecords();
+      if (records != null) {
+        for (ASTMRecord record : records) {
+          digest.update(record.getRecord().getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      // every java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int utf8Length(String text) {
+    int length = 0;
+    for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (!Character.isSurrogate(c)) {
+        length += 3;
+      } else if (Character.isSurrogatePair(c, i + 1 < text.length() ? text.charAt(i + 1) : 0)) {
+        length += 4;
+        ++i;
+      } else {
+        length += 1; // an unpaired surrogate is encoded as '?'
+      }
+    }
+    return length;
+  }
 }
@@ -4,6 +4,9 @@ package org.itech.ahb.lib.astm.concept;
  * This interface defines methods for ASTM records.
  * ASTM records are not defined in the ASTM LIS01-A2, and are instead defined at length in ASTM LIS02-A2
  * Records are not a concept in the ASTM transmission protocol, and are instead a concept in the ASTM message format.
+ *
+ * The text of a record must not change once the record has been added to a message, as messages may keep values
+ * computed from the text of their records.
  */
 public interface ASTMRecord {
   /**
@@ -19,4 +22,14 @@ public interface ASTMRecord {
    * @return the text of the record.
    */
   String getRecord();
+
+  /**
+   * Gets the fields of the ASTM record. The record is only split into fields as they are asked for.
+   *
+   * @param delimiters the delimiters of the message the record belongs to, see {@link ASTMMessage#getDelimiters()}.
+   * @return the fields of the record.
+   */
+  default ASTMRecordFields getFields(ASTMDelimiters delimiters) {
+    return new ASTMRecordFields(getRecord(), delimiters);
+  }
 }
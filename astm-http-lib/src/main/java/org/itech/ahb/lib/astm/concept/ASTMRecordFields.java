@@ -0,0 +1,272 @@
+package org.itech.ahb.lib.astm.concept;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class gives access to the fields of an ASTM record, the repeats of each field and the components of each repeat,
+ * as defined in ASTM LIS02-A2. Fields, repeats and components are numbered from 1, and field 1 is the record type.
+ *
+ * Nothing is parsed until it is asked for: the positions of the fields are found the first time a field is asked for,
+ * and the positions of the repeats and components of a field the first time one of them is asked for. The positions
+ * are kept, so asking again does not scan the record again. The text is returned as it appears in the record, escape
+ * sequences are not replaced.
+ *
+ * The second field of a header record defines the delimiters, so it is never split into repeats or components.
+ * This class is safe to use from several threads.
+ */
+public class ASTMRecordFields {
+
+  private static final char RECORD_SEPERATOR = 0x0D; // CR
+  private static final char LINE_FEED = 0x0A; // LF
+  private static final int DELIMITER_DEFINITION_FIELD = 2;
+
+  private final CharSequence text; // null if the record is encoded as bytes
+  private final byte[] data; // null if the record is text
+  private final int offset;
+  private final int end;
+  private final ASTMDelimiters delimiters;
+
+  // the start and end of each piece, found when first needed. guarded by this
+  private int[] fieldBounds;
+  private int[][] repeatBounds; // per field
+  private int[][][] componentBounds; // per field and repeat
+
+  /**
+   * Constructs a new ASTMRecordFields for the text of a record.
+   *
+   * @param text the text of the record.
+   * @param delimiters the delimiters of the message the record belongs to.
+   */
+  public ASTMRecordFields(CharSequence text, ASTMDelimiters delimiters) {
+    this(text, null, 0, text.length(), delimiters);
+  }
+
+  /**
+   * Constructs a new ASTMRecordFields for a record encoded as UTF-8 bytes. The buffer must not be changed while this
+   * is in use.
+   *
+   * @param data the buffer holding the record.
+   * @param offset the position of the record in the buffer.
+   * @param length the length of the record in bytes.
+   * @param delimiters the delimiters of the message the record belongs to.
+   */
+  public ASTMRecordFields(byte[] data, int offset, int length, ASTMDelimiters delimiters) {
+    this(null, data, offset, length, delimiters);
+  }
+
+  private ASTMRecordFields(CharSequence text, byte[] data, int offset, int length, ASTMDelimiters delimiters) {
+    this.text = text;
+    this.data = data;
+    this.offset = offset;
+    this.delimiters = delimiters;
+    int end = offset + length;
+    while (end > offset && (at(end - 1) == RECORD_SEPERATOR || at(end - 1) == LINE_FEED)) {
+      --end;
+    }
+    this.end = end;
+  }
+
+  /**
+   * @return the delimiters the record is split with.
+   */
+  public ASTMDelimiters getDelimiters() {
+    return delimiters;
+  }
+
+  /**
+   * @return the record type, which is the first field.
+   */
+  public String getRecordType() {
+    return getField(1);
+  }
+
+  /**
+   * @return the number of fields in the record, including the record type.
+   */
+  public int getFieldCount() {
+    return findFields().length / 2;
+  }
+
+  /**
+   * Gets the text of a field.
+   *
+   * @param field the position of the field.
+   * @return the text of the field, or null if the record has no field at that position.
+   */
+  public String getField(int field) {
+    int[] bounds = findFields();
+    return piece(bounds, field);
+  }
+
+  /**
+   * Gets where a field starts, relative to the start of the text or buffer the record is in.
+   *
+   * @param field the position of the field.
+   * @return the position the field starts at, or -1 if the record has no field at that position.
+   */
+  public int getFieldStart(int field) {
+    int[] bounds = findFields();
+    return field < 1 || field > bounds.length / 2 ? -1 : bounds[2 * (field - 1)];
+  }
+
+  /**
+   * Gets where a field ends, relative to the start of the text or buffer the record is in.
+   *
+   * @param field the position of the field.
+   * @return the position after the last character of the field, or -1 if the record has no field at that position.
+   */
+  public int getFieldEnd(int field) {
+    int[] bounds = findFields();
+    return field < 1 || field > bounds.length / 2 ? -1 : bounds[2 * (field - 1) + 1];
+  }
+
+  /**
+   * Gets the number of repeats of a field.
+   *
+   * @param field the position of the field.
+   * @return the number of repeats, or 0 if the record has no field at that position.
+   */
+  public int getRepeatCount(int field) {
+    int[] bounds = findRepeats(field);
+    return bounds == null ? 0 : bounds.length / 2;
+  }
+
+  /**
+   * Gets the text of a repeat of a field.
+   *
+   * @param field the position of the field.
+   * @param repeat the position of the repeat.
+   * @return the text of the repeat, or null if the record has no such repeat.
+   */
+  public String getRepeat(int field, int repeat) {
+    return piece(findRepeats(field), repeat);
+  }
+
+  /**
+   * Gets the number of components of a repeat of a field.
+   *
+   * @param field the position of the field.
+   * @param repeat the position of the repeat.
+   * @return the number of components, or 0 if the record has no such repeat.
+   */
+  public int getComponentCount(int field, int repeat) {
+    int[] bounds = findComponents(field, repeat);
+    return bounds == null ? 0 : bounds.length / 2;
+  }
+
+  /**
+   * Gets the text of a component of the first repeat of a field.
+   *
+   * @param field the position of the field.
+   * @param component the position of the component.
+   * @return the text of the component, or null if the record has no such component.
+   */
+  public String getComponent(int field, int component) {
+    return getComponent(field, 1, component);
+  }
+
+  /**
+   * Gets the text of a component of a repeat of a field.
+   *
+   * @param field the position of the field.
+   * @param repeat the position of the repeat.
+   * @param component the position of the component.
+   * @return the text of the component, or null if the record has no such component.
+   */
+  public String getComponent(int field, int repeat, int component) {
+    return piece(findComponents(field, repeat), component);
+  }
+
+  private synchronized int[] findFields() {
+    if (fieldBounds == null) {
+      fieldBounds = split(offset, end, delimiters.getFieldDelimiter());
+    }
+    return fieldBounds;
+  }
+
+  private synchronized int[] findRepeats(int field) {
+    int[] fields = findFields();
+    if (field < 1 || field > fields.length / 2) {
+      return null;
+    }
+    if (repeatBounds == null) {
+      repeatBounds = new int[fields.length / 2][];
+    }
+    if (repeatBounds[field - 1] == null) {
+      int start = fields[2 * (field - 1)];
+      int fieldEnd = fields[2 * (field - 1) + 1];
+      repeatBounds[field - 1] = isDelimiterDefinition(field)
+        ? new int[] { start, fieldEnd }
+        : split(start, fieldEnd, delimiters.getRepeatDelimiter());
+    }
+    return repeatBounds[field - 1];
+  }
+
+  private synchronized int[] findComponents(int field, int repeat) {
+    int[] repeats = findRepeats(field);
+    if (repeats == null || repeat < 1 || repeat > repeats.length / 2) {
+      return null;
+    }
+    if (componentBounds == null) {
+      componentBounds = new int[findFields().length / 2][][];
+    }
+    if (componentBounds[field - 1] == null) {
+      componentBounds[field - 1] = new int[repeats.length / 2][];
+    }
+    if (componentBounds[field - 1][repeat - 1] == null) {
+      int start = repeats[2 * (repeat - 1)];
+      int repeatEnd = repeats[2 * (repeat - 1) + 1];
+      componentBounds[field - 1][repeat - 1] = isDelimiterDefinition(field)
+        ? new int[] { start, repeatEnd }
+        : split(start, repeatEnd, delimiters.getComponentDelimiter());
+    }
+    return componentBounds[field - 1][repeat - 1];
+  }
+
+  private boolean isDelimiterDefinition(int field) {
+    return field == DELIMITER_DEFINITION_FIELD && end > offset && at(offset) == ASTMDelimiters.HEADER_RECORD_TYPE;
+  }
+
+  /**
+   * Finds the start and end of each piece of the range that is seperated by the delimiter.
+   *
+   * @return the start and end of each piece, one after the other.
+   */
+  private int[] split(int start, int end, char delimiter) {
+    int count = 1;
+    for (int i = start; i < end; ++i) {
+      if (at(i) == delimiter) {
+        ++count;
+      }
+    }
+    int[] bounds = new int[2 * count];
+    int piece = 0;
+    bounds[0] = start;
+    for (int i = start; i < end; ++i) {
+      if (at(i) == delimiter) {
+        bounds[2 * piece + 1] = i;
+        ++piece;
+        bounds[2 * piece] = i + 1;
+      }
+    }
+    bounds[2 * piece + 1] = end;
+    return bounds;
+  }
+
+  private String piece(int[] bounds, int position) {
+    if (bounds == null || position < 1 || position > bounds.length / 2) {
+      return null;
+    }
+    int start = bounds[2 * (position - 1)];
+    int pieceEnd = bounds[2 * (position - 1) + 1];
+    if (text != null) {
+      return text.subSequence(start, pieceEnd).toString();
+    }
+    return new String(data, start, pieceEnd - start, StandardCharsets.UTF_8);
+  }
+
+  private char at(int i) {
+    // delimiters are single byte characters, so they can be found in UTF-8 bytes without decoding them
+    return text != null ? text.charAt(i) : (char) (data[i] & 0xFF);
+  }
+}
@@ -0,0 +1,193 @@
+package org.itech.ahb.lib.astm.concept;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * This class is an ASTM message that keeps its UTF-8 encoded text in a single buffer, instead of a string per record.
+ * The records are views of the buffer that are only created when first asked for, and their text is only decoded to
+ * strings when asked for. The delimiters of the records are read from the header record of the message.
+ *
+ * The message can not be changed, and the buffer must not be changed while the message is in use.
+ */
+public class ByteBufferASTMMessage implements ASTMMessage {
+
+  private static final byte RECORD_SEPERATOR = 0x0D; // CR
+
+  private final byte[] data;
+  private final int offset;
+  private final int length;
+  private final int[] recordStarts; // the start of each record, followed by the end of the message
+  private final ASTMDelimiters delimiters;
+  private final List<ASTMRecord> records;
+
+  /**
+   * Constructs a new ByteBufferASTMMessage that is a view of the whole buffer.
+   *
+   * @param data the UTF-8 encoded text of the message, with each record ended by a CR.
+   */
+  public ByteBufferASTMMessage(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  /**
+   * Constructs a new ByteBufferASTMMessage that is a view of part of the buffer.
+   *
+   * @param data the buffer holding the UTF-8 encoded text of the message, with each record ended by a CR.
+   * @param offset the position of the message in the buffer.
+   * @param length the length of the message in bytes.
+   */
+  public ByteBufferASTMMessage(byte[] data, int offset, int length) {
+    this.data = data;
+    this.offset = offset;
+    this.length = length;
+    this.recordStarts = findRecords(data, offset, length);
+    this.delimiters = findDelimiters();
+    this.records = new RecordList();
+  }
+
+  /**
+   * Constructs a new ByteBufferASTMMessage holding a copy of the remaining bytes of the buffer.
+   *
+   * @param buffer the UTF-8 encoded text of the message, with each record ended by a CR. Its position is not changed.
+   * @return the message.
+   */
+  public static ByteBufferASTMMessage copyOf(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return new ByteBufferASTMMessage(
+        Arrays.copyOfRange(
+          buffer.array(),
+          buffer.arrayOffset() + buffer.position(),
+          buffer.arrayOffset() + buffer.limit()
+        )
+      );
+    }
+    byte[] data = new byte[buffer.remaining()];
+    buffer.duplicate().get(data);
+    return new ByteBufferASTMMessage(data);
+  }
+
+  @Override
+  public ASTMDelimiters getDelimiters() {
+    return delimiters;
+  }
+
+  /**
+   * @return a read only view of the bytes of the message.
+   */
+  public ByteBuffer getMessageBytes() {
+    return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * This message can not be changed.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void addRecord(ASTMRecord record) {
+    throw new UnsupportedOperationException("a ByteBufferASTMMessage can not be changed");
+  }
+
+  @Override
+  public List<ASTMRecord> getRecords() {
+    return records;
+  }
+
+  @Override
+  public int getMessageLength() {
+    return ByteBufferASTMRecord.decodedLength(data, offset, length);
+  }
+
+  @Override
+  public int getMessageByteLength() {
+    return length;
+  }
+
+  @Override
+  public String getMessage() {
+    return new String(data, offset, length, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String getContentHash() {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(data, offset, length);
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      // every java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ByteBufferASTMMessage(records=" + records.size() + ", length=" + length + ")";
+  }
+
+  private static int[] findRecords(byte[] data, int offset, int length) {
+    int end = offset + length;
+    int count = 0;
+    for (int i = offset; i < end; ++i) {
+      if (data[i] == RECORD_SEPERATOR) {
+        ++count;
+      }
+    }
+    if (length > 0 && data[end - 1] != RECORD_SEPERATOR) {
+      // the last record was not ended by a record seperator
+      ++count;
+    }
+    int[] starts = new int[count + 1];
+    starts[0] = offset;
+    int record = 1;
+    for (int i = offset; i < end && record < count; ++i) {
+      if (data[i] == RECORD_SEPERATOR) {
+        starts[record++] = i + 1;
+      }
+    }
+    starts[count] = end;
+    return starts;
+  }
+
+  private ASTMDelimiters findDelimiters() {
+    for (int i = 0; i < recordStarts.length - 1; ++i) {
+      if (data[recordStarts[i]] == ASTMDelimiters.HEADER_RECORD_TYPE) {
+        return ASTMDelimiters.fromHeaderRecord(data, recordStarts[i], recordStarts[i + 1] - recordStarts[i]);
+      }
+    }
+    return ASTMDelimiters.DEFAULT;
+  }
+
+  /**
+   * The records of the message, each created the first time it is asked for, so the positions of its fields are kept
+   * between uses.
+   */
+  private class RecordList extends AbstractList<ASTMRecord> {
+
+    private final ASTMRecord[] created = new ASTMRecord[recordStarts.length - 1]; // guarded by this
+
+    @Override
+    public synchronized ASTMRecord get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      if (created[index] == null) {
+        int start = recordStarts[index];
+        created[index] = new ByteBufferASTMRecord(data, start, recordStarts[index + 1] - start, delimiters);
+      }
+      return created[index];
+    }
+
+    @Override
+    public int size() {
+      return recordStarts.length - 1;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package org.itech.ahb.lib.astm.concept;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is an ASTM record that is a view of part of a buffer holding UTF-8 encoded ASTM text, usually the buffer
+ * of a {@link ByteBufferASTMMessage}. The record and its fields are only decoded to strings when asked for, and the
+ * record is only split into fields as they are asked for, directly from the bytes.
+ *
+ * The buffer must not be changed while the record is in use.
+ */
+public class ByteBufferASTMRecord implements ASTMRecord {
+
+  private final byte[] data;
+  private final int offset;
+  private final int length;
+  private final ASTMDelimiters delimiters;
+  private volatile ASTMRecordFields fields; // created when first needed
+
+  /**
+   * Constructs a new ByteBufferASTMRecord.
+   *
+   * @param data the buffer holding the record.
+   * @param offset the position of the record in the buffer.
+   * @param length the length of the record in bytes, including its record seperator if it has one.
+   * @param delimiters the delimiters of the message the record belongs to.
+   */
+  public ByteBufferASTMRecord(byte[] data, int offset, int length, ASTMDelimiters delimiters) {
+    this.data = data;
+    this.offset = offset;
+    this.length = length;
+    this.delimiters = delimiters;
+  }
+
+  @Override
+  public int getRecordLength() {
+    return decodedLength(data, offset, length);
+  }
+
+  @Override
+  public String getRecord() {
+    return new String(data, offset, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return a read only view of the bytes of the record.
+   */
+  public ByteBuffer getRecordBytes() {
+    return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * @return the delimiters of the message this record belongs to.
+   */
+  public ASTMDelimiters getDelimiters() {
+    return delimiters;
+  }
+
+  /**
+   * @return the fields of the record, split with the delimiters of the message the record belongs to.
+   */
+  public ASTMRecordFields getFields() {
+    ASTMRecordFields fields = this.fields;
+    if (fields == null) {
+      fields = new ASTMRecordFields(data, offset, length, delimiters);
+      this.fields = fields;
+    }
+    return fields;
+  }
+
+  @Override
+  public ASTMRecordFields getFields(ASTMDelimiters delimiters) {
+    if (delimiters.equals(this.delimiters)) {
+      return getFields();
+    }
+    return new ASTMRecordFields(data, offset, length, delimiters);
+  }
+
+  /**
+   * @return the number of fields in the record, including the record type.
+   */
+  public int getFieldCount() {
+    return getFields().getFieldCount();
+  }
+
+  /**
+   * Gets the text of a field. Fields are numbered from 1, which is the record type, as in ASTM LIS02-A2.
+   *
+   * @param position the position of the field.
+   * @return the text of the field, or null if the record has no field at that position.
+   */
+  public String getField(int position) {
+    return getFields().getField(position);
+  }
+
+  /**
+   * Gets a read only view of the bytes of a field. Fields are numbered from 1, which is the record type, as in ASTM
+   * LIS02-A2.
+   *
+   * @param position the position of the field.
+   * @return the bytes of the field, or null if the record has no field at that position.
+   */
+  public ByteBuffer getFieldBytes(int position) {
+    ASTMRecordFields fields = getFields();
+    int start = fields.getFieldStart(position);
+    if (start < 0) {
+      return null;
+    }
+    return ByteBuffer.wrap(data, start, fields.getFieldEnd(position) - start).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Counts the chars that UTF-8 encoded bytes decode to.
+   *
+   * @param data the buffer holding the bytes.
+   * @param offset the position of the bytes in the buffer.
+   * @param length the number of bytes.
+   * @return the number of chars.
+   */
+  static int decodedLength(byte[] data, int offset, int length) {
+    int chars = 0;
+    for (int i = offset; i < offset + length; ++i) {
+      int b = data[i] & 0xFF;
+      if ((b & 0xC0) != 0x80) {
+        // a character starts at every byte that is not a continuation byte
+        ++chars;
+      }
+      if (b >= 0xF0) {
+        // four byte characters are decoded as a surrogate pair
+        ++chars;
+      }
+    }
+    return chars;
+  }
+}
@@ -5,64 +5,159 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
-@Data
+/**
+ * A message can not be changed once it is created, so it can be handed between threads and its records read without
+ * copying them. The text, length and content hash of a message are computed from its records the first time they are
+ * needed and kept, so handlers can ask for them repeatedly without joining every record each time. The records
+ * themselves must not change once they are part of the message, see {@link ASTMRecord}.
+ */
+@EqualsAndHashCode(of = "records")
+@ToString(of = "records")
 public class DefaultASTMMessage implements ASTMMessage {
 
-  private List<ASTMRecord> records;
+  private final List<ASTMRecord> records; // unmodifiable
+
+  // computed from the records when first needed. Threads that race to compute a value all compute the same value
+  private volatile String message;
+  private volatile int messageLength = -1;
+  private volatile int messageByteLength = -1;
+  private volatile String contentHash;
 
   /**
    * Default constructor for creating a blank ASTM message
    */
-  public DefaultASTMMessage() {}
+  public DefaultASTMMessage() {
+    this.records = null;
+  }
 
   /**
    * Constructor for creating an ASTM message by passing in the message as a string.
    * @param message the message to parse into a series of ASTM records that will make up the message.
    */
   public DefaultASTMMessage(String message) {
-    records = Arrays.stream(message.split("\\r?\\n")).map(e -> new DefaultASTMRecord(e)).collect(Collectors.toList());
+    records = Arrays.stream(message.split("\\r?\\n")).<ASTMRecord>map(e -> new DefaultASTMRecord(e)).toList();
   }
 
   /**
    * Constructor for creating an ASTM message by passing in the message as a list of records.
-   * @param records the list of records that make up this message.
+   * @param records the list of records that make up this message. The list is copied, so later changes to it do not
+   * change this message.
    */
   public DefaultASTMMessage(List<ASTMRecord> records) {
-    this.records = records;
+    this.records = records == null ? null : Collections.unmodifiableList(new ArrayList<>(records));
+  }
+
+  private DefaultASTMMessage(List<ASTMRecord> records, int messageLength) {
+    this.records = Collections.unmodifiableList(records);
+    this.messageLength = messageLength;
+  }
+
+  /**
+   * @return a builder for creating a message one record at a time, such as while it is being received.
+   */
+  public static Builder builder() {
+    return new Builder();
   }
 
   @Override
   public int getMessageLength() {
-    if (records == null) {
-      return 0;
-    } else {
-      return records.stream().mapToInt(record -> record.getRecordLength()).sum();
+    if (messageLength < 0) {
+      messageLength = records == null ? 0 : records.stream().mapToInt(record -> record.getRecordLength()).sum();
     }
+    return messageLength;
+  }
+
+  @Override
+  public int getMessageByteLength() {
+    if (messageByteLength < 0) {
+      messageByteLength = ASTMMessage.super.getMessageByteLength();
+    }
+    return messageByteLength;
   }
 
   @Override
   public String getMessage() {
-    if (records == null) {
-      return "";
+    if (message == null) {
+      message = records == null
+        ? ""
+        : records.stream().map(record -> record.getRecord()).collect(Collectors.joining(""));
     }
-    return records.stream().map(record -> record.getRecord()).collect(Collectors.joining(""));
+    return message;
   }
 
   @Override
-  public void addRecord(ASTMRecord record) {
-    if (records == null) {
-      records = new ArrayList<>();
+  public String getContentHash() {
+    if (contentHash == null) {
+      contentHash = ASTMMessage.super.getContentHash();
     }
-    records.add(record);
+    return contentHash;
+  }
+
+  /**
+   * This message can not be changed, create a new message with {@link #builder()} instead.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void addRecord(ASTMRecord record) {
+    throw new UnsupportedOperationException("a DefaultASTMMessage can not be changed");
   }
 
+  /**
+   * @return the records of this message, which can not be changed through the list. The records must not change, as
+   * the values computed from them are not recomputed when they do.
+   */
   @Override
   public List<ASTMRecord> getRecords() {
-    if (records == null) {
-      return null;
+    return records;
+  }
+
+  /**
+   * Builder for creating a message one record at a time. The length of the message is counted as records are added,
+   * and the records are handed to the message without being copied.
+   */
+  public static class Builder {
+
+    private List<ASTMRecord> records = new ArrayList<>();
+    private int messageLength = 0;
+
+    private Builder() {}
+
+    /**
+     * Adds the next record of the message.
+     *
+     * @param record the ASTM record.
+     * @return this builder.
+     */
+    public Builder addRecord(ASTMRecord record) {
+      records.add(record);
+      messageLength += record.getRecordLength();
+      return this;
+    }
+
+    /**
+     * Adds the next records of the message.
+     *
+     * @param records the ASTM records, in order.
+     * @return this builder.
+     */
+    public Builder addRecords(List<? extends ASTMRecord> records) {
+      records.forEach(this::addRecord);
+      return this;
+    }
+
+    /**
+     * Creates the message from the records added so far. The builder can not be used afterwards.
+     *
+     * @return the ASTM message.
+     */
+    public DefaultASTMMessage build() {
+      DefaultASTMMessage message = new DefaultASTMMessage(records, messageLength);
+      records = null;
+      return message;
     }
-    return Collections.unmodifiableList(records);
   }
 }
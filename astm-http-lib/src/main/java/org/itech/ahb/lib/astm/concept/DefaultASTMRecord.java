@@ -1,11 +1,26 @@
 package org.itech.ahb.lib.astm.concept;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
+/**
+ * The text of a record can not be changed once it is created, so the messages it belongs to can keep what they
+ * computed from it.
+ */
 @Data
 public class DefaultASTMRecord implements ASTMRecord {
 
-  private String record;
+  private final String record;
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private ASTMRecordFields fields; // the fields of the record for the delimiters they were last asked for
 
   /**
    * Constructor for creating an ASTM record by passing in the record as a string.
@@ -30,4 +45,14 @@ public class DefaultASTMRecord implements ASTMRecord {
     }
     return record;
   }
+
+  @Override
+  public ASTMRecordFields getFields(ASTMDelimiters delimiters) {
+    ASTMRecordFields fields = this.fields;
+    if (fields == null || !fields.getDelimiters().equals(delimiters)) {
+      fields = new ASTMRecordFields(getRecord(), delimiters);
+      this.fields = fields;
+    }
+    return fields;
+  }
 }
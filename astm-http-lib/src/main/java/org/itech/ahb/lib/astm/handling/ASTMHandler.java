@@ -1,5 +1,6 @@
 package org.itech.ahb.lib.astm.handling;
 
+import java.util.concurrent.CompletableFuture;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
 
 /**
@@ -21,6 +22,18 @@ public interface ASTMHandler {
    */
   ASTMHandlerResponse handle(ASTMMessage message);
 
+  /**
+   * Handles the given ASTM message without waiting for handling to finish. Handlers that wait on a remote system
+   * should override this so the calling thread is not blocked. By default the message is handled synchronously
+   * on the calling thread.
+   *
+   * @param message the ASTM message.
+   * @return a future that completes with the ASTM handler response.
+   */
+  default CompletableFuture<ASTMHandlerResponse> handleAsync(ASTMMessage message) {
+    return CompletableFuture.completedFuture(handle(message));
+  }
+
   /**
    * Checks if the handler matches the given ASTM message. ie. should this handler be called for this message.
    *
@@ -28,4 +41,15 @@ public interface ASTMHandler {
    * @return true if the handler matches the message, false otherwise.
    */
   boolean matches(ASTMMessage message);
+
+  /**
+   * Gets the content a message must have for this handler to be called for it, so the handler service can find the
+   * handlers for a message with an index instead of asking every handler. {@link #matches(ASTMMessage)} is still
+   * called for messages that meet the criteria.
+   *
+   * @return the routing criteria, or null if {@link #matches(ASTMMessage)} should be called for every message.
+   */
+  default ASTMRoutingCriteria getRoutingCriteria() {
+    return null;
+  }
 }
@@ -1,14 +1,17 @@
 package org.itech.ahb.lib.astm.handling;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
 import org.itech.ahb.lib.common.handling.HandleStatus;
+import org.itech.ahb.lib.common.handling.ParallelHandlerInvoker;
 
 /**
  * This class provides a service layer for deciding which ASTM handlers should be called for a message and then calling them.
@@ -28,11 +31,18 @@ public class ASTMHandlerService {
     /**
      *  Call the first handler that matches the message.
      */
-    FIRST
+    FIRST,
+    /**
+     *  Call all handlers that match the message at the same time, each on a thread of the handler service's executor.
+     */
+    ALL_PARALLEL
   }
 
-  private List<ASTMHandler> handlers;
+  private final ASTMRoutingIndex routingIndex;
   private Mode mode;
+  private final ExecutorService executor; // only used in ALL_PARALLEL mode
+  private final Duration handlerTimeout; // only used in ALL_PARALLEL mode
+  private ASTMMetrics metrics = ASTMMetrics.global();
 
   /**
    * Create a new ASTMHandlerService.
@@ -40,8 +50,32 @@ public class ASTMHandlerService {
    * @param mode the mode this handler service should operate.
    */
   public ASTMHandlerService(List<ASTMHandler> handlers, Mode mode) {
-    this.handlers = handlers;
+    this(handlers, mode, null, ParallelHandlerInvoker.DEFAULT_HANDLER_TIMEOUT);
+  }
+
+  /**
+   * Create a new ASTMHandlerService that calls the handlers on the provided executor in {@link Mode#ALL_PARALLEL}.
+   * @param handlers the list of handlers to this handler service should be aware of.
+   * @param mode the mode this handler service should operate.
+   * @param executor the executor to call handlers on in ALL_PARALLEL mode. null to start a virtual thread per call.
+   * @param handlerTimeout the maximum amount of time each handler may take in ALL_PARALLEL mode.
+   */
+  public ASTMHandlerService(List<ASTMHandler> handlers, Mode mode, ExecutorService executor, Duration handlerTimeout) {
+    this.routingIndex = new ASTMRoutingIndex(handlers);
     this.mode = mode;
+    this.executor = executor == null && mode == Mode.ALL_PARALLEL
+      ? ParallelHandlerInvoker.createDefaultExecutor("astm-handler-")
+      : executor;
+    this.handlerTimeout = handlerTimeout;
+  }
+
+  /**
+   * Sets the metrics that the time taken and status of each handler are recorded in.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
   }
 
   /**
@@ -62,48 +96,145 @@ public class ASTMHandlerService {
    * @return the ASTM handler service response.
    */
   public ASTMHandlerServiceResponse handle(ASTMMessage message, Set<ASTMForwardingHandlerInfo> handlersInfos) {
-    Map<ASTMMessage, List<ASTMHandler>> messageHandlersMap = new HashMap<>();
-    log.debug("finding a handler for astm message: " + message.hashCode());
-    log.trace("message: '" + message.getMessage() + "'");
-    for (ASTMHandler handler : handlers) {
-      if (handler.matches(message)) {
-        log.debug("handler: '" + handler.getName() + "' found for astm message: " + message.hashCode());
-        List<ASTMHandler> matchingMessageHandlers = messageHandlersMap.getOrDefault(message, new ArrayList<>());
-        matchingMessageHandlers.add(handler);
-        messageHandlersMap.put(message, matchingMessageHandlers);
-        if (mode == Mode.FIRST) {
-          log.debug("handler service mode is " + Mode.FIRST + ", proceeding with a single handler");
-          break;
-        }
-      }
-    }
-    if (!messageHandlersMap.containsKey(message)) {
+    List<ASTMHandler> matchingHandlers = findMatchingHandlers(message);
+    if (matchingHandlers.isEmpty()) {
       log.warn("astm message received but no handler was configured to handle the message");
       return new ASTMHandlerServiceResponse();
     }
 
+    if (mode == Mode.ALL_PARALLEL && matchingHandlers.size() > 1) {
+      log.debug("handling astm message in parallel...");
+      long start = System.nanoTime();
+      return new ASTMHandlerServiceResponse(
+        ParallelHandlerInvoker.invokeAll(
+          matchingHandlers,
+          messageHandler -> recordHandled(messageHandler, messageHandler.handle(message), start),
+          (messageHandler, status) ->
+            recordHandled(messageHandler, new ASTMHandlerResponse("", status, false, messageHandler), start),
+          ASTMHandler::getName,
+          executor,
+          handlerTimeout
+        )
+      );
+    }
+
     List<ASTMHandlerResponse> handleResponses = new ArrayList<>();
     log.debug("handling astm message...");
-    for (Entry<ASTMMessage, List<ASTMHandler>> matchingMessageHandlers : messageHandlersMap.entrySet()) {
-      for (ASTMHandler messageHandler : matchingMessageHandlers.getValue()) {
-        try {
-          ASTMHandlerResponse handleResponse = messageHandler.handle(matchingMessageHandlers.getKey());
+    for (ASTMHandler messageHandler : matchingHandlers) {
+      long start = System.nanoTime();
+      try {
+        ASTMHandlerResponse handleResponse = messageHandler.handle(message);
+        log.debug("'" + messageHandler.getName() + "' finished handling http astm message");
+        handleResponses.add(recordHandled(messageHandler, handleResponse, start));
+      } catch (RuntimeException e) {
+        log.error(
+          "unexpected error occurred during '" + messageHandler.getName() + "' handling astm message: " + message,
+          e
+        );
+        handleResponses.add(
+          recordHandled(
+            messageHandler,
+            new ASTMHandlerResponse("", HandleStatus.GENERIC_FAIL, false, messageHandler),
+            start
+          )
+        );
+        // the failure is only reported here. Messages that must not be lost are stored before they are acknowledged,
+        // and retried from the store, see org.itech.ahb.lib.astm.storage.ASTMMessageStoreDrainer
+      }
+    }
+    return new ASTMHandlerServiceResponse(handleResponses);
+  }
+
+  /**
+   * Calls the relevant handler(s) for the given ASTM message without waiting for them to finish handling it.
+   *
+   * @param message the ASTM message.
+   * @return a future that completes with the ASTM handler service response once every handler has finished.
+   */
+  public CompletableFuture<ASTMHandlerServiceResponse> handleAsync(ASTMMessage message) {
+    List<ASTMHandler> matchingHandlers = findMatchingHandlers(message);
+    if (matchingHandlers.isEmpty()) {
+      log.warn("astm message received but no handler was configured to handle the message");
+      return CompletableFuture.completedFuture(new ASTMHandlerServiceResponse());
+    }
+
+    List<CompletableFuture<ASTMHandlerResponse>> handleResponseFutures = new ArrayList<>();
+    log.debug("handling astm message asynchronously...");
+    for (ASTMHandler messageHandler : matchingHandlers) {
+      long start = System.nanoTime();
+      CompletableFuture<ASTMHandlerResponse> handleResponseFuture;
+      try {
+        handleResponseFuture = messageHandler.handleAsync(message);
+      } catch (RuntimeException e) {
+        handleResponseFuture = CompletableFuture.failedFuture(e);
+      }
+      if (mode == Mode.ALL_PARALLEL) {
+        handleResponseFuture = handleResponseFuture.copy().completeOnTimeout(
+          new ASTMHandlerResponse("", HandleStatus.TIMEOUT, false, messageHandler),
+          handlerTimeout.toMillis(),
+          TimeUnit.MILLISECONDS
+        );
+      }
+      handleResponseFutures.add(
+        handleResponseFuture.handle((handleResponse, e) -> {
+          if (e != null) {
+            log.error(
+              "unexpected error occurred during '" + messageHandler.getName() + "' handling astm message: " + message,
+              e
+            );
+            return recordHandled(
+              messageHandler,
+              new ASTMHandlerResponse("", HandleStatus.GENERIC_FAIL, false, messageHandler),
+              start
+            );
+          }
           log.debug("'" + messageHandler.getName() + "' finished handling http astm message");
-          handleResponses.add(handleResponse);
-        } catch (RuntimeException e) {
-          log.error(
-            "unexpected error occurred during '" +
-            messageHandler.getName() +
-            "' handling astm message: " +
-            matchingMessageHandlers.getKey(),
-            e
-          );
-          handleResponses.add(new ASTMHandlerResponse("", HandleStatus.GENERIC_FAIL, false, messageHandler));
-          // TODO add some handle exception handling. retry queue? db save?
-          // handler.handleError();
+          return recordHandled(messageHandler, handleResponse, start);
+        })
+      );
+    }
+    return CompletableFuture.allOf(handleResponseFutures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+      List<ASTMHandlerResponse> handleResponses = new ArrayList<>();
+      for (CompletableFuture<ASTMHandlerResponse> handleResponseFuture : handleResponseFutures) {
+        handleResponses.add(handleResponseFuture.join());
+      }
+      return new ASTMHandlerServiceResponse(handleResponses);
+    });
+  }
+
+  private ASTMHandlerResponse recordHandled(ASTMHandler handler, ASTMHandlerResponse handleResponse, long start) {
+    HandleStatus status = handleResponse == null || handleResponse.getStatus() == null
+      ? HandleStatus.GENERIC_FAIL
+      : handleResponse.getStatus();
+    metrics.recordHandled(handler.getName(), status, System.nanoTime() - start);
+    return handleResponse;
+  }
+
+  /**
+   * Finds the handler(s) that should be called for the given ASTM message, according to the mode. Only the handlers
+   * whose routing criteria the message meets are asked if they match it.
+   *
+   * @param message the ASTM message.
+   * @return the matching handlers. Empty if no handler matches the message.
+   */
+  private List<ASTMHandler> findMatchingHandlers(ASTMMessage message) {
+    List<ASTMHandler> matchingHandlers = new ArrayList<>();
+    if (log.isDebugEnabled()) {
+      log.debug("finding a handler for astm message: " + message.hashCode());
+    }
+    if (log.isTraceEnabled()) {
+      log.trace("message: '" + message.getMessage() + "'");
+    }
+    for (ASTMHandler handler : routingIndex.findCandidates(message)) {
+      if (handler.matches(message)) {
+        log.debug("handler: '" + handler.getName() + "' found for astm message: " + message.hashCode());
+        matchingHandlers.add(handler);
+        if (mode == Mode.FIRST) {
+          log.debug("handler service mode is " + Mode.FIRST + ", proceeding with a single handler");
+          break;
         }
       }
     }
-    return new ASTMHandlerServiceResponse(handleResponses);
+    return matchingHandlers;
   }
 }
@@ -0,0 +1,169 @@
+package org.itech.ahb.lib.astm.handling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.ByteBufferASTMMessage;
+
+/**
+ * This class publishes an ASTM message as the body of an HTTP request, encoding one record at a time as the body is
+ * sent, so the text of the whole message is never joined into a single string or byte array. A
+ * {@link ByteBufferASTMMessage} is sent straight from its buffer without being decoded. The body can optionally
+ * be gzip compressed, in which case the request must also have a "Content-Encoding: gzip" header.
+ *
+ * The body can be subscribed to more than once, for example if the HTTP client retries the request.
+ */
+public class ASTMMessageBodyPublisher implements BodyPublisher {
+
+  private static final int COMPRESSION_BUFFER_SIZE = 8 * 1024; // in bytes
+
+  private final Supplier<Iterator<ByteBuffer>> chunks;
+  private final boolean gzip;
+  private final long contentLength;
+
+  /**
+   * Constructs a new ASTMMessageBodyPublisher.
+   *
+   * @param message the ASTM message to publish. Its records must not change while the body is being sent.
+   * @param gzip whether the body is gzip compressed.
+   */
+  public ASTMMessageBodyPublisher(ASTMMessage message, boolean gzip) {
+    if (message instanceof ByteBufferASTMMessage byteBufferMessage) {
+      this.chunks = () -> List.of(byteBufferMessage.getMessageBytes()).iterator();
+    } else {
+      List<ASTMRecord> records = message.getRecords() == null ? List.of() : message.getRecords();
+      this.chunks = () ->
+        records.stream().map(record -> ByteBuffer.wrap(record.getRecord().getBytes(StandardCharsets.UTF_8))).iterator();
+    }
+    this.gzip = gzip;
+    // the compressed length is only known once the body has been compressed, so it is sent chunked
+    this.contentLength = gzip ? -1 : message.getMessageByteLength();
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+    HttpRequest.BodyPublishers.ofInputStream(() -> new ChunkInputStream(chunks.get(), gzip)).subscribe(subscriber);
+  }
+
+  /**
+   * Reads the bytes of the chunks, encoding and optionally compressing the next chunk only once the bytes of the
+   * previous one have been read.
+   */
+  private static class ChunkInputStream extends InputStream {
+
+    private final Iterator<ByteBuffer> chunks;
+    private final ByteArrayOutputStream compressed;
+    private final GZIPOutputStream compressor;
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private boolean finished;
+
+    private ChunkInputStream(Iterator<ByteBuffer> chunks, boolean gzip) {
+      this.chunks = chunks;
+      if (gzip) {
+        compressed = new ByteArrayOutputStream(COMPRESSION_BUFFER_SIZE);
+        try {
+          compressor = new GZIPOutputStream(compressed, COMPRESSION_BUFFER_SIZE);
+        } catch (IOException e) {
+          // writing the header to a ByteArrayOutputStream can not fail
+          throw new IllegalStateException(e);
+        }
+      } else {
+        compressed = null;
+        compressor = null;
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    /**
+     * Makes sure there are unread bytes in the buffer, if any remain.
+     *
+     * @return false if every byte of the body has been read.
+     */
+    private boolean fill() throws IOException {
+      while (!buffer.hasRemaining()) {
+        if (compressor == null) {
+          if (!chunks.hasNext()) {
+            return false;
+          }
+          buffer = chunks.next();
+        } else {
+          // the compressor may hold back output until it has enough input, so keep feeding it until it produces some
+          while (compressed.size() == 0 && !finished) {
+            if (chunks.hasNext()) {
+              compress(chunks.next());
+            } else {
+              // closing finishes the compressed stream and releases the native memory of its deflater
+              compressor.close();
+              finished = true;
+            }
+          }
+          if (compressed.size() == 0) {
+            return false;
+          }
+          buffer = ByteBuffer.wrap(compressed.toByteArray());
+          compressed.reset();
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Releases the native memory of the compressor, also if the body was abandoned before all of it was read.
+     */
+    @Override
+    public void close() throws IOException {
+      if (compressor != null) {
+        compressor.close();
+      }
+    }
+
+    private void compress(ByteBuffer chunk) throws IOException {
+      if (chunk.hasArray()) {
+        compressor.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+        return;
+      }
+      byte[] bytes = new byte[Math.min(chunk.remaining(), COMPRESSION_BUFFER_SIZE)];
+      while (chunk.hasRemaining()) {
+        int count = Math.min(chunk.remaining(), bytes.length);
+        chunk.get(bytes, 0, count);
+        compressor.write(bytes, 0, count);
+      }
+    }
+  }
+}
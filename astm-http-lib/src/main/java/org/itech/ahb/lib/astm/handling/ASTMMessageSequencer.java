@@ -0,0 +1,58 @@
+package org.itech.ahb.lib.astm.handling;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+
+/**
+ * This class hands ASTM messages to the handler service asynchronously, so the thread that received a message can
+ * go back to receiving while the message is still being handled. Messages from the same source are handled in the
+ * order they were submitted: a message is only handed to the handler service once the previous message from that
+ * source has finished being handled. Messages from different sources are handled independently of each other.
+ */
+@Slf4j
+public class ASTMMessageSequencer {
+
+  private final ASTMHandlerService astmHandlerService;
+  private final Executor executor;
+  // the future of the last message submitted for each source that is still being handled
+  private final ConcurrentMap<Object, CompletableFuture<ASTMHandlerServiceResponse>> lastSubmitted =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a new ASTMMessageSequencer.
+   *
+   * @param astmHandlerService the handler service to use for processing messages.
+   * @param executor the executor that messages are handed to the handler service on.
+   */
+  public ASTMMessageSequencer(ASTMHandlerService astmHandlerService, Executor executor) {
+    this.astmHandlerService = astmHandlerService;
+    this.executor = executor;
+  }
+
+  /**
+   * Submits a message to be handled after every message previously submitted for the same source.
+   *
+   * @param source identifies where the message came from, ex. the address of the astm sender.
+   * @param message the ASTM message.
+   * @return a future that completes with the ASTM handler service response.
+   */
+  public CompletableFuture<ASTMHandlerServiceResponse> submit(Object source, ASTMMessage message) {
+    CompletableFuture<ASTMHandlerServiceResponse> submitted = lastSubmitted.compute(source, (key, previous) -> {
+      CompletableFuture<?> previousHandled = previous == null
+        ? CompletableFuture.completedFuture(null)
+        : previous.handle((response, e) -> null);
+      return previousHandled.thenComposeAsync(v -> astmHandlerService.handleAsync(message), executor);
+    });
+    submitted.whenComplete((response, e) -> {
+      if (e != null) {
+        log.error("unexpected error occurred handling astm message from " + source, e);
+      }
+      lastSubmitted.remove(source, submitted);
+    });
+    return submitted;
+  }
+}
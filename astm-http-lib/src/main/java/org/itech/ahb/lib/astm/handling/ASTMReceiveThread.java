@@ -8,19 +8,24 @@ import org.itech.ahb.lib.astm.communication.Communicator;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
 import org.itech.ahb.lib.astm.exception.ASTMCommunicationException;
 import org.itech.ahb.lib.astm.exception.FrameParsingException;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace.EventType;
 import org.itech.ahb.lib.common.handling.HandleStatus;
 
 /**
- * This class represents a thread that controls the flow of receiving ASTM messages via a communicator
- * and then calling the handler service to process the message.
+ * This class controls the flow of receiving ASTM messages via a communicator and then calling the handler service to
+ * process the message. It is run on the thread that serves the connection, rather than being started as a thread of
+ * its own.
  */
 @Slf4j
-public class ASTMReceiveThread extends Thread {
+public class ASTMReceiveThread implements Runnable {
 
   private final Socket socket;
   private final Communicator communicator;
   private ASTMHandlerService astmHandlerService;
   private boolean lineWasContentious;
+  private ASTMMessageSequencer messageSequencer; // null when messages are handled synchronously
+  private ASTMSessionTrace sessionTrace = ASTMSessionTrace.disabled();
 
   /**
    * Constructs a new ASTMReceiveThread with the specified communicator, socket, and handler service.
@@ -68,43 +73,66 @@ public class ASTMReceiveThread extends Thread {
   }
 
   /**
-   * Runs the thread to receive and handle ASTM messages.
+   * Sets the sequencer to hand received messages to. When set, the serving thread does not wait for the message to be
+   * handled, and messages from the same astm sender address are handled in the order they were received.
+   *
+   * @param messageSequencer the sequencer, or null to handle messages synchronously on the serving thread.
+   */
+  public void setMessageSequencer(ASTMMessageSequencer messageSequencer) {
+    this.messageSequencer = messageSequencer;
+  }
+
+  /**
+   * Sets the trace that errors and the handling of the received message are recorded in.
+   *
+   * @param sessionTrace the trace of the connection the message is received on.
+   */
+  public void setSessionTrace(ASTMSessionTrace sessionTrace) {
+    this.sessionTrace = sessionTrace;
+  }
+
+  /**
+   * Receives and handles ASTM messages on the current thread.
    */
   @Override
   public void run() {
-    log.trace("thread started to receive ASTM message");
+    log.trace("started to receive ASTM message");
     try {
       ASTMMessage message;
       try {
         message = communicator.receiveProtocol(lineWasContentious);
       } catch (IllegalStateException | ASTMCommunicationException e) {
         log.error("an error occurred understanding what was received from the astm sender", e);
+        sessionTrace.record(EventType.ERROR, e.getMessage());
         return;
       } catch (FrameParsingException e) {
         log.error("an error occurred parsing the received frames to an ASTM message", e);
+        sessionTrace.record(EventType.ERROR, e.getMessage());
         return;
       } catch (InterruptedException e) {
         log.error("the thread was interrupted during receive protocol", e);
+        sessionTrace.record(EventType.ERROR, "interrupted");
         Thread.currentThread().interrupt();
         return;
       } catch (SocketTimeoutException e) {
         log.error("there was a timeout in the receive protocol at the socket level, abandoning message", e);
+        sessionTrace.record(EventType.ERROR, "timeout");
         return;
       }
-      ASTMHandlerServiceResponse response = astmHandlerService.handle(message);
-      if (response.getResponses() == null || response.getResponses().size() == 0) {
-        log.error("message was unhandled");
+      if (communicator.didStoreReceivedMessage()) {
+        log.debug("message was stored, it will be forwarded from the message store");
+      } else if (messageSequencer != null) {
+        sessionTrace.record(EventType.HANDLING_STARTED);
+        messageSequencer
+          .submit(socket == null ? communicator.getID() : socket.getInetAddress(), message)
+          .thenAccept(this::logResponse);
       } else {
-        for (ASTMHandlerResponse handlerResponse : response.getResponses()) {
-          if (handlerResponse.getStatus() != HandleStatus.SUCCESS) {
-            log.error("message was not handled successfully by: " + handlerResponse.getHandler().getName());
-          } else {
-            log.debug("message was handled successfully by: " + handlerResponse.getHandler().getName());
-          }
-        }
+        sessionTrace.record(EventType.HANDLING_STARTED);
+        logResponse(astmHandlerService.handle(message));
       }
     } catch (IOException e) {
       log.error("error occurred communicating with astm sender", e);
+      sessionTrace.record(EventType.ERROR, e.getMessage());
     } finally {
       if (socket != null && !socket.isClosed()) {
         try {
@@ -117,6 +145,26 @@ public class ASTMReceiveThread extends Thread {
     }
   }
 
+  private void logResponse(ASTMHandlerServiceResponse response) {
+    if (response.getResponses() == null || response.getResponses().size() == 0) {
+      log.error("message was unhandled");
+    } else {
+      for (ASTMHandlerResponse handlerResponse : response.getResponses()) {
+        if (sessionTrace.isEnabled()) {
+          sessionTrace.record(
+            EventType.HANDLER_FINISHED,
+            handlerResponse.getHandler().getName() + ": " + handlerResponse.getStatus()
+          );
+        }
+        if (handlerResponse.getStatus() != HandleStatus.SUCCESS) {
+          log.error("message was not handled successfully by: " + handlerResponse.getHandler().getName());
+        } else {
+          log.debug("message was handled successfully by: " + handlerResponse.getHandler().getName());
+        }
+      }
+    }
+  }
+
   /**
    * Checks if the establishment phase of the communication succeeded.
    *
@@ -0,0 +1,40 @@
+package org.itech.ahb.lib.astm.handling;
+
+import java.util.Set;
+import lombok.Data;
+
+/**
+ * This class holds the content an ASTM message must have for a handler to be called for it. A message meets the
+ * criteria if it meets each criterion that is not empty:
+ * <ul>
+ * <li>the sender name, the first component of the sender field of the header record (H.5), is one of the sender
+ * names.</li>
+ * <li>the message has a record of one of the record types, e.g. "R" for result records.</li>
+ * <li>the message orders or has a result for one of the test codes. The test code is the fourth component, the
+ * manufacturer's or local code, of the universal test ID of order records (O.5) and result records (R.3).</li>
+ * </ul>
+ */
+@Data
+public class ASTMRoutingCriteria {
+
+  public static final ASTMRoutingCriteria ANY = new ASTMRoutingCriteria(Set.of(), Set.of(), Set.of());
+
+  private final Set<String> senderNames;
+  private final Set<String> recordTypes;
+  private final Set<String> testCodes;
+
+  /**
+   * Constructs a new ASTMRoutingCriteria.
+   *
+   * @param senderNames the sender names the message may have. Empty if any sender is accepted.
+   * @param recordTypes the record types of which the message must have at least one. Empty if any records are
+   * accepted.
+   * @param testCodes the test codes of which the message must order or have a result for at least one. Empty if any
+   * tests are accepted.
+   */
+  public ASTMRoutingCriteria(Set<String> senderNames, Set<String> recordTypes, Set<String> testCodes) {
+    this.senderNames = senderNames == null ? Set.of() : Set.copyOf(senderNames);
+    this.recordTypes = recordTypes == null ? Set.of() : Set.copyOf(recordTypes);
+    this.testCodes = testCodes == null ? Set.of() : Set.copyOf(testCodes);
+  }
+}
@@ -0,0 +1,172 @@
+package org.itech.ahb.lib.astm.handling;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.itech.ahb.lib.astm.concept.ASTMDelimiters;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.ASTMRecordFields;
+
+/**
+ * This class is an index of the {@link ASTMRoutingCriteria} of a list of handlers, so the handlers whose criteria a
+ * message meets are found with a few hash lookups, however many handlers there are. Handlers without routing criteria
+ * are candidates for every message. The content of the message is only read for the criteria some handler has.
+ *
+ * The index can not be changed once it is created, and is safe to use from several threads.
+ */
+public class ASTMRoutingIndex {
+
+  private static final String HEADER_RECORD_TYPE = "H";
+  private static final String ORDER_RECORD_TYPE = "O";
+  private static final String RESULT_RECORD_TYPE = "R";
+  private static final int SENDER_FIELD = 5; // H.5
+  private static final int ORDER_TEST_ID_FIELD = 5; // O.5
+  private static final int RESULT_TEST_ID_FIELD = 3; // R.3
+  private static final int TEST_CODE_COMPONENT = 4; // the manufacturer's or local code of a universal test ID
+
+  private final List<ASTMHandler> handlers;
+  private final Criterion senderNames = new Criterion();
+  private final Criterion recordTypes = new Criterion();
+  private final Criterion testCodes = new Criterion();
+
+  /**
+   * Compiles an index of the routing criteria of the handlers.
+   *
+   * @param handlers the handlers, in the order they should be called.
+   */
+  public ASTMRoutingIndex(List<ASTMHandler> handlers) {
+    this.handlers = List.copyOf(handlers);
+    for (int i = 0; i < this.handlers.size(); ++i) {
+      ASTMRoutingCriteria criteria = this.handlers.get(i).getRoutingCriteria();
+      if (criteria == null) {
+        criteria = ASTMRoutingCriteria.ANY;
+      }
+      senderNames.add(i, criteria.getSenderNames());
+      recordTypes.add(i, criteria.getRecordTypes());
+      testCodes.add(i, criteria.getTestCodes());
+    }
+  }
+
+  /**
+   * Finds the handlers whose routing criteria the message meets. Their {@link ASTMHandler#matches(ASTMMessage)} has
+   * not been called.
+   *
+   * @param message the ASTM message.
+   * @return the candidate handlers, in the order they should be called.
+   */
+  public List<ASTMHandler> findCandidates(ASTMMessage message) {
+    BitSet candidates = new BitSet(handlers.size());
+    candidates.set(0, handlers.size());
+    if (senderNames.isUsed() || recordTypes.isUsed() || testCodes.isUsed()) {
+      MessageContent content = readContent(message);
+      if (senderNames.isUsed()) {
+        candidates.and(senderNames.find(content.senderNames));
+      }
+      if (recordTypes.isUsed()) {
+        candidates.and(recordTypes.find(content.recordTypes));
+      }
+      if (testCodes.isUsed()) {
+        candidates.and(testCodes.find(content.testCodes));
+      }
+    }
+    List<ASTMHandler> candidateHandlers = new ArrayList<>(candidates.cardinality());
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      candidateHandlers.add(handlers.get(i));
+    }
+    return candidateHandlers;
+  }
+
+  private MessageContent readContent(ASTMMessage message) {
+    MessageContent content = new MessageContent();
+    List<ASTMRecord> records = message.getRecords();
+    if (records == null) {
+      return content;
+    }
+    ASTMDelimiters delimiters = message.getDelimiters();
+    for (ASTMRecord record : records) {
+      ASTMRecordFields fields = record.getFields(delimiters);
+      String recordType = fields.getRecordType();
+      if (recordType == null || recordType.isEmpty()) {
+        continue;
+      }
+      content.recordTypes.add(recordType);
+      if (senderNames.isUsed() && content.senderNames.isEmpty() && recordType.equals(HEADER_RECORD_TYPE)) {
+        addIfPresent(content.senderNames, fields.getComponent(SENDER_FIELD, 1));
+      } else if (testCodes.isUsed() && recordType.equals(ORDER_RECORD_TYPE)) {
+        addTestCodes(content.testCodes, fields, ORDER_TEST_ID_FIELD);
+      } else if (testCodes.isUsed() && recordType.equals(RESULT_RECORD_TYPE)) {
+        addTestCodes(content.testCodes, fields, RESULT_TEST_ID_FIELD);
+      }
+      if (!recordTypes.isUsed() && !testCodes.isUsed() && recordType.equals(HEADER_RECORD_TYPE)) {
+        // only the header record was needed
+        break;
+      }
+    }
+    return content;
+  }
+
+  private void addTestCodes(Set<String> testCodes, ASTMRecordFields fields, int field) {
+    int repeats = fields.getRepeatCount(field);
+    for (int repeat = 1; repeat <= repeats; ++repeat) {
+      addIfPresent(testCodes, fields.getComponent(field, repeat, TEST_CODE_COMPONENT));
+    }
+  }
+
+  private void addIfPresent(Set<String> values, String value) {
+    if (value != null && !value.isEmpty()) {
+      values.add(value);
+    }
+  }
+
+  /**
+   * The values read from a message that criteria are checked against.
+   */
+  private static class MessageContent {
+
+    private final Set<String> senderNames = new HashSet<>();
+    private final Set<String> recordTypes = new HashSet<>();
+    private final Set<String> testCodes = new HashSet<>();
+  }
+
+  /**
+   * The handlers accepted by each value of one criterion, and the handlers that accept any value.
+   */
+  private static class Criterion {
+
+    private final Map<String, BitSet> handlersByValue = new HashMap<>();
+    private final BitSet anyValueHandlers = new BitSet();
+
+    private void add(int handler, Set<String> values) {
+      if (values.isEmpty()) {
+        anyValueHandlers.set(handler);
+        return;
+      }
+      for (String value : values) {
+        handlersByValue.computeIfAbsent(value, v -> new BitSet()).set(handler);
+      }
+    }
+
+    /**
+     * @return true if any handler has a value for this criterion.
+     */
+    private boolean isUsed() {
+      return !handlersByValue.isEmpty();
+    }
+
+    private BitSet find(Set<String> values) {
+      BitSet handlers = (BitSet) anyValueHandlers.clone();
+      for (String value : values) {
+        BitSet valueHandlers = handlersByValue.get(value);
+        if (valueHandlers != null) {
+          handlers.or(valueHandlers);
+        }
+      }
+      return handlers;
+    }
+  }
+}
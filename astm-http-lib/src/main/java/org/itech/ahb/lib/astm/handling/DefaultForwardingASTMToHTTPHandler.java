@@ -6,9 +6,14 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.Builder;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ByteBufferASTMMessage;
 import org.itech.ahb.lib.astm.concept.DefaultASTMMessage;
 import org.itech.ahb.lib.common.handling.HandleStatus;
 import org.itech.ahb.lib.util.LogUtil;
@@ -17,13 +22,28 @@ import org.itech.ahb.lib.util.LogUtil;
  * This class is a default handler that is at the core of this library.
  * It takes an ASTM message and forwards it over HTTP(S), optionally with a username and password
  * for BASIC authentication.
+ *
+ * A single {@link HttpClient} is shared by every message this handler forwards, so connections to the HTTP server
+ * are kept alive and reused (over HTTP/2 where the server supports it) instead of paying for a new TCP and TLS
+ * handshake per message.
  */
 @Slf4j
 public class DefaultForwardingASTMToHTTPHandler implements ASTMHandler {
 
+  public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+  public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 16;
+
   private final URI forwardingUri;
   private final String username;
-  private final char[] password;
+  private final String authorizationHeader; // null when no username is configured
+  private final HttpClient client;
+  private final Duration requestTimeout;
+  private final int maxInFlightRequests;
+  private int inFlightRequests = 0; // guarded by queuedRequests
+  private final Queue<Runnable> queuedRequests = new ArrayDeque<>();
+  private boolean gzipRequests = false;
+  private ASTMRoutingCriteria routingCriteria = null;
 
   /**
    * Constructs a new DefaultForwardingASTMToHTTPHandler with a URI endpoint it will forward to.
@@ -31,9 +51,7 @@ public class DefaultForwardingASTMToHTTPHandler implements ASTMHandler {
    * @param forwardingUri the endpoint for ASTM message to be forwarded to over HTTP(S).
    */
   public DefaultForwardingASTMToHTTPHandler(URI forwardingUri) {
-    this.forwardingUri = forwardingUri;
-    this.username = null;
-    this.password = new char[0];
+    this(forwardingUri, null, new char[0]);
   }
 
   /**
@@ -44,9 +62,92 @@ public class DefaultForwardingASTMToHTTPHandler implements ASTMHandler {
    * @param password the password.
    */
   public DefaultForwardingASTMToHTTPHandler(URI forwardingUri, String username, char[] password) {
+    this(forwardingUri, username, password, createDefaultHttpClient(), DEFAULT_REQUEST_TIMEOUT);
+  }
+
+  /**
+   * Constructs a new DefaultForwardingASTMToHTTPHandler that forwards using the provided client.
+   *
+   * @param forwardingUri the endpoint for ASTM message to be forwarded to over HTTP(S).
+   * @param username the username. null or empty if no authentication should be used.
+   * @param password the password.
+   * @param client the client to send every request with. This should be long-lived, so connections are reused.
+   * @param requestTimeout the maximum amount of time to wait for the http server to respond to a request.
+   */
+  public DefaultForwardingASTMToHTTPHandler(
+    URI forwardingUri,
+    String username,
+    char[] password,
+    HttpClient client,
+    Duration requestTimeout
+  ) {
+    this(forwardingUri, username, password, client, requestTimeout, DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+  }
+
+  /**
+   * Constructs a new DefaultForwardingASTMToHTTPHandler that forwards using the provided client, with a limit on the
+   * number of requests sent by {@link #handleAsync(ASTMMessage)} that may be awaiting a response at once.
+   *
+   * @param forwardingUri the endpoint for ASTM message to be forwarded to over HTTP(S).
+   * @param username the username. null or empty if no authentication should be used.
+   * @param password the password.
+   * @param client the client to send every request with. This should be long-lived, so connections are reused.
+   * @param requestTimeout the maximum amount of time to wait for the http server to respond to a request.
+   * @param maxInFlightRequests the maximum number of asynchronous requests awaiting a response at once. 0 or less
+   * means unbounded.
+   */
+  public DefaultForwardingASTMToHTTPHandler(
+    URI forwardingUri,
+    String username,
+    char[] password,
+    HttpClient client,
+    Duration requestTimeout,
+    int maxInFlightRequests
+  ) {
     this.forwardingUri = forwardingUri;
     this.username = username;
-    this.password = password;
+    this.authorizationHeader = username == null || username.equals("")
+      ? null
+      : "Basic " + Base64.getEncoder().encodeToString((username + ":" + new String(password)).getBytes());
+    this.client = client;
+    this.requestTimeout = requestTimeout;
+    this.maxInFlightRequests = maxInFlightRequests;
+  }
+
+  /**
+   * Creates a client that prefers HTTP/2, with the default connect timeout and the default executor.
+   *
+   * @return the client.
+   */
+  public static HttpClient createDefaultHttpClient() {
+    return HttpClient.newBuilder() //
+      .version(HttpClient.Version.HTTP_2) //
+      .connectTimeout(DEFAULT_CONNECT_TIMEOUT) //
+      .build();
+  }
+
+  /**
+   * Sets whether the bodies of forwarded messages are gzip compressed. The http server must accept a
+   * "Content-Encoding: gzip" request body.
+   *
+   * @param gzipRequests true to compress the bodies of forwarded messages.
+   */
+  public void setGzipRequests(boolean gzipRequests) {
+    this.gzipRequests = gzipRequests;
+  }
+
+  /**
+   * Sets the content a message must have to be forwarded by this handler.
+   *
+   * @param routingCriteria the routing criteria, or null to forward every message this handler matches.
+   */
+  public void setRoutingCriteria(ASTMRoutingCriteria routingCriteria) {
+    this.routingCriteria = routingCriteria;
+  }
+
+  @Override
+  public ASTMRoutingCriteria getRoutingCriteria() {
+    return routingCriteria;
   }
 
   /**
@@ -57,45 +158,123 @@ public class DefaultForwardingASTMToHTTPHandler implements ASTMHandler {
    */
   @Override
   public ASTMHandlerResponse handle(ASTMMessage message) {
-    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest request = createRequest(message);
+    try {
+      log.debug("forwarding request to http server at " + forwardingUri.toString());
+      return toHandlerResponse(client.send(request, HttpResponse.BodyHandlers.ofString()));
+    } catch (IOException e) {
+      log.error("error occurred communicating with http server at " + forwardingUri.toString(), e);
+      return new ASTMHandlerResponse("", HandleStatus.FORWARD_FAIL_ERROR, false, this);
+    } catch (InterruptedException e) {
+      log.error("thread was interrupted while forwarding to http server at " + forwardingUri.toString(), e);
+      Thread.currentThread().interrupt();
+      return new ASTMHandlerResponse("", HandleStatus.INTERRUPTED, false, this);
+    }
+  }
+
+  /**
+   * Handles the given ASTM message by forwarding it over HTTP(S) to the URI endpoint that was passed into this class,
+   * without waiting for the http server to respond. If the maximum number of requests are already in flight, the
+   * request is queued and sent once an earlier request completes, in the order the messages were handled.
+   *
+   * @param message the ASTM message.
+   * @return a future that completes with the ASTM handler response.
+   */
+  @Override
+  public CompletableFuture<ASTMHandlerResponse> handleAsync(ASTMMessage message) {
+    HttpRequest request = createRequest(message);
+    CompletableFuture<ASTMHandlerResponse> handlerResponseFuture = new CompletableFuture<>();
+    Runnable sendRequest = () -> sendAsync(request, handlerResponseFuture);
+    boolean sendNow;
+    synchronized (queuedRequests) {
+      sendNow = maxInFlightRequests <= 0 || inFlightRequests < maxInFlightRequests;
+      if (sendNow) {
+        ++inFlightRequests;
+      } else {
+        log.debug(
+          "max in flight requests (" + maxInFlightRequests + ") reached for " + forwardingUri + ", queueing request"
+        );
+        queuedRequests.add(sendRequest);
+      }
+    }
+    if (sendNow) {
+      sendRequest.run();
+    }
+    return handlerResponseFuture;
+  }
+
+  private void sendAsync(HttpRequest request, CompletableFuture<ASTMHandlerResponse> handlerResponseFuture) {
+    log.debug("forwarding request asynchronously to http server at " + forwardingUri.toString());
+    CompletableFuture<HttpResponse<String>> responseFuture;
+    try {
+      responseFuture = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    } catch (RuntimeException e) {
+      responseFuture = CompletableFuture.failedFuture(e);
+    }
+    responseFuture.whenComplete((response, e) -> {
+      releaseInFlightRequest();
+      if (e != null) {
+        log.error("error occurred communicating with http server at " + forwardingUri.toString(), e);
+        handlerResponseFuture.complete(new ASTMHandlerResponse("", HandleStatus.FORWARD_FAIL_ERROR, false, this));
+      } else {
+        handlerResponseFuture.complete(toHandlerResponse(response));
+      }
+    });
+  }
+
+  /**
+   * Hands the in flight slot of a completed request to the next queued request, or frees it if none is queued.
+   */
+  private void releaseInFlightRequest() {
+    Runnable nextRequest;
+    synchronized (queuedRequests) {
+      nextRequest = queuedRequests.poll();
+      if (nextRequest == null) {
+        --inFlightRequests;
+      }
+    }
+    if (nextRequest != null) {
+      nextRequest.run();
+    }
+  }
+
+  private HttpRequest createRequest(ASTMMessage message) {
     log.debug("creating request to forward to http server at " + forwardingUri.toString());
-    log.trace("request: '" + message.getMessage() + "'");
+    if (log.isTraceEnabled()) {
+      log.trace("request: '" + message.getMessage() + "'");
+    }
     Builder requestBuilder = HttpRequest.newBuilder() //
       .uri(forwardingUri) //
-      .POST(HttpRequest.BodyPublishers.ofString(message.getMessage())); //
-    if (!(username == null || username.equals(""))) {
+      .timeout(requestTimeout) //
+      .POST(new ASTMMessageBodyPublisher(message, gzipRequests)); //
+    if (gzipRequests) {
+      requestBuilder.header("Content-Encoding", "gzip");
+    }
+    if (authorizationHeader != null) {
       log.debug("using username '" + username + "' to forward to http server at " + forwardingUri.toString());
-      requestBuilder.header(
-        "Authorization",
-        "Basic " + Base64.getEncoder().encodeToString((username + ":" + new String(password)).getBytes())
-      );
+      requestBuilder.header("Authorization", authorizationHeader);
     }
-    HttpRequest request = requestBuilder.build();
+    return requestBuilder.build();
+  }
 
-    try {
-      log.debug("forwarding request to http server at " + forwardingUri.toString());
-      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-      log.debug("received " + response.statusCode() + " response from http server at " + forwardingUri.toString());
-      log.trace("response: " + LogUtil.convertForDisplay(response.body()));
-      if (response.statusCode() == 200) {
-        return new ASTMHandlerResponse(response.body(), HandleStatus.SUCCESS, false, this);
-      }
-      return new ASTMHandlerResponse(response.body(), HandleStatus.FORWARD_FAIL_BAD_RESPONSE, false, this);
-    } catch (IOException | InterruptedException e) {
-      log.error("error occurred communicating with http server at " + forwardingUri.toString(), e);
-      return new ASTMHandlerResponse("", HandleStatus.FORWARD_FAIL_ERROR, false, this);
+  private ASTMHandlerResponse toHandlerResponse(HttpResponse<String> response) {
+    log.debug("received " + response.statusCode() + " response from http server at " + forwardingUri.toString());
+    log.trace("response: " + LogUtil.convertForDisplay(response.body()));
+    if (response.statusCode() == 200) {
+      return new ASTMHandlerResponse(response.body(), HandleStatus.SUCCESS, false, this);
     }
+    return new ASTMHandlerResponse(response.body(), HandleStatus.FORWARD_FAIL_BAD_RESPONSE, false, this);
   }
 
   /**
-   * This handler matches all DefaultASTMMessage messages.
+   * This handler matches all DefaultASTMMessage and ByteBufferASTMMessage messages.
    *
    * @param message
    * @return boolean
    */
   @Override
   public boolean matches(ASTMMessage message) {
-    return message instanceof DefaultASTMMessage;
+    return message instanceof DefaultASTMMessage || message instanceof ByteBufferASTMMessage;
   }
 
   /**
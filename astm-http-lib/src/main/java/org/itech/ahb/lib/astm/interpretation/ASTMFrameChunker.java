@@ -0,0 +1,90 @@
+package org.itech.ahb.lib.astm.interpretation;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.DefaultASTMFrame;
+
+/**
+ * This class splits ASTM records into frames as they are iterated, so the frames of a message are created one at a
+ * time while it is being sent. Each record is split into as many frames as needed for the text of each frame to fit
+ * within the maximum size once encoded as UTF-8, without splitting a character across frames. The last frame of a
+ * record is an END frame, and frames are numbered from 1, modulo 8.
+ */
+public class ASTMFrameChunker implements Iterator<ASTMFrame> {
+
+  private final Iterator<? extends ASTMRecord> records;
+  private final int maxTextSize;
+  private String recordText; // null when the next record has not been started yet
+  private int recordPosition;
+  private int frameCount = 0;
+
+  /**
+   * Constructs a new ASTMFrameChunker.
+   *
+   * @param records the records to split into frames.
+   * @param maxTextSize the maximum number of bytes of text a frame may have.
+   */
+  public ASTMFrameChunker(List<? extends ASTMRecord> records, int maxTextSize) {
+    this.records = records.iterator();
+    this.maxTextSize = maxTextSize;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return recordText != null || records.hasNext();
+  }
+
+  @Override
+  public ASTMFrame next() {
+    if (recordText == null) {
+      if (!records.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      recordText = records.next().getRecord();
+      recordPosition = 0;
+    }
+    int start = recordPosition;
+    int end = start;
+    int size = 0;
+    while (end < recordText.length()) {
+      int codePoint = recordText.codePointAt(end);
+      int encodedSize = encodedSize(codePoint);
+      if (size + encodedSize > maxTextSize) {
+        break;
+      }
+      size += encodedSize;
+      end += Character.charCount(codePoint);
+    }
+
+    ASTMFrame frame = new DefaultASTMFrame();
+    frame.setText(recordText.substring(start, end));
+    frame.setFrameNumber(++frameCount % 8);
+    if (end < recordText.length()) {
+      frame.setType(FrameType.INTERMEDIATE);
+      recordPosition = end;
+    } else {
+      frame.setType(FrameType.END);
+      recordText = null;
+    }
+    return frame;
+  }
+
+  /**
+   * @param codePoint the character.
+   * @return the number of bytes the character is encoded as in UTF-8.
+   */
+  private static int encodedSize(int codePoint) {
+    if (codePoint < 0x80) {
+      return 1;
+    } else if (codePoint < 0x800) {
+      return 2;
+    } else if (codePoint < 0x10000) {
+      return 3;
+    }
+    return 4;
+  }
+}
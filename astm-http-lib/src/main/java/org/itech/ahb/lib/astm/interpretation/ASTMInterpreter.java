@@ -1,10 +1,12 @@
 package org.itech.ahb.lib.astm.interpretation;
 
+import java.util.Iterator;
 import java.util.List;
 import org.itech.ahb.lib.astm.concept.ASTMFrame;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
 import org.itech.ahb.lib.astm.concept.ASTMRecord;
 import org.itech.ahb.lib.astm.exception.FrameParsingException;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
 
 /**
  * This interface defines methods for interpreting ASTM frames, records, and messages.
@@ -27,6 +29,29 @@ public interface ASTMInterpreter {
    */
   List<ASTMFrame> interpretASTMMessageToFrames(ASTMMessage message);
 
+  /**
+   * Interprets an ASTM message as a list of ASTM frames sized for the given ASTM version.
+   *
+   * @param message the ASTM message.
+   * @param astmVersion the ASTM version the frames will be sent over.
+   * @return the list of interpreted ASTM frames that make up that message for transmission.
+   */
+  default List<ASTMFrame> interpretASTMMessageToFrames(ASTMMessage message, ASTMVersion astmVersion) {
+    return interpretASTMMessageToFrames(message);
+  }
+
+  /**
+   * Interprets an ASTM message as ASTM frames sized for the given ASTM version, creating each frame as it is iterated
+   * so the frames of a large message do not all need to exist at once.
+   *
+   * @param message the ASTM message.
+   * @param astmVersion the ASTM version the frames will be sent over.
+   * @return an iterator over the interpreted ASTM frames that make up that message for transmission.
+   */
+  default Iterator<ASTMFrame> interpretASTMMessageToFrameIterator(ASTMMessage message, ASTMVersion astmVersion) {
+    return interpretASTMMessageToFrames(message, astmVersion).iterator();
+  }
+
   /**
    * Interprets a list of ASTM records as an ASTM message.
    *
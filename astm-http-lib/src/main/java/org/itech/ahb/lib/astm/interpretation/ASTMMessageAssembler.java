@@ -0,0 +1,175 @@
+package org.itech.ahb.lib.astm.interpretation;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.exception.FrameParsingException;
+
+/**
+ * This class assembles an ASTM message from its frames as they are received, instead of after the whole message has
+ * been received. Each record is interpreted as soon as the end frame holding its end arrives, so only the text of the
+ * record that is part way through being received is kept as text, and the frames themselves are not kept at all.
+ *
+ * An assembler is used for a single message at a time and is not thread safe.
+ */
+@Slf4j
+public class ASTMMessageAssembler {
+
+  private static final char RECORD_SEPERATOR = 0x0D; // CR
+  private static final char MESSAGE_TERMINATOR_RECORD_START = 'L';
+
+  private final ASTMInterpreter interpreter;
+  private final List<ASTMRecord> records = new ArrayList<>();
+  private final StringBuilder partialRecord = new StringBuilder();
+  private int frameCount;
+  private boolean messageTerminated;
+
+  // the state before the last frame was accepted, so it can be undone
+  private int previousRecordCount;
+  private int previousPartialRecordLength = -1; // -1 when there is no frame to undo
+  private String previousPartialRecord; // only kept when the last frame was an end frame, as it cleared the text
+  private boolean previousMessageTerminated;
+
+  /**
+   * Constructs a new ASTMMessageAssembler.
+   *
+   * @param interpreter the interpreter used to interpret the text of each record and the final message.
+   */
+  public ASTMMessageAssembler(ASTMInterpreter interpreter) {
+    this.interpreter = interpreter;
+  }
+
+  /**
+   * Adds the next frame of the message. If the frame is an end frame, every record that ends in it is interpreted.
+   *
+   * @param frame the next frame of the message.
+   * @return the records that were completed by this frame, in order. This is empty for intermediate frames.
+   * @throws FrameParsingException if the frame type is unrecognized.
+   */
+  public List<ASTMRecord> accept(ASTMFrame frame) throws FrameParsingException {
+    if (log.isTraceEnabled()) {
+      log.trace("frame: " + frame);
+    }
+    if (frame.getType() != FrameType.INTERMEDIATE && frame.getType() != FrameType.END) {
+      throw new FrameParsingException("frame type is an unrecognized type so message cannot be reconstructed");
+    }
+    previousRecordCount = records.size();
+    previousPartialRecordLength = partialRecord.length();
+    previousPartialRecord = null;
+    previousMessageTerminated = messageTerminated;
+    ++frameCount;
+    partialRecord.append(frame.getText());
+    if (frame.getType() == FrameType.INTERMEDIATE) {
+      log.debug("adding frame to ASTM message");
+      return List.of();
+    }
+
+    log.debug("adding end frame to ASTM message");
+    List<ASTMRecord> completedRecords = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < partialRecord.length(); ++i) {
+      if (partialRecord.charAt(i) == RECORD_SEPERATOR) {
+        completedRecords.add(interpretRecord(partialRecord.substring(start, i + 1)));
+        start = i + 1;
+      }
+    }
+    if (start < partialRecord.length()) {
+      // an end frame ends the record even if the sender left off the record seperator
+      completedRecords.add(interpretRecord(partialRecord.substring(start)));
+    }
+    previousPartialRecord = partialRecord.substring(0, previousPartialRecordLength);
+    partialRecord.setLength(0);
+    records.addAll(completedRecords);
+    messageTerminated = !completedRecords.isEmpty() && isTerminationRecord(completedRecords.getLast());
+    return completedRecords;
+  }
+
+  /**
+   * Undoes the last accepted frame, so it can be accepted again if the sender resends it. Only the last frame can be
+   * undone.
+   */
+  public void undoLastFrame() {
+    if (previousPartialRecordLength < 0) {
+      return;
+    }
+    records.subList(previousRecordCount, records.size()).clear();
+    if (previousPartialRecord == null) {
+      partialRecord.setLength(previousPartialRecordLength);
+    } else {
+      partialRecord.setLength(0);
+      partialRecord.append(previousPartialRecord);
+    }
+    messageTerminated = previousMessageTerminated;
+    previousPartialRecordLength = -1;
+    previousPartialRecord = null;
+    --frameCount;
+  }
+
+  /**
+   * @return the number of frames accepted so far.
+   */
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * @return true if the last completed record is a message termination record.
+   */
+  public boolean isMessageTerminated() {
+    return messageTerminated;
+  }
+
+  /**
+   * @return true if no frame has been accepted since the assembler was created or reset.
+   */
+  public boolean isEmpty() {
+    return frameCount == 0;
+  }
+
+  /**
+   * Interprets the records completed so far as an ASTM message. Text of a record that was never ended by an end frame
+   * is not part of the message.
+   *
+   * @return the ASTM message.
+   */
+  public ASTMMessage getMessage() {
+    if (partialRecord.length() > 0) {
+      log.warn("discarding " + partialRecord.length() + " characters of a record that was not ended by an end frame");
+    }
+    return interpreter.interpretASTMRecordsToMessage(new ArrayList<>(records));
+  }
+
+  /**
+   * Discards everything accepted so far, so the next message can be assembled.
+   */
+  public void reset() {
+    records.clear();
+    partialRecord.setLength(0);
+    frameCount = 0;
+    messageTerminated = false;
+    previousPartialRecordLength = -1;
+    previousPartialRecord = null;
+  }
+
+  private ASTMRecord interpretRecord(String recordText) {
+    if (log.isTraceEnabled()) {
+      log.trace("added record: '" + recordText + "' to list of records in message");
+    }
+    return interpreter.interpretASTMTextToRecord(recordText);
+  }
+
+  /**
+   * Checks if a record is a message termination record.
+   *
+   * @param record the record.
+   * @return true if the record is a message termination record.
+   */
+  private static boolean isTerminationRecord(ASTMRecord record) {
+    String text = record.getRecord();
+    return text != null && !text.isEmpty() && text.charAt(0) == MESSAGE_TERMINATOR_RECORD_START;
+  }
+}
@@ -0,0 +1,257 @@
+package org.itech.ahb.lib.astm.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator.FrameError;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.common.handling.HandleStatus;
+
+/**
+ * This class records how ASTM messages move through the bridge as Micrometer meters:
+ * <ul>
+ * <li>astm.establishment: a timer of the establishment phase, by direction, ASTM version and whether communication was
+ * established. When receiving, this is the time from when the receiver started waiting until it acknowledged the
+ * sender's ENQ. When sending, this is the time from sending ENQ until the receiver responded.</li>
+ * <li>astm.frame.receive: a timer of receiving each frame, from when the receiver started waiting for it until it was
+ * read, by ASTM version.</li>
+ * <li>astm.frame.errors: a counter of the errors found in received frames, by {@link FrameError}.</li>
+ * <li>astm.naks: a counter of the NAKs sent while receiving and received while sending, by direction.</li>
+ * <li>astm.frame.retries: a counter of the frames that were sent again after not being acknowledged, by
+ * direction.</li>
+ * <li>astm.messages: a counter of the messages received and sent, by direction and ASTM version.</li>
+ * <li>astm.handler: a timer of each ASTM handler handling a message, by handler name and {@link HandleStatus}.</li>
+ * <li>astm.dead.letters: a counter of the corrupt entries that were moved out of a durable store so the entries after
+ * them could be forwarded, by {@link Store}.</li>
+ * </ul>
+ *
+ * The meters that are used for every frame are created up front, so recording them does not look them up in the
+ * registry. Instances are safe to use from several threads.
+ */
+public class ASTMMetrics {
+
+  /**
+   * The direction of an exchange, from the bridge's point of view.
+   */
+  public enum Direction {
+    RECEIVE,
+    SEND;
+
+    private String tag() {
+      return name().toLowerCase();
+    }
+  }
+
+  /**
+   * The durable stores that ASTM messages are kept in until they are forwarded.
+   */
+  public enum Store {
+    /**
+     * The store of messages received from ASTM senders.
+     */
+    MESSAGE_STORE,
+    /**
+     * The queue of messages received over HTTP to be forwarded to ASTM receivers.
+     */
+    FORWARDING_QUEUE
+  }
+
+  private static final ASTMMetrics GLOBAL = new ASTMMetrics(Metrics.globalRegistry);
+
+  private final MeterRegistry registry;
+  private final Map<Direction, Map<ASTMVersion, Timer>> establishedTimers = new EnumMap<>(Direction.class);
+  private final Map<Direction, Map<ASTMVersion, Timer>> notEstablishedTimers = new EnumMap<>(Direction.class);
+  private final Map<ASTMVersion, Timer> frameReceiveTimers = new EnumMap<>(ASTMVersion.class);
+  private final Map<FrameError, Counter> frameErrorCounters = new EnumMap<>(FrameError.class);
+  private final Map<Direction, Counter> nakCounters = new EnumMap<>(Direction.class);
+  private final Map<Direction, Counter> frameRetryCounters = new EnumMap<>(Direction.class);
+  private final Map<Direction, Map<ASTMVersion, Counter>> messageCounters = new EnumMap<>(Direction.class);
+  private final Map<String, Map<HandleStatus, Timer>> handlerTimers = new ConcurrentHashMap<>();
+  private final Map<Store, Counter> deadLetterCounters = new EnumMap<>(Store.class);
+
+  /**
+   * Constructs a new ASTMMetrics that registers its meters in the registry.
+   *
+   * @param registry the registry to register the meters in.
+   */
+  public ASTMMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    for (Direction direction : Direction.values()) {
+      Map<ASTMVersion, Timer> establishedTimersForDirection = new EnumMap<>(ASTMVersion.class);
+      Map<ASTMVersion, Timer> notEstablishedTimersForDirection = new EnumMap<>(ASTMVersion.class);
+      Map<ASTMVersion, Counter> messageCountersForDirection = new EnumMap<>(ASTMVersion.class);
+      for (ASTMVersion astmVersion : ASTMVersion.values()) {
+        establishedTimersForDirection.put(astmVersion, establishmentTimer(direction, astmVersion, true));
+        notEstablishedTimersForDirection.put(astmVersion, establishmentTimer(direction, astmVersion, false));
+        messageCountersForDirection.put(
+          astmVersion,
+          Counter.builder("astm.messages")
+            .description("ASTM messages received and sent")
+            .tag("direction", direction.tag())
+            .tag("version", astmVersion.name())
+            .register(registry)
+        );
+      }
+      establishedTimers.put(direction, establishedTimersForDirection);
+      notEstablishedTimers.put(direction, notEstablishedTimersForDirection);
+      messageCounters.put(direction, messageCountersForDirection);
+      nakCounters.put(
+        direction,
+        Counter.builder("astm.naks")
+          .description("NAKs sent while receiving and received while sending")
+          .tag("direction", direction.tag())
+          .register(registry)
+      );
+      frameRetryCounters.put(
+        direction,
+        Counter.builder("astm.frame.retries")
+          .description("frames sent again after not being acknowledged")
+          .tag("direction", direction.tag())
+          .register(registry)
+      );
+    }
+    for (ASTMVersion astmVersion : ASTMVersion.values()) {
+      frameReceiveTimers.put(
+        astmVersion,
+        Timer.builder("astm.frame.receive")
+          .description("time taken to receive a frame")
+          .tag("version", astmVersion.name())
+          .publishPercentileHistogram()
+          .register(registry)
+      );
+    }
+    for (FrameError frameError : FrameError.values()) {
+      frameErrorCounters.put(
+        frameError,
+        Counter.builder("astm.frame.errors")
+          .description("errors found in received frames")
+          .tag("error", frameError.name())
+          .register(registry)
+      );
+    }
+    for (Store store : Store.values()) {
+      deadLetterCounters.put(
+        store,
+        Counter.builder("astm.dead.letters")
+          .description("corrupt entries moved out of a durable store")
+          .tag("store", store.name())
+          .register(registry)
+      );
+    }
+  }
+
+  /**
+   * @return the metrics that are registered in the global registry, which is used when no other metrics are set.
+   */
+  public static ASTMMetrics global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Records the time taken by the establishment phase.
+   *
+   * @param direction whether the bridge was receiving or sending.
+   * @param astmVersion the ASTM version of the exchange.
+   * @param established true if communication was established.
+   * @param nanos the time taken in nanoseconds.
+   */
+  public void recordEstablishment(Direction direction, ASTMVersion astmVersion, boolean established, long nanos) {
+    Map<Direction, Map<ASTMVersion, Timer>> timers = established ? establishedTimers : notEstablishedTimers;
+    timers.get(direction).get(astmVersion).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time taken to receive a frame.
+   *
+   * @param astmVersion the ASTM version of the exchange.
+   * @param nanos the time taken in nanoseconds.
+   */
+  public void recordFrameReceived(ASTMVersion astmVersion, long nanos) {
+    frameReceiveTimers.get(astmVersion).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the errors found in a received frame.
+   *
+   * @param frameErrors the errors.
+   */
+  public void recordFrameErrors(Set<FrameError> frameErrors) {
+    for (FrameError frameError : frameErrors) {
+      frameErrorCounters.get(frameError).increment();
+    }
+  }
+
+  /**
+   * Records a NAK being sent while receiving, or received while sending.
+   *
+   * @param direction whether the bridge was receiving or sending.
+   */
+  public void recordNak(Direction direction) {
+    nakCounters.get(direction).increment();
+  }
+
+  /**
+   * Records a frame being sent again after it was not acknowledged.
+   *
+   * @param direction whether the bridge was receiving or sending.
+   */
+  public void recordFrameRetry(Direction direction) {
+    frameRetryCounters.get(direction).increment();
+  }
+
+  /**
+   * Records a message being received or sent.
+   *
+   * @param direction whether the bridge received or sent the message.
+   * @param astmVersion the ASTM version the message was exchanged over.
+   */
+  public void recordMessage(Direction direction, ASTMVersion astmVersion) {
+    messageCounters.get(direction).get(astmVersion).increment();
+  }
+
+  /**
+   * Records the time taken by a handler to handle a message.
+   *
+   * @param handlerName the name of the handler.
+   * @param status the status the handler finished with.
+   * @param nanos the time taken in nanoseconds.
+   */
+  public void recordHandled(String handlerName, HandleStatus status, long nanos) {
+    handlerTimers
+      .computeIfAbsent(handlerName, name -> new ConcurrentHashMap<>())
+      .computeIfAbsent(status, s ->
+        Timer.builder("astm.handler")
+          .description("time taken by a handler to handle an ASTM message")
+          .tag("handler", handlerName)
+          .tag("status", status.name())
+          .publishPercentileHistogram()
+          .register(registry)
+      )
+      .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records a corrupt entry being moved out of a durable store.
+   *
+   * @param store the store the entry was moved out of.
+   */
+  public void recordDeadLetter(Store store) {
+    deadLetterCounters.get(store).increment();
+  }
+
+  private Timer establishmentTimer(Direction direction, ASTMVersion astmVersion, boolean established) {
+    return Timer.builder("astm.establishment")
+      .description("time taken by the establishment phase")
+      .tag("direction", direction.tag())
+      .tag("version", astmVersion.name())
+      .tag("established", Boolean.toString(established))
+      .publishPercentileHistogram()
+      .register(registry);
+  }
+}
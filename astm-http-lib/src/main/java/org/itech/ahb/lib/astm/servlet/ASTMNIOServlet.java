@@ -0,0 +1,531 @@
+package org.itech.ahb.lib.astm.servlet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.communication.ASTMReceiveStateMachine;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerResponse;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerServiceResponse;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace.EventType;
+import org.itech.ahb.lib.common.handling.HandleStatus;
+
+/**
+ * This class represents a servlet that listens for ASTM messages via an ASTM transmission protocol
+ * using non-blocking IO. A single event loop thread (the thread calling {@link #listen()}) reads from every
+ * connection and drives a {@link ASTMReceiveStateMachine} per connection, so idle or slow senders do not hold on
+ * to a thread. Received messages are handed to the handler service on the worker executor.
+ *
+ * If a message store is set, the frame that completes a message is only acknowledged once the message has been
+ * durably stored on the worker executor. The connection is not read from while its message is being stored.
+ */
+@Slf4j
+public class ASTMNIOServlet extends ASTMServlet {
+
+  private static final int READ_BUFFER_SIZE = 8192;
+  private static final long SELECT_TIMEOUT = 1000; // in milliseconds
+
+  private int openConnections = 0;
+  private final Queue<Connection> storedConnections = new ConcurrentLinkedQueue<>(); // whose message store finished
+  // soonest first, so only the connections that may have timed out are checked after each select
+  private final Queue<Expiry> expiries = new PriorityQueue<>((a, b) -> Long.signum(a.deadline - b.deadline));
+
+  /**
+   * Constructs a new ASTMNIOServlet that handles received messages on a new thread of the given kind.
+   *
+   * @param astmHandlerService the handler service to use for processing messages.
+   * @param astmInterpreterFactory the interpreter factory to use for interpreting messages.
+   * @param listenPort the port to listen on for ASTM messages.
+   * @param astmVersion the ASTM version to use for communication.
+   * @param workerThreadMode the kind of thread to start for handling every received message.
+   * @param maxConcurrentConnections the maximum number of connections served at once. 0 or less means unbounded.
+   */
+  public ASTMNIOServlet(
+    ASTMHandlerService astmHandlerService,
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int listenPort,
+    ASTMVersion astmVersion,
+    ConnectionThreadMode workerThreadMode,
+    int maxConcurrentConnections
+  ) {
+    super(
+      astmHandlerService,
+      astmInterpreterFactory,
+      listenPort,
+      astmVersion,
+      workerThreadMode,
+      maxConcurrentConnections
+    );
+  }
+
+  /**
+   * Constructs a new ASTMNIOServlet that handles received messages on the provided executor.
+   *
+   * @param astmHandlerService the handler service to use for processing messages.
+   * @param astmInterpreterFactory the interpreter factory to use for interpreting messages.
+   * @param listenPort the port to listen on for ASTM messages.
+   * @param astmVersion the ASTM version to use for communication.
+   * @param workerExecutor the executor that received messages are handled on.
+   * @param maxConcurrentConnections the maximum number of connections served at once. 0 or less means unbounded.
+   */
+  public ASTMNIOServlet(
+    ASTMHandlerService astmHandlerService,
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int listenPort,
+    ASTMVersion astmVersion,
+    ExecutorService workerExecutor,
+    int maxConcurrentConnections
+  ) {
+    super(
+      astmHandlerService,
+      astmInterpreterFactory,
+      listenPort,
+      astmVersion,
+      workerExecutor,
+      maxConcurrentConnections
+    );
+  }
+
+  /**
+   * Starts the servlet to listen for ASTM messages on the specified port. This thread becomes the event loop
+   * for every connection. If a maximum number of concurrent connections is configured, no further
+   * connection is accepted until one of the open connections has closed.
+   */
+  @Override
+  public void listen() {
+    try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      serverChannel.bind(new InetSocketAddress(listenPort));
+      serverChannel.configureBlocking(false);
+      SelectionKey acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+      // every byte received produces at most one byte to respond with
+      ByteBuffer responseBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      log.info(
+        "Server is listening on port " +
+        listenPort +
+        " with non-blocking io for ASTM transmission protocol: " +
+        astmVersion +
+        " messages"
+      );
+      while (true) {
+        selector.select(SELECT_TIMEOUT);
+        Connection storedConnection;
+        while ((storedConnection = storedConnections.poll()) != null) {
+          completeStore(storedConnection, responseBuffer);
+        }
+        Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+        while (selectedKeys.hasNext()) {
+          SelectionKey key = selectedKeys.next();
+          selectedKeys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept(serverChannel, selector);
+          } else {
+            Connection connection = (Connection) key.attachment();
+            try {
+              if (key.isReadable()) {
+                read(key, connection, readBuffer, responseBuffer);
+              }
+              if (key.isValid() && key.isWritable()) {
+                write(connection);
+              }
+            } catch (IOException e) {
+              log.error("error occurred communicating with astm sender", e);
+              close(key, connection);
+            }
+          }
+        }
+        closeExpiredConnections();
+        acceptKey.interestOps(
+          maxConcurrentConnections > 0 && openConnections >= maxConcurrentConnections ? 0 : SelectionKey.OP_ACCEPT
+        );
+      }
+    } catch (Exception e) {
+      log.error("an exception caused the astm server to shut down", e);
+    }
+  }
+
+  /**
+   * Accepts a pending connection. A connection that fails while being set up is closed without stopping the server.
+   */
+  private void accept(ServerSocketChannel serverChannel, Selector selector) {
+    SocketChannel channel;
+    try {
+      channel = serverChannel.accept();
+    } catch (IOException e) {
+      log.error("error occurred accepting connection from astm sender", e);
+      return;
+    }
+    if (channel == null) {
+      return;
+    }
+    ASTMSessionTrace sessionTrace = null;
+    try {
+      channel.configureBlocking(false);
+      sessionTrace = startSessionTrace(channel.getRemoteAddress());
+      Connection connection = new Connection(channel, sessionTrace);
+      connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+      scheduleExpiry(connection, connection.deadline());
+      log.debug("accepted connection from astm sender at " + channel.getRemoteAddress());
+    } catch (IOException e) {
+      log.error("could not serve connection from astm sender", e);
+      if (sessionTrace != null) {
+        closeSessionTrace(sessionTrace);
+      }
+      try {
+        channel.close();
+      } catch (IOException closeException) {
+        log.error("error occurred closing connection with astm sender", closeException);
+      }
+      return;
+    }
+    ++openConnections;
+    if (maxConcurrentConnections > 0 && openConnections >= maxConcurrentConnections) {
+      log.warn(
+        "max concurrent connections (" +
+        maxConcurrentConnections +
+        ") reached on port " +
+        listenPort +
+        ", waiting for a connection to close before accepting more"
+      );
+    }
+  }
+
+  private void read(SelectionKey key, Connection connection, ByteBuffer readBuffer, ByteBuffer responseBuffer)
+    throws IOException {
+    readBuffer.clear();
+    int read = connection.channel.read(readBuffer);
+    if (read < 0) {
+      if (connection.stateMachine.isReceivingMessage()) {
+        log.error("astm sender closed the connection part way through a message, abandoning message");
+        connection.sessionTrace.record(EventType.ERROR, "closed part way through a message");
+      }
+      close(key, connection);
+      return;
+    }
+    connection.lastActivity = System.nanoTime();
+    readBuffer.flip();
+    receive(connection, readBuffer, responseBuffer);
+  }
+
+  /**
+   * Advances the connection's protocol with the received bytes and sends the response. Bytes that are received while
+   * a message is being stored are kept until the store completes.
+   */
+  private void receive(Connection connection, ByteBuffer in, ByteBuffer responseBuffer) throws IOException {
+    responseBuffer.clear();
+    connection.stateMachine.receive(in, responseBuffer);
+    boolean receivingMessage = connection.stateMachine.isReceivingMessage();
+    if (receivingMessage && !connection.receivingMessage) {
+      connection.messageStart = System.nanoTime();
+    }
+    connection.receivingMessage = receivingMessage;
+    long deadline = connection.deadline();
+    if (deadline - connection.scheduledDeadline < 0) {
+      scheduleExpiry(connection, deadline);
+    }
+    if (in.hasRemaining()) {
+      connection.pendingRead = ByteBuffer.allocate(in.remaining()).put(in).flip();
+    }
+    respond(connection, responseBuffer);
+  }
+
+  private void respond(Connection connection, ByteBuffer responseBuffer) throws IOException {
+    responseBuffer.flip();
+    if (connection.pendingWrite == null) {
+      connection.channel.write(responseBuffer);
+    }
+    if (responseBuffer.hasRemaining()) {
+      connection.queueWrite(responseBuffer);
+    }
+    updateInterestOps(connection);
+  }
+
+  /**
+   * Reads from the connection unless its message is being stored, and writes to it while responses are pending.
+   */
+  private void updateInterestOps(Connection connection) {
+    int interestOps = connection.stateMachine.getState() == ASTMReceiveStateMachine.State.AWAITING_STORE
+      ? 0
+      : SelectionKey.OP_READ;
+    if (connection.pendingWrite != null) {
+      interestOps |= SelectionKey.OP_WRITE;
+    }
+    connection.key.interestOps(interestOps);
+  }
+
+  private void write(Connection connection) throws IOException {
+    if (connection.pendingWrite != null) {
+      connection.pendingWrite.flip();
+      connection.channel.write(connection.pendingWrite);
+      connection.pendingWrite.compact();
+      if (connection.pendingWrite.position() > 0) {
+        return;
+      }
+      connection.pendingWrite = null;
+    }
+    updateInterestOps(connection);
+  }
+
+  /**
+   * Closes the connections whose sender has not sent anything within the timeout of the phase it is in, or has not
+   * finished sending its message within {@link GeneralASTMCommunicator#RECEIVE_MESSAGE_TIMEOUT}. A connection is only
+   * checked once its scheduled deadline has passed, so connections that are still active are not looked at after every
+   * select. Activity that pushes the deadline back is only noticed then, while activity that brings it forward
+   * schedules it again straight away.
+   */
+  private void closeExpiredConnections() {
+    long now = System.nanoTime();
+    long messageTimeout = TimeUnit.SECONDS.toNanos(GeneralASTMCommunicator.RECEIVE_MESSAGE_TIMEOUT);
+    Expiry expiry;
+    while ((expiry = expiries.peek()) != null && now - expiry.deadline >= 0) {
+      expiries.poll();
+      Connection connection = expiry.connection;
+      if (!connection.key.isValid() || expiry.deadline != connection.scheduledDeadline) {
+        continue;
+      }
+      long deadline = connection.deadline();
+      if (now - deadline < 0) {
+        scheduleExpiry(connection, deadline);
+        continue;
+      }
+      if (!connection.stateMachine.isReceivingMessage()) {
+        log.debug(
+          "waited " +
+          GeneralASTMCommunicator.ESTABLISHMENT_SOCKET_TIMEOUT +
+          " " +
+          TimeUnit.SECONDS +
+          " for the sender to send anything, closing"
+        );
+      } else if (now - connection.messageStart >= messageTimeout) {
+        log.error("the message was not received within the message timeout, abandoning message");
+        connection.sessionTrace.record(EventType.ERROR, "message timeout");
+      } else {
+        log.error("there was a timeout in the receive protocol, abandoning message");
+        connection.sessionTrace.record(EventType.ERROR, "timeout");
+      }
+      close(connection.key, connection);
+    }
+  }
+
+  private void scheduleExpiry(Connection connection, long deadline) {
+    connection.scheduledDeadline = deadline;
+    expiries.add(new Expiry(deadline, connection));
+  }
+
+  private void close(SelectionKey key, Connection connection) {
+    key.cancel();
+    --openConnections;
+    closeSessionTrace(connection.sessionTrace);
+    try {
+      connection.channel.close();
+      log.debug("successfully closed connection with astm sender");
+    } catch (IOException e) {
+      log.error("error occurred closing connection with astm sender", e);
+    }
+  }
+
+  /**
+   * Stores a message whose final frame has been received on the worker executor, as the event loop must not wait on
+   * the disk. The final frame is acknowledged or rejected on the event loop once the store completes.
+   *
+   * @param connection the connection the message was received on.
+   * @param message the received message.
+   */
+  private void storeBeforeAcknowledging(Connection connection, ASTMMessage message) {
+    try {
+      connectionExecutor.execute(() -> {
+        connection.stored = store(connection, message);
+        storedConnections.add(connection);
+        connection.key.selector().wakeup();
+      });
+    } catch (RejectedExecutionException e) {
+      log.error("could not hand off received astm message to be stored", e);
+      connection.stored = false;
+      storedConnections.add(connection);
+    }
+  }
+
+  private void completeStore(Connection connection, ByteBuffer responseBuffer) {
+    if (!connection.key.isValid()) {
+      return;
+    }
+    try {
+      responseBuffer.clear();
+      connection.stateMachine.storeCompleted(connection.stored, responseBuffer);
+      respond(connection, responseBuffer);
+      if (connection.pendingRead != null) {
+        ByteBuffer pendingRead = connection.pendingRead;
+        connection.pendingRead = null;
+        receive(connection, pendingRead, responseBuffer);
+      }
+    } catch (IOException e) {
+      log.error("error occurred communicating with astm sender", e);
+      close(connection.key, connection);
+    }
+  }
+
+  private boolean store(Connection connection, ASTMMessage message) {
+    try {
+      messageStore.store(message);
+      log.debug("message was stored, it will be forwarded from the message store");
+      return true;
+    } catch (IOException e) {
+      log.error("could not store received astm message", e);
+      connection.sessionTrace.record(EventType.ERROR, e.getMessage());
+    } catch (InterruptedException e) {
+      log.error("the thread was interrupted while storing the received astm message", e);
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * Hands a received message off to the handler service on the worker executor. If a message store is set, the
+   * message could not be stored before it was acknowledged (ex. it has no message terminator record, or was received
+   * in non-compliant mode), so it is stored on the worker executor instead, and handled directly only if that fails.
+   * If messages are forwarded asynchronously, messages received on the same connection are handled in the order they
+   * were received.
+   *
+   * @param connection the connection the message was received on.
+   * @param message the received message.
+   */
+  private void dispatch(Connection connection, ASTMMessage message) {
+    if (messageStore == null) {
+      dispatchToHandlers(connection, message);
+      return;
+    }
+    try {
+      connectionExecutor.execute(() -> {
+        if (!store(connection, message)) {
+          log.error("handling the astm message that could not be stored directly");
+          dispatchToHandlers(connection, message);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      log.error("could not hand off received astm message to be stored, message was unhandled", e);
+      connection.sessionTrace.record(EventType.ERROR, "message was unhandled");
+    }
+  }
+
+  private void dispatchToHandlers(Connection connection, ASTMMessage message) {
+    ASTMSessionTrace sessionTrace = connection.sessionTrace;
+    sessionTrace.record(EventType.HANDLING_STARTED);
+    if (messageSequencer != null) {
+      messageSequencer.submit(connection, message).thenAccept(response -> logResponse(sessionTrace, response));
+      return;
+    }
+    try {
+      connectionExecutor.execute(() -> logResponse(sessionTrace, astmHandlerService.handle(message)));
+    } catch (RejectedExecutionException e) {
+      log.error("could not hand off received astm message to a worker, message was unhandled", e);
+      sessionTrace.record(EventType.ERROR, "message was unhandled");
+    }
+  }
+
+  private void logResponse(ASTMSessionTrace sessionTrace, ASTMHandlerServiceResponse response) {
+    if (response.getResponses() == null || response.getResponses().size() == 0) {
+      log.error("message was unhandled");
+    } else {
+      for (ASTMHandlerResponse handlerResponse : response.getResponses()) {
+        if (sessionTrace.isEnabled()) {
+          sessionTrace.record(
+            EventType.HANDLER_FINISHED,
+            handlerResponse.getHandler().getName() + ": " + handlerResponse.getStatus()
+          );
+        }
+        if (handlerResponse.getStatus() != HandleStatus.SUCCESS) {
+          log.error("message was not handled successfully by: " + handlerResponse.getHandler().getName());
+        } else {
+          log.debug("message was handled successfully by: " + handlerResponse.getHandler().getName());
+        }
+      }
+    }
+  }
+
+  /**
+   * Object for holding the state of a single connection.
+   */
+  private class Connection {
+
+    private final SocketChannel channel;
+    private final ASTMReceiveStateMachine stateMachine;
+    private final ASTMSessionTrace sessionTrace;
+    private SelectionKey key;
+    private ByteBuffer pendingWrite; // only allocated while the sender is not reading our responses fast enough
+    private ByteBuffer pendingRead; // only allocated if the sender sent more while its message was being stored
+    private volatile boolean stored; // whether the last message handed to be stored was stored
+    private long lastActivity = System.nanoTime();
+    private boolean receivingMessage; // whether a message was part way through being received after the last read
+    private long messageStart; // when the message that is being received started, from System.nanoTime()
+    private long scheduledDeadline; // of the only expiry in the queue that is not stale
+
+    /**
+     * @return when the connection times out if nothing else is received, from System.nanoTime().
+     */
+    private long deadline() {
+      if (!stateMachine.isReceivingMessage()) {
+        return lastActivity + TimeUnit.SECONDS.toNanos(GeneralASTMCommunicator.ESTABLISHMENT_SOCKET_TIMEOUT);
+      }
+      long frameDeadline = lastActivity + TimeUnit.SECONDS.toNanos(GeneralASTMCommunicator.RECIEVE_FRAME_TIMEOUT);
+      long messageDeadline = messageStart + TimeUnit.SECONDS.toNanos(GeneralASTMCommunicator.RECEIVE_MESSAGE_TIMEOUT);
+      return frameDeadline - messageDeadline < 0 ? frameDeadline : messageDeadline;
+    }
+
+    private Connection(SocketChannel channel, ASTMSessionTrace sessionTrace) {
+      this.channel = channel;
+      this.sessionTrace = sessionTrace;
+      this.stateMachine = new ASTMReceiveStateMachine(astmInterpreterFactory, astmVersion, message ->
+        dispatch(this, message)
+      );
+      this.stateMachine.setMetrics(metrics);
+      this.stateMachine.setSessionTrace(sessionTrace);
+      if (messageStore != null) {
+        this.stateMachine.setStoreHandler(message -> storeBeforeAcknowledging(this, message));
+      }
+    }
+
+    private void queueWrite(ByteBuffer bytes) {
+      if (pendingWrite == null) {
+        pendingWrite = ByteBuffer.allocate(bytes.remaining());
+      } else if (pendingWrite.remaining() < bytes.remaining()) {
+        pendingWrite.flip();
+        pendingWrite = ByteBuffer.allocate(pendingWrite.remaining() + bytes.remaining()).put(pendingWrite);
+      }
+      pendingWrite.put(bytes);
+    }
+  }
+
+  /**
+   * A deadline that a connection's timeout is checked at. It is stale once another deadline is scheduled for the
+   * connection.
+   */
+  private static class Expiry {
+
+    private final long deadline; // from System.nanoTime()
+    private final Connection connection;
+
+    private Expiry(long deadline, Connection connection) {
+      this.deadline = deadline;
+      this.connection = connection;
+    }
+  }
+}
@@ -1,12 +1,23 @@
 package org.itech.ahb.lib.astm.servlet;
 
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.communication.ASTMCommunicatorPool;
 import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
 import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
+import org.itech.ahb.lib.astm.handling.ASTMMessageSequencer;
 import org.itech.ahb.lib.astm.handling.ASTMReceiveThread;
 import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStore;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTracer;
 
 /**
  * This class represents a servlet that listens for ASTM messages via an ASTM transmission protocol
@@ -29,10 +40,35 @@ public class ASTMServlet {
     NON_COMPLIANT
   }
 
-  private final ASTMHandlerService astmHandlerService;
-  private final ASTMInterpreterFactory astmInterpreterFactory;
-  private final int listenPort;
-  private final ASTMVersion astmVersion;
+  /**
+   * Enum representing the kind of thread that is started to serve each accepted connection.
+   */
+  public enum ConnectionThreadMode {
+    /**
+     * A new platform (OS) thread is started for every accepted connection.
+     */
+    PLATFORM,
+    /**
+     * A new virtual thread is started for every accepted connection. Connections that are idle or blocked
+     * waiting on the ASTM sender only hold on to a small heap object rather than an OS thread.
+     */
+    VIRTUAL
+  }
+
+  protected final ASTMHandlerService astmHandlerService;
+  protected final ASTMInterpreterFactory astmInterpreterFactory;
+  protected final int listenPort;
+  protected final ASTMVersion astmVersion;
+  protected final ExecutorService connectionExecutor;
+  protected final int maxConcurrentConnections;
+  // only used by this blocking servlet, so they are created when it starts listening
+  private Semaphore connectionPermits; // null when the number of connections is unbounded
+  private int maxIdleCommunicators = ASTMCommunicatorPool.DEFAULT_MAX_IDLE_COMMUNICATORS;
+  private ASTMCommunicatorPool communicatorPool; // null when communicators are not reused
+  protected ASTMMessageSequencer messageSequencer; // null when messages are handled synchronously
+  protected ASTMMessageStore messageStore; // null when received messages are not stored
+  protected ASTMMetrics metrics = ASTMMetrics.global();
+  protected ASTMSessionTracer sessionTracer; // null when connections are not traced
 
   /**
    * Constructs a new ASTMServlet with the specified handler service, interpreter factory, listen port, and ASTM version.
@@ -47,35 +83,280 @@ public class ASTMServlet {
     ASTMInterpreterFactory astmInterpreterFactory,
     int listenPort,
     ASTMVersion astmVersion
+  ) {
+    this(astmHandlerService, astmInterpreterFactory, listenPort, astmVersion, ConnectionThreadMode.PLATFORM, 0);
+  }
+
+  /**
+   * Constructs a new ASTMServlet that starts a thread of the given kind for every accepted connection.
+   *
+   * @param astmHandlerService the handler service to use for processing messages.
+   * @param astmInterpreterFactory the interpreter factory to use for interpreting messages.
+   * @param listenPort the port to listen on for ASTM messages.
+   * @param astmVersion the ASTM version to use for communication.
+   * @param connectionThreadMode the kind of thread to start for every accepted connection.
+   * @param maxConcurrentConnections the maximum number of connections served at once. 0 or less means unbounded.
+   */
+  public ASTMServlet(
+    ASTMHandlerService astmHandlerService,
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int listenPort,
+    ASTMVersion astmVersion,
+    ConnectionThreadMode connectionThreadMode,
+    int maxConcurrentConnections
+  ) {
+    this(
+      astmHandlerService,
+      astmInterpreterFactory,
+      listenPort,
+      astmVersion,
+      createConnectionExecutor(connectionThreadMode, listenPort),
+      maxConcurrentConnections
+    );
+  }
+
+  /**
+   * Constructs a new ASTMServlet that serves every accepted connection on the provided executor.
+   *
+   * @param astmHandlerService the handler service to use for processing messages.
+   * @param astmInterpreterFactory the interpreter factory to use for interpreting messages.
+   * @param listenPort the port to listen on for ASTM messages.
+   * @param astmVersion the ASTM version to use for communication.
+   * @param connectionExecutor the executor that each accepted connection is served on.
+   * @param maxConcurrentConnections the maximum number of connections served at once. 0 or less means unbounded.
+   */
+  public ASTMServlet(
+    ASTMHandlerService astmHandlerService,
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int listenPort,
+    ASTMVersion astmVersion,
+    ExecutorService connectionExecutor,
+    int maxConcurrentConnections
   ) {
     this.astmHandlerService = astmHandlerService;
     this.astmInterpreterFactory = astmInterpreterFactory;
     this.listenPort = listenPort;
     this.astmVersion = astmVersion;
+    this.connectionExecutor = connectionExecutor;
+    this.maxConcurrentConnections = maxConcurrentConnections;
+  }
+
+  /**
+   * Creates an executor that starts a new thread of the given kind for every connection.
+   *
+   * @param connectionThreadMode the kind of thread to start for every connection.
+   * @param listenPort the port being listened on, used for naming the threads.
+   * @return the executor.
+   */
+  private static ExecutorService createConnectionExecutor(ConnectionThreadMode connectionThreadMode, int listenPort) {
+    String threadNamePrefix = "astm-receive-" + listenPort + "-";
+    switch (connectionThreadMode) {
+      case VIRTUAL:
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+      case PLATFORM:
+      default:
+        return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name(threadNamePrefix, 0).factory());
+    }
+  }
+
+  /**
+   * Sets whether received messages are handled asynchronously. When enabled, the thread serving a connection does
+   * not wait for the handlers to finish with a message before moving on, and messages from the same astm sender are
+   * handled in the order they were received. This should be set before {@link #listen()} is called.
+   *
+   * @param forwardAsynchronously true to handle messages asynchronously.
+   */
+  public void setForwardAsynchronously(boolean forwardAsynchronously) {
+    this.messageSequencer = forwardAsynchronously
+      ? new ASTMMessageSequencer(astmHandlerService, connectionExecutor)
+      : null;
+  }
+
+  /**
+   * Sets the store that received messages are durably stored in before they are acknowledged to the sender. Stored
+   * messages are not handled by this servlet, they should be forwarded from the store by an
+   * {@link org.itech.ahb.lib.astm.storage.ASTMMessageStoreDrainer}. This should be set before {@link #listen()} is
+   * called.
+   *
+   * @param messageStore the store, or null to handle received messages directly.
+   */
+  public void setMessageStore(ASTMMessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the metrics that the exchanges with astm senders are recorded in. This should be set before
+   * {@link #listen()} is called.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the tracer that starts a trace for every accepted connection. This should be set before {@link #listen()}
+   * is called.
+   *
+   * @param sessionTracer the tracer, or null to not trace connections.
+   */
+  public void setSessionTracer(ASTMSessionTracer sessionTracer) {
+    this.sessionTracer = sessionTracer;
+  }
+
+  /**
+   * Sets how many communicators of closed connections are kept to be reused for new connections, so their buffers
+   * are not allocated again for every connection. This should be set before {@link #listen()} is called. It has no
+   * effect on an {@link ASTMNIOServlet}, which does not use communicators.
+   *
+   * @param maxIdleCommunicators the maximum number of communicators to keep. 0 or less means communicators are not
+   * reused.
+   */
+  public void setMaxIdleCommunicators(int maxIdleCommunicators) {
+    this.maxIdleCommunicators = maxIdleCommunicators;
+  }
+
+  /**
+   * Starts the trace of a connection that was just accepted.
+   *
+   * @param remoteAddress the address of the astm sender.
+   * @return the trace, or a disabled trace if connections are not traced.
+   */
+  protected ASTMSessionTrace startSessionTrace(Object remoteAddress) {
+    return sessionTracer == null
+      ? ASTMSessionTrace.disabled()
+      : sessionTracer.startSession(String.valueOf(remoteAddress), astmVersion);
+  }
+
+  /**
+   * Ends the trace of a connection that was closed.
+   *
+   * @param sessionTrace the trace of the connection.
+   */
+  protected void closeSessionTrace(ASTMSessionTrace sessionTrace) {
+    if (sessionTracer != null) {
+      sessionTracer.closeSession(sessionTrace);
+    }
   }
 
   /**
    * Starts the servlet to listen for ASTM messages on the specified port.
    *
-   * Will spawn a new thread for every incoming connection.
+   * Every incoming connection is served on the connection executor. If a maximum number of concurrent connections
+   * is configured, no further connection is accepted until one of the served connections has closed.
    */
   public void listen() {
+    connectionPermits = maxConcurrentConnections > 0 ? new Semaphore(maxConcurrentConnections) : null;
+    communicatorPool = maxIdleCommunicators > 0
+      ? new ASTMCommunicatorPool(astmInterpreterFactory, astmVersion, maxIdleCommunicators)
+      : null;
     try (ServerSocket serverSocket = new ServerSocket(listenPort)) {
       log.info(
         "Server is listening on port " + listenPort + " for ASTM transmission protocol: " + astmVersion + " messages"
       );
       // Communication Endpoint for the client and server.
       while (true) {
-        // Waiting for socket connection
-        Socket s = serverSocket.accept();
-        new ASTMReceiveThread(
-          new GeneralASTMCommunicator(astmInterpreterFactory, s, astmVersion),
-          s,
-          astmHandlerService
-        ).start();
+        acquireConnectionPermit();
+        Socket s;
+        try {
+          // Waiting for socket connection
+          s = serverSocket.accept();
+        } catch (IOException e) {
+          releaseConnectionPermit();
+          throw e;
+        }
+        serveConnection(s);
       }
+    } catch (InterruptedException e) {
+      log.error("the astm server was interrupted while waiting for a free connection", e);
+      Thread.currentThread().interrupt();
     } catch (Exception e) {
       log.error("an exception caused the astm server to shut down", e);
     }
   }
+
+  /**
+   * Hands the accepted socket off to the connection executor. The connection permit is released once the
+   * connection has been served, or immediately if the connection could not be handed off.
+   *
+   * @param s the accepted socket.
+   */
+  private void serveConnection(Socket s) {
+    ASTMSessionTrace sessionTrace = startSessionTrace(s.getRemoteSocketAddress());
+    GeneralASTMCommunicator communicator = null;
+    try {
+      communicator = acquireCommunicator(s);
+      communicator.setMessageStore(messageStore);
+      communicator.setMetrics(metrics);
+      communicator.setSessionTrace(sessionTrace);
+      ASTMReceiveThread receiveThread = new ASTMReceiveThread(communicator, s, astmHandlerService);
+      receiveThread.setMessageSequencer(messageSequencer);
+      receiveThread.setSessionTrace(sessionTrace);
+      GeneralASTMCommunicator servedCommunicator = communicator;
+      connectionExecutor.execute(() -> {
+        try {
+          receiveThread.run();
+        } finally {
+          releaseCommunicator(servedCommunicator);
+          closeSessionTrace(sessionTrace);
+          releaseConnectionPermit();
+        }
+      });
+    } catch (IOException | RejectedExecutionException e) {
+      log.error("could not serve connection from astm sender", e);
+      if (communicator != null) {
+        releaseCommunicator(communicator);
+      }
+      sessionTrace.record(ASTMSessionTrace.EventType.ERROR, e.getMessage());
+      closeSessionTrace(sessionTrace);
+      releaseConnectionPermit();
+      try {
+        s.close();
+      } catch (IOException e1) {
+        log.error("error occurred closing socket with astm sender", e1);
+      }
+    }
+  }
+
+  private GeneralASTMCommunicator acquireCommunicator(Socket s) throws IOException {
+    return communicatorPool == null
+      ? new GeneralASTMCommunicator(astmInterpreterFactory, s, astmVersion)
+      : communicatorPool.acquire(s);
+  }
+
+  private void releaseCommunicator(GeneralASTMCommunicator communicator) {
+    if (communicatorPool != null) {
+      communicatorPool.release(communicator);
+    }
+  }
+
+  /**
+   * Waits for a connection slot to be free if the number of concurrent connections is bounded.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  private void acquireConnectionPermit() throws InterruptedException {
+    if (connectionPermits == null) {
+      return;
+    }
+    if (!connectionPermits.tryAcquire()) {
+      log.warn(
+        "max concurrent connections (" +
+        maxConcurrentConnections +
+        ") reached on port " +
+        listenPort +
+        ", waiting for a connection to close before accepting more"
+      );
+      connectionPermits.acquire();
+    }
+  }
+
+  /**
+   * Frees a connection slot if the number of concurrent connections is bounded.
+   */
+  private void releaseConnectionPermit() {
+    if (connectionPermits != null) {
+      connectionPermits.release();
+    }
+  }
 }
@@ -0,0 +1,57 @@
+package org.itech.ahb.lib.astm.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+
+/**
+ * This class writes ASTM messages to and reads them from a binary form for storage, as the number of records followed
+ * by the length and UTF-8 bytes of each record, so the records of the message are kept exactly as they were.
+ */
+public final class ASTMMessageSerialization {
+
+  private ASTMMessageSerialization() {}
+
+  /**
+   * Writes the message.
+   *
+   * @param out the output to write to.
+   * @param message the ASTM message.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static void write(DataOutput out, ASTMMessage message) throws IOException {
+    List<ASTMRecord> records = message.getRecords() == null ? List.of() : message.getRecords();
+    out.writeInt(records.size());
+    for (ASTMRecord record : records) {
+      byte[] recordBytes = record.getRecord().getBytes(StandardCharsets.UTF_8);
+      out.writeInt(recordBytes.length);
+      out.write(recordBytes);
+    }
+  }
+
+  /**
+   * Reads a message that was written by {@link #write(DataOutput, ASTMMessage)}.
+   *
+   * @param in the input to read from.
+   * @param astmInterpreterFactory the interpreter factory to use for recreating the message.
+   * @return the ASTM message.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static ASTMMessage read(DataInput in, ASTMInterpreterFactory astmInterpreterFactory) throws IOException {
+    int recordCount = in.readInt();
+    List<ASTMRecord> records = new ArrayList<>(recordCount);
+    for (int i = 0; i < recordCount; i++) {
+      byte[] recordBytes = new byte[in.readInt()];
+      in.readFully(recordBytes);
+      String recordText = new String(recordBytes, StandardCharsets.UTF_8);
+      records.add(astmInterpreterFactory.createInterpreterForText(recordText).interpretASTMTextToRecord(recordText));
+    }
+    return astmInterpreterFactory.createInterpreterForRecords(records).interpretASTMRecordsToMessage(records);
+  }
+}
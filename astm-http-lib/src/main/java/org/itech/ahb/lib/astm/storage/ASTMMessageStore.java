@@ -0,0 +1,152 @@
+package org.itech.ahb.lib.astm.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.common.storage.SegmentLog;
+import org.itech.ahb.lib.common.storage.SegmentLog.CorruptEntryException;
+import org.itech.ahb.lib.common.storage.SegmentLog.LogEntry;
+
+/**
+ * This class durably stores received ASTM messages on disk until they have been forwarded, so a message that was
+ * acknowledged to the ASTM sender is not lost if the forwarding destination is unavailable or the application stops.
+ * Messages are kept in a {@link SegmentLog} and are read back in the order they were stored.
+ */
+@Slf4j
+public class ASTMMessageStore implements Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024; // in bytes
+  public static final long DEFAULT_GROUP_COMMIT_INTERVAL = 2; // in milliseconds
+
+  private final SegmentLog segmentLog;
+  private final ASTMInterpreterFactory astmInterpreterFactory;
+  private long readPosition; // only used by the single reader
+
+  /**
+   * Opens the store in the given directory, creating it if it does not exist.
+   *
+   * @param directory the directory to keep the stored messages in.
+   * @param segmentSize the size of each file messages are stored in, in bytes. This limits the size of a message.
+   * @param groupCommitInterval how long to wait in milliseconds for more messages to share a flush to disk.
+   * @param astmInterpreterFactory the interpreter factory to use for recreating stored messages.
+   * @throws IOException if the store could not be opened.
+   */
+  public ASTMMessageStore(
+    Path directory,
+    int segmentSize,
+    long groupCommitInterval,
+    ASTMInterpreterFactory astmInterpreterFactory
+  ) throws IOException {
+    this.segmentLog = new SegmentLog(directory, segmentSize, groupCommitInterval);
+    this.astmInterpreterFactory = astmInterpreterFactory;
+    this.readPosition = segmentLog.getAcknowledgedPosition();
+  }
+
+  /**
+   * Stores the message and waits until it is durable on disk.
+   *
+   * @param message the ASTM message.
+   * @throws IOException if the message could not be stored.
+   * @throws InterruptedException if the thread was interrupted while waiting for the message to be durable.
+   */
+  public void store(ASTMMessage message) throws IOException, InterruptedException {
+    segmentLog.awaitDurable(append(message));
+  }
+
+  /**
+   * Stores the message without waiting for it to be durable on disk. It becomes durable shortly after, with the next
+   * group commit.
+   *
+   * @param message the ASTM message.
+   * @return the position the message was stored at.
+   * @throws IOException if the message could not be stored.
+   */
+  public long append(ASTMMessage message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getMessageLength() + 64);
+    ASTMMessageSerialization.write(new DataOutputStream(bytes), message);
+    long position = segmentLog.append(bytes.toByteArray());
+    log.debug("stored astm message at position " + position);
+    return position;
+  }
+
+  /**
+   * Reads the oldest stored message that has not been acknowledged, waiting up to the given time for one to be
+   * stored. Calling this again without acknowledging the message returns the same message. This should only be
+   * called by a single thread.
+   *
+   * @param timeout the maximum time to wait in milliseconds.
+   * @return the stored message, or null if no message was stored in time.
+   * @throws CorruptEntryException if the stored message is corrupt. It can be skipped with
+   * {@link #skip(CorruptEntryException)}.
+   * @throws IOException if the message could not be read.
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public StoredASTMMessage next(long timeout) throws IOException, InterruptedException {
+    LogEntry entry = segmentLog.read(readPosition, timeout);
+    if (entry == null) {
+      return null;
+    }
+    ASTMMessage message;
+    try {
+      message = ASTMMessageSerialization.read(
+        new DataInputStream(new ByteArrayInputStream(entry.getData())),
+        astmInterpreterFactory
+      );
+    } catch (IOException | RuntimeException e) {
+      throw new CorruptEntryException(entry.getPosition(), entry.getNextPosition(), e);
+    }
+    return new StoredASTMMessage(message, entry.getNextPosition());
+  }
+
+  /**
+   * Moves a corrupt stored message to the dead letter directory of the store and removes it from the store, so the
+   * messages stored after it can be read.
+   *
+   * @param corruptEntry the exception thrown by {@link #next(long)} for the corrupt message.
+   * @throws IOException if the message could not be moved.
+   */
+  public void skip(CorruptEntryException corruptEntry) throws IOException {
+    segmentLog.deadLetter(corruptEntry);
+    readPosition = corruptEntry.getNextPosition();
+    segmentLog.acknowledge(readPosition);
+  }
+
+  /**
+   * Acknowledges that the stored message has been forwarded, so it is removed from the store.
+   *
+   * @param storedMessage the stored message, as returned by {@link #next(long)}.
+   * @throws IOException if the acknowledgement could not be recorded.
+   */
+  public void acknowledge(StoredASTMMessage storedMessage) throws IOException {
+    readPosition = storedMessage.getNextPosition();
+    segmentLog.acknowledge(readPosition);
+  }
+
+  @Override
+  public void close() throws IOException {
+    segmentLog.close();
+  }
+
+  /**
+   * Object for holding a message that was read from the store.
+   */
+  @Getter
+  public static class StoredASTMMessage {
+
+    private final ASTMMessage message;
+    private final long nextPosition;
+
+    private StoredASTMMessage(ASTMMessage message, long nextPosition) {
+      this.message = message;
+      this.nextPosition = nextPosition;
+    }
+  }
+}
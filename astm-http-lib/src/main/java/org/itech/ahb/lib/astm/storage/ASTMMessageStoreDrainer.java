@@ -0,0 +1,175 @@
+package org.itech.ahb.lib.astm.storage;
+
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerResponse;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
+import org.itech.ahb.lib.astm.handling.ASTMHandlerServiceResponse;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStore.StoredASTMMessage;
+import org.itech.ahb.lib.common.handling.HandleStatus;
+import org.itech.ahb.lib.common.storage.SegmentLog.CorruptEntryException;
+
+/**
+ * This class forwards the messages kept in an {@link ASTMMessageStore} to the handler service on a background thread,
+ * one at a time and in the order they were stored. A message is only removed from the store once every handler has
+ * handled it successfully. Until then it is retried with an exponential backoff, holding back the messages stored
+ * after it so they are not forwarded out of order. A stored message that is corrupt can never be forwarded, so it is
+ * moved to the dead letter directory of the store instead.
+ */
+@Slf4j
+public class ASTMMessageStoreDrainer {
+
+  public static final long DEFAULT_INITIAL_RETRY_DELAY = 1000; // in milliseconds
+  public static final long DEFAULT_MAX_RETRY_DELAY = 5 * 60 * 1000; // in milliseconds
+  private static final long POLL_TIMEOUT = 1000; // in milliseconds
+  private static final long STOP_TIMEOUT = 10 * 1000; // in milliseconds
+
+  private final ASTMMessageStore messageStore;
+  private final ASTMHandlerService astmHandlerService;
+  private final long initialRetryDelay;
+  private final long maxRetryDelay;
+  private ASTMMetrics metrics = ASTMMetrics.global();
+  private Thread drainThread;
+  private volatile boolean running;
+
+  /**
+   * Constructs a new ASTMMessageStoreDrainer with the default retry delays.
+   *
+   * @param messageStore the store to drain.
+   * @param astmHandlerService the handler service to forward stored messages with.
+   */
+  public ASTMMessageStoreDrainer(ASTMMessageStore messageStore, ASTMHandlerService astmHandlerService) {
+    this(messageStore, astmHandlerService, DEFAULT_INITIAL_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY);
+  }
+
+  /**
+   * Constructs a new ASTMMessageStoreDrainer.
+   *
+   * @param messageStore the store to drain.
+   * @param astmHandlerService the handler service to forward stored messages with.
+   * @param initialRetryDelay the time to wait in milliseconds before the first retry of a failed message.
+   * @param maxRetryDelay the maximum time to wait in milliseconds between retries. The delay doubles with every retry
+   * until it reaches this.
+   */
+  public ASTMMessageStoreDrainer(
+    ASTMMessageStore messageStore,
+    ASTMHandlerService astmHandlerService,
+    long initialRetryDelay,
+    long maxRetryDelay
+  ) {
+    this.messageStore = messageStore;
+    this.astmHandlerService = astmHandlerService;
+    this.initialRetryDelay = initialRetryDelay;
+    this.maxRetryDelay = maxRetryDelay;
+  }
+
+  /**
+   * Sets the metrics that corrupt stored messages are counted in.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts draining the store on a new background thread.
+   */
+  public synchronized void start() {
+    if (drainThread == null) {
+      running = true;
+      drainThread = Thread.ofPlatform().name("astm-message-store-drainer").daemon().start(this::drain);
+    }
+  }
+
+  /**
+   * Stops draining the store, waiting up to {@link #STOP_TIMEOUT} for the message currently being forwarded to finish.
+   * A message that is still being forwarded after that is left in the store, so it is forwarded again once draining
+   * is started again.
+   */
+  public synchronized void stop() {
+    if (drainThread != null) {
+      running = false;
+      drainThread.interrupt();
+      try {
+        drainThread.join(STOP_TIMEOUT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (drainThread.isAlive()) {
+        log.warn("astm message store drainer did not stop within " + STOP_TIMEOUT + " ms, no longer waiting for it");
+      }
+      drainThread = null;
+    }
+  }
+
+  private void drain() {
+    long retryDelay = initialRetryDelay;
+    try {
+      while (running && !Thread.currentThread().isInterrupted()) {
+        StoredASTMMessage storedMessage;
+        try {
+          storedMessage = messageStore.next(POLL_TIMEOUT);
+          if (storedMessage == null) {
+            continue;
+          }
+          if (forward(storedMessage)) {
+            messageStore.acknowledge(storedMessage);
+            retryDelay = initialRetryDelay;
+            continue;
+          }
+        } catch (CorruptEntryException e) {
+          log.error("stored astm message is corrupt, moving it out of the store", e);
+          if (skip(e)) {
+            continue;
+          }
+        } catch (IOException e) {
+          log.error("error occurred reading from the astm message store", e);
+        }
+        log.warn("retrying stored astm message in " + retryDelay + " ms");
+        Thread.sleep(retryDelay);
+        retryDelay = Math.min(retryDelay * 2, maxRetryDelay);
+      }
+    } catch (InterruptedException e) {
+      log.debug("astm message store drainer was interrupted, stopping");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean skip(CorruptEntryException corruptEntry) {
+    try {
+      messageStore.skip(corruptEntry);
+      metrics.recordDeadLetter(ASTMMetrics.Store.MESSAGE_STORE);
+      return true;
+    } catch (IOException e) {
+      log.error("could not move corrupt astm message out of the store", e);
+      return false;
+    }
+  }
+
+  /**
+   * Forwards a stored message to the handler service.
+   *
+   * @param storedMessage the stored message.
+   * @return true if the message is done with and should be removed from the store.
+   */
+  private boolean forward(StoredASTMMessage storedMessage) {
+    ASTMHandlerServiceResponse response = astmHandlerService.handle(storedMessage.getMessage());
+    if (response.getResponses() == null || response.getResponses().size() == 0) {
+      // retrying will not help when no handler is configured for the message
+      log.error("stored message was unhandled, removing it from the store");
+      return true;
+    }
+    boolean success = true;
+    for (ASTMHandlerResponse handlerResponse : response.getResponses()) {
+      if (handlerResponse.getStatus() != HandleStatus.SUCCESS) {
+        log.error("stored message was not handled successfully by: " + handlerResponse.getHandler().getName());
+        success = false;
+      } else {
+        log.debug("stored message was handled successfully by: " + handlerResponse.getHandler().getName());
+      }
+    }
+    return success;
+  }
+}
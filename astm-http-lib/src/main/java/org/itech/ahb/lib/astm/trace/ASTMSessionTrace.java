@@ -0,0 +1,215 @@
+package org.itech.ahb.lib.astm.trace;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.Getter;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+
+/**
+ * This class is the trace of a single connection with an ASTM sender. It records what happened on the connection and
+ * when, from the connection being accepted to it being closed, so the time an exchange took can be broken down into
+ * time spent waiting on the wire, interpreting the message and handling it.
+ *
+ * Only the first events of a session are kept, so a long lived connection can not use up memory. Events can be
+ * recorded from several threads, ex. handlers finishing after the connection was closed.
+ */
+public final class ASTMSessionTrace {
+
+  /**
+   * The kind of thing that happened on a connection.
+   */
+  public enum EventType {
+    /**
+     * The connection was accepted.
+     */
+    ACCEPTED,
+    /**
+     * The sender's establishment signal was acknowledged.
+     */
+    ESTABLISHED,
+    /**
+     * The sender's establishment signal was not acknowledged.
+     */
+    ESTABLISHMENT_REFUSED,
+    /**
+     * A frame was read from the sender.
+     */
+    FRAME_RECEIVED,
+    /**
+     * A frame was acknowledged to the sender.
+     */
+    FRAME_ACKNOWLEDGED,
+    /**
+     * A frame was not acknowledged to the sender.
+     */
+    FRAME_REJECTED,
+    /**
+     * The sender ended the transmission.
+     */
+    END_OF_TRANSMISSION,
+    /**
+     * The received frames or records were interpreted as a message.
+     */
+    MESSAGE_INTERPRETED,
+    /**
+     * The message was handed to the handler service.
+     */
+    HANDLING_STARTED,
+    /**
+     * A handler finished handling the message.
+     */
+    HANDLER_FINISHED,
+    /**
+     * An error ended the exchange.
+     */
+    ERROR,
+    /**
+     * The connection was closed.
+     */
+    CLOSED
+  }
+
+  /**
+   * Something that happened on a connection.
+   */
+  @Data
+  public static class Event {
+
+    private final EventType type;
+    private final long offset; // in microseconds since the session started
+    private final String detail; // null if there is nothing to add
+  }
+
+  private static final ASTMSessionTrace DISABLED = new ASTMSessionTrace();
+
+  @Getter
+  private final long sessionId;
+  @Getter
+  private final String remoteAddress;
+  @Getter
+  private final ASTMVersion astmVersion;
+  @Getter
+  private final Instant startTime;
+  private final long startNanos;
+  private final int maxEvents;
+  private final List<Event> events; // guarded by this
+  private int droppedEvents; // guarded by this
+  private boolean closed; // guarded by this
+
+  /**
+   * Constructs a new ASTMSessionTrace for a connection that was just accepted.
+   *
+   * @param sessionId the ID of the session, unique for the lifetime of the application.
+   * @param remoteAddress the address of the ASTM sender.
+   * @param astmVersion the ASTM version the connection was accepted for.
+   * @param maxEvents the maximum number of events to keep.
+   */
+  public ASTMSessionTrace(long sessionId, String remoteAddress, ASTMVersion astmVersion, int maxEvents) {
+    this.sessionId = sessionId;
+    this.remoteAddress = remoteAddress;
+    this.astmVersion = astmVersion;
+    this.startTime = Instant.now();
+    this.startNanos = System.nanoTime();
+    this.maxEvents = maxEvents;
+    this.events = new ArrayList<>();
+    record(EventType.ACCEPTED);
+  }
+
+  private ASTMSessionTrace() {
+    this.sessionId = -1;
+    this.remoteAddress = null;
+    this.astmVersion = null;
+    this.startTime = null;
+    this.startNanos = 0;
+    this.maxEvents = 0;
+    this.events = null;
+  }
+
+  /**
+   * @return a trace that records nothing, for connections that are not traced.
+   */
+  public static ASTMSessionTrace disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * @return true if this trace records events. Callers can check this before building the detail of an event.
+   */
+  public boolean isEnabled() {
+    return this != DISABLED;
+  }
+
+  /**
+   * Records an event that happened now.
+   *
+   * @param type the kind of event.
+   */
+  public void record(EventType type) {
+    record(type, null);
+  }
+
+  /**
+   * Records an event that happened now.
+   *
+   * @param type the kind of event.
+   * @param detail more information about the event, or null.
+   */
+  public void record(EventType type, String detail) {
+    if (!isEnabled()) {
+      return;
+    }
+    long offset = (System.nanoTime() - startNanos) / 1000;
+    synchronized (this) {
+      if (events.size() < maxEvents || type == EventType.CLOSED) {
+        events.add(new Event(type, offset, detail));
+      } else {
+        ++droppedEvents;
+      }
+      if (type == EventType.CLOSED) {
+        closed = true;
+      }
+    }
+  }
+
+  /**
+   * Records that the connection was closed, unless that was already recorded, so a connection closed from several
+   * places is only reported as closed once.
+   *
+   * @return true if this call recorded the close.
+   */
+  public boolean close() {
+    if (!isEnabled()) {
+      return false;
+    }
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      record(EventType.CLOSED);
+      return true;
+    }
+  }
+
+  /**
+   * @return the events that were recorded so far, in the order they happened.
+   */
+  public synchronized List<Event> getEvents() {
+    return events == null ? List.of() : new ArrayList<>(events);
+  }
+
+  /**
+   * @return the number of events that were not kept because the session already had the maximum number of events.
+   */
+  public synchronized int getDroppedEvents() {
+    return droppedEvents;
+  }
+
+  /**
+   * @return true if the connection was closed.
+   */
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+}
@@ -0,0 +1,127 @@
+package org.itech.ahb.lib.astm.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+
+/**
+ * This class starts a {@link ASTMSessionTrace} for every connection with an ASTM sender and keeps the traces of the
+ * most recent sessions in a ring buffer, so the oldest trace is dropped when a new session starts and the buffer is
+ * full. Listeners are called with every trace once its connection is closed, ex. to export it to a tracing system.
+ */
+@Slf4j
+public class ASTMSessionTracer {
+
+  public static final int DEFAULT_CAPACITY = 128;
+  public static final int DEFAULT_MAX_EVENTS_PER_SESSION = 256;
+
+  private final AtomicLong sessionIdCounter = new AtomicLong(0);
+  private final int maxEventsPerSession;
+  private final ASTMSessionTrace[] sessions; // guarded by this
+  private int nextSession = 0; // guarded by this
+  private int sessionCount = 0; // guarded by this
+  private final List<Consumer<ASTMSessionTrace>> closeListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Constructs a new ASTMSessionTracer with the default capacity.
+   */
+  public ASTMSessionTracer() {
+    this(DEFAULT_CAPACITY, DEFAULT_MAX_EVENTS_PER_SESSION);
+  }
+
+  /**
+   * Constructs a new ASTMSessionTracer.
+   *
+   * @param capacity the number of most recent sessions to keep.
+   * @param maxEventsPerSession the maximum number of events to keep for each session.
+   */
+  public ASTMSessionTracer(int capacity, int maxEventsPerSession) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1");
+    }
+    this.sessions = new ASTMSessionTrace[capacity];
+    this.maxEventsPerSession = maxEventsPerSession;
+  }
+
+  /**
+   * Starts the trace of a connection that was just accepted.
+   *
+   * @param remoteAddress the address of the ASTM sender.
+   * @param astmVersion the ASTM version the connection was accepted for.
+   * @return the trace.
+   */
+  public ASTMSessionTrace startSession(String remoteAddress, ASTMVersion astmVersion) {
+    ASTMSessionTrace trace = new ASTMSessionTrace(
+      sessionIdCounter.incrementAndGet(),
+      remoteAddress,
+      astmVersion,
+      maxEventsPerSession
+    );
+    synchronized (this) {
+      sessions[nextSession] = trace;
+      nextSession = (nextSession + 1) % sessions.length;
+      sessionCount = Math.min(sessionCount + 1, sessions.length);
+    }
+    log.debug("started astm session " + trace.getSessionId() + " with " + remoteAddress);
+    return trace;
+  }
+
+  /**
+   * Records that the connection of a session was closed and calls the close listeners with its trace. The listeners
+   * are only called the first time a session is closed.
+   *
+   * @param trace the trace of the session.
+   */
+  public void closeSession(ASTMSessionTrace trace) {
+    if (!trace.close()) {
+      return;
+    }
+    for (Consumer<ASTMSessionTrace> listener : closeListeners) {
+      try {
+        listener.accept(trace);
+      } catch (RuntimeException e) {
+        log.error("error occurred in astm session close listener", e);
+      }
+    }
+  }
+
+  /**
+   * Adds a listener that is called with the trace of every session once its connection is closed. Listeners are
+   * called on the thread that closed the connection, so they should not block.
+   *
+   * @param listener the listener.
+   */
+  public void addCloseListener(Consumer<ASTMSessionTrace> listener) {
+    closeListeners.add(listener);
+  }
+
+  /**
+   * @return the traces of the most recent sessions, newest first.
+   */
+  public synchronized List<ASTMSessionTrace> getSessions() {
+    List<ASTMSessionTrace> recentSessions = new ArrayList<>(sessionCount);
+    for (int i = 1; i <= sessionCount; ++i) {
+      recentSessions.add(sessions[Math.floorMod(nextSession - i, sessions.length)]);
+    }
+    return recentSessions;
+  }
+
+  /**
+   * Gets the trace of a recent session.
+   *
+   * @param sessionId the ID of the session.
+   * @return the trace, or null if the session is unknown or no longer kept.
+   */
+  public synchronized ASTMSessionTrace getSession(long sessionId) {
+    for (int i = 0; i < sessionCount; ++i) {
+      if (sessions[i].getSessionId() == sessionId) {
+        return sessions[i];
+      }
+    }
+    return null;
+  }
+}
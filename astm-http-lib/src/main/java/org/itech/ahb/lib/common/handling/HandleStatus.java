@@ -32,6 +32,10 @@ public enum HandleStatus {
    * The message could not be handled successfully, the process was interrupted while attempting forwarding.
    */
   INTERRUPTED,
+  /**
+   * The message could not be handled successfully, the handler did not finish within the time it was allowed.
+   */
+  TIMEOUT,
   /**
    * The message could not be handled successfully, the frames could not be interpreted as a message.
    * @deprecated handlers will not be responsible for parsing frames.
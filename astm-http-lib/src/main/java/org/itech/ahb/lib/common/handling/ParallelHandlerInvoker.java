@@ -0,0 +1,96 @@
+package org.itech.ahb.lib.common.handling;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Utility class for calling several handlers at the same time, for handler services that fan a message out to every
+ * matching handler. Each handler is given the same amount of time, and a handler that takes longer is interrupted and
+ * recorded as {@link HandleStatus#TIMEOUT} instead of holding up the others.
+ */
+@Slf4j
+public final class ParallelHandlerInvoker {
+
+  public static final Duration DEFAULT_HANDLER_TIMEOUT = Duration.ofSeconds(90);
+
+  private ParallelHandlerInvoker() {}
+
+  /**
+   * Creates an executor that starts a new virtual thread for every handler call.
+   *
+   * @param threadNamePrefix the prefix of the name of each thread.
+   * @return the executor.
+   */
+  public static ExecutorService createDefaultExecutor(String threadNamePrefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+  }
+
+  /**
+   * Calls every handler on the executor and waits for them all to finish or time out.
+   *
+   * @param <H> the type of handler.
+   * @param <R> the type of handler response.
+   * @param handlers the handlers to call.
+   * @param handle calls a handler and returns its response.
+   * @param failureResponse creates the response for a handler that did not finish successfully, with the status.
+   * @param name gets the name of a handler, for logging purposes.
+   * @param executor the executor to call the handlers on.
+   * @param timeout the maximum amount of time each handler may take.
+   * @return the responses of the handlers, in the same order as the handlers.
+   */
+  public static <H, R> List<R> invokeAll(
+    List<H> handlers,
+    Function<H, R> handle,
+    BiFunction<H, HandleStatus, R> failureResponse,
+    Function<H, String> name,
+    ExecutorService executor,
+    Duration timeout
+  ) {
+    List<Future<R>> futures = new ArrayList<>(handlers.size());
+    for (H handler : handlers) {
+      futures.add(executor.submit(() -> handle.apply(handler)));
+    }
+    long deadline = System.nanoTime() + timeout.toNanos();
+    List<R> responses = new ArrayList<>(handlers.size());
+    boolean interrupted = false;
+    for (int i = 0; i < handlers.size(); ++i) {
+      H handler = handlers.get(i);
+      Future<R> future = futures.get(i);
+      if (interrupted) {
+        future.cancel(true);
+        responses.add(failureResponse.apply(handler, HandleStatus.INTERRUPTED));
+        continue;
+      }
+      try {
+        responses.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+        log.debug("'" + name.apply(handler) + "' finished handling message");
+      } catch (TimeoutException e) {
+        log.error("'" + name.apply(handler) + "' did not finish handling message within " + timeout);
+        future.cancel(true);
+        responses.add(failureResponse.apply(handler, HandleStatus.TIMEOUT));
+      } catch (ExecutionException e) {
+        log.error("unexpected error occurred during '" + name.apply(handler) + "' handling message", e.getCause());
+        responses.add(failureResponse.apply(handler, HandleStatus.GENERIC_FAIL));
+      } catch (InterruptedException e) {
+        log.error("interrupted while waiting for '" + name.apply(handler) + "' to handle message");
+        interrupted = true;
+        future.cancel(true);
+        responses.add(failureResponse.apply(handler, HandleStatus.INTERRUPTED));
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return responses;
+  }
+}
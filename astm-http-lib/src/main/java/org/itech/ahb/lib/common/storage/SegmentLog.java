@@ -0,0 +1,573 @@
+package org.itech.ahb.lib.common.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is a durable, append-only log of entries stored in memory-mapped segment files. Entries are read back
+ * in the order they were appended, and are kept until they have been acknowledged.
+ *
+ * Every entry is identified by its position in the log. Each segment file is named after the position of its first
+ * byte, and stores entries as a 4 byte length, a 4 byte CRC32 of the data and then the data. Space left at the end of
+ * a segment that is too small for the next entry is left zeroed, so a length of 0 marks the end of a segment.
+ *
+ * Appends are written to the mapped segment and made durable by a background flush thread, which forces every
+ * segment written since the last flush to disk at once. Appenders that need durability wait for the flush that
+ * covers their entry, so many entries share one fsync (group commit) instead of paying for one each.
+ *
+ * If flushing fails, ex. because the disk is full, the log stops accepting appends and every appender waiting for
+ * durability is failed, so nothing is reported as durable that may not be.
+ *
+ * The position of the first unacknowledged entry is stored in a checkpoint file. Segments that only hold
+ * acknowledged entries are deleted (compacted). The checkpoint is only forced to disk on close, so after a crash
+ * the most recently acknowledged entries may be read again.
+ *
+ * Entries that are found to be corrupt can be moved to a dead letter directory with
+ * {@link #deadLetter(CorruptEntryException)}, so they can be inspected without holding up the entries after them.
+ */
+@Slf4j
+public class SegmentLog implements Closeable {
+
+  private static final String SEGMENT_FILE_SUFFIX = ".segment";
+  private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+  private static final String DEAD_LETTER_DIRECTORY_NAME = "dead-letter";
+  private static final String DEAD_LETTER_FILE_SUFFIX = ".entry";
+  private static final int ENTRY_HEADER_SIZE = 8;
+  public static final long DEFAULT_DURABLE_TIMEOUT = 10 * 1000; // in milliseconds
+
+  private final Path directory;
+  private final int segmentSize;
+  private final long groupCommitInterval; // in milliseconds
+  private final FileChannel checkpointChannel;
+  private final Consumer<MappedByteBuffer> forcer;
+  private final Thread flushThread;
+
+  private final Object lock = new Object();
+  // guarded by lock
+  private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+  private final List<MappedByteBuffer> unflushedSegments = new ArrayList<>();
+  private long writePosition;
+  private long durablePosition;
+  private long acknowledgedPosition;
+  private boolean closed = false;
+  private IOException flushFailure; // null unless flushing failed
+  private long deadLetteredEntryCount;
+
+  /**
+   * Opens the log in the given directory, creating it if it does not exist. Entries that were appended but not
+   * acknowledged before the log was last closed are read again.
+   *
+   * @param directory the directory the segment files are kept in.
+   * @param segmentSize the size of each segment file in bytes. This limits the size of a single entry.
+   * @param groupCommitInterval how long the flush thread waits in milliseconds, after the first unflushed append, for
+   * further appends to share the same flush. 0 flushes as soon as possible.
+   * @throws IOException if the log could not be opened.
+   */
+  public SegmentLog(Path directory, int segmentSize, long groupCommitInterval) throws IOException {
+    this(directory, segmentSize, groupCommitInterval, MappedByteBuffer::force);
+  }
+
+  /**
+   * Opens the log with the given way of forcing a segment to disk.
+   *
+   * @param directory the directory the segment files are kept in.
+   * @param segmentSize the size of each segment file in bytes.
+   * @param groupCommitInterval how long the flush thread waits in milliseconds for further appends to share a flush.
+   * @param forcer forces the written part of a segment to disk, throwing an {@link UncheckedIOException} if it fails.
+   * @throws IOException if the log could not be opened.
+   */
+  SegmentLog(Path directory, int segmentSize, long groupCommitInterval, Consumer<MappedByteBuffer> forcer)
+    throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.groupCommitInterval = groupCommitInterval;
+    this.forcer = forcer;
+    Files.createDirectories(directory);
+    checkpointChannel = FileChannel.open(
+      directory.resolve(CHECKPOINT_FILE_NAME),
+      StandardOpenOption.CREATE,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE
+    );
+    acknowledgedPosition = readCheckpoint();
+    recover();
+    flushThread = Thread.ofPlatform()
+      .name("segment-log-flush-" + directory.getFileName())
+      .daemon()
+      .unstarted(this::flush);
+    flushThread.start();
+  }
+
+  private long readCheckpoint() throws IOException {
+    ByteBuffer checkpoint = ByteBuffer.allocate(Long.BYTES);
+    if (checkpointChannel.read(checkpoint, 0) < Long.BYTES) {
+      return 0;
+    }
+    return checkpoint.flip().getLong();
+  }
+
+  private void writeCheckpoint() throws IOException {
+    checkpointChannel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, acknowledgedPosition), 0);
+  }
+
+  /**
+   * Maps the existing segments and finds where the last append ended, discarding any partially written entry.
+   */
+  private void recover() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_FILE_SUFFIX)).toList()) {
+        String fileName = file.getFileName().toString();
+        long basePosition = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+        segments.put(basePosition, mapSegment(file, Files.size(file), false));
+      }
+    }
+    if (segments.isEmpty()) {
+      segments.put(acknowledgedPosition, createSegment(acknowledgedPosition));
+    }
+    acknowledgedPosition = Math.max(acknowledgedPosition, segments.firstKey());
+
+    Entry<Long, MappedByteBuffer> lastSegment = segments.lastEntry();
+    MappedByteBuffer buffer = lastSegment.getValue();
+    int offset = 0;
+    while (offset + ENTRY_HEADER_SIZE <= buffer.capacity()) {
+      int length = buffer.getInt(offset);
+      if (length <= 0 || offset + ENTRY_HEADER_SIZE + length > buffer.capacity()) {
+        break;
+      }
+      if (buffer.getInt(offset + 4) != checksum(buffer, offset + ENTRY_HEADER_SIZE, length)) {
+        log.warn("discarding partially written entry at position " + (lastSegment.getKey() + offset));
+        break;
+      }
+      offset += ENTRY_HEADER_SIZE + length;
+    }
+    // zero anything after the last complete entry, so it is not mistaken for an entry once appends continue
+    for (int i = offset; i < buffer.capacity(); i++) {
+      if (buffer.get(i) != 0) {
+        buffer.put(i, (byte) 0);
+      }
+    }
+    writePosition = lastSegment.getKey() + offset;
+    durablePosition = writePosition;
+    log.debug(
+      "opened segment log at " +
+      directory +
+      " with " +
+      segments.size() +
+      " segment(s), unacknowledged entries from " +
+      acknowledgedPosition +
+      " to " +
+      writePosition
+    );
+  }
+
+  private MappedByteBuffer createSegment(long basePosition) throws IOException {
+    return mapSegment(directory.resolve(segmentFileName(basePosition)), segmentSize, true);
+  }
+
+  private MappedByteBuffer mapSegment(Path file, long size, boolean create) throws IOException {
+    try (
+      FileChannel channel = create
+        ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+    ) {
+      // the mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private static String segmentFileName(long basePosition) {
+    return String.format("%020d", basePosition) + SEGMENT_FILE_SUFFIX;
+  }
+
+  private static int checksum(ByteBuffer buffer, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(buffer.slice(offset, length));
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Appends an entry to the log without waiting for it to be durable.
+   *
+   * @param data the data of the entry. Must not be empty.
+   * @return the position of the entry.
+   * @throws IOException if the entry is too large for a segment, a new segment could not be created, flushing has
+   * failed or the log is closed.
+   */
+  public long append(byte[] data) throws IOException {
+    if (data.length == 0) {
+      throw new IllegalArgumentException("an entry must not be empty");
+    }
+    if (data.length > segmentSize - ENTRY_HEADER_SIZE) {
+      throw new IOException(
+        "entry of " + data.length + " bytes is too large for segments of " + segmentSize + " bytes"
+      );
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    synchronized (lock) {
+      if (closed) {
+        throw new IOException("the segment log is closed");
+      }
+      if (flushFailure != null) {
+        throw new IOException("the segment log can not be flushed", flushFailure);
+      }
+      Entry<Long, MappedByteBuffer> segment = segments.lastEntry();
+      int offset = (int) (writePosition - segment.getKey());
+      if (offset + ENTRY_HEADER_SIZE + data.length > segment.getValue().capacity()) {
+        long basePosition = segment.getKey() + segment.getValue().capacity();
+        segments.put(basePosition, createSegment(basePosition));
+        segment = segments.lastEntry();
+        writePosition = basePosition;
+        offset = 0;
+      }
+      MappedByteBuffer buffer = segment.getValue();
+      buffer.putInt(offset + 4, (int) crc.getValue());
+      buffer.put(offset + ENTRY_HEADER_SIZE, data);
+      buffer.putInt(offset, data.length);
+      long position = writePosition;
+      writePosition += ENTRY_HEADER_SIZE + data.length;
+      if (!unflushedSegments.contains(buffer)) {
+        unflushedSegments.add(buffer);
+      }
+      lock.notifyAll();
+      return position;
+    }
+  }
+
+  /**
+   * Waits up to {@link #DEFAULT_DURABLE_TIMEOUT} until the entry at the given position has been flushed to disk.
+   *
+   * @param position the position of the entry, as returned by {@link #append(byte[])}.
+   * @throws IOException if flushing failed, timed out or the log was closed before the entry could be flushed.
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public void awaitDurable(long position) throws IOException, InterruptedException {
+    awaitDurable(position, DEFAULT_DURABLE_TIMEOUT);
+  }
+
+  /**
+   * Waits until the entry at the given position has been flushed to disk.
+   *
+   * @param position the position of the entry, as returned by {@link #append(byte[])}.
+   * @param timeout the maximum time to wait in milliseconds.
+   * @throws IOException if flushing failed, timed out or the log was closed before the entry could be flushed.
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public void awaitDurable(long position, long timeout) throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (lock) {
+      while (durablePosition <= position) {
+        if (flushFailure != null) {
+          throw new IOException("the segment log could not flush the entry", flushFailure);
+        }
+        if (closed) {
+          throw new IOException("the segment log was closed before the entry was flushed");
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new IOException("timed out after " + timeout + " ms waiting for the entry to be flushed");
+        }
+        lock.wait(remaining);
+      }
+    }
+  }
+
+  private void flush() {
+    try {
+      while (true) {
+        synchronized (lock) {
+          while (!closed && durablePosition == writePosition) {
+            lock.wait();
+          }
+          if (durablePosition == writePosition) {
+            return;
+          }
+        }
+        if (groupCommitInterval > 0) {
+          Thread.sleep(groupCommitInterval);
+        }
+        long flushedPosition;
+        List<MappedByteBuffer> flushingSegments;
+        synchronized (lock) {
+          flushedPosition = writePosition;
+          flushingSegments = new ArrayList<>(unflushedSegments);
+          unflushedSegments.clear();
+        }
+        for (MappedByteBuffer segment : flushingSegments) {
+          forcer.accept(segment);
+        }
+        synchronized (lock) {
+          durablePosition = flushedPosition;
+          lock.notifyAll();
+        }
+      }
+    } catch (InterruptedException e) {
+      log.error("segment log flush thread was interrupted, entries will no longer be flushed", e);
+      failFlush(new IOException("the flush thread was interrupted", e));
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      log.error("segment log flush thread failed, entries will no longer be flushed", e);
+      failFlush(e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : new IOException(e));
+    }
+  }
+
+  /**
+   * Records why flushing stopped and wakes every appender waiting for durability, so they fail instead of waiting for
+   * a flush that will never happen.
+   */
+  private void failFlush(IOException failure) {
+    synchronized (lock) {
+      flushFailure = failure;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Gets the position of the first entry that has not been acknowledged.
+   *
+   * @return the position.
+   */
+  public long getAcknowledgedPosition() {
+    synchronized (lock) {
+      return acknowledgedPosition;
+    }
+  }
+
+  /**
+   * Reads the durable entry at the given position, waiting up to the given time for one to be appended.
+   *
+   * @param position the position to read from. This may be the end of a segment, in which case the first entry of
+   * the next segment is read.
+   * @param timeout the maximum time to wait in milliseconds.
+   * @return the entry, or null if no durable entry was available in time.
+   * @throws CorruptEntryException if the entry is corrupt.
+   * @throws IOException if the position is not in the log.
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public LogEntry read(long position, long timeout) throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (lock) {
+      while (position >= durablePosition) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0 || closed) {
+          return null;
+        }
+        lock.wait(remaining);
+      }
+      while (true) {
+        Entry<Long, MappedByteBuffer> segment = segments.floorEntry(position);
+        if (segment == null) {
+          throw new IOException("position " + position + " is before the start of the log");
+        }
+        MappedByteBuffer buffer = segment.getValue();
+        int offset = (int) (position - segment.getKey());
+        int length = offset + ENTRY_HEADER_SIZE <= buffer.capacity() ? buffer.getInt(offset) : 0;
+        if (length == 0) {
+          position = segment.getKey() + buffer.capacity();
+          continue;
+        }
+        if (length < 0 || offset + ENTRY_HEADER_SIZE + length > buffer.capacity()) {
+          // the length can not be trusted, so the next entry can not be found in this segment
+          throw new CorruptEntryException(position, Math.min(segment.getKey() + buffer.capacity(), durablePosition));
+        }
+        if (buffer.getInt(offset + 4) != checksum(buffer, offset + ENTRY_HEADER_SIZE, length)) {
+          throw new CorruptEntryException(position, position + ENTRY_HEADER_SIZE + length);
+        }
+        byte[] data = new byte[length];
+        buffer.get(offset + ENTRY_HEADER_SIZE, data);
+        return new LogEntry(position, position + ENTRY_HEADER_SIZE + length, data);
+      }
+    }
+  }
+
+  /**
+   * Copies the bytes of a corrupt entry to the dead letter directory of the log, so it can be inspected. The entry is
+   * not removed from the log until the entries before {@link CorruptEntryException#getNextPosition()} are
+   * acknowledged.
+   *
+   * @param corruptEntry the exception thrown when reading the corrupt entry.
+   * @throws IOException if the entry could not be written to the dead letter directory.
+   */
+  public void deadLetter(CorruptEntryException corruptEntry) throws IOException {
+    byte[] bytes;
+    synchronized (lock) {
+      Entry<Long, MappedByteBuffer> segment = segments.floorEntry(corruptEntry.getPosition());
+      if (segment == null) {
+        throw new IOException("position " + corruptEntry.getPosition() + " is before the start of the log");
+      }
+      int offset = (int) (corruptEntry.getPosition() - segment.getKey());
+      int length = (int) Math.min(
+        corruptEntry.getNextPosition() - corruptEntry.getPosition(),
+        segment.getValue().capacity() - offset
+      );
+      bytes = new byte[length];
+      segment.getValue().get(offset, bytes);
+      ++deadLetteredEntryCount;
+    }
+    Path deadLetterDirectory = directory.resolve(DEAD_LETTER_DIRECTORY_NAME);
+    Files.createDirectories(deadLetterDirectory);
+    Path file = deadLetterDirectory.resolve(
+      String.format("%020d", corruptEntry.getPosition()) + DEAD_LETTER_FILE_SUFFIX
+    );
+    Files.write(file, bytes);
+    log.warn("moved corrupt entry at position " + corruptEntry.getPosition() + " to " + file);
+  }
+
+  /**
+   * @return the number of corrupt entries moved to the dead letter directory since the log was opened.
+   */
+  public long getDeadLetteredEntryCount() {
+    synchronized (lock) {
+      return deadLetteredEntryCount;
+    }
+  }
+
+  /**
+   * Acknowledges every entry before the given position, so they are not read again once the log is reopened.
+   * Segments that only hold acknowledged entries are deleted.
+   *
+   * @param position the position of the first entry that has not been acknowledged, ex.
+   * {@link LogEntry#getNextPosition()} of the last acknowledged entry.
+   * @throws IOException if the checkpoint could not be written.
+   */
+  public void acknowledge(long position) throws IOException {
+    List<Long> compactedSegments = new ArrayList<>();
+    synchronized (lock) {
+      acknowledgedPosition = position;
+      writeCheckpoint();
+      while (segments.size() > 1) {
+        Entry<Long, MappedByteBuffer> segment = segments.firstEntry();
+        if (segment.getKey() + segment.getValue().capacity() > position) {
+          break;
+        }
+        segments.remove(segment.getKey());
+        unflushedSegments.remove(segment.getValue());
+        compactedSegments.add(segment.getKey());
+      }
+    }
+    for (long basePosition : compactedSegments) {
+      Files.deleteIfExists(directory.resolve(segmentFileName(basePosition)));
+      log.debug("compacted acknowledged segment " + basePosition + " from " + directory);
+    }
+  }
+
+  /**
+   * Flushes any remaining entries and closes the log.
+   *
+   * @throws IOException if the checkpoint could not be flushed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      lock.notifyAll();
+    }
+    try {
+      flushThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    checkpointChannel.force(false);
+    checkpointChannel.close();
+  }
+
+  /**
+   * Exception thrown when an entry that is read does not match its checksum, or its length is not valid.
+   */
+  @Getter
+  public static class CorruptEntryException extends IOException {
+
+    private static final long serialVersionUID = 2093514628271563404L;
+
+    private final long position;
+    private final long nextPosition;
+
+    /**
+     * Constructs a new CorruptEntryException.
+     *
+     * @param position the position of the corrupt entry.
+     * @param nextPosition the position to continue reading from to skip the corrupt entry.
+     */
+    public CorruptEntryException(long position, long nextPosition) {
+      this(position, nextPosition, null);
+    }
+
+    /**
+     * Constructs a new CorruptEntryException for an entry whose data could not be understood.
+     *
+     * @param position the position of the corrupt entry.
+     * @param nextPosition the position to continue reading from to skip the corrupt entry.
+     * @param cause why the data could not be understood.
+     */
+    public CorruptEntryException(long position, long nextPosition, Throwable cause) {
+      super("entry at position " + position + " is corrupt", cause);
+      this.position = position;
+      this.nextPosition = nextPosition;
+    }
+  }
+
+  /**
+   * Closes the log and deletes its segment files and checkpoint, and its directory if nothing else is left in it.
+   * Entries that were moved to the dead letter directory are kept.
+   *
+   * @throws IOException if the log could not be closed or its files could not be deleted.
+   */
+  public void delete() throws IOException {
+    close();
+    synchronized (lock) {
+      segments.clear();
+      unflushedSegments.clear();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.filter(SegmentLog::isLogFile).toList()) {
+        Files.delete(file);
+      }
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      if (files.findAny().isEmpty()) {
+        Files.delete(directory);
+      }
+    }
+  }
+
+  private static boolean isLogFile(Path file) {
+    String fileName = file.getFileName().toString();
+    return fileName.endsWith(SEGMENT_FILE_SUFFIX) || fileName.equals(CHECKPOINT_FILE_NAME);
+  }
+
+  /**
+   * Object for holding an entry that was read from the log.
+   */
+  @Getter
+  public static class LogEntry {
+
+    private final long position;
+    private final long nextPosition;
+    private final byte[] data;
+
+    private LogEntry(long position, long nextPosition, byte[] data) {
+      this.position = position;
+      this.nextPosition = nextPosition;
+      this.data = data;
+    }
+  }
+}
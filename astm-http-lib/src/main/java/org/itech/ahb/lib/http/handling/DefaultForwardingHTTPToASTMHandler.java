@@ -2,13 +2,17 @@ package org.itech.ahb.lib.http.handling;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.itech.ahb.lib.astm.communication.Communicator;
 import org.itech.ahb.lib.astm.communication.Communicator.SendResult;
-import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
+import org.itech.ahb.lib.astm.communication.ASTMConnectionPool;
+import org.itech.ahb.lib.astm.communication.ASTMConnectionPool.ConnectionKey;
+import org.itech.ahb.lib.astm.communication.ASTMConnectionPool.PooledASTMConnection;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
 import org.itech.ahb.lib.astm.concept.DefaultASTMMessage;
 import org.itech.ahb.lib.astm.exception.ASTMCommunicationException;
@@ -30,6 +34,8 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
   private final ASTMVersion defaultForwardingProtocol;
   private final ASTMInterpreterFactory interpreterFactory;
   private final ASTMHandlerService astmHandlerService; // this is necessary in case of line contention
+  private final ASTMConnectionPool connectionPool;
+  private boolean coalesceBatches = false;
 
   private static final int MAX_FORWARD_RETRY_ATTEMPTS = 3; // this is not officially part of the astm standard
   private static final int SEND_ATTEMPTS_WAIT = 10; // in seconds the amount of time to wait before trying to submit again
@@ -50,12 +56,50 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
     int forwardingPort,
     ASTMHandlerService astmHandlerService,
     ASTMInterpreterFactory interpreterFactory
+  ) {
+    this(
+      forwardingAddress,
+      forwardingPort,
+      astmHandlerService,
+      interpreterFactory,
+      new ASTMConnectionPool(interpreterFactory, 0, 0)
+    );
+  }
+
+  /**
+   * Constructs a new DefaultForwardingHTTPToASTMHandler that gets its connections from the provided pool, so
+   * connections to an ASTM server can be reused for consecutive messages.
+   * Default ASTM version is LIS01_A.
+   *
+   * @param forwardingAddress the default web address to forward the message to.
+   * @param forwardingPort the default port to forward the message to.
+   * @param astmHandlerService the handler service to use for handling messages.
+   * @param interpreterFactory the interpreter factory to use for interpreting messages.
+   * @param connectionPool the pool to get connections to ASTM servers from.
+   */
+  public DefaultForwardingHTTPToASTMHandler(
+    String forwardingAddress,
+    int forwardingPort,
+    ASTMHandlerService astmHandlerService,
+    ASTMInterpreterFactory interpreterFactory,
+    ASTMConnectionPool connectionPool
   ) {
     this.defaultForwardingAddress = forwardingAddress;
     this.defaultForwardingPort = forwardingPort;
     this.defaultForwardingProtocol = ASTMVersion.LIS01_A;
     this.interpreterFactory = interpreterFactory;
     this.astmHandlerService = astmHandlerService;
+    this.connectionPool = connectionPool;
+  }
+
+  /**
+   * Sets whether a batch of messages is sent within a single establishment phase, instead of one establishment phase
+   * per message. Not every ASTM server accepts more than one message per establishment phase.
+   *
+   * @param coalesceBatches true to send batches within a single establishment phase.
+   */
+  public void setCoalesceBatches(boolean coalesceBatches) {
+    this.coalesceBatches = coalesceBatches;
   }
 
   /**
@@ -80,25 +124,11 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
    */
   private HTTPHandlerResponse handle(ASTMMessage message, Set<HTTPHandlerInfo> handlerInfos, int retryAttempt) {
     log.trace(this.getName() + ": " + this.hashCode() + " " + "retry attempt: " + retryAttempt);
-    Socket socket = null;
-    Communicator communicator = null;
-    String forwardingAddress = this.defaultForwardingAddress;
-    int forwardingPort = this.defaultForwardingPort;
-    ASTMVersion forwardingProtocol = this.defaultForwardingProtocol;
-    for (HTTPHandlerInfo handlerInfo : handlerInfos) {
-      if (handlerInfo instanceof HTTPForwardingHandlerInfo) {
-        HTTPForwardingHandlerInfo httpForwardingHandlerInfo = (HTTPForwardingHandlerInfo) handlerInfo;
-        forwardingAddress = StringUtils.isBlank(httpForwardingHandlerInfo.getForwardAddress())
-          ? forwardingAddress
-          : httpForwardingHandlerInfo.getForwardAddress();
-        forwardingPort = httpForwardingHandlerInfo.getForwardPort() <= 0
-          ? forwardingPort
-          : httpForwardingHandlerInfo.getForwardPort();
-        forwardingProtocol = httpForwardingHandlerInfo.getForwardAstmVersion() == null
-          ? forwardingProtocol
-          : httpForwardingHandlerInfo.getForwardAstmVersion();
-      }
-    }
+    PooledASTMConnection connection = null;
+    boolean reusable = false;
+    ConnectionKey target = getTarget(handlerInfos);
+    String forwardingAddress = target.getHost();
+    int forwardingPort = target.getPort();
     try {
       if (retryAttempt > 0 && retryAttempt <= MAX_FORWARD_RETRY_ATTEMPTS) {
         log.debug("waiting to reattempt sending to astm server...");
@@ -109,12 +139,11 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
         return new HTTPHandlerResponse("", HandleStatus.FAIL_TOO_MANY_ATTEMPTS, false, this);
       }
       try {
-        log.debug("connecting to forward to astm server at " + forwardingAddress + ":" + forwardingPort);
-        socket = new Socket(forwardingAddress, forwardingPort);
-        log.debug("connected to astm server at " + forwardingAddress + ":" + forwardingPort);
-        communicator = new GeneralASTMCommunicator(interpreterFactory, socket, forwardingProtocol);
+        log.debug("getting connection to forward to astm server at " + forwardingAddress + ":" + forwardingPort);
+        connection = connectionPool.borrow(target);
+        Communicator communicator = connection.getCommunicator();
         log.debug(
-          "successfully created communicator " +
+          "using communicator " +
           communicator.getID() +
           " for astm server at " +
           forwardingAddress +
@@ -127,34 +156,161 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
           log.warn(
             "line was contested by the remote server, defaulting to receive information from " + forwardingAddress
           );
-          return handleLineContention(communicator, socket, message);
+          return handleLineContention(communicator, connection.getSocket(), message);
         } else if (result.isRejected()) {
+          // the exchange completed, so the connection can be used for the next attempt
+          connectionPool.release(connection);
+          connection = null;
           return handle(message, handlerInfos, ++retryAttempt);
         } else {
+          reusable = true;
           return new HTTPHandlerResponse("", HandleStatus.SUCCESS, false, this);
         }
       } catch (IOException | ASTMCommunicationException e) {
         log.error("error occurred communicating with astm server at " + forwardingAddress + ":" + forwardingPort, e);
+        if (connection != null) {
+          connectionPool.invalidate(connection);
+          connection = null;
+        }
         return handle(message, handlerInfos, ++retryAttempt);
       } finally {
-        if (socket != null && !socket.isClosed()) {
-          try {
-            socket.close();
-            log.debug("successfully closed socket with astm server at " + forwardingAddress + ":" + forwardingPort);
-          } catch (IOException e) {
-            log.error(
-              "error occurred closing socket with astm server at " + forwardingAddress + ":" + forwardingPort,
-              e
-            );
+        if (connection != null) {
+          if (reusable) {
+            connectionPool.release(connection);
+          } else {
+            connectionPool.invalidate(connection);
           }
         }
       }
     } catch (InterruptedException e) {
       log.error("thread was interrupted while handling http astm message", e);
+      Thread.currentThread().interrupt();
       return new HTTPHandlerResponse("", HandleStatus.INTERRUPTED, false, this);
     }
   }
 
+  /**
+   * Handles the given ASTM messages with the provided handler information by forwarding them over an ASTM
+   * transmission protocol. When coalescing batches, all messages are sent within a single establishment phase, and
+   * only the messages that were not sent are reattempted. Otherwise each message is forwarded on its own.
+   *
+   * @param messages the ASTM messages, in the order they should be sent.
+   * @param handlerInfos the set of handler information.
+   * @return the HTTP handler responses, one for each message in the same order.
+   */
+  @Override
+  public List<HTTPHandlerResponse> handleBatch(List<ASTMMessage> messages, Set<HTTPHandlerInfo> handlerInfos) {
+    if (!coalesceBatches) {
+      return HTTPHandler.super.handleBatch(messages, handlerInfos);
+    }
+    ConnectionKey target = getTarget(handlerInfos);
+    String forwardingAddress = target.getHost();
+    int forwardingPort = target.getPort();
+    HTTPHandlerResponse[] responses = new HTTPHandlerResponse[messages.size()];
+    int sent = 0;
+    int retryAttempt = 0;
+    try {
+      while (sent < messages.size()) {
+        if (retryAttempt > 0 && retryAttempt <= MAX_FORWARD_RETRY_ATTEMPTS) {
+          log.debug("waiting to reattempt sending to astm server...");
+          Thread.sleep(SEND_ATTEMPTS_WAIT * 1000);
+          log.debug("reattempting forward to astm server...");
+        } else if (retryAttempt > MAX_FORWARD_RETRY_ATTEMPTS) {
+          log.error("reached max number of retries while attempting to forward http over astm");
+          fillResponses(responses, sent, HandleStatus.FAIL_TOO_MANY_ATTEMPTS);
+          break;
+        }
+        ++retryAttempt;
+        List<ASTMMessage> remaining = messages.subList(sent, messages.size());
+        PooledASTMConnection connection = null;
+        boolean reusable = false;
+        try {
+          log.debug(
+            "getting connection to forward " +
+            remaining.size() +
+            " messages to astm server at " +
+            forwardingAddress +
+            ":" +
+            forwardingPort
+          );
+          connection = connectionPool.borrow(target);
+          Communicator communicator = connection.getCommunicator();
+          SendResult result = communicator.sendProtocol(remaining);
+          fillResponses(responses, sent, sent + result.getMessagesSent(), HandleStatus.SUCCESS);
+          sent += result.getMessagesSent();
+
+          if (result.isLineContention()) {
+            log.warn(
+              "line was contested by the remote server, defaulting to receive information from " + forwardingAddress
+            );
+            HTTPHandlerResponse contentionResponse = handleLineContention(
+              communicator,
+              connection.getSocket(),
+              remaining.get(0)
+            );
+            fillResponses(responses, sent, contentionResponse.getStatus());
+            break;
+          }
+          // a rejected exchange completed, so the connection can be used for the next attempt
+          reusable = result.isRejected() || sent == messages.size();
+        } catch (IOException | ASTMCommunicationException e) {
+          log.error("error occurred communicating with astm server at " + forwardingAddress + ":" + forwardingPort, e);
+        } finally {
+          if (connection != null) {
+            if (reusable) {
+              connectionPool.release(connection);
+            } else {
+              connectionPool.invalidate(connection);
+            }
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      log.error("thread was interrupted while handling http astm messages", e);
+      Thread.currentThread().interrupt();
+      fillResponses(responses, sent, HandleStatus.INTERRUPTED);
+    }
+    return Arrays.asList(responses);
+  }
+
+  private void fillResponses(HTTPHandlerResponse[] responses, int from, HandleStatus status) {
+    fillResponses(responses, from, responses.length, status);
+  }
+
+  private void fillResponses(HTTPHandlerResponse[] responses, int from, int to, HandleStatus status) {
+    for (int i = from; i < to; i++) {
+      responses[i] = new HTTPHandlerResponse("", status, false, this);
+    }
+  }
+
+  /**
+   * Gets the ASTM server to forward to, using the defaults of this handler for anything the handler information does
+   * not provide.
+   *
+   * @param handlerInfos the set of handler information.
+   * @return the ASTM server to forward to.
+   */
+  private ConnectionKey getTarget(Set<HTTPHandlerInfo> handlerInfos) {
+    String forwardingAddress = this.defaultForwardingAddress;
+    int forwardingPort = this.defaultForwardingPort;
+    ASTMVersion forwardingProtocol = this.defaultForwardingProtocol;
+    for (HTTPHandlerInfo handlerInfo : handlerInfos) {
+      if (handlerInfo instanceof HTTPForwardingHandlerInfo) {
+        HTTPForwardingHandlerInfo httpForwardingHandlerInfo = (HTTPForwardingHandlerInfo) handlerInfo;
+        forwardingAddress = StringUtils.isBlank(httpForwardingHandlerInfo.getForwardAddress())
+          ? forwardingAddress
+          : httpForwardingHandlerInfo.getForwardAddress();
+        forwardingPort = httpForwardingHandlerInfo.getForwardPort() <= 0
+          ? forwardingPort
+          : httpForwardingHandlerInfo.getForwardPort();
+        forwardingProtocol = httpForwardingHandlerInfo.getForwardAstmVersion() == null
+          ? forwardingProtocol
+          : httpForwardingHandlerInfo.getForwardAstmVersion();
+      }
+    }
+    return new ConnectionKey(forwardingAddress, forwardingPort, forwardingProtocol);
+  }
+
   /**
    * Handles line contention when it occurs by instead of sending, reverting to listenting mode using the same socket.
    * If the message being forwarded was 0 length, it is assumed that the message was a ping to trigger an action from the receiver,
@@ -169,7 +325,7 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
    */
   private HTTPHandlerResponse handleLineContention(Communicator communicator, Socket socket, ASTMMessage message)
     throws ASTMCommunicationException, InterruptedException {
-    // the communicator must remain open to receive the line contention. The thread will close the socket
+    // the communicator must remain open to receive the line contention. The receiver will close the socket
     ASTMReceiveThread receiveThread = new ASTMReceiveThread(communicator, socket, astmHandlerService, true);
     receiveThread.run();
     log.debug("waiting after line contention to see if sender has a message that needs to be received...");
@@ -178,7 +334,6 @@ public class DefaultForwardingHTTPToASTMHandler implements HTTPHandler {
       log.debug("received an establishment after the line was in contention before the timeout");
     } else {
       log.error("a timeout occured waiting for the sender to reattempt establishment after the line was contested.");
-      receiveThread.interrupt();
       throw new ASTMCommunicationException(
         "line contention occurred but receiver didn't receive an establishment character"
       );
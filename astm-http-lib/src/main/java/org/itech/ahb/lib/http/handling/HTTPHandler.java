@@ -1,5 +1,7 @@
 package org.itech.ahb.lib.http.handling;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
 
@@ -24,6 +26,22 @@ public interface HTTPHandler {
    */
   HTTPHandlerResponse handle(ASTMMessage message, Set<HTTPHandlerInfo> handlerInfo);
 
+  /**
+   * Handles the given ASTM messages with the provided handler information. By default each message is handled on its
+   * own, in order.
+   *
+   * @param messages the ASTM messages.
+   * @param handlerInfo the set of handler information.
+   * @return the HTTP handler responses, one for each message in the same order.
+   */
+  default List<HTTPHandlerResponse> handleBatch(List<ASTMMessage> messages, Set<HTTPHandlerInfo> handlerInfo) {
+    List<HTTPHandlerResponse> responses = new ArrayList<>(messages.size());
+    for (ASTMMessage message : messages) {
+      responses.add(handle(message, handlerInfo));
+    }
+    return responses;
+  }
+
   /**
    * Gets the name of the handler for logging purposes.
    *
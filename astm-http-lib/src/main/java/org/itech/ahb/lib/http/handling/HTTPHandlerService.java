@@ -1,15 +1,15 @@
 package org.itech.ahb.lib.http.handling;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
 import org.itech.ahb.lib.common.handling.HandleStatus;
+import org.itech.ahb.lib.common.handling.ParallelHandlerInvoker;
 
 /**
  * This class provides a service layer for deciding which HTTP handlers should be called for a message and then calling them.
@@ -29,11 +29,17 @@ public class HTTPHandlerService {
     /**
      *  Call the first handler that matches the message.
      */
-    FIRST
+    FIRST,
+    /**
+     *  Call all handlers that match the message at the same time, each on a thread of the handler service's executor.
+     */
+    ALL_PARALLEL
   }
 
   private List<HTTPHandler> handlers;
   private Mode mode;
+  private final ExecutorService executor; // only used in ALL_PARALLEL mode
+  private final Duration handlerTimeout; // only used in ALL_PARALLEL mode
 
   /**
    * Create a new HTTPHandlerService.
@@ -41,8 +47,23 @@ public class HTTPHandlerService {
    * @param mode the mode this handler service should operate.
    */
   public HTTPHandlerService(List<HTTPHandler> handlers, Mode mode) {
+    this(handlers, mode, null, ParallelHandlerInvoker.DEFAULT_HANDLER_TIMEOUT);
+  }
+
+  /**
+   * Create a new HTTPHandlerService that calls the handlers on the provided executor in {@link Mode#ALL_PARALLEL}.
+   * @param handlers the list of handlers to this handler service should be aware of.
+   * @param mode the mode this handler service should operate.
+   * @param executor the executor to call handlers on in ALL_PARALLEL mode. null to start a virtual thread per call.
+   * @param handlerTimeout the maximum amount of time each handler may take in ALL_PARALLEL mode.
+   */
+  public HTTPHandlerService(List<HTTPHandler> handlers, Mode mode, ExecutorService executor, Duration handlerTimeout) {
     this.handlers = handlers;
     this.mode = mode;
+    this.executor = executor == null && mode == Mode.ALL_PARALLEL
+      ? ParallelHandlerInvoker.createDefaultExecutor("http-handler-")
+      : executor;
+    this.handlerTimeout = handlerTimeout;
   }
 
   /**
@@ -63,52 +84,145 @@ public class HTTPHandlerService {
    * @return the HTTP handler service response.
    */
   public HTTPHandlerServiceResponse handle(ASTMMessage message, Set<HTTPForwardingHandlerInfo> handlersInfos) {
-    Map<ASTMMessage, List<HTTPHandler>> messageHandlersMap = new HashMap<>();
+    List<HTTPHandler> matchingHandlers = new ArrayList<>();
     log.debug("finding a handler for astm http message: " + message.hashCode());
     for (HTTPHandler handler : handlers) {
       if (handler.matches(message)) {
         log.debug("handler found for astm http message: " + message.hashCode());
-        List<HTTPHandler> matchingMessageHandlers = messageHandlersMap.getOrDefault(message, new ArrayList<>());
-        matchingMessageHandlers.add(handler);
-
-        messageHandlersMap.put(message, matchingMessageHandlers);
+        matchingHandlers.add(handler);
         if (mode == Mode.FIRST) {
           log.debug("mode is FIRST, proceeding with a single handler");
           break;
         }
       }
     }
-    if (!messageHandlersMap.containsKey(message)) {
+    if (matchingHandlers.isEmpty()) {
       log.warn("astm http message received but no handler was configured to handle the message");
       return new HTTPHandlerServiceResponse();
     }
 
+    if (mode == Mode.ALL_PARALLEL && matchingHandlers.size() > 1) {
+      log.debug("handling astm http message in parallel...");
+      return new HTTPHandlerServiceResponse(
+        ParallelHandlerInvoker.invokeAll(
+          matchingHandlers,
+          messageHandler -> messageHandler.handle(message, supportedHandlerInfos(handlersInfos, messageHandler)),
+          (messageHandler, status) -> new HTTPHandlerResponse("", status, false, messageHandler),
+          HTTPHandler::getName,
+          executor,
+          handlerTimeout
+        )
+      );
+    }
+
     List<HTTPHandlerResponse> handleResponses = new ArrayList<>();
     log.debug("handling astm http message...");
-    for (Entry<ASTMMessage, List<HTTPHandler>> matchingMessageHandlers : messageHandlersMap.entrySet()) {
-      for (HTTPHandler messageHandler : matchingMessageHandlers.getValue()) {
-        log.trace("messageHandler astm http message...");
+    for (HTTPHandler messageHandler : matchingHandlers) {
+      log.trace("messageHandler astm http message...");
+      try {
+        HTTPHandlerResponse handleResponse = messageHandler.handle(
+          message,
+          supportedHandlerInfos(handlersInfos, messageHandler)
+        );
+        log.debug("'" + messageHandler.getName() + "' finished handling astm http message");
+        handleResponses.add(handleResponse);
+      } catch (RuntimeException e) {
+        log.error(
+          "unexpected error occurred during '" + messageHandler.getName() + "' handling astm http message: " + message,
+          e
+        );
+        handleResponses.add(new HTTPHandlerResponse("", HandleStatus.GENERIC_FAIL, false, messageHandler));
+      }
+    }
+    // TODO add some handle exception handling. for every handleResponse not success call messageHandler.handleFailure();
+
+    return new HTTPHandlerServiceResponse(handleResponses);
+  }
+
+  /**
+   * Handles the given ASTM messages together with the provided handler information, so a handler can forward them
+   * all in one exchange. The messages are handled by the handler(s) that match every message. If no handler matches
+   * every message, each message is handled on its own.
+   *
+   * @param messages the ASTM messages, in order.
+   * @param handlersInfos the set of handler information.
+   * @return the HTTP handler service responses, one for each message in the same order.
+   */
+  public List<HTTPHandlerServiceResponse> handleBatch(
+    List<ASTMMessage> messages,
+    Set<HTTPForwardingHandlerInfo> handlersInfos
+  ) {
+    List<HTTPHandler> matchingHandlers = new ArrayList<>();
+    log.debug("finding a handler for batch of " + messages.size() + " astm http messages");
+    for (HTTPHandler handler : handlers) {
+      if (messages.stream().allMatch(handler::matches)) {
+        matchingHandlers.add(handler);
+        if (mode == Mode.FIRST) {
+          log.debug("mode is FIRST, proceeding with a single handler");
+          break;
+        }
+      }
+    }
+    if (matchingHandlers.isEmpty()) {
+      log.debug("no handler matches every message in the batch, handling each message on its own");
+      return messages.stream().map(message -> handle(message, handlersInfos)).collect(Collectors.toList());
+    }
+
+    List<HTTPHandlerServiceResponse> serviceResponses = new ArrayList<>(messages.size());
+    for (int i = 0; i < messages.size(); i++) {
+      serviceResponses.add(new HTTPHandlerServiceResponse(new ArrayList<>()));
+    }
+    List<List<HTTPHandlerResponse>> handlerResponses;
+    if (mode == Mode.ALL_PARALLEL && matchingHandlers.size() > 1) {
+      log.debug("handling batch of astm http messages in parallel...");
+      handlerResponses = ParallelHandlerInvoker.invokeAll(
+        matchingHandlers,
+        messageHandler -> messageHandler.handleBatch(messages, supportedHandlerInfos(handlersInfos, messageHandler)),
+        (messageHandler, status) -> failedResponses(messages, messageHandler, status),
+        HTTPHandler::getName,
+        executor,
+        handlerTimeout
+      );
+    } else {
+      handlerResponses = new ArrayList<>();
+      for (HTTPHandler messageHandler : matchingHandlers) {
         try {
-          HTTPHandlerResponse handleResponse = messageHandler.handle(
-            matchingMessageHandlers.getKey(),
-            handlersInfos.stream().filter(e -> e.supports(messageHandler)).collect(Collectors.toSet())
+          handlerResponses.add(
+            messageHandler.handleBatch(messages, supportedHandlerInfos(handlersInfos, messageHandler))
           );
-          log.debug("'" + messageHandler.getName() + "' finished handling astm http message");
-          handleResponses.add(handleResponse);
+          log.debug("'" + messageHandler.getName() + "' finished handling batch of astm http messages");
         } catch (RuntimeException e) {
           log.error(
-            "unexpected error occurred during '" +
-            messageHandler.getName() +
-            "' handling astm http message: " +
-            matchingMessageHandlers.getKey(),
+            "unexpected error occurred during '" + messageHandler.getName() + "' handling astm http messages",
             e
           );
-          handleResponses.add(new HTTPHandlerResponse("", HandleStatus.GENERIC_FAIL, false, messageHandler));
+          handlerResponses.add(failedResponses(messages, messageHandler, HandleStatus.GENERIC_FAIL));
         }
       }
     }
-    // TODO add some handle exception handling. for every handleResponse not success call messageHandler.handleFailure();
+    for (List<HTTPHandlerResponse> handleResponses : handlerResponses) {
+      for (int i = 0; i < messages.size(); i++) {
+        serviceResponses.get(i).getResponses().add(handleResponses.get(i));
+      }
+    }
+    return serviceResponses;
+  }
 
-    return new HTTPHandlerServiceResponse(handleResponses);
+  private Set<HTTPHandlerInfo> supportedHandlerInfos(
+    Set<HTTPForwardingHandlerInfo> handlersInfos,
+    HTTPHandler messageHandler
+  ) {
+    return handlersInfos.stream().filter(e -> e.supports(messageHandler)).collect(Collectors.toSet());
+  }
+
+  private List<HTTPHandlerResponse> failedResponses(
+    List<ASTMMessage> messages,
+    HTTPHandler messageHandler,
+    HandleStatus status
+  ) {
+    return messages
+      .stream()
+      .map(message -> new HTTPHandlerResponse("", status, false, messageHandler))
+      .collect(Collectors.toList());
   }
 }
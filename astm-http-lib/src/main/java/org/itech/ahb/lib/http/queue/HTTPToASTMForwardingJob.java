@@ -0,0 +1,42 @@
+package org.itech.ahb.lib.http.queue;
+
+import lombok.Data;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.http.handling.HTTPHandlerServiceResponse;
+
+/**
+ * This class represents an ASTM message that was received over HTTP and queued to be forwarded over an ASTM
+ * transmission protocol by a {@link HTTPToASTMForwardingQueue}.
+ */
+@Data
+public class HTTPToASTMForwardingJob {
+
+  /**
+   *  The status of the job.
+   */
+  public enum Status {
+    /**
+     *  The message is waiting for the messages queued before it for the same target to be forwarded.
+     */
+    QUEUED,
+    /**
+     *  The message is being forwarded.
+     */
+    IN_PROGRESS,
+    /**
+     *  Every handler forwarded the message successfully.
+     */
+    SUCCEEDED,
+    /**
+     *  The message was not forwarded successfully, see the response for details.
+     */
+    FAILED
+  }
+
+  private final String id;
+  private final String forwardAddress;
+  private final int forwardPort;
+  private final ASTMVersion forwardAstmVersion;
+  private volatile Status status = Status.QUEUED;
+  private volatile HTTPHandlerServiceResponse response; // null until the job is finished
+}
@@ -0,0 +1,459 @@
+package org.itech.ahb.lib.http.queue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.metrics.ASTMMetrics;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.astm.storage.ASTMMessageSerialization;
+import org.itech.ahb.lib.common.handling.HandleStatus;
+import org.itech.ahb.lib.common.storage.SegmentLog;
+import org.itech.ahb.lib.common.storage.SegmentLog.CorruptEntryException;
+import org.itech.ahb.lib.common.storage.SegmentLog.LogEntry;
+import org.itech.ahb.lib.http.handling.HTTPForwardingHandlerInfo;
+import org.itech.ahb.lib.http.handling.HTTPHandlerResponse;
+import org.itech.ahb.lib.http.handling.HTTPHandlerService;
+import org.itech.ahb.lib.http.handling.HTTPHandlerServiceResponse;
+
+/**
+ * This class durably queues ASTM messages received over HTTP so they can be forwarded over an ASTM transmission
+ * protocol without the HTTP sender waiting on the ASTM receiver. Every target (address, port and ASTM version) has
+ * its own {@link SegmentLog} and worker thread, so the messages for a target are forwarded one at a time in the order
+ * they were queued, and a slow or unreachable target does not hold up the others.
+ *
+ * Queued messages survive a restart and are forwarded once the queue is opened again. The results of finished jobs
+ * are only kept in memory, up to a maximum number of jobs.
+ *
+ * As targets are chosen by the HTTP sender, the number of targets open at once is limited, and a target whose
+ * messages have all been forwarded is closed and its files deleted once it has been idle for a while. A queued
+ * message that is corrupt can never be forwarded, so it is moved to the dead letter directory of its target instead.
+ */
+@Slf4j
+public class HTTPToASTMForwardingQueue implements Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024; // in bytes
+  public static final long DEFAULT_GROUP_COMMIT_INTERVAL = 2; // in milliseconds
+  public static final int DEFAULT_MAX_RETAINED_JOBS = 10000;
+  public static final int DEFAULT_MAX_TARGETS = 64;
+  private static final long IDLE_TARGET_TIMEOUT = 60 * 1000; // in milliseconds
+  private static final String DEFAULT_TARGET_NAME = "default";
+  private static final long POLL_TIMEOUT = 1000; // in milliseconds
+
+  private final Path directory;
+  private final HTTPHandlerService httpHandlerService;
+  private final ASTMInterpreterFactory astmInterpreterFactory;
+  private final int segmentSize;
+  private final long groupCommitInterval;
+  private final int maxRetainedJobs;
+  private final int maxTargets;
+  private final Map<String, Target> targets = new HashMap<>(); // guarded by this
+  private final Map<String, HTTPToASTMForwardingJob> jobs = new ConcurrentHashMap<>();
+  private final Queue<String> finishedJobIds = new ArrayDeque<>(); // guarded by itself
+  private boolean closed = false; // guarded by this
+  private ASTMMetrics metrics = ASTMMetrics.global();
+
+  /**
+   * Opens the queue in the given directory, creating it if it does not exist, and starts forwarding any messages that
+   * were still queued when it was last closed.
+   *
+   * @param directory the directory to keep the queued messages in.
+   * @param httpHandlerService the handler service to forward queued messages with.
+   * @param astmInterpreterFactory the interpreter factory to use for recreating queued messages.
+   * @param segmentSize the size of each file messages are queued in, in bytes. This limits the size of a message.
+   * @param groupCommitInterval how long to wait in milliseconds for more messages to share a flush to disk.
+   * @param maxRetainedJobs the maximum number of finished jobs to keep the results of.
+   * @throws IOException if the queue could not be opened.
+   */
+  public HTTPToASTMForwardingQueue(
+    Path directory,
+    HTTPHandlerService httpHandlerService,
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int segmentSize,
+    long groupCommitInterval,
+    int maxRetainedJobs
+  ) throws IOException {
+    this(
+      directory,
+      httpHandlerService,
+      astmInterpreterFactory,
+      segmentSize,
+      groupCommitInterval,
+      maxRetainedJobs,
+      DEFAULT_MAX_TARGETS
+    );
+  }
+
+  /**
+   * Opens the queue in the given directory, creating it if it does not exist, and starts forwarding any messages that
+   * were still queued when it was last closed.
+   *
+   * @param directory the directory to keep the queued messages in.
+   * @param httpHandlerService the handler service to forward queued messages with.
+   * @param astmInterpreterFactory the interpreter factory to use for recreating queued messages.
+   * @param segmentSize the size of each file messages are queued in, in bytes. This limits the size of a message.
+   * @param groupCommitInterval how long to wait in milliseconds for more messages to share a flush to disk.
+   * @param maxRetainedJobs the maximum number of finished jobs to keep the results of.
+   * @param maxTargets the maximum number of targets messages can be queued for at once. Targets that still had
+   * messages queued when the queue was last closed are always opened.
+   * @throws IOException if the queue could not be opened.
+   */
+  public HTTPToASTMForwardingQueue(
+    Path directory,
+    HTTPHandlerService httpHandlerService,
+    ASTMInterpreterFactory astmInterpreterFactory,
+    int segmentSize,
+    long groupCommitInterval,
+    int maxRetainedJobs,
+    int maxTargets
+  ) throws IOException {
+    this.directory = directory;
+    this.httpHandlerService = httpHandlerService;
+    this.astmInterpreterFactory = astmInterpreterFactory;
+    this.segmentSize = segmentSize;
+    this.groupCommitInterval = groupCommitInterval;
+    this.maxRetainedJobs = maxRetainedJobs;
+    this.maxTargets = maxTargets;
+    Files.createDirectories(directory);
+    List<Path> targetDirectories;
+    try (Stream<Path> paths = Files.list(directory)) {
+      targetDirectories = paths.filter(Files::isDirectory).toList();
+    }
+    for (Path targetDirectory : targetDirectories) {
+      openTarget(targetDirectory.getFileName().toString());
+    }
+  }
+
+  /**
+   * Queues the message to be forwarded to the target in the handler info, and waits until it is durable on disk.
+   *
+   * @param message the ASTM message.
+   * @param handlerInfo where to forward the message to.
+   * @return the job, which is updated as the message is forwarded.
+   * @throws IOException if the message could not be queued, or the maximum number of targets are already open.
+   * @throws InterruptedException if the thread was interrupted while waiting for the message to be durable.
+   */
+  public HTTPToASTMForwardingJob submit(ASTMMessage message, HTTPForwardingHandlerInfo handlerInfo)
+    throws IOException, InterruptedException {
+    HTTPToASTMForwardingJob job = new HTTPToASTMForwardingJob(
+      UUID.randomUUID().toString(),
+      handlerInfo.getForwardAddress(),
+      handlerInfo.getForwardPort(),
+      handlerInfo.getForwardAstmVersion()
+    );
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getMessageLength() + 128);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeUTF(job.getId());
+    out.writeUTF(job.getForwardAddress() == null ? "" : job.getForwardAddress());
+    out.writeInt(job.getForwardPort());
+    out.writeUTF(job.getForwardAstmVersion().name());
+    ASTMMessageSerialization.write(out, message);
+
+    Target target = getTarget(job);
+    jobs.put(job.getId(), job);
+    try {
+      target.segmentLog.awaitDurable(target.segmentLog.append(bytes.toByteArray()));
+    } catch (IOException | InterruptedException e) {
+      jobs.remove(job.getId());
+      throw e;
+    } finally {
+      synchronized (this) {
+        --target.pendingSubmits;
+      }
+    }
+    log.debug("queued job " + job.getId() + " for " + target.name);
+    return job;
+  }
+
+  /**
+   * @param id the id of the job.
+   * @return the job, or null if no job with the id is queued or was recently finished.
+   */
+  public HTTPToASTMForwardingJob getJob(String id) {
+    return jobs.get(id);
+  }
+
+  /**
+   * Sets the metrics that corrupt queued messages are counted in.
+   *
+   * @param metrics the metrics.
+   */
+  public void setMetrics(ASTMMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Stops the workers, waiting for the messages currently being forwarded to finish, and closes the queue.
+   *
+   * @throws IOException if a target's log could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    List<Target> closingTargets;
+    synchronized (this) {
+      closed = true;
+      closingTargets = new ArrayList<>(targets.values());
+    }
+    for (Target target : closingTargets) {
+      target.worker.interrupt();
+    }
+    for (Target target : closingTargets) {
+      try {
+        target.worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      target.segmentLog.close();
+    }
+  }
+
+  /**
+   * Gets the target of the job, opening it if needed. The target is not closed until the returned target's pending
+   * submits have been decremented.
+   */
+  private synchronized Target getTarget(HTTPToASTMForwardingJob job) throws IOException {
+    String name =
+      (job.getForwardAddress() == null || job.getForwardAddress().isEmpty()
+          ? DEFAULT_TARGET_NAME
+          : job.getForwardAddress()) +
+      "_" +
+      job.getForwardPort() +
+      "_" +
+      job.getForwardAstmVersion().name();
+    name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+    Target target = targets.get(name);
+    if (target == null) {
+      if (targets.size() >= maxTargets) {
+        throw new IOException(
+          "could not queue message for " + name + " as the maximum of " + maxTargets + " targets are already open"
+        );
+      }
+      target = openTarget(name);
+    }
+    ++target.pendingSubmits;
+    return target;
+  }
+
+  private synchronized Target openTarget(String name) throws IOException {
+    if (closed) {
+      throw new IOException("the forwarding queue is closed");
+    }
+    SegmentLog segmentLog = new SegmentLog(directory.resolve(name), segmentSize, groupCommitInterval);
+    // register the jobs that were still queued when the queue was last closed
+    long position = segmentLog.getAcknowledgedPosition();
+    try {
+      while (true) {
+        try {
+          LogEntry entry = segmentLog.read(position, 0);
+          if (entry == null) {
+            break;
+          }
+          HTTPToASTMForwardingJob job = readJob(entry);
+          jobs.put(job.getId(), job);
+          position = entry.getNextPosition();
+        } catch (CorruptEntryException e) {
+          // the worker moves it to the dead letter directory once it reaches it
+          log.warn("queued message at position " + e.getPosition() + " for " + name + " is corrupt");
+          position = e.getNextPosition();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    Target target = new Target(name, segmentLog);
+    targets.put(name, target);
+    target.worker.start();
+    log.debug("opened forwarding queue for " + name);
+    return target;
+  }
+
+  /**
+   * Reads the job of a queued message.
+   *
+   * @throws CorruptEntryException if the job could not be read.
+   */
+  private HTTPToASTMForwardingJob readJob(LogEntry entry) throws CorruptEntryException {
+    return readJob(entry, new DataInputStream(new ByteArrayInputStream(entry.getData())));
+  }
+
+  private HTTPToASTMForwardingJob readJob(LogEntry entry, DataInputStream in) throws CorruptEntryException {
+    try {
+      return readJob(in);
+    } catch (IOException | RuntimeException e) {
+      throw new CorruptEntryException(entry.getPosition(), entry.getNextPosition(), e);
+    }
+  }
+
+  private HTTPToASTMForwardingJob readJob(DataInputStream in) throws IOException {
+    String id = in.readUTF();
+    String forwardAddress = in.readUTF();
+    int forwardPort = in.readInt();
+    ASTMVersion forwardAstmVersion = ASTMVersion.valueOf(in.readUTF());
+    return new HTTPToASTMForwardingJob(
+      id,
+      forwardAddress.isEmpty() ? null : forwardAddress,
+      forwardPort,
+      forwardAstmVersion
+    );
+  }
+
+  private void drain(Target target) {
+    long position = target.segmentLog.getAcknowledgedPosition();
+    long idleSince = System.currentTimeMillis();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          LogEntry entry = target.segmentLog.read(position, POLL_TIMEOUT);
+          if (entry == null) {
+            if (System.currentTimeMillis() - idleSince >= IDLE_TARGET_TIMEOUT && retire(target, position)) {
+              return;
+            }
+            continue;
+          }
+          DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.getData()));
+          HTTPToASTMForwardingJob queuedJob = readJob(entry, in);
+          HTTPToASTMForwardingJob job = jobs.computeIfAbsent(queuedJob.getId(), id -> queuedJob);
+          ASTMMessage message;
+          try {
+            message = ASTMMessageSerialization.read(in, astmInterpreterFactory);
+          } catch (IOException | RuntimeException e) {
+            job.setStatus(HTTPToASTMForwardingJob.Status.FAILED);
+            finished(job);
+            throw new CorruptEntryException(entry.getPosition(), entry.getNextPosition(), e);
+          }
+          if (!forward(job, message)) {
+            // leave the job queued so it is forwarded once the queue is opened again
+            Thread.currentThread().interrupt();
+            continue;
+          }
+          position = entry.getNextPosition();
+          target.segmentLog.acknowledge(position);
+          finished(job);
+          idleSince = System.currentTimeMillis();
+        } catch (CorruptEntryException e) {
+          log.error("queued message for " + target.name + " is corrupt, moving it out of the queue", e);
+          if (skip(target, e)) {
+            position = e.getNextPosition();
+          } else {
+            Thread.sleep(POLL_TIMEOUT);
+          }
+        } catch (IOException e) {
+          log.error("error occurred reading from the forwarding queue for " + target.name, e);
+          Thread.sleep(POLL_TIMEOUT);
+        }
+      }
+    } catch (InterruptedException e) {
+      log.debug("forwarding queue worker for " + target.name + " was interrupted, stopping");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean skip(Target target, CorruptEntryException corruptEntry) {
+    try {
+      target.segmentLog.deadLetter(corruptEntry);
+      target.segmentLog.acknowledge(corruptEntry.getNextPosition());
+      metrics.recordDeadLetter(ASTMMetrics.Store.FORWARDING_QUEUE);
+      return true;
+    } catch (IOException e) {
+      log.error("could not move corrupt queued message out of the queue for " + target.name, e);
+      return false;
+    }
+  }
+
+  /**
+   * Closes the target and deletes its files if every message queued for it has been forwarded and no message is
+   * being queued for it.
+   *
+   * @param target the target.
+   * @param position the position of the first message that has not been forwarded.
+   * @return true if the target was closed.
+   */
+  private synchronized boolean retire(Target target, long position) throws IOException, InterruptedException {
+    if (closed || target.pendingSubmits > 0 || target.segmentLog.read(position, 0) != null) {
+      return false;
+    }
+    targets.remove(target.name);
+    target.segmentLog.delete();
+    log.debug("closed idle forwarding queue for " + target.name);
+    return true;
+  }
+
+  /**
+   * Forwards a queued message with the handler service.
+   *
+   * @param job the job of the message.
+   * @param message the ASTM message.
+   * @return true if the job is finished, false if forwarding was interrupted.
+   */
+  private boolean forward(HTTPToASTMForwardingJob job, ASTMMessage message) {
+    log.debug("forwarding job " + job.getId());
+    job.setStatus(HTTPToASTMForwardingJob.Status.IN_PROGRESS);
+    HTTPForwardingHandlerInfo handlerInfo = new HTTPForwardingHandlerInfo();
+    handlerInfo.setForwardAddress(job.getForwardAddress());
+    handlerInfo.setForwardPort(job.getForwardPort());
+    handlerInfo.setForwardAstmVersion(job.getForwardAstmVersion());
+    HTTPHandlerServiceResponse response = httpHandlerService.handle(message, Set.of(handlerInfo));
+    boolean success = response.getResponses() != null && response.getResponses().size() > 0;
+    if (!success) {
+      log.error("job " + job.getId() + " was unhandled");
+    } else {
+      for (HTTPHandlerResponse handlerResponse : response.getResponses()) {
+        if (handlerResponse.getStatus() == HandleStatus.INTERRUPTED) {
+          job.setStatus(HTTPToASTMForwardingJob.Status.QUEUED);
+          return false;
+        } else if (handlerResponse.getStatus() != HandleStatus.SUCCESS) {
+          log.error(
+            "job " + job.getId() + " was not handled successfully by: " + handlerResponse.getHandler().getName()
+          );
+          success = false;
+        }
+      }
+    }
+    job.setResponse(response);
+    job.setStatus(success ? HTTPToASTMForwardingJob.Status.SUCCEEDED : HTTPToASTMForwardingJob.Status.FAILED);
+    return true;
+  }
+
+  /**
+   * Keeps the job's result available until the maximum number of finished jobs is exceeded.
+   */
+  private void finished(HTTPToASTMForwardingJob job) {
+    synchronized (finishedJobIds) {
+      finishedJobIds.add(job.getId());
+      while (finishedJobIds.size() > maxRetainedJobs) {
+        jobs.remove(finishedJobIds.poll());
+      }
+    }
+  }
+
+  private class Target {
+
+    private final String name;
+    private final SegmentLog segmentLog;
+    private final Thread worker;
+    private int pendingSubmits; // guarded by the queue
+
+    private Target(String name, SegmentLog segmentLog) {
+      this.name = name;
+      this.segmentLog = segmentLog;
+      this.worker = Thread.ofPlatform().name("http-to-astm-forwarder-" + name).daemon().unstarted(() -> drain(this));
+    }
+  }
+}
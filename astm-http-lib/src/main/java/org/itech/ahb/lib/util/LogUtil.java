@@ -1,38 +1,67 @@
 package org.itech.ahb.lib.util;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Utility class for logging-related operations.
  */
 public class LogUtil {
 
+  private static final char DELETE = '\u007F';
+  private static final char SYMBOL_FOR_DELETE = '\u2421';
+  private static final char CONTROL_PICTURES_OFFSET = '\u2400';
+  private static final String[] ASCII_DISPLAY = new String[128]; // the display string of every ASCII character
+
+  static {
+    for (char c = 0; c < ASCII_DISPLAY.length; ++c) {
+      ASCII_DISPLAY[c] = String.valueOf(toDisplayChar(c)).intern();
+    }
+  }
+
   /**
-   * Converts a character for display in logs.
+   * Converts a character for display in logs. ASCII characters are converted without creating a new string.
    *
    * @param input the character to convert.
    * @return the converted character as a string.
    */
   public static String convertForDisplay(char input) {
-    return convertForDisplay("" + input);
+    return input < ASCII_DISPLAY.length ? ASCII_DISPLAY[input] : String.valueOf(input);
   }
 
   /**
    * Converts a string for display in logs.
    *
-   * Replaces control characters with their corresponding Unicode control character representations.
+   * Replaces control characters with their corresponding Unicode control character representations. The string is
+   * returned as is if it has no control characters.
    *
    * @param input the string to convert.
    * @return the converted string.
    */
   public static String convertForDisplay(String input) {
-    StringBuffer buf = new StringBuffer();
-    Matcher m = Pattern.compile("[\u0000-\u001F\u007F]").matcher(input);
-    while (m.find()) {
-      char c = m.group().charAt(0);
-      m.appendReplacement(buf, Character.toString(c == '\u007F' ? '\u2421' : (char) (c + 0x2400)));
+    if (input == null) {
+      return "null";
+    }
+    int length = input.length();
+    int i = 0;
+    while (i < length && !isControl(input.charAt(i))) {
+      ++i;
+    }
+    if (i == length) {
+      return input;
+    }
+    char[] converted = input.toCharArray();
+    for (; i < length; ++i) {
+      converted[i] = toDisplayChar(converted[i]);
+    }
+    return new String(converted);
+  }
+
+  private static boolean isControl(char c) {
+    return c < ' ' || c == DELETE;
+  }
+
+  private static char toDisplayChar(char c) {
+    if (c < ' ') {
+      return (char) (c + CONTROL_PICTURES_OFFSET);
     }
-    return m.appendTail(buf).toString();
+    return c == DELETE ? SYMBOL_FOR_DELETE : c;
   }
 }
@@ -0,0 +1,93 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import org.itech.ahb.lib.astm.communication.ASTMConnectionPool.ConnectionKey;
+import org.itech.ahb.lib.astm.communication.ASTMConnectionPool.PooledASTMConnection;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ASTMConnectionPoolTest {
+
+  private static final long IDLE_TIMEOUT = 200; // in milliseconds
+
+  private ServerSocket serverSocket;
+  private ConnectionKey key;
+  private final List<Socket> acceptedSockets = new ArrayList<>();
+
+  @BeforeEach
+  void listen() throws Exception {
+    serverSocket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+    String host = serverSocket.getInetAddress().getHostAddress();
+    key = new ConnectionKey(host, serverSocket.getLocalPort(), ASTMVersion.LIS01_A);
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    for (Socket socket : acceptedSockets) {
+      socket.close();
+    }
+    serverSocket.close();
+  }
+
+  @Test
+  void reusesIdleConnectionWithItsReadTimeoutRestored() throws Exception {
+    try (ASTMConnectionPool pool = new ASTMConnectionPool(new DefaultASTMInterpreterFactory(), 1, 60 * 1000)) {
+      PooledASTMConnection connection = pool.borrow(key);
+      acceptedSockets.add(serverSocket.accept());
+      connection.getSocket().setSoTimeout(5000);
+      pool.release(connection);
+
+      assertSame(connection, pool.borrow(key));
+      assertEquals(5000, connection.getSocket().getSoTimeout());
+    }
+  }
+
+  @Test
+  void closesConnectionThatWasIdleForTooLong() throws Exception {
+    try (ASTMConnectionPool pool = new ASTMConnectionPool(new DefaultASTMInterpreterFactory(), 1, IDLE_TIMEOUT)) {
+      PooledASTMConnection connection = pool.borrow(key);
+      acceptedSockets.add(serverSocket.accept());
+      pool.release(connection);
+
+      pool.evictExpired();
+      assertFalse(connection.getSocket().isClosed());
+      Thread.sleep(IDLE_TIMEOUT * 2);
+      pool.evictExpired();
+
+      assertTrue(connection.getSocket().isClosed());
+      PooledASTMConnection newConnection = pool.borrow(key);
+      assertNotSame(connection, newConnection);
+      pool.invalidate(newConnection);
+    }
+  }
+
+  @Test
+  void closesConnectionThatWasIdleForTooLongWithoutBeingAskedTo() throws Exception {
+    try (ASTMConnectionPool pool = new ASTMConnectionPool(new DefaultASTMInterpreterFactory(), 1, IDLE_TIMEOUT)) {
+      PooledASTMConnection connection = pool.borrow(key);
+      acceptedSockets.add(serverSocket.accept());
+      pool.release(connection);
+
+      // idle connections are checked at least every second
+      long deadline = System.currentTimeMillis() + 10 * 1000;
+      while (!connection.getSocket().isClosed() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+
+      assertTrue(connection.getSocket().isClosed());
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETB;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETX;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.STX;
+import static org.itech.ahb.lib.astm.communication.ASTMTestFrames.frame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.itech.ahb.lib.astm.communication.ASTMFrameDecoder.DecodedFrame;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator.FrameError;
+import org.junit.jupiter.api.Test;
+
+class ASTMFrameDecoderTest {
+
+  private static final int MAX_TEXT_SIZE = GeneralASTMCommunicator.MAX_TEXT_SIZE;
+
+  @Test
+  void decodesFrame() throws Exception {
+    ASTMFrameDecoder decoder = decoder(frame(3, "H|\\^&|||analyzer\r", ETB));
+
+    DecodedFrame frame = readFrame(decoder, 3);
+
+    assertEquals(3, frame.getFrameNumber());
+    assertFalse(frame.isFinalFrame());
+    assertEquals("H|\\^&|||analyzer\r", frame.getText());
+    assertTrue(frame.getFrameErrors().isEmpty());
+  }
+
+  @Test
+  void decodesFramesThatArriveAByteAtATime() throws Exception {
+    byte[] bytes = concat(frame(1, "H|\\^&\r", ETB), frame(2, "L|1|N\r", ETX));
+    ASTMFrameDecoder decoder = new ASTMFrameDecoder(new InMemorySocket(new TricklingInputStream(bytes)));
+
+    DecodedFrame first = readFrame(decoder, 1);
+    DecodedFrame second = readFrame(decoder, 2);
+
+    assertEquals("H|\\^&\r", first.getText());
+    assertTrue(first.getFrameErrors().isEmpty());
+    assertEquals("L|1|N\r", second.getText());
+    assertTrue(second.isFinalFrame());
+    assertTrue(second.getFrameErrors().isEmpty());
+  }
+
+  @Test
+  void reportsBadChecksum() throws Exception {
+    ASTMFrameDecoder decoder = decoder(frame(1, "H|\\^&\r", ETX, "00"));
+
+    DecodedFrame frame = readFrame(decoder, 1);
+
+    assertEquals(EnumSet.of(FrameError.BAD_CHECKSUM), frame.getFrameErrors());
+    assertEquals("00", frame.getChecksum());
+  }
+
+  @Test
+  void reportsWrongFrameNumber() throws Exception {
+    ASTMFrameDecoder decoder = decoder(frame(5, "H|\\^&\r", ETX));
+
+    DecodedFrame frame = readFrame(decoder, 4);
+
+    assertEquals(EnumSet.of(FrameError.WRONG_FRAME_NUMBER), frame.getFrameErrors());
+    assertEquals(5, frame.getFrameNumber());
+  }
+
+  @Test
+  void reportsFrameWithMoreTextThanTheMaximum() throws Exception {
+    String largestText = "x".repeat(MAX_TEXT_SIZE);
+    ASTMFrameDecoder decoder = decoder(concat(frame(1, largestText + "x", ETX), frame(2, largestText, ETX)));
+
+    DecodedFrame oversized = readFrame(decoder, 1);
+    DecodedFrame largest = readFrame(decoder, 2);
+
+    // the rest of the oversized frame is still consumed, so the next frame is read from the right place
+    assertEquals(EnumSet.of(FrameError.MAX_SIZE_EXCEEDED), oversized.getFrameErrors());
+    assertEquals(MAX_TEXT_SIZE, oversized.getText().length());
+    assertTrue(largest.getFrameErrors().isEmpty());
+    assertEquals(largestText, largest.getText());
+  }
+
+  @Test
+  void decodesTextWithBytesAboveAscii() throws Exception {
+    String text = "P|1||||Müller^José\r";
+    ASTMFrameDecoder decoder = decoder(frame(1, text, ETX));
+
+    DecodedFrame frame = readFrame(decoder, 1);
+
+    assertTrue(frame.getFrameErrors().isEmpty());
+    assertEquals(text, frame.getText());
+  }
+
+  @Test
+  void failsReadOnceTheDeadlineHasPassed() throws Exception {
+    ASTMFrameDecoder decoder = decoder(frame(1, "H|\\^&\r", ETX));
+
+    decoder.setDeadline(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1));
+    assertThrows(SocketTimeoutException.class, decoder::read);
+
+    decoder.clearDeadline();
+    assertEquals(STX, decoder.read());
+  }
+
+  @Test
+  void failsReadAtTheEndOfTheStream() throws Exception {
+    ASTMFrameDecoder decoder = decoder(new byte[] { STX, '1', 'H', '|' });
+
+    assertEquals(STX, decoder.read());
+    assertThrows(EOFException.class, () -> decoder.readFrame(1, MAX_TEXT_SIZE));
+  }
+
+  @Test
+  void readsNonCompliantRecordsUpToTheMaximum() throws Exception {
+    String longRecord = "R|" + "x".repeat(MAX_TEXT_SIZE) + "\r";
+    ASTMFrameDecoder decoder = decoder((longRecord + "L|1|N\r").getBytes(StandardCharsets.UTF_8));
+    Set<FrameError> longRecordErrors = EnumSet.noneOf(FrameError.class);
+    Set<FrameError> recordErrors = EnumSet.noneOf(FrameError.class);
+
+    String truncatedRecord = decoder.readRecord(MAX_TEXT_SIZE, longRecordErrors);
+    String record = decoder.readRecord(MAX_TEXT_SIZE, recordErrors);
+
+    assertEquals(EnumSet.of(FrameError.MAX_SIZE_EXCEEDED), longRecordErrors);
+    assertEquals(MAX_TEXT_SIZE, truncatedRecord.length());
+    assertTrue(recordErrors.isEmpty());
+    assertEquals("L|1|N\r", record);
+  }
+
+  private static DecodedFrame readFrame(ASTMFrameDecoder decoder, int expectedFrameNumber) throws Exception {
+    assertEquals(STX, decoder.read());
+    return decoder.readFrame(expectedFrameNumber, MAX_TEXT_SIZE);
+  }
+
+  private static ASTMFrameDecoder decoder(byte[] bytes) throws Exception {
+    return new ASTMFrameDecoder(new InMemorySocket(new ByteArrayInputStream(bytes)));
+  }
+
+  private static byte[] concat(byte[]... frames) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (byte[] frame : frames) {
+      bytes.writeBytes(frame);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * An unconnected socket that reads from an in-memory stream, so the decoder can be tested without a connection.
+   */
+  private static class InMemorySocket extends Socket {
+
+    private final InputStream inputStream;
+
+    private InMemorySocket(InputStream inputStream) {
+      this.inputStream = inputStream;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return inputStream;
+    }
+
+    @Override
+    public void setSoTimeout(int timeout) {}
+  }
+
+  /**
+   * A stream that returns a single byte from each read, like a sender that trickles a frame in.
+   */
+  private static class TricklingInputStream extends ByteArrayInputStream {
+
+    private TricklingInputStream(byte[] bytes) {
+      super(bytes);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1));
+    }
+  }
+}
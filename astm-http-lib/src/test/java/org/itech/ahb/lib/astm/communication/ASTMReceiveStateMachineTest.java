@@ -0,0 +1,194 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ACK;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ENQ;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.EOT;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETB;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.ETX;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.NAK;
+import static org.itech.ahb.lib.astm.communication.ASTMTestFrames.frame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.itech.ahb.lib.astm.communication.ASTMReceiveStateMachine.State;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.junit.jupiter.api.Test;
+
+class ASTMReceiveStateMachineTest {
+
+  private static final String NOTHING = "";
+
+  private final List<ASTMMessage> received = new ArrayList<>();
+  private final List<ASTMMessage> stored = new ArrayList<>();
+
+  @Test
+  void receivesMessageSentOverSeveralFrames() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.LIS01_A);
+
+    assertEquals(response(ACK), feed(stateMachine, ENQ));
+    assertEquals(response(ACK), feed(stateMachine, frame(1, "H|\\^&|||analyzer\rP|1", ETB)));
+    assertEquals(response(ACK), feed(stateMachine, frame(2, "\rL|1|N\r", ETX)));
+    assertEquals(NOTHING, feed(stateMachine, EOT));
+
+    assertEquals(1, received.size());
+    assertEquals("H|\\^&|||analyzer\rP|1\rL|1|N\r", received.get(0).getMessage());
+    assertEquals(State.AWAITING_ESTABLISHMENT, stateMachine.getState());
+  }
+
+  @Test
+  void acceptsFrameResentAfterNak() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.LIS01_A);
+    feed(stateMachine, ENQ);
+
+    assertEquals(response(NAK), feed(stateMachine, frame(1, "H|\\^&\r", ETB, "00")));
+    assertEquals(response(ACK), feed(stateMachine, frame(1, "H|\\^&\r", ETB)));
+    assertEquals(response(NAK), feed(stateMachine, frame(3, "L|1|N\r", ETX)));
+    assertEquals(response(ACK), feed(stateMachine, frame(2, "L|1|N\r", ETX)));
+    feed(stateMachine, EOT);
+
+    assertEquals(1, received.size());
+    assertEquals("H|\\^&\rL|1|N\r", received.get(0).getMessage());
+  }
+
+  @Test
+  void rejectsFrameWithMoreTextThanTheMaximum() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.LIS01_A);
+    feed(stateMachine, ENQ);
+    String largestText = "H|" + "x".repeat(GeneralASTMCommunicator.MAX_TEXT_SIZE - 3) + "\r";
+
+    assertEquals(response(NAK), feed(stateMachine, frame(1, largestText + "x", ETX)));
+    assertEquals(response(ACK), feed(stateMachine, frame(1, largestText, ETX)));
+    feed(stateMachine, EOT);
+
+    assertEquals(1, received.size());
+    assertEquals(largestText, received.get(0).getMessage());
+  }
+
+  @Test
+  void abandonsMessageAfterTooManyFailedAttempts() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.LIS01_A);
+    feed(stateMachine, ENQ);
+    feed(stateMachine, frame(1, "H|\\^&\r", ETB));
+
+    for (int i = 0; i <= GeneralASTMCommunicator.MAX_FRAME_RETRY_ATTEMPTS; ++i) {
+      assertEquals(response(NAK), feed(stateMachine, frame(2, "L|1|N\r", ETX, "00")));
+    }
+    assertEquals(State.AWAITING_TERMINATION, stateMachine.getState());
+    assertEquals(NOTHING, feed(stateMachine, frame(2, "L|1|N\r", ETX)));
+    feed(stateMachine, EOT);
+
+    assertTrue(received.isEmpty());
+    assertEquals(State.AWAITING_ESTABLISHMENT, stateMachine.getState());
+  }
+
+  @Test
+  void abandonsPartialMessageWhenTheConnectionTimesOut() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.LIS01_A);
+    assertFalse(stateMachine.isReceivingMessage());
+    feed(stateMachine, ENQ);
+    feed(stateMachine, frame(1, "H|\\^&\r", ETB));
+    byte[] partialFrame = frame(2, "L|1|N\r", ETX);
+    feed(stateMachine, new String(partialFrame, 0, 4, StandardCharsets.US_ASCII));
+
+    // the frame timeout applies while a message is part way through being received
+    assertTrue(stateMachine.isReceivingMessage());
+    stateMachine.reset();
+
+    assertFalse(stateMachine.isReceivingMessage());
+    assertEquals(response(ACK), feed(stateMachine, ENQ));
+    assertEquals(response(ACK), feed(stateMachine, frame(1, "H|\\^&\rL|1|N\r", ETX)));
+    feed(stateMachine, EOT);
+    assertEquals(1, received.size());
+    assertEquals("H|\\^&\rL|1|N\r", received.get(0).getMessage());
+  }
+
+  @Test
+  void storesEveryMessageOfATransmissionBeforeAcknowledgingIt() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.LIS01_A);
+    stateMachine.setStoreHandler(stored::add);
+    feed(stateMachine, ENQ);
+
+    assertEquals(NOTHING, feed(stateMachine, frame(1, "H|\\^&|||first\rL|1|N\r", ETX)));
+    assertEquals(State.AWAITING_STORE, stateMachine.getState());
+    assertEquals(response(ACK), storeCompleted(stateMachine, true));
+    assertEquals(NOTHING, feed(stateMachine, frame(2, "H|\\^&|||second\rL|1|N\r", ETX)));
+    assertEquals(response(NAK), storeCompleted(stateMachine, false));
+    assertEquals(NOTHING, feed(stateMachine, frame(2, "H|\\^&|||second\rL|1|N\r", ETX)));
+    assertEquals(response(ACK), storeCompleted(stateMachine, true));
+    feed(stateMachine, EOT);
+
+    assertEquals(3, stored.size());
+    assertEquals("H|\\^&|||first\rL|1|N\r", stored.get(0).getMessage());
+    assertEquals("H|\\^&|||second\rL|1|N\r", stored.get(2).getMessage());
+    assertTrue(received.isEmpty());
+  }
+
+  @Test
+  void discardsNonCompliantRecordLongerThanTheMaximum() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.NON_COMPLIANT);
+
+    feed(stateMachine, "H|" + "x".repeat(GeneralASTMCommunicator.MAX_TEXT_SIZE) + "\r");
+    feed(stateMachine, "H|\\^&\rL|1|N\r");
+
+    assertEquals(1, received.size());
+    assertEquals("H|\\^&\rL|1|N\r", received.get(0).getMessage());
+  }
+
+  @Test
+  void discardsNonCompliantMessageLongerThanTheMaximum() {
+    ASTMReceiveStateMachine stateMachine = stateMachine(ASTMVersion.NON_COMPLIANT);
+    String record = "R|" + "x".repeat(GeneralASTMCommunicator.MAX_TEXT_SIZE - 3) + "\r";
+
+    feed(stateMachine, "H|\\^&\r");
+    for (int size = 0; size <= GeneralASTMCommunicator.MAX_NON_COMPLIANT_MESSAGE_SIZE; size += record.length()) {
+      feed(stateMachine, record);
+    }
+    assertTrue(stateMachine.isReceivingMessage());
+    feed(stateMachine, "L|1|N\r");
+    assertTrue(received.isEmpty());
+    assertFalse(stateMachine.isReceivingMessage());
+
+    feed(stateMachine, "H|\\^&\rL|1|N\r");
+    assertEquals(1, received.size());
+  }
+
+  private ASTMReceiveStateMachine stateMachine(ASTMVersion astmVersion) {
+    return new ASTMReceiveStateMachine(new DefaultASTMInterpreterFactory(), astmVersion, received::add);
+  }
+
+  private static String feed(ASTMReceiveStateMachine stateMachine, char controlCharacter) {
+    return feed(stateMachine, new byte[] { (byte) controlCharacter });
+  }
+
+  private static String feed(ASTMReceiveStateMachine stateMachine, String text) {
+    return feed(stateMachine, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Feeds the bytes to the state machine as if they were read from the connection at once.
+   *
+   * @return the characters the state machine responded with.
+   */
+  private static String feed(ASTMReceiveStateMachine stateMachine, byte[] bytes) {
+    ByteBuffer out = ByteBuffer.allocate(bytes.length);
+    stateMachine.receive(ByteBuffer.wrap(bytes), out);
+    return new String(out.array(), 0, out.position(), StandardCharsets.US_ASCII);
+  }
+
+  private static String storeCompleted(ASTMReceiveStateMachine stateMachine, boolean successful) {
+    ByteBuffer out = ByteBuffer.allocate(1);
+    stateMachine.storeCompleted(successful, out);
+    return new String(out.array(), 0, out.position(), StandardCharsets.US_ASCII);
+  }
+
+  private static String response(char controlCharacter) {
+    return String.valueOf(controlCharacter);
+  }
+}
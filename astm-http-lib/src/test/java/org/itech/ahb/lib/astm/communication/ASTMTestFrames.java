@@ -0,0 +1,56 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.CR;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.LF;
+import static org.itech.ahb.lib.astm.communication.ASTMControlCharacters.STX;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the bytes of frames as a sender puts them on the wire, for feeding to receivers in tests.
+ */
+final class ASTMTestFrames {
+
+  private ASTMTestFrames() {}
+
+  /**
+   * @param frameNumber the frame number, from 0 to 7.
+   * @param text the text of the frame.
+   * @param terminator ETB for an intermediate frame or ETX for an end frame.
+   * @return the bytes of the frame, from STX to LF, with a correct checksum.
+   */
+  static byte[] frame(int frameNumber, String text, char terminator) {
+    byte[] body = body(frameNumber, text, terminator);
+    int checksum = 0;
+    for (byte b : body) {
+      checksum += b & 0xFF;
+    }
+    return frame(body, String.format("%02X", checksum & 0xFF));
+  }
+
+  /**
+   * @param frameNumber the frame number, from 0 to 7.
+   * @param text the text of the frame.
+   * @param terminator ETB for an intermediate frame or ETX for an end frame.
+   * @param checksum the two checksum characters to send, whether they are correct or not.
+   * @return the bytes of the frame, from STX to LF.
+   */
+  static byte[] frame(int frameNumber, String text, char terminator, String checksum) {
+    return frame(body(frameNumber, text, terminator), checksum);
+  }
+
+  private static byte[] body(int frameNumber, String text, char terminator) {
+    return (frameNumber + text + terminator).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] frame(byte[] body, String checksum) {
+    ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    frame.write(STX);
+    frame.writeBytes(body);
+    frame.writeBytes(checksum.getBytes(StandardCharsets.US_ASCII));
+    frame.write(CR);
+    frame.write(LF);
+    return frame.toByteArray();
+  }
+}
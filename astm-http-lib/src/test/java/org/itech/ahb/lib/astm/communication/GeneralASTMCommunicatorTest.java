@@ -0,0 +1,115 @@
+package org.itech.ahb.lib.astm.communication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.itech.ahb.lib.astm.communication.Communicator.SendResult;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.DefaultASTMMessage;
+import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStore;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStore.StoredASTMMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GeneralASTMCommunicatorTest {
+
+  private static final Duration MAX_WAIT = Duration.ofSeconds(10);
+
+  private final ASTMInterpreterFactory interpreterFactory = new DefaultASTMInterpreterFactory();
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void storesEveryMessageOfABatchBeforeAcknowledgingIt() throws Exception {
+    List<ASTMMessage> batch = batch(3);
+    try (ASTMMessageStore messageStore = new ASTMMessageStore(directory, 4096, 0, interpreterFactory)) {
+      Exchange exchange = assertTimeoutPreemptively(MAX_WAIT, () -> exchange(batch, messageStore));
+
+      assertEquals(new SendResult(false, false, batch.size()), exchange.sendResult);
+      assertTrue(exchange.receiver.didStoreReceivedMessage());
+      for (ASTMMessage message : batch) {
+        StoredASTMMessage storedMessage = messageStore.next(0);
+        assertEquals(message.getMessage(), storedMessage.getMessage().getMessage());
+        messageStore.acknowledge(storedMessage);
+      }
+      assertNull(messageStore.next(0));
+    }
+  }
+
+  @Test
+  void receivesEveryRecordOfABatchWithoutAStore() throws Exception {
+    List<ASTMMessage> batch = batch(3);
+
+    Exchange exchange = assertTimeoutPreemptively(MAX_WAIT, () -> exchange(batch, null));
+
+    assertEquals(new SendResult(false, false, batch.size()), exchange.sendResult);
+    assertFalse(exchange.receiver.didStoreReceivedMessage());
+    StringBuilder sent = new StringBuilder();
+    batch.forEach(message -> sent.append(message.getMessage()));
+    assertEquals(sent.toString(), exchange.received.getMessage());
+  }
+
+  @Test
+  void singleMessageResultCountsTheMessageOnlyIfItWasSent() {
+    assertEquals(1, new SendResult(false, false).getMessagesSent());
+    assertEquals(0, new SendResult(true, false).getMessagesSent());
+    assertEquals(0, new SendResult(false, true).getMessagesSent());
+  }
+
+  /**
+   * Sends the messages in a single transmission over a loopback connection and receives them on the other end.
+   */
+  private Exchange exchange(List<ASTMMessage> messages, ASTMMessageStore messageStore) throws Exception {
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      CompletableFuture<Exchange> received = CompletableFuture.supplyAsync(() -> {
+        try (Socket socket = serverSocket.accept()) {
+          GeneralASTMCommunicator receiver = new GeneralASTMCommunicator(interpreterFactory, socket);
+          receiver.setMessageStore(messageStore);
+          Exchange exchange = new Exchange();
+          exchange.receiver = receiver;
+          exchange.received = receiver.receiveProtocol(false);
+          return exchange;
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      SendResult sendResult;
+      try (Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort())) {
+        sendResult = new GeneralASTMCommunicator(interpreterFactory, socket).sendProtocol(messages);
+      }
+      Exchange exchange = received.get();
+      exchange.sendResult = sendResult;
+      return exchange;
+    }
+  }
+
+  private static List<ASTMMessage> batch(int size) {
+    List<ASTMMessage> messages = new ArrayList<>();
+    for (int i = 1; i <= size; ++i) {
+      // long enough to be sent in several frames, so frame numbers carry over from one message to the next
+      messages.add(new DefaultASTMMessage("H|\\^&|||analyzer" + i + "\rR|1|^^^GLU|" + "9".repeat(300) + "\rL|1|N\r"));
+    }
+    return messages;
+  }
+
+  private static class Exchange {
+
+    private GeneralASTMCommunicator receiver;
+    private ASTMMessage received;
+    private SendResult sendResult;
+  }
+}
@@ -0,0 +1,46 @@
+package org.itech.ahb.lib.astm.concept;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DefaultASTMMessageTest {
+
+  @Test
+  void doesNotChangeWithTheListItWasCreatedFrom() {
+    List<ASTMRecord> records = new ArrayList<>(List.of(new DefaultASTMRecord("H|\\^&\r")));
+    DefaultASTMMessage message = new DefaultASTMMessage(records);
+    String text = message.getMessage();
+
+    records.add(new DefaultASTMRecord("L|1|N\r"));
+
+    assertEquals(1, message.getRecords().size());
+    assertEquals(text, message.getMessage());
+    assertEquals(text.length(), message.getMessageLength());
+  }
+
+  @Test
+  void canNotBeChanged() {
+    DefaultASTMMessage message = DefaultASTMMessage.builder().addRecord(new DefaultASTMRecord("H|\\^&\r")).build();
+
+    assertThrows(UnsupportedOperationException.class, () -> message.addRecord(new DefaultASTMRecord("L|1|N\r")));
+    assertThrows(UnsupportedOperationException.class, () -> message.getRecords().add(new DefaultASTMRecord("L|1|N\r")));
+    assertEquals("H|\\^&\r", message.getMessage());
+  }
+
+  @Test
+  void countsTheLengthOfBuiltMessage() {
+    String text = "H|\\^&\rP|1|José\r";
+    DefaultASTMMessage message = DefaultASTMMessage.builder()
+      .addRecords(List.of(new DefaultASTMRecord("H|\\^&\r"), new DefaultASTMRecord("P|1|José\r")))
+      .build();
+
+    assertEquals(text.length(), message.getMessageLength());
+    assertEquals(text.getBytes(StandardCharsets.UTF_8).length, message.getMessageByteLength());
+    assertEquals(text, message.getMessage());
+  }
+}
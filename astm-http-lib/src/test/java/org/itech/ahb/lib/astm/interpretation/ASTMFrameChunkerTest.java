@@ -0,0 +1,122 @@
+package org.itech.ahb.lib.astm.interpretation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.itech.ahb.lib.astm.communication.ASTMFrameEncoder;
+import org.itech.ahb.lib.astm.communication.GeneralASTMCommunicator;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
+import org.itech.ahb.lib.astm.concept.ASTMMessage;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.DefaultASTMMessage;
+import org.itech.ahb.lib.astm.concept.DefaultASTMRecord;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.junit.jupiter.api.Test;
+
+class ASTMFrameChunkerTest {
+
+  private static final int MAX_TEXT_SIZE = GeneralASTMCommunicator.MAX_TEXT_SIZE_E138195;
+
+  private final DefaultASTMInterpreter interpreter = new DefaultASTMInterpreter();
+
+  @Test
+  void splitsRecordsIntoFramesThatFitTheMaximumFrameSize() throws Exception {
+    ASTMMessage message = message(
+      "H|\\^&|||analyzer\r",
+      "R|1|^^^GLU|" + "9".repeat(600) + "\r",
+      "C|1||Müller José € 🧪 " + "é".repeat(300) + "\r",
+      "L|1|N\r"
+    );
+
+    List<ASTMFrame> frames = interpreter.interpretASTMMessageToFrames(message, ASTMVersion.E1381_95);
+
+    StringBuilder reassembled = new StringBuilder();
+    for (int i = 0; i < frames.size(); ++i) {
+      ASTMFrame frame = frames.get(i);
+      assertTrue(utf8Length(frame.getText()) <= MAX_TEXT_SIZE);
+      assertTrue(encodedLength(frame) <= GeneralASTMCommunicator.MAX_FRAME_SIZE_E138195);
+      assertEquals((i + 1) % 8, frame.getFrameNumber());
+      // only the frame holding the end of a record is an end frame
+      boolean endsRecord = frame.getText().endsWith("\r");
+      assertEquals(endsRecord ? FrameType.END : FrameType.INTERMEDIATE, frame.getType());
+      reassembled.append(frame.getText());
+    }
+    assertEquals(message.getMessage(), reassembled.toString());
+  }
+
+  @Test
+  void fillsFramesUpToTheMaximumTextSize() {
+    String largestRecord = "R|" + "9".repeat(MAX_TEXT_SIZE - 3) + "\r";
+
+    List<ASTMFrame> largest = interpreter.interpretASTMMessageToFrames(message(largestRecord), ASTMVersion.E1381_95);
+    List<ASTMFrame> oversized = interpreter.interpretASTMMessageToFrames(
+      message("9" + largestRecord),
+      ASTMVersion.E1381_95
+    );
+
+    assertEquals(1, largest.size());
+    assertEquals(FrameType.END, largest.get(0).getType());
+    assertEquals(2, oversized.size());
+    assertEquals(MAX_TEXT_SIZE, oversized.get(0).getText().length());
+    assertEquals(FrameType.INTERMEDIATE, oversized.get(0).getType());
+    assertEquals("\r", oversized.get(1).getText());
+    assertEquals(FrameType.END, oversized.get(1).getType());
+  }
+
+  @Test
+  void doesNotSplitCharactersAcrossFrames() {
+    // 3 bytes each, so a frame of text holds 80 of them
+    String record = "€".repeat(100);
+
+    List<ASTMFrame> frames = interpreter.interpretASTMMessageToFrames(message(record), ASTMVersion.E1381_95);
+
+    assertEquals(List.of("€".repeat(80), "€".repeat(20)), frames.stream().map(ASTMFrame::getText).toList());
+  }
+
+  @Test
+  void usesTheLargerFrameSizeForLis01A() {
+    String record = "R|1|^^^GLU|" + "9".repeat(GeneralASTMCommunicator.MAX_TEXT_SIZE) + "\r";
+
+    List<ASTMFrame> frames = interpreter.interpretASTMMessageToFrames(message(record), ASTMVersion.LIS01_A);
+
+    assertEquals(2, frames.size());
+    assertEquals(GeneralASTMCommunicator.MAX_TEXT_SIZE, frames.get(0).getText().length());
+  }
+
+  @Test
+  void stopsAfterTheLastFrame() {
+    Iterator<ASTMFrame> frames = new ASTMFrameChunker(List.of(new DefaultASTMRecord("L|1|N\r")), MAX_TEXT_SIZE);
+
+    assertTrue(frames.hasNext());
+    frames.next();
+    assertFalse(frames.hasNext());
+    assertThrows(NoSuchElementException.class, frames::next);
+  }
+
+  private static ASTMMessage message(String... recordTexts) {
+    List<ASTMRecord> records = new ArrayList<>();
+    for (String recordText : recordTexts) {
+      records.add(new DefaultASTMRecord(recordText));
+    }
+    return new DefaultASTMMessage(records);
+  }
+
+  private static int utf8Length(String text) {
+    return text.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static int encodedLength(ASTMFrame frame) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new ASTMFrameEncoder(bytes).writeFrame(frame.getFrameNumber(), frame.getText(), frame.getType() == FrameType.END);
+    return bytes.size();
+  }
+}
@@ -0,0 +1,104 @@
+package org.itech.ahb.lib.astm.interpretation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.itech.ahb.lib.astm.concept.ASTMFrame;
+import org.itech.ahb.lib.astm.concept.ASTMFrame.FrameType;
+import org.itech.ahb.lib.astm.concept.ASTMRecord;
+import org.itech.ahb.lib.astm.concept.DefaultASTMFrame;
+import org.junit.jupiter.api.Test;
+
+class ASTMMessageAssemblerTest {
+
+  private final ASTMMessageAssembler assembler = new ASTMMessageAssembler(
+    new DefaultASTMInterpreterFactory().createInterpreterForFrames(List.of())
+  );
+
+  @Test
+  void assemblesRecordsThatSpanFrames() throws Exception {
+    assertTrue(assembler.accept(frame(FrameType.INTERMEDIATE, "H|\\^&|||ana")).isEmpty());
+    assertTrue(assembler.accept(frame(FrameType.INTERMEDIATE, "lyzer\rP|")).isEmpty());
+    List<ASTMRecord> records = assembler.accept(frame(FrameType.END, "1\rL|1|N\r"));
+
+    assertEquals(List.of("H|\\^&|||analyzer\r", "P|1\r", "L|1|N\r"), texts(records));
+    assertEquals(3, assembler.getFrameCount());
+    assertTrue(assembler.isMessageTerminated());
+    assertEquals("H|\\^&|||analyzer\rP|1\rL|1|N\r", assembler.getMessage().getMessage());
+  }
+
+  @Test
+  void undoesIntermediateFrameSoItCanBeAcceptedAgain() throws Exception {
+    assembler.accept(frame(FrameType.INTERMEDIATE, "H|\\^&\rP|"));
+    assembler.undoLastFrame();
+    assembler.accept(frame(FrameType.INTERMEDIATE, "H|\\^&\rP|"));
+    assembler.accept(frame(FrameType.END, "1\rL|1|N\r"));
+
+    assertEquals(2, assembler.getFrameCount());
+    assertEquals("H|\\^&\rP|1\rL|1|N\r", assembler.getMessage().getMessage());
+  }
+
+  @Test
+  void undoesEndFrameThatFollowsIntermediateFrame() throws Exception {
+    assembler.accept(frame(FrameType.INTERMEDIATE, "H|\\^&\rP|"));
+    assembler.accept(frame(FrameType.END, "1\rL|1|N\r"));
+    assembler.undoLastFrame();
+
+    // the end frame cleared the text of the partial record, which must be restored for the resent frame to complete
+    assertEquals(1, assembler.getFrameCount());
+    assertFalse(assembler.isMessageTerminated());
+    List<ASTMRecord> records = assembler.accept(frame(FrameType.END, "1\rL|1|N\r"));
+
+    assertEquals(List.of("H|\\^&\r", "P|1\r", "L|1|N\r"), texts(records));
+    assertTrue(assembler.isMessageTerminated());
+    assertEquals("H|\\^&\rP|1\rL|1|N\r", assembler.getMessage().getMessage());
+  }
+
+  @Test
+  void acceptsResentEndFrameOnce() throws Exception {
+    assembler.accept(frame(FrameType.END, "H|\\^&\rP|1\r"));
+    assembler.accept(frame(FrameType.END, "L|1|N\r"));
+    assembler.undoLastFrame();
+    // only the last frame can be undone
+    assembler.undoLastFrame();
+    assembler.accept(frame(FrameType.END, "L|1|N\r"));
+
+    assertEquals(2, assembler.getFrameCount());
+    assertTrue(assembler.isMessageTerminated());
+    assertEquals("H|\\^&\rP|1\rL|1|N\r", assembler.getMessage().getMessage());
+  }
+
+  @Test
+  void endsRecordAtEndFrameWithoutRecordSeperator() throws Exception {
+    List<ASTMRecord> records = assembler.accept(frame(FrameType.END, "H|\\^&\rL|1|N"));
+
+    assertEquals(List.of("H|\\^&\r", "L|1|N"), texts(records));
+    assertTrue(assembler.isMessageTerminated());
+  }
+
+  @Test
+  void startsEmptyAfterReset() throws Exception {
+    assembler.accept(frame(FrameType.INTERMEDIATE, "H|\\^&\rP|"));
+    assembler.accept(frame(FrameType.END, "1\rL|1|N\r"));
+    assembler.reset();
+
+    assertTrue(assembler.isEmpty());
+    assertFalse(assembler.isMessageTerminated());
+    assembler.undoLastFrame();
+    assembler.accept(frame(FrameType.END, "H|\\^&\rL|1|N\r"));
+    assertEquals("H|\\^&\rL|1|N\r", assembler.getMessage().getMessage());
+  }
+
+  private static ASTMFrame frame(FrameType type, String text) {
+    ASTMFrame frame = new DefaultASTMFrame();
+    frame.setType(type);
+    frame.setText(text);
+    return frame;
+  }
+
+  private static List<String> texts(List<ASTMRecord> records) {
+    return records.stream().map(ASTMRecord::getRecord).toList();
+  }
+}
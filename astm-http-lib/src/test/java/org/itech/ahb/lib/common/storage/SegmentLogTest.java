@@ -0,0 +1,160 @@
+package org.itech.ahb.lib.common.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+import org.itech.ahb.lib.common.storage.SegmentLog.CorruptEntryException;
+import org.itech.ahb.lib.common.storage.SegmentLog.LogEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentLogTest {
+
+  private static final Duration MAX_WAIT = Duration.ofSeconds(5);
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void discardsPartiallyWrittenEntryWhenReopened() throws Exception {
+    long tornPosition;
+    try (SegmentLog segmentLog = new SegmentLog(directory, 4096, 0)) {
+      segmentLog.awaitDurable(segmentLog.append(bytes("first")));
+      tornPosition = segmentLog.append(bytes("second"));
+      segmentLog.awaitDurable(tornPosition);
+    }
+    // a crash part way through writing the second entry leaves its header but not all of its data
+    try (FileChannel segment = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+      segment.write(ByteBuffer.wrap(bytes("XXXX")), tornPosition + 8);
+    }
+
+    try (SegmentLog segmentLog = new SegmentLog(directory, 4096, 0)) {
+      LogEntry first = segmentLog.read(segmentLog.getAcknowledgedPosition(), 0);
+      assertArrayEquals(bytes("first"), first.getData());
+      assertNull(segmentLog.read(first.getNextPosition(), 0));
+
+      long position = segmentLog.append(bytes("third"));
+      segmentLog.awaitDurable(position);
+      assertEquals(tornPosition, position);
+      assertArrayEquals(bytes("third"), segmentLog.read(first.getNextPosition(), 0).getData());
+    }
+  }
+
+  @Test
+  void failsAppendersWhenFlushingFails() throws Exception {
+    try (
+      SegmentLog segmentLog = new SegmentLog(directory, 4096, 0, segment -> {
+        throw new UncheckedIOException(new IOException("No space left on device"));
+      })
+    ) {
+      long position = segmentLog.append(bytes("first"));
+      IOException failure = assertTimeoutPreemptively(MAX_WAIT, () ->
+        assertThrows(IOException.class, () -> segmentLog.awaitDurable(position))
+      );
+      assertEquals("No space left on device", failure.getCause().getMessage());
+      assertThrows(IOException.class, () -> segmentLog.append(bytes("second")));
+    }
+  }
+
+  @Test
+  void stopsWaitingForDurabilityAfterTimeout() throws Exception {
+    CountDownLatch flushReleased = new CountDownLatch(1);
+    try (
+      SegmentLog segmentLog = new SegmentLog(directory, 4096, 0, segment -> {
+        try {
+          flushReleased.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      })
+    ) {
+      long position = segmentLog.append(bytes("first"));
+      try {
+        assertTimeoutPreemptively(MAX_WAIT, () ->
+          assertThrows(IOException.class, () -> segmentLog.awaitDurable(position, 50))
+        );
+      } finally {
+        flushReleased.countDown();
+      }
+    }
+  }
+
+  @Test
+  void deadLettersCorruptEntrySoLaterEntriesCanBeRead() throws Exception {
+    // every entry fills a segment of its own, so the corrupt entry is not in the last segment when reopened
+    try (SegmentLog segmentLog = new SegmentLog(directory, 64, 0)) {
+      for (String data : List.of("first", "second", "third")) {
+        segmentLog.awaitDurable(segmentLog.append(bytes(data + " ".repeat(40))));
+      }
+    }
+    try (FileChannel segment = FileChannel.open(segmentFiles().get(1), StandardOpenOption.WRITE)) {
+      segment.write(ByteBuffer.wrap(bytes("X")), 8);
+    }
+
+    try (SegmentLog segmentLog = new SegmentLog(directory, 64, 0)) {
+      LogEntry first = segmentLog.read(segmentLog.getAcknowledgedPosition(), 0);
+      segmentLog.acknowledge(first.getNextPosition());
+      CorruptEntryException corruptEntry = assertThrows(CorruptEntryException.class, () ->
+        segmentLog.read(first.getNextPosition(), 0)
+      );
+
+      segmentLog.deadLetter(corruptEntry);
+      segmentLog.acknowledge(corruptEntry.getNextPosition());
+
+      assertEquals(1, segmentLog.getDeadLetteredEntryCount());
+      assertTrue(Files.exists(directory.resolve("dead-letter").resolve(String.format("%020d.entry", 64))));
+      LogEntry third = segmentLog.read(corruptEntry.getNextPosition(), 0);
+      assertArrayEquals(bytes("third" + " ".repeat(40)), third.getData());
+    }
+  }
+
+  @Test
+  void deleteKeepsDeadLetteredEntries() throws Exception {
+    try (SegmentLog segmentLog = new SegmentLog(directory, 64, 0)) {
+      for (String data : List.of("first", "second")) {
+        segmentLog.awaitDurable(segmentLog.append(bytes(data + " ".repeat(40))));
+      }
+    }
+    try (FileChannel segment = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+      segment.write(ByteBuffer.wrap(bytes("X")), 8);
+    }
+
+    try (SegmentLog segmentLog = new SegmentLog(directory, 64, 0)) {
+      CorruptEntryException corruptEntry = assertThrows(CorruptEntryException.class, () ->
+        segmentLog.read(segmentLog.getAcknowledgedPosition(), 0)
+      );
+      segmentLog.deadLetter(corruptEntry);
+      segmentLog.delete();
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(List.of(directory.resolve("dead-letter")), files.toList());
+    }
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.getFileName().toString().endsWith(".segment")).sorted().toList();
+    }
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -1,22 +1,42 @@
 package org.itech.ahb;
 
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.http.HttpClient;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import lombok.extern.slf4j.Slf4j;
 import org.itech.ahb.config.YamlPropertySourceFactory;
 import org.itech.ahb.config.properties.ASTME138195ListenServerConfigurationProperties;
+import org.itech.ahb.config.properties.ASTMForwardQueueConfigurationProperties;
+import org.itech.ahb.config.properties.ASTMForwardServerConfigurationProperties;
 import org.itech.ahb.config.properties.ASTMLIS1AListenServerConfigurationProperties;
+import org.itech.ahb.config.properties.ASTMSessionTraceConfigurationProperties;
 import org.itech.ahb.config.properties.HTTPForwardServerConfigurationProperties;
+import org.itech.ahb.config.properties.StoreAndForwardConfigurationProperties;
+import org.itech.ahb.lib.astm.communication.ASTMConnectionPool;
 import org.itech.ahb.lib.astm.handling.ASTMHandler;
 import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
 import org.itech.ahb.lib.astm.handling.ASTMHandlerService.Mode;
 import org.itech.ahb.lib.astm.handling.DefaultForwardingASTMToHTTPHandler;
 import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
 import org.itech.ahb.lib.astm.interpretation.DefaultASTMInterpreterFactory;
+import org.itech.ahb.lib.astm.servlet.ASTMNIOServlet;
 import org.itech.ahb.lib.astm.servlet.ASTMServlet;
 import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStore;
+import org.itech.ahb.lib.astm.storage.ASTMMessageStoreDrainer;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTracer;
+import org.itech.ahb.lib.http.handling.DefaultForwardingHTTPToASTMHandler;
+import org.itech.ahb.lib.http.handling.HTTPHandler;
+import org.itech.ahb.lib.http.handling.HTTPHandlerService;
+import org.itech.ahb.lib.http.queue.HTTPToASTMForwardingQueue;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
@@ -37,6 +57,8 @@ import org.springframework.util.StringUtils;
 @Slf4j
 public class AstmHttpBridgeApplication {
 
+  private ExecutorService astmForwardHttpExecutor; // null when the HTTP client uses its default executor
+
   /**
    * Main method to run the application.
    *
@@ -56,6 +78,51 @@ public class AstmHttpBridgeApplication {
     return new DefaultASTMInterpreterFactory();
   }
 
+  /**
+   * Bean for creating the HTTP client that ASTM messages are forwarded with. It is shared by every forwarded message
+   * so connections to the HTTP forward server are kept alive and reused.
+   *
+   * @param httpForwardConfig the HTTP forward server configuration properties
+   * @return the HTTP client
+   */
+  @Bean
+  public HttpClient astmForwardHttpClient(HTTPForwardServerConfigurationProperties httpForwardConfig) {
+    HttpClient.Builder clientBuilder = HttpClient.newBuilder() //
+      .version(HttpClient.Version.HTTP_2) //
+      .connectTimeout(httpForwardConfig.getConnectTimeout());
+    switch (httpForwardConfig.getExecutorMode()) {
+      case VIRTUAL:
+        astmForwardHttpExecutor = Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("astm-forward-http-", 0).factory()
+        );
+        clientBuilder.executor(astmForwardHttpExecutor);
+        break;
+      case FIXED:
+        astmForwardHttpExecutor = Executors.newFixedThreadPool(
+          httpForwardConfig.getExecutorThreads(),
+          Thread.ofPlatform().name("astm-forward-http-", 0).factory()
+        );
+        clientBuilder.executor(astmForwardHttpExecutor);
+        break;
+      case DEFAULT:
+      default:
+        break;
+    }
+    return clientBuilder.build();
+  }
+
+  /**
+   * Shuts down the executor of the HTTP client that ASTM messages are forwarded with, so the threads of a fixed pool
+   * do not outlive the application. The executor is not a bean itself, so it is not picked up for running
+   * {@link org.springframework.scheduling.annotation.Async} methods.
+   */
+  @PreDestroy
+  public void shutdownAstmForwardHttpExecutor() {
+    if (astmForwardHttpExecutor != null) {
+      astmForwardHttpExecutor.shutdown();
+    }
+  }
+
   /**
    * Bean for creating an ASTM handler service.
    *
@@ -64,40 +131,191 @@ public class AstmHttpBridgeApplication {
    */
   @Bean
   public ASTMHandlerService astmHandlerService(HTTPForwardServerConfigurationProperties httpForwardConfig) {
-    List<ASTMHandler> astmHandlers;
-    if (StringUtils.hasText(httpForwardConfig.getUsername())) {
-      astmHandlers = Arrays.asList(
-        new DefaultForwardingASTMToHTTPHandler(
-          httpForwardConfig.getUri(),
-          httpForwardConfig.getUsername(),
-          httpForwardConfig.getPassword()
-        )
-      );
-    } else {
-      astmHandlers = Arrays.asList(new DefaultForwardingASTMToHTTPHandler(httpForwardConfig.getUri()));
-    }
+    DefaultForwardingASTMToHTTPHandler forwardingHandler = new DefaultForwardingASTMToHTTPHandler(
+      httpForwardConfig.getUri(),
+      StringUtils.hasText(httpForwardConfig.getUsername()) ? httpForwardConfig.getUsername() : null,
+      httpForwardConfig.getPassword(),
+      astmForwardHttpClient(httpForwardConfig),
+      httpForwardConfig.getRequestTimeout(),
+      httpForwardConfig.getMaxInFlightRequests()
+    );
+    forwardingHandler.setGzipRequests(httpForwardConfig.isGzipRequests());
+    List<ASTMHandler> astmHandlers = Arrays.asList(forwardingHandler);
     return new ASTMHandlerService(astmHandlers, Mode.FIRST);
   }
 
+  /**
+   * Bean for creating the pool of connections that ASTM messages received over HTTP(S) are forwarded to the ASTM
+   * forward server on.
+   *
+   * @param astmForwardConfig the ASTM forward server configuration properties
+   * @return the ASTM connection pool
+   */
+  @Bean(destroyMethod = "close")
+  public ASTMConnectionPool astmConnectionPool(ASTMForwardServerConfigurationProperties astmForwardConfig) {
+    return new ASTMConnectionPool(
+      astmInterpreterFactory(),
+      astmForwardConfig.getMaxIdleConnections(),
+      astmForwardConfig.getConnectionIdleTimeout().toMillis()
+    );
+  }
+
+  /**
+   * Bean for creating an HTTP handler service that forwards ASTM messages received over HTTP(S) to the ASTM forward
+   * server.
+   *
+   * @param astmForwardConfig the ASTM forward server configuration properties
+   * @param httpForwardConfig the HTTP forward server configuration properties
+   * @return the HTTP handler service
+   */
+  @Bean
+  public HTTPHandlerService httpHandlerService(
+    ASTMForwardServerConfigurationProperties astmForwardConfig,
+    HTTPForwardServerConfigurationProperties httpForwardConfig
+  ) {
+    DefaultForwardingHTTPToASTMHandler forwardingHandler = new DefaultForwardingHTTPToASTMHandler(
+      astmForwardConfig.getHostName(),
+      astmForwardConfig.getPort(),
+      astmHandlerService(httpForwardConfig),
+      astmInterpreterFactory(),
+      astmConnectionPool(astmForwardConfig)
+    );
+    forwardingHandler.setCoalesceBatches(astmForwardConfig.isCoalesceBatches());
+    List<HTTPHandler> httpHandlers = Arrays.asList(forwardingHandler);
+    return new HTTPHandlerService(httpHandlers, HTTPHandlerService.Mode.FIRST);
+  }
+
+  /**
+   * Bean for creating the queue that ASTM messages received over HTTP(S) are durably kept in until they are forwarded
+   * to the ASTM forward server.
+   *
+   * @param astmForwardQueueConfig the ASTM forward queue configuration properties
+   * @param astmForwardConfig the ASTM forward server configuration properties
+   * @param httpForwardConfig the HTTP forward server configuration properties
+   * @return the forwarding queue
+   * @throws IOException if the queue could not be opened
+   */
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(prefix = "org.itech.ahb.forward-astm-queue", name = "enabled", havingValue = "true")
+  public HTTPToASTMForwardingQueue httpToASTMForwardingQueue(
+    ASTMForwardQueueConfigurationProperties astmForwardQueueConfig,
+    ASTMForwardServerConfigurationProperties astmForwardConfig,
+    HTTPForwardServerConfigurationProperties httpForwardConfig
+  ) throws IOException {
+    log.info("creating astm forward queue at " + astmForwardQueueConfig.getDirectory().toAbsolutePath());
+    return new HTTPToASTMForwardingQueue(
+      astmForwardQueueConfig.getDirectory(),
+      httpHandlerService(astmForwardConfig, httpForwardConfig),
+      astmInterpreterFactory(),
+      (int) astmForwardQueueConfig.getSegmentSize().toBytes(),
+      astmForwardQueueConfig.getGroupCommitInterval().toMillis(),
+      astmForwardQueueConfig.getMaxRetainedJobs(),
+      astmForwardQueueConfig.getMaxTargets()
+    );
+  }
+
+  /**
+   * Bean for creating the store that received ASTM messages are durably kept in until they are forwarded.
+   *
+   * @param storeAndForwardConfig the store and forward configuration properties
+   * @return the ASTM message store
+   * @throws IOException if the store could not be opened
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "org.itech.ahb.store-and-forward", name = "enabled", havingValue = "true")
+  public ASTMMessageStore astmMessageStore(StoreAndForwardConfigurationProperties storeAndForwardConfig)
+    throws IOException {
+    log.info("creating astm message store at " + storeAndForwardConfig.getDirectory().toAbsolutePath());
+    return new ASTMMessageStore(
+      storeAndForwardConfig.getDirectory(),
+      (int) storeAndForwardConfig.getSegmentSize().toBytes(),
+      storeAndForwardConfig.getGroupCommitInterval().toMillis(),
+      astmInterpreterFactory()
+    );
+  }
+
+  /**
+   * Bean for creating the drainer that forwards the messages kept in the ASTM message store.
+   *
+   * @param astmMessageStore the ASTM message store
+   * @param storeAndForwardConfig the store and forward configuration properties
+   * @param httpForwardConfig the HTTP forward server configuration properties
+   * @return the ASTM message store drainer
+   */
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  @ConditionalOnProperty(prefix = "org.itech.ahb.store-and-forward", name = "enabled", havingValue = "true")
+  public ASTMMessageStoreDrainer astmMessageStoreDrainer(
+    ASTMMessageStore astmMessageStore,
+    StoreAndForwardConfigurationProperties storeAndForwardConfig,
+    HTTPForwardServerConfigurationProperties httpForwardConfig
+  ) {
+    return new ASTMMessageStoreDrainer(
+      astmMessageStore,
+      astmHandlerService(httpForwardConfig),
+      storeAndForwardConfig.getInitialRetryDelay().toMillis(),
+      storeAndForwardConfig.getMaxRetryDelay().toMillis()
+    );
+  }
+
+  /**
+   * Bean for creating the tracer that records what happens on every connection with an ASTM sender.
+   *
+   * @param sessionTraceConfig the session trace configuration properties
+   * @return the ASTM session tracer
+   */
+  @Bean
+  @ConditionalOnProperty(
+    prefix = "org.itech.ahb.session-trace",
+    name = "enabled",
+    havingValue = "true",
+    matchIfMissing = true
+  )
+  public ASTMSessionTracer astmSessionTracer(ASTMSessionTraceConfigurationProperties sessionTraceConfig) {
+    return new ASTMSessionTracer(sessionTraceConfig.getCapacity(), sessionTraceConfig.getMaxEventsPerSession());
+  }
+
   /**
    * Bean for creating an ASTM servlet for LIS1-A.
    *
    * @param astmListenConfig the ASTM listen server configuration properties
    * @param httpForwardConfig the HTTP forward server configuration properties
+   * @param astmMessageStore the ASTM message store, if store and forward is enabled
+   * @param astmSessionTracer the ASTM session tracer, if session tracing is enabled
    * @return the ASTM servlet
    */
   @Bean
   public ASTMServlet astmLIS01AServlet(
     ASTMLIS1AListenServerConfigurationProperties astmListenConfig,
-    HTTPForwardServerConfigurationProperties httpForwardConfig
+    HTTPForwardServerConfigurationProperties httpForwardConfig,
+    ObjectProvider<ASTMMessageStore> astmMessageStore,
+    ObjectProvider<ASTMSessionTracer> astmSessionTracer
   ) {
     log.info("creating astm server bean to handle incoming astm LIS1-A requests on port " + astmListenConfig.getPort());
-    return new ASTMServlet(
-      astmHandlerService(httpForwardConfig),
-      astmInterpreterFactory(),
-      astmListenConfig.getPort(),
-      ASTMVersion.LIS01_A
-    );
+    ASTMServlet servlet;
+    if (astmListenConfig.isNonBlockingIo()) {
+      servlet = new ASTMNIOServlet(
+        astmHandlerService(httpForwardConfig),
+        astmInterpreterFactory(),
+        astmListenConfig.getPort(),
+        ASTMVersion.LIS01_A,
+        astmListenConfig.getConnectionThreadMode(),
+        astmListenConfig.getMaxConcurrentConnections()
+      );
+    } else {
+      servlet = new ASTMServlet(
+        astmHandlerService(httpForwardConfig),
+        astmInterpreterFactory(),
+        astmListenConfig.getPort(),
+        ASTMVersion.LIS01_A,
+        astmListenConfig.getConnectionThreadMode(),
+        astmListenConfig.getMaxConcurrentConnections()
+      );
+      servlet.setMaxIdleCommunicators(astmListenConfig.getMaxIdleCommunicators());
+    }
+    servlet.setForwardAsynchronously(httpForwardConfig.isForwardAsynchronously());
+    servlet.setMessageStore(astmMessageStore.getIfAvailable());
+    servlet.setSessionTracer(astmSessionTracer.getIfAvailable());
+    return servlet;
   }
 
   /**
@@ -105,21 +323,44 @@ public class AstmHttpBridgeApplication {
    *
    * @param astmListenConfig the ASTM listen server configuration properties
    * @param httpForwardConfig the HTTP forward server configuration properties
+   * @param astmMessageStore the ASTM message store, if store and forward is enabled
+   * @param astmSessionTracer the ASTM session tracer, if session tracing is enabled
    * @return the ASTM servlet
    */
   @Bean
   public ASTMServlet astmE138195Servlet(
     ASTME138195ListenServerConfigurationProperties astmListenConfig,
-    HTTPForwardServerConfigurationProperties httpForwardConfig
+    HTTPForwardServerConfigurationProperties httpForwardConfig,
+    ObjectProvider<ASTMMessageStore> astmMessageStore,
+    ObjectProvider<ASTMSessionTracer> astmSessionTracer
   ) {
     log.info(
       "creating astm 1381-95 server bean to handle incoming astm 1381-95 requests on port " + astmListenConfig.getPort()
     );
-    return new ASTMServlet(
-      astmHandlerService(httpForwardConfig),
-      astmInterpreterFactory(),
-      astmListenConfig.getPort(),
-      ASTMVersion.E1381_95
-    );
+    ASTMServlet servlet;
+    if (astmListenConfig.isNonBlockingIo()) {
+      servlet = new ASTMNIOServlet(
+        astmHandlerService(httpForwardConfig),
+        astmInterpreterFactory(),
+        astmListenConfig.getPort(),
+        ASTMVersion.E1381_95,
+        astmListenConfig.getConnectionThreadMode(),
+        astmListenConfig.getMaxConcurrentConnections()
+      );
+    } else {
+      servlet = new ASTMServlet(
+        astmHandlerService(httpForwardConfig),
+        astmInterpreterFactory(),
+        astmListenConfig.getPort(),
+        ASTMVersion.E1381_95,
+        astmListenConfig.getConnectionThreadMode(),
+        astmListenConfig.getMaxConcurrentConnections()
+      );
+      servlet.setMaxIdleCommunicators(astmListenConfig.getMaxIdleCommunicators());
+    }
+    servlet.setForwardAsynchronously(httpForwardConfig.isForwardAsynchronously());
+    servlet.setMessageStore(astmMessageStore.getIfAvailable());
+    servlet.setSessionTracer(astmSessionTracer.getIfAvailable());
+    return servlet;
   }
 }
@@ -1,6 +1,7 @@
 package org.itech.ahb.config.properties;
 
 import lombok.Data;
+import org.itech.ahb.lib.astm.servlet.ASTMServlet.ConnectionThreadMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -15,4 +16,28 @@ public class ASTME138195ListenServerConfigurationProperties {
    * The port on which the server listens.
    */
   private int port = 12011;
+
+  /**
+   * The kind of thread that is started to serve each accepted connection.
+   */
+  private ConnectionThreadMode connectionThreadMode = ConnectionThreadMode.VIRTUAL;
+
+  /**
+   * The maximum number of connections served at once. Further connections wait to be accepted until
+   * a served connection closes. 0 or less means unbounded.
+   */
+  private int maxConcurrentConnections = 2048;
+
+  /**
+   * The maximum number of communicators of closed connections that are kept to be reused, along with their buffers,
+   * by new connections. 0 or less means a new communicator is created for every connection. Does not apply when
+   * nonBlockingIo is enabled.
+   */
+  private int maxIdleCommunicators = 64;
+
+  /**
+   * Whether to serve every connection from a single non-blocking event loop thread instead of a thread per connection.
+   * When enabled, connectionThreadMode applies to the threads that handle received messages.
+   */
+  private boolean nonBlockingIo = false;
 }
@@ -0,0 +1,48 @@
+package org.itech.ahb.config.properties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration properties for durably queueing ASTM messages received over HTTP(S) and forwarding them to the ASTM
+ * server in the background. When enabled, the HTTP sender gets a job id back as soon as the message is queued and
+ * can poll the job for the result, instead of waiting for the message to be forwarded.
+ */
+@ConfigurationProperties(prefix = "org.itech.ahb.forward-astm-queue")
+@Data
+public class ASTMForwardQueueConfigurationProperties {
+
+  /**
+   * Whether ASTM messages received over HTTP(S) are queued instead of forwarded before responding.
+   */
+  private boolean enabled = false;
+
+  /**
+   * The directory the queued messages are kept in.
+   */
+  private Path directory = Path.of("astm-forward-queue");
+
+  /**
+   * The size of each file messages are queued in. This limits the size of a single message.
+   */
+  private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+  /**
+   * How long to wait for further messages to share a flush to disk.
+   */
+  private Duration groupCommitInterval = Duration.ofMillis(2);
+
+  /**
+   * The maximum number of finished jobs to keep the results of.
+   */
+  private int maxRetainedJobs = 10000;
+
+  /**
+   * The maximum number of targets (address, port and ASTM version) messages can be queued for at once. Each target has
+   * its own thread and files until its messages have been forwarded and it has been idle for a while.
+   */
+  private int maxTargets = 64;
+}
@@ -1,5 +1,6 @@
 package org.itech.ahb.config.properties;
 
+import java.time.Duration;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -20,4 +21,21 @@ public class ASTMForwardServerConfigurationProperties {
    * The port on which the forward server listens.
    */
   private int port = 12001;
+
+  /**
+   * The maximum number of idle connections to keep open to each ASTM server between messages, so consecutive
+   * messages do not need a new connection each. 0 closes the connection after every message.
+   */
+  private int maxIdleConnections = 0;
+
+  /**
+   * How long an idle connection is kept open before it is closed.
+   */
+  private Duration connectionIdleTimeout = Duration.ofSeconds(60);
+
+  /**
+   * Whether messages received together in a batch are sent to the ASTM server within a single establishment phase,
+   * instead of one establishment phase per message.
+   */
+  private boolean coalesceBatches = false;
 }
@@ -0,0 +1,29 @@
+package org.itech.ahb.config.properties;
+
+import lombok.Data;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTracer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for tracing what happens on every connection with an ASTM sender. The traces of the most
+ * recent connections are kept in memory and can be read from the astmsessions actuator endpoint.
+ */
+@ConfigurationProperties(prefix = "org.itech.ahb.session-trace")
+@Data
+public class ASTMSessionTraceConfigurationProperties {
+
+  /**
+   * Whether connections with ASTM senders are traced.
+   */
+  private boolean enabled = true;
+
+  /**
+   * The number of most recent connections to keep the traces of.
+   */
+  private int capacity = ASTMSessionTracer.DEFAULT_CAPACITY;
+
+  /**
+   * The maximum number of events to keep in the trace of each connection.
+   */
+  private int maxEventsPerSession = ASTMSessionTracer.DEFAULT_MAX_EVENTS_PER_SESSION;
+}
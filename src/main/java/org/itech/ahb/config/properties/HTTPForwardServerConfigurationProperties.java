@@ -1,6 +1,7 @@
 package org.itech.ahb.config.properties;
 
 import java.net.URI;
+import java.time.Duration;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -13,6 +14,24 @@ import org.springframework.web.bind.annotation.RequestMethod;
 @Data
 public class HTTPForwardServerConfigurationProperties {
 
+  /**
+   * Enum representing the executor the HTTP client runs its asynchronous tasks and response handling on.
+   */
+  public enum ClientExecutorMode {
+    /**
+     * The default executor of the HTTP client, which starts threads as needed.
+     */
+    DEFAULT,
+    /**
+     * A new virtual thread is started for every task.
+     */
+    VIRTUAL,
+    /**
+     * A fixed size pool of platform threads, sized by executorThreads.
+     */
+    FIXED
+  }
+
   /**
    * The URI of the HTTP forward server.
    */
@@ -43,4 +62,42 @@ public class HTTPForwardServerConfigurationProperties {
    * The body of the health check request.
    */
   private String healthBody = "";
+
+  /**
+   * The maximum amount of time to wait for a connection to the HTTP forward server to be established.
+   */
+  private Duration connectTimeout = Duration.ofSeconds(10);
+
+  /**
+   * The maximum amount of time to wait for the HTTP forward server to respond to a forwarded message.
+   */
+  private Duration requestTimeout = Duration.ofSeconds(60);
+
+  /**
+   * The executor the HTTP client that forwards messages runs on. The client is shared by all forwarded messages.
+   */
+  private ClientExecutorMode executorMode = ClientExecutorMode.DEFAULT;
+
+  /**
+   * The number of threads in the executor when executorMode is FIXED.
+   */
+  private int executorThreads = 4;
+
+  /**
+   * Whether ASTM messages are forwarded without the receiving thread waiting for the HTTP forward server to respond.
+   * Messages from the same ASTM sender are still forwarded in the order they were received.
+   */
+  private boolean forwardAsynchronously = false;
+
+  /**
+   * The maximum number of asynchronously forwarded messages awaiting a response from the HTTP forward server at once.
+   * Further messages are queued until a response is received. 0 or less means unbounded.
+   */
+  private int maxInFlightRequests = 16;
+
+  /**
+   * Whether the bodies of forwarded messages are gzip compressed. The HTTP forward server must accept request bodies
+   * with "Content-Encoding: gzip".
+   */
+  private boolean gzipRequests = false;
 }
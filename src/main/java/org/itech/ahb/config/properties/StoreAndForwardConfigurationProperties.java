@@ -0,0 +1,49 @@
+package org.itech.ahb.config.properties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration properties for durably storing received ASTM messages on disk before they are acknowledged to the
+ * ASTM sender, and forwarding them from there to the configured HTTP server. This keeps messages that could not be
+ * forwarded, ex. while the HTTP server is down, until they are forwarded successfully.
+ */
+@ConfigurationProperties(prefix = "org.itech.ahb.store-and-forward")
+@Data
+public class StoreAndForwardConfigurationProperties {
+
+  /**
+   * Whether received ASTM messages are stored before they are forwarded.
+   */
+  private boolean enabled = false;
+
+  /**
+   * The directory the stored messages are kept in.
+   */
+  private Path directory = Path.of("astm-message-store");
+
+  /**
+   * The size of each file messages are stored in. This limits the size of a single message.
+   */
+  private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+  /**
+   * How long to wait for further messages to share a flush to disk. Longer intervals mean fewer flushes at peak
+   * rates, at the cost of the ASTM sender waiting longer for each message to be acknowledged.
+   */
+  private Duration groupCommitInterval = Duration.ofMillis(2);
+
+  /**
+   * The time to wait before the first retry of a message that could not be forwarded.
+   */
+  private Duration initialRetryDelay = Duration.ofSeconds(1);
+
+  /**
+   * The maximum time to wait between retries of a message that could not be forwarded. The delay doubles with every
+   * retry until it reaches this.
+   */
+  private Duration maxRetryDelay = Duration.ofMinutes(5);
+}
@@ -1,23 +1,26 @@
 package org.itech.ahb.controller;
 
 import jakarta.servlet.http.HttpServletResponse;
-import java.util.Arrays;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
-import org.itech.ahb.config.properties.ASTMForwardServerConfigurationProperties;
 import org.itech.ahb.lib.astm.concept.ASTMMessage;
-import org.itech.ahb.lib.astm.handling.ASTMHandlerService;
 import org.itech.ahb.lib.astm.interpretation.ASTMInterpreterFactory;
 import org.itech.ahb.lib.astm.servlet.ASTMServlet.ASTMVersion;
 import org.itech.ahb.lib.common.handling.HandleStatus;
-import org.itech.ahb.lib.http.handling.DefaultForwardingHTTPToASTMHandler;
 import org.itech.ahb.lib.http.handling.HTTPForwardingHandlerInfo;
-import org.itech.ahb.lib.http.handling.HTTPHandler;
 import org.itech.ahb.lib.http.handling.HTTPHandlerResponse;
 import org.itech.ahb.lib.http.handling.HTTPHandlerService;
-import org.itech.ahb.lib.http.handling.HTTPHandlerService.Mode;
 import org.itech.ahb.lib.http.handling.HTTPHandlerServiceResponse;
+import org.itech.ahb.lib.http.queue.HTTPToASTMForwardingJob;
+import org.itech.ahb.lib.http.queue.HTTPToASTMForwardingQueue;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -34,29 +37,23 @@ public class HTTPListenController {
 
   private final HTTPHandlerService httpHandlerService;
   private final ASTMInterpreterFactory interpreterFactory;
+  private final HTTPToASTMForwardingQueue forwardingQueue; // null when messages are forwarded before responding
 
   /**
    * Constructor for HTTPListenController.
    *
    * @param interpreterFactory the ASTM interpreter factory
-   * @param astmForwardConfig the configuration properties for where to forward the ASTM messages
-   * @param astmHandlerService the ASTM handler service that will call the relevant handler(s)
+   * @param httpHandlerService the HTTP handler service that will call the relevant handler(s)
+   * @param forwardingQueue the queue to forward messages from, if the ASTM forward queue is enabled
    */
   public HTTPListenController(
     ASTMInterpreterFactory interpreterFactory,
-    ASTMForwardServerConfigurationProperties astmForwardConfig,
-    ASTMHandlerService astmHandlerService
+    HTTPHandlerService httpHandlerService,
+    ObjectProvider<HTTPToASTMForwardingQueue> forwardingQueue
   ) {
-    List<HTTPHandler> httpHandlers = Arrays.asList(
-      new DefaultForwardingHTTPToASTMHandler(
-        astmForwardConfig.getHostName(),
-        astmForwardConfig.getPort(),
-        astmHandlerService,
-        interpreterFactory
-      )
-    );
     this.interpreterFactory = interpreterFactory;
-    this.httpHandlerService = new HTTPHandlerService(httpHandlers, Mode.FIRST);
+    this.httpHandlerService = httpHandlerService;
+    this.forwardingQueue = forwardingQueue.getIfAvailable();
   }
 
   /**
@@ -67,16 +64,19 @@ public class HTTPListenController {
    * @param forwardPort the port to forward the message to. Leaving blank will use the default configured forward port.
    * @param forwardAstmVersion the ASTM transmission protocol to forward the message over.
    * @param response the HTTP servlet response
-   * @return the HTTP service response ie. the responses of the individual handlers that handled the message.
+   * @return the HTTP service response ie. the responses of the individual handlers that handled the message, or the
+   * queued job with a 202 status if the ASTM forward queue is enabled.
+   * @throws IOException if the message could not be queued
+   * @throws InterruptedException if the thread was interrupted while queueing the message
    */
   @PostMapping
-  public HTTPHandlerServiceResponse recieveASTMMessageOverHttp(
+  public ResponseEntity<?> recieveASTMMessageOverHttp(
     @RequestBody(required = false) String requestBody,
     @RequestParam(required = false) String forwardAddress,
     @RequestParam(required = false, defaultValue = "0") Integer forwardPort,
     @RequestParam(required = false, defaultValue = "LIS01_A") ASTMVersion forwardAstmVersion,
     HttpServletResponse response
-  ) {
+  ) throws IOException, InterruptedException {
     log.debug("received http request to handle");
     log.trace("requestBody: " + requestBody);
     log.trace("forwardAddress: " + forwardAddress);
@@ -89,6 +89,10 @@ public class HTTPListenController {
     handlerInfo.setForwardAddress(forwardAddress);
     handlerInfo.setForwardPort(forwardPort);
     handlerInfo.setForwardAstmVersion(forwardAstmVersion);
+    if (forwardingQueue != null) {
+      HTTPToASTMForwardingJob job = forwardingQueue.submit(message, handlerInfo);
+      return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getId())).body(job);
+    }
     HTTPHandlerServiceResponse serviceResponse = httpHandlerService.handle(message, Set.of(handlerInfo));
     if (serviceResponse.getResponses() == null || serviceResponse.getResponses().size() == 0) {
       log.error("message was unhandled");
@@ -101,6 +105,62 @@ public class HTTPListenController {
         }
       }
     }
-    return serviceResponse;
+    return ResponseEntity.ok(serviceResponse);
+  }
+
+  /**
+   * Receives a batch of ASTM messages over HTTP and forwards them together, so they can be sent to the ASTM server in
+   * a single exchange. The batch is always forwarded before responding, even if the ASTM forward queue is enabled.
+   *
+   * @param requestBody the request body containing a JSON array of ASTM messages
+   * @param forwardAddress the address to forward the messages to.  Leaving blank will use the default configured forward address.
+   * @param forwardPort the port to forward the messages to. Leaving blank will use the default configured forward port.
+   * @param forwardAstmVersion the ASTM transmission protocol to forward the messages over.
+   * @return the HTTP service responses for each message, in the same order as the messages.
+   */
+  @PostMapping("/batch")
+  public List<HTTPHandlerServiceResponse> recieveASTMMessagesOverHttp(
+    @RequestBody List<String> requestBody,
+    @RequestParam(required = false) String forwardAddress,
+    @RequestParam(required = false, defaultValue = "0") Integer forwardPort,
+    @RequestParam(required = false, defaultValue = "LIS01_A") ASTMVersion forwardAstmVersion
+  ) {
+    log.debug("received http request to handle batch of " + requestBody.size() + " messages");
+    List<ASTMMessage> messages = new ArrayList<>(requestBody.size());
+    for (String messageText : requestBody) {
+      messages.add(interpreterFactory.createInterpreterForText(messageText).interpretASTMTextToMessage(messageText));
+    }
+    HTTPForwardingHandlerInfo handlerInfo = new HTTPForwardingHandlerInfo();
+    handlerInfo.setForwardAddress(forwardAddress);
+    handlerInfo.setForwardPort(forwardPort);
+    handlerInfo.setForwardAstmVersion(forwardAstmVersion);
+    List<HTTPHandlerServiceResponse> serviceResponses = httpHandlerService.handleBatch(messages, Set.of(handlerInfo));
+    int unsuccessful = 0;
+    for (HTTPHandlerServiceResponse serviceResponse : serviceResponses) {
+      if (
+        serviceResponse.getResponses() == null ||
+        serviceResponse.getResponses().stream().anyMatch(response -> response.getStatus() != HandleStatus.SUCCESS)
+      ) {
+        ++unsuccessful;
+      }
+    }
+    if (unsuccessful > 0) {
+      log.error(unsuccessful + " of " + messages.size() + " messages were not handled successfully");
+    } else {
+      log.debug("all " + messages.size() + " messages were handled successfully");
+    }
+    return serviceResponses;
+  }
+
+  /**
+   * Gets a job that was queued to be forwarded by {@link #recieveASTMMessageOverHttp}.
+   *
+   * @param id the id of the job
+   * @return the job, including the HTTP service response once it is finished, or 404 if the job is not known.
+   */
+  @GetMapping("/jobs/{id}")
+  public ResponseEntity<HTTPToASTMForwardingJob> getForwardingJob(@PathVariable String id) {
+    HTTPToASTMForwardingJob job = forwardingQueue == null ? null : forwardingQueue.getJob(id);
+    return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
   }
 }
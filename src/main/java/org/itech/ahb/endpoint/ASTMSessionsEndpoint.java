@@ -0,0 +1,60 @@
+package org.itech.ahb.endpoint;
+
+import java.util.List;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTrace;
+import org.itech.ahb.lib.astm.trace.ASTMSessionTracer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint for the traces of the most recent connections with ASTM senders. Each trace lists what happened
+ * on the connection, ex. each frame being received and acknowledged and each handler finishing, with the time in
+ * microseconds since the connection was accepted. Empty if session tracing is disabled.
+ *
+ * management:
+ *   endpoints:
+ *     web:
+ *       exposure:
+ *         include: astmsessions
+ */
+@Component
+@Endpoint(id = "astmsessions")
+public class ASTMSessionsEndpoint {
+
+  private final ObjectProvider<ASTMSessionTracer> sessionTracer;
+
+  /**
+   * Constructor for ASTMSessionsEndpoint.
+   *
+   * @param sessionTracer the ASTM session tracer, if session tracing is enabled
+   */
+  public ASTMSessionsEndpoint(ObjectProvider<ASTMSessionTracer> sessionTracer) {
+    this.sessionTracer = sessionTracer;
+  }
+
+  /**
+   * Gets the traces of the most recent connections.
+   *
+   * @return the traces, newest first
+   */
+  @ReadOperation
+  public List<ASTMSessionTrace> sessions() {
+    ASTMSessionTracer tracer = sessionTracer.getIfAvailable();
+    return tracer == null ? List.of() : tracer.getSessions();
+  }
+
+  /**
+   * Gets the trace of a recent connection.
+   *
+   * @param sessionId the ID of the session
+   * @return the trace, or null if the session is unknown or no longer kept
+   */
+  @ReadOperation
+  public ASTMSessionTrace session(@Selector long sessionId) {
+    ASTMSessionTracer tracer = sessionTracer.getIfAvailable();
+    return tracer == null ? null : tracer.getSession(sessionId);
+  }
+}